@@ -0,0 +1,66 @@
+package com.alextomala.vending.analytics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fleet of 256 machines with 32 positions, keeping an hour of one minute buckets, with every bucket full. "record"
+ * is one sale, "bestSellers" and "topMachines" rank the fleet over the last 15 minutes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SalesAggregatorBenchmark {
+    private static final int MACHINES = 256;
+    private static final int POSITIONS = 32;
+    private static final long MINUTE = 60_000;
+
+    private long now;
+    private SalesAggregator aggregator;
+    private int sale;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        now = 0;
+        aggregator = new SalesAggregator(MACHINES, POSITIONS, MINUTE, 60, () -> now);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int minute = 0; minute < 60; minute++) {
+            for (int i = 0; i < 10 * MACHINES; i++) {
+                aggregator.record(random.nextInt(MACHINES), random.nextInt(POSITIONS), 25 + 5 * random.nextInt(10));
+            }
+            now += MINUTE;
+        }
+        now -= MINUTE;
+    }
+
+    @Benchmark
+    public void record() {
+        int i = sale++;
+        aggregator.record(i & (MACHINES - 1), (i >>> 8) & (POSITIONS - 1), 50);
+    }
+
+    @Benchmark
+    public Ranking bestSellers() {
+        return aggregator.bestSellers(10, 15);
+    }
+
+    @Benchmark
+    public Ranking topMachines() {
+        return aggregator.topMachines(10, 15);
+    }
+}
@@ -0,0 +1,71 @@
+package com.alextomala.vending.catalog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Four customers taking products from the stock counters of one catalog. In "ownSlot" each buys from a different
+ * slot, next to each other in the catalog, which should cost the same as one thread alone since the counters are
+ * padded. "sameSlot" has all four fighting over one counter, for comparison. The stock is topped up before it runs out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Threads(4)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StockCounterBenchmark {
+    private static final int SLOTS = 4;
+
+    private ProductCatalog catalog;
+
+    @State(Scope.Thread)
+    public static class Customer {
+        StockCounter own;
+        StockCounter shared;
+
+        @Setup
+        public void setUp(StockCounterBenchmark benchmark, ThreadParams threads) {
+            own = benchmark.catalog.getStockCounter(1 + threads.getThreadIndex() % SLOTS);
+            shared = benchmark.catalog.getStockCounter(1);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        catalog = new ProductCatalog();
+        for (int position = 1; position <= SLOTS; position++) {
+            catalog.add(new Product(position, 50, "Product " + position), Integer.MAX_VALUE);
+        }
+    }
+
+    @Benchmark
+    public boolean ownSlot(Customer customer) {
+        return take(customer.own);
+    }
+
+    @Benchmark
+    public boolean sameSlot(Customer customer) {
+        return take(customer.shared);
+    }
+
+    private static boolean take(StockCounter counter) {
+        if (!counter.tryTake()) {
+            counter.add(Integer.MAX_VALUE);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+package com.alextomala.vending.change;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old greedy change making with the table backed OptimalChangeMaker.
+ *
+ * "stocked" is a vault with plenty of every coin, which is the table lookup for OptimalChangeMaker. "noQuarters" is
+ * a vault that has run out of quarters, which forces it onto the slower dynamic program.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChangeMakerBenchmark {
+    private static final int[] COINS = {5, 10, 25};
+
+    @Param({"stocked", "noQuarters"})
+    public String vault;
+
+    @Param({"15", "85"})
+    public int amount;
+
+    private ChangeMaker greedy;
+    private ChangeMaker optimal;
+    private int[] available;
+    private int[] result;
+
+    @Setup
+    public void setUp() {
+        greedy = new GreedyChangeMaker(COINS);
+        optimal = new OptimalChangeMaker(COINS);
+        available = "stocked".equals(vault) ? new int[]{100, 100, 100} : new int[]{100, 100, 0};
+        result = new int[COINS.length];
+    }
+
+    @Benchmark
+    public boolean greedy() {
+        return greedy.makeChange(amount, available, result);
+    }
+
+    @Benchmark
+    public boolean optimal() {
+        return optimal.makeChange(amount, available, result);
+    }
+}
@@ -0,0 +1,61 @@
+package com.alextomala.vending.fleet;
+
+import com.alextomala.vending.currency.DenominationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconciles a cash collection over a few hundred thousand machines, one in a hundred of them a coin short. "pool" is
+ * the common fork/join pool, "single" is a pool of one thread, for seeing what the split buys on the
+ * machine at hand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CashCollectionBenchmark {
+
+    @Param({"100000", "500000"})
+    public int machines;
+
+    @Param({"pool", "single"})
+    public String threads;
+
+    private CashCollection collection;
+    private int[] expected;
+    private int[] collected;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        collection = "pool".equals(threads) ? new CashCollection(DenominationRegistry.US_COINS)
+                : new CashCollection(DenominationRegistry.US_COINS, new ForkJoinPool(1));
+        Random random = new Random(42);
+        expected = new int[3 * machines];
+        collected = new int[3 * machines];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = random.nextInt(200);
+            collected[i] = random.nextInt(300) == 0 ? expected[i] - 1 : expected[i];
+        }
+    }
+
+    @Benchmark
+    public CollectionReport reconcile() {
+        return collection.reconcile(expected, collected);
+    }
+}
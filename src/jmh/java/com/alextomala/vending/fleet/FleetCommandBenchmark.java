@@ -0,0 +1,68 @@
+package com.alextomala.vending.fleet;
+
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commands sent through a fleet of 1,000 machines with the default number of shards, waiting for all of them to finish.
+ * Each machine gets a coin and then has its order cancelled, so the machines never fill up. The score is commands a
+ * microsecond, so a million a second is a score of 1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FleetCommandBenchmark {
+    private static final int MACHINES = 1_000;
+    private static final int COMMANDS = 10_000;
+
+    private VendingFleet fleet;
+    private String[] machineIds;
+    private CompletableFuture<?>[] futures;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fleet = new VendingFleet();
+        machineIds = new String[MACHINES];
+        for (int i = 0; i < MACHINES; i++) {
+            machineIds[i] = "machine-" + i;
+            fleet.addMachine(machineIds[i], NoOpHardwareDriver.INSTANCE);
+        }
+        futures = new CompletableFuture<?>[COMMANDS];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        fleet.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void commands() {
+        for (int i = 0; i < COMMANDS; i += 2) {
+            String machineId = machineIds[(i / 2) % MACHINES];
+            futures[i] = fleet.addUserMoney(machineId, 25);
+            futures[i + 1] = fleet.cancelOrder(machineId);
+        }
+        for (CompletableFuture<?> future : futures) {
+            future.join();
+        }
+    }
+}
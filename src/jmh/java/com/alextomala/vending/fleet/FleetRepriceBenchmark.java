@@ -0,0 +1,74 @@
+package com.alextomala.vending.fleet;
+
+import com.alextomala.vending.VendingMachine;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.pricing.PriceTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reprices every product in a fleet of 10,000 machines with 20 products each, and waits for every machine to have the
+ * new prices. Every other table puts the prices back, so each run changes all 200,000 of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FleetRepriceBenchmark {
+    private static final int MACHINES = 10_000;
+    private static final int PRODUCTS = 20;
+
+    private VendingFleet fleet;
+    private Map<Integer, Integer> listPrices;
+    private Map<Integer, Integer> salePrices;
+    private long version;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fleet = new VendingFleet();
+        listPrices = new HashMap<>();
+        salePrices = new HashMap<>();
+        for (int position = 1; position <= PRODUCTS; position++) {
+            listPrices.put(position, 50 + 5 * position);
+            salePrices.put(position, 45 + 5 * position);
+        }
+        for (int i = 0; i < MACHINES; i++) {
+            VendingMachine machine = fleet.addMachine("machine-" + i, NoOpHardwareDriver.INSTANCE);
+            for (int position = 1; position <= PRODUCTS; position++) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("price", listPrices.get(position));
+                details.put("name", "Product " + position);
+                machine.addProduct(position, details);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        fleet.close();
+    }
+
+    @Benchmark
+    public PriceTable repriceFleet() throws Exception {
+        version++;
+        PriceTable prices = new PriceTable(version, version % 2 == 0 ? listPrices : salePrices);
+        fleet.reprice(prices).get();
+        return prices;
+    }
+}
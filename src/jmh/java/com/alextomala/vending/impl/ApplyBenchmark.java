@@ -0,0 +1,83 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.command.ButtonPressed;
+import com.alextomala.vending.command.ChangeAdded;
+import com.alextomala.vending.command.CoinInserted;
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.event.Event;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of 100 customers, each paying 50 cents for a 40 cent product and getting a dime back, applied as commands
+ * and as the same calls one at a time. Scores are per customer.
+ *
+ * With the no-op hardware the batch costs more than the calls (about twice as much a customer), because it builds an
+ * event for every product and every handful of change, which the calls don't. What the batch saves is the caller's
+ * side, one hand-off per batch instead of one per command, and the hardware being called for every message and coin.
+ * Products still go to the hardware during the batch, see JavaVendingMachine.apply.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ApplyBenchmark {
+    private static final int CUSTOMERS = 100;
+
+    private JavaVendingMachine vendingMachine;
+    private List<Command> batch;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        vendingMachine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 40);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+
+        batch = new ArrayList<>();
+        // Put back the dimes the batch pays out, so every batch sees the same vault.
+        batch.add(new ChangeAdded(0, CUSTOMERS, 0));
+        for (int i = 0; i < CUSTOMERS; i++) {
+            batch.add(new CoinInserted(25));
+            batch.add(new CoinInserted(25));
+            batch.add(new ButtonPressed(1));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CUSTOMERS)
+    public List<Event> batch() {
+        return vendingMachine.apply(batch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CUSTOMERS)
+    public void calls() {
+        vendingMachine.addChange(0, CUSTOMERS, 0);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            vendingMachine.addUserMoney(25);
+            vendingMachine.addUserMoney(25);
+            vendingMachine.buttonPress(1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purchases on a ConcurrentVendingMachine shared between threads.
+ *
+ * "uncontended" is one thread on its own machine, as the baseline. "contended" is three customers buying from one
+ * machine while an admin empties the vault and restocks change in a loop, which also stops the packed vault from
+ * filling up with quarters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConcurrentPurchaseBenchmark {
+
+    @State(Scope.Group)
+    public static class SharedMachine {
+        ConcurrentVendingMachine vendingMachine;
+
+        @Setup
+        public void setUp() {
+            vendingMachine = newMachine();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OwnMachine {
+        ConcurrentVendingMachine vendingMachine;
+        int sales;
+
+        @Setup
+        public void setUp() {
+            vendingMachine = newMachine();
+        }
+    }
+
+    @Benchmark
+    public void uncontended(OwnMachine machine) {
+        machine.vendingMachine.addUserMoney(25);
+        machine.vendingMachine.buttonPress(1);
+        // Nobody else is emptying this vault, so do it here before the quarters overflow.
+        if (++machine.sales == 1 << 20) {
+            machine.sales = 0;
+            machine.vendingMachine.dispenseAllChange();
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void customer(SharedMachine machine) {
+        machine.vendingMachine.addUserMoney(25);
+        machine.vendingMachine.buttonPress(1);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void admin(SharedMachine machine) {
+        machine.vendingMachine.dispenseAllChange();
+        machine.vendingMachine.addChange(100, 100, 0);
+    }
+
+    private static ConcurrentVendingMachine newMachine() {
+        ConcurrentVendingMachine vendingMachine = new ConcurrentVendingMachine(NoOpHardwareDriver.INSTANCE);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 25);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+        return vendingMachine;
+    }
+}
@@ -0,0 +1,79 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole customer on a single threaded JavaVendingMachine: two quarters in, one button press, change out.
+ *
+ * "exact" needs no change. "change" pays 10 cents back from a stocked vault, which is a table lookup.
+ * "depleted" pays 30 cents back from a vault with no nickels, so the table answer (a quarter and a nickel) can't be
+ * used and the change maker falls back to three dimes.
+ *
+ * The hardware is stubbed out, and the machine is rebuilt every iteration so the coins piling up in the vault never
+ * overflow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PurchaseBenchmark {
+
+    @Param({"exact", "change", "depleted"})
+    public String vault;
+
+    private JavaVendingMachine vendingMachine;
+    private int dimesPerSale;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        vendingMachine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        int price;
+        switch (vault) {
+            case "exact":
+                price = 50;
+                dimesPerSale = 0;
+                break;
+            case "change":
+                price = 40;
+                dimesPerSale = 1;
+                vendingMachine.addChange(1000, 0, 0);
+                break;
+            default:
+                price = 20;
+                dimesPerSale = 3;
+                break;
+        }
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", price);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+    }
+
+    @Benchmark
+    public void purchase() {
+        // Put back the dimes the last sale paid out, so every sale sees the same vault.
+        vendingMachine.addChange(0, dimesPerSale, 0);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(1);
+    }
+}
@@ -0,0 +1,87 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.event.Event;
+import com.alextomala.vending.event.EventSubscriber;
+import com.alextomala.vending.event.EventSubscription;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The "change" purchase from PurchaseBenchmark with nobody, one and four subscribers to the machine's events. With
+ * nobody subscribed it should match PurchaseBenchmark, and "-prof gc" should show no allocation. With subscribers the
+ * machine's thread only pays for putting each event in each ring, the subscribers run on the common pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PurchaseEventsBenchmark {
+
+    @Param({"0", "1", "4"})
+    public int subscribers;
+
+    private JavaVendingMachine vendingMachine;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        vendingMachine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        vendingMachine.addChange(1000, 0, 0);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 40);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+        for (int i = 0; i < subscribers; i++) {
+            vendingMachine.getEventPublisher().subscribe(new Ignore());
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        vendingMachine.getEventPublisher().close();
+    }
+
+    @Benchmark
+    public void purchase() {
+        vendingMachine.addChange(0, 1, 0);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(1);
+    }
+
+    private static final class Ignore implements EventSubscriber {
+        @Override
+        public void onSubscribe(EventSubscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Event event) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An admin visit: restock every coin, then empty the vault again. The time should not depend on the number of coins.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RestockBenchmark {
+
+    @Param({"10", "2000"})
+    public int coins;
+
+    private JavaVendingMachine vendingMachine;
+
+    @Setup
+    public void setUp() {
+        vendingMachine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+    }
+
+    @Benchmark
+    public void restockAndCollect() {
+        vendingMachine.addChange(coins, coins, coins);
+        vendingMachine.dispenseAllChange();
+    }
+}
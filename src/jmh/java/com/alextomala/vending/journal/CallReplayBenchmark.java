@@ -0,0 +1,97 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recording of a million calls: purchases paid with exact change, with quarters, and every so often a
+ * restock, a cancelled order and a collection. The time is per call, so a million over it is the number of calls a
+ * second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CallReplayBenchmark {
+    private static final int CALLS = 1_000_000;
+
+    private Path file;
+    private CallReplayer replayer;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("call-replay-benchmark", ".bin");
+        try (CallRecorder recorder = new CallRecorder(file, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE))) {
+            Map<String, Object> gumDescription = new HashMap<>();
+            gumDescription.put("price", 50);
+            gumDescription.put("name", "Gum");
+            gumDescription.put("quantity", 1000);
+            recorder.addProduct(1, gumDescription);
+            Map<String, Object> candyDescription = new HashMap<>();
+            candyDescription.put("price", 65);
+            candyDescription.put("name", "Candy");
+            recorder.addProduct(2, candyDescription);
+            recorder.addChange(100, 100, 100);
+
+            int calls = 3;
+            for (int i = 0; calls < CALLS; i++) {
+                if (i % 100 == 99) {
+                    recorder.restock(1, 1000 - recorder.getStock(1));
+                    recorder.addUserMoney(10);
+                    recorder.cancelOrder();
+                    recorder.dispenseAllChange();
+                    recorder.addChange(100, 100, 100);
+                    calls += 5;
+                } else if (i % 2 == 0) {
+                    recorder.addUserMoney(25);
+                    recorder.addUserMoney(25);
+                    recorder.buttonPress(1);
+                    calls += 3;
+                } else {
+                    recorder.addUserMoney(25);
+                    recorder.addUserMoney(25);
+                    recorder.addUserMoney(25);
+                    recorder.buttonPress(2);
+                    calls += 4;
+                }
+            }
+        }
+        replayer = new CallReplayer(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public ReplayResult replay() {
+        ReplayResult result = replayer.replay();
+        if (!result.matches()) {
+            throw new IllegalStateException(result.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The same purchase as PurchaseBenchmark's "exact" case, with every call journaled. The journal lives in a temporary
+ * directory with the default group commit and snapshot interval, so the cost of forcing pages to disk and of the odd
+ * snapshot is spread across the purchases the way it would be in a real machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JournaledPurchaseBenchmark {
+
+    private Path directory;
+    private JournaledVendingMachine vendingMachine;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE));
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 50);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        vendingMachine.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void purchase() {
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(1);
+    }
+}
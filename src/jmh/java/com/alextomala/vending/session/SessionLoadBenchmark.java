@@ -0,0 +1,135 @@
+package com.alextomala.vending.session;
+
+import com.alextomala.vending.command.ButtonPressed;
+import com.alextomala.vending.command.CoinInserted;
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.ConcurrentVendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A crowd of customers at one machine, each in their own session. Every session puts a dime in and then waits until
+ * every other session has done the same, so all of them are open and holding credit at once, which the benchmark
+ * checks with the server. Then they each put in a second dime, buy a 15 cent product, get a nickel back and leave.
+ * The score is the time for the whole crowd, from the first connection to the last session ending.
+ *
+ * Run it on Java 21 or later to get virtual threads, with "./gradlew jmh -Pjmh.javaHome=<a JDK 21 home>" since the
+ * build itself runs on an older Java. Without virtual threads the server falls back to platform threads, and 50,000 of
+ * those may be more than the machine allows, so crowds bigger than PLATFORM_THREAD_SESSIONS fail their setup with a
+ * message saying so and the rest of the run carries on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xss256k")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SessionLoadBenchmark {
+    private static final Command DIME = new CoinInserted(10);
+    private static final Command BUY = new ButtonPressed(1);
+    private static final int PLATFORM_THREAD_SESSIONS = 10_000;
+
+    @Param({"10000", "50000"})
+    public int sessions;
+
+    private ConcurrentVendingMachine machine;
+
+    @Setup(Level.Trial)
+    public void checkThreads() {
+        if (sessions > PLATFORM_THREAD_SESSIONS && !SessionServer.virtualThreadsAvailable()) {
+            throw new IllegalStateException(String.format("%d sessions need virtual threads, run on Java 21 or later",
+                    sessions));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        machine = new ConcurrentVendingMachine(NoOpHardwareDriver.INSTANCE);
+        Map<String, Object> details = new HashMap<>();
+        details.put("price", 15);
+        details.put("name", "Gum");
+        machine.addProduct(1, details);
+        machine.addChange(sessions, 0, 0);
+    }
+
+    @Benchmark
+    public int crowd() throws InterruptedException {
+        CountDownLatch everyonePaying = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(sessions);
+        int mostAtOnce;
+        try (SessionServer server = new SessionServer(machine)) {
+            for (int i = 0; i < sessions; i++) {
+                server.accept(new CustomerConnection(everyonePaying, go, done));
+            }
+            everyonePaying.await();
+            mostAtOnce = server.getActiveSessions();
+            go.countDown();
+            done.await();
+        }
+        if (mostAtOnce != sessions) {
+            throw new IllegalStateException(String.format("Only %d of %d sessions were open at once", mostAtOnce,
+                    sessions));
+        }
+        return mostAtOnce;
+    }
+
+    /**
+     * A customer who pays a dime, waits for the rest of the crowd, then pays another dime and buys.
+     */
+    private static class CustomerConnection implements SessionConnection {
+        private final CountDownLatch everyonePaying;
+        private final CountDownLatch go;
+        private final CountDownLatch done;
+        private int step;
+
+        CustomerConnection(CountDownLatch everyonePaying, CountDownLatch go, CountDownLatch done) {
+            this.everyonePaying = everyonePaying;
+            this.go = go;
+            this.done = done;
+        }
+
+        @Override
+        public Command nextCommand() throws InterruptedException {
+            switch (step++) {
+                case 0:
+                    return DIME;
+                case 1:
+                    everyonePaying.countDown();
+                    go.await();
+                    return DIME;
+                case 2:
+                    return BUY;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public HardwareDriver getOutput() {
+            return NoOpHardwareDriver.INSTANCE;
+        }
+
+        @Override
+        public void close() {
+            done.countDown();
+        }
+    }
+}
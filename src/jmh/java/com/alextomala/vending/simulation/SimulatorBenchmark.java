@@ -0,0 +1,46 @@
+package com.alextomala.vending.simulation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of one simulated day with a hundred customers, in a replica of a thousand days. "replicas" runs 64 of
+ * those on the common pool at once, so on a machine with more cores the cost per day should go down by about the
+ * number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SimulatorBenchmark {
+    private static final int DAYS = 1000;
+    private static final int REPLICAS = 64;
+
+    private final Simulator simulator = new Simulator(new Scenario(new int[]{65, 100, 35, 125}, new int[]{5, 3, 2, 1},
+            100, 0.3, new int[]{40, 40, 40}, 40, true));
+    private long seed;
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public ReplicaResult replica() {
+        return simulator.runReplica(seed++, DAYS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS * REPLICAS)
+    public SimulationReport replicas() {
+        return simulator.run(seed++, REPLICAS, DAYS);
+    }
+}
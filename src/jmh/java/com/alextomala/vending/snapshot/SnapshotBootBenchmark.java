@@ -0,0 +1,80 @@
+package com.alextomala.vending.snapshot;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts 10,000 machines from one snapshot file: map the file, then make and restore every machine. Each machine has
+ * 20 products from the same planogram, some change, and a customer halfway through paying.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SnapshotBootBenchmark {
+    private static final int MACHINES = 10_000;
+    private static final int PRODUCTS = 20;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Product> planogram = new ArrayList<>();
+        for (int position = 1; position <= PRODUCTS; position++) {
+            planogram.add(new Product(position, 50 + 5 * position, "Product " + position));
+        }
+
+        int[] stock = new int[PRODUCTS];
+        Arrays.fill(stock, StockCounter.UNLIMITED);
+
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < MACHINES; i++) {
+            MachineState state = new MachineState(new int[]{5, 10, 25}, new int[]{0, 1, i % 4},
+                    new int[]{40 + i % 7, 40, 40}, planogram, stock, 0);
+            snapshots.add(new Snapshot(i, state));
+        }
+
+        file = Files.createTempFile("machines", ".snapshot");
+        SnapshotFile.write(file, snapshots);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public JavaVendingMachine[] boot() throws IOException {
+        SnapshotFile snapshots = SnapshotFile.open(file);
+        JavaVendingMachine[] machines = new JavaVendingMachine[snapshots.getMachineCount()];
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+            machines[i].restoreState(snapshots.getState(i));
+        }
+        return machines;
+    }
+}
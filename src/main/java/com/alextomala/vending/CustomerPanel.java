@@ -0,0 +1,55 @@
+package com.alextomala.vending;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.Map;
+
+/**
+ * The front of a vending machine: the buttons, the coin slot, the coin return and the sold out lights. This is all a
+ * customer gets to use, the admin functions are in VendingMachine.
+ *
+ * The user functions are called for every button press and coin, so they take primitives. The Integer versions are
+ * kept for existing callers; they only add a null check.
+ */
+public interface CustomerPanel {
+
+    /**
+     * User Function - This is called when a user presses a button for a particular product. This is used for both price
+     * checking and purchasing.
+     */
+    void buttonPress(int productPosition);
+
+    default void buttonPress(Integer productPosition) {
+        buttonPress(Preconditions.checkNotNull(productPosition).intValue());
+    }
+
+    /**
+     * User Function - This is called when the user adds money to the machine. The cents parameter represent the value
+     * of the particular currency added to the machine. For example, when the user adds a Nickel, this function will be
+     * called with a value of 5.
+     *
+     * Note: Only one coin will be added at a time. Only Nickels, Dimes, and Quarters will be added.
+     */
+    void addUserMoney(int cents);
+
+    default void addUserMoney(Integer cents) {
+        addUserMoney(Preconditions.checkNotNull(cents).intValue());
+    }
+
+    /**
+     * User Function - This is called when a user has decided to cancel the order.  All change inserted will be
+     * returned to the user.
+     */
+    void cancelOrder();
+
+    /**
+     * How many are left of the product in the position. StockCounter.UNLIMITED if it never runs out, and 0 if there is
+     * no product there.
+     */
+    int getStock(int productPosition);
+
+    /**
+     * How many are left of every product in the machine, keyed by position.
+     */
+    Map<Integer, Integer> getInventory();
+}
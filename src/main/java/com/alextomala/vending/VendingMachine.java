@@ -1,54 +1,103 @@
 package com.alextomala.vending;
 
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.event.CommandRejected;
+import com.alextomala.vending.event.Event;
+import com.alextomala.vending.exception.PositionEmptyException;
+import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.pricing.PriceTable;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A Generic Vending Machine contract
+ *
+ * The user functions are in CustomerPanel, so that something only a customer uses, like a Session, doesn't have to
+ * pretend to have the admin functions.
  */
-public interface VendingMachine {
+public interface VendingMachine extends CustomerPanel {
 
     /**
-     * User Function - This is called when a user presses a button for a particular product. This is used for both price
-     * checking and purchasing.
+     * The following are the admin functions.
      */
-    void buttonPress(Integer productPosition);
 
     /**
-     * User Function - This is called when the user adds money to the machine. The cents parameter represent the value
-     * of the particular currency added to the machine. For example, when the user adds a Nickel, this function will be
-     * called with a value of 5.
+     * Admin Function - Adds more product to the vending machine.
+     *
+     * Product details will contain:
+     *   Key: "price", Value: an integer represent the product price in cents.
      *
-     * Note: Only one coin will be added at a time. Only Nickels, Dimes, and Quarters will be added.
+     * And can also have:
+     *   Key: "quantity", Value: how many are in the slot. Without it the product never runs out.
      */
-    void addUserMoney(Integer cents);
+    void addProduct(Integer productPosition, Map<String, Object> productDetails);
 
     /**
-     * User Function - This is called when a user has decided to cancel the order.  All change inserted will be
-     * returned to the user.
+     * Admin Function - Puts more of the product that is already in the position into the machine.
      */
-    void cancelOrder();
-
+    void restock(int productPosition, int quantity);
 
     /**
-     * The following are the admin functions.  Personally, I think these should be in a different interface to split
-     * up the public functions from the ones an admin can do.
+     * Admin Function - Restocks several positions at once, keyed by position. Every position is checked before any of
+     * them is restocked.
      */
+    default void restock(Map<Integer, Integer> quantities) {
+        Map<Integer, Integer> inventory = getInventory();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            if (!inventory.containsKey(Preconditions.checkNotNull(entry.getKey()))) {
+                throw new PositionEmptyException(String.format("There is no product in position %d to restock",
+                        entry.getKey()));
+            }
+            Preconditions.checkPositive(Preconditions.checkNotNull(entry.getValue()));
+        }
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            restock(entry.getKey(), entry.getValue());
+        }
+    }
 
     /**
-     * Admin Function - Adds more product to the vending machine.
+     * Admin Function - Changes the prices of the products in the machine to the ones in the table, all at once. A
+     * customer pressing a button sees either the old prices or the new ones, never some of each.
      *
-     * Product details will contain:
-     *   Key: "price", Value: an integer represent the product price in cents.
+     * @return false if the machine already has this version of the prices or a later one, in which case nothing
+     * changes.
      */
-    void addProduct(Integer productPosition, Map<String, Object> productDetails);
+    boolean reprice(PriceTable prices);
 
     /**
      * Admin Function - Adds coins to the machine to be used when making change.
      */
-    void addChange(Integer numberOfNickels, Integer numberOfDimes, Integer numberOfQuarters);
+    void addChange(int numberOfNickels, int numberOfDimes, int numberOfQuarters);
+
+    default void addChange(Integer numberOfNickels, Integer numberOfDimes, Integer numberOfQuarters) {
+        addChange(Preconditions.checkNotNull(numberOfNickels).intValue(),
+                Preconditions.checkNotNull(numberOfDimes).intValue(),
+                Preconditions.checkNotNull(numberOfQuarters).intValue());
+    }
 
     /**
      * Admin Function - Dispense all change in the vending machine.
      */
     void dispenseAllChange();
-}
\ No newline at end of file
+
+    /**
+     * Runs a batch of commands in order, as if each one had been a call. A command that throws doesn't stop the batch,
+     * it shows up in the events as a CommandRejected instead.
+     *
+     * This version can only report the rejections. Machines that can see their own hardware output (JavaVendingMachine)
+     * return that as events too.
+     */
+    default List<Event> apply(List<Command> commands) {
+        List<Event> events = new ArrayList<>();
+        for (Command command : commands) {
+            try {
+                command.applyTo(this);
+            } catch (RuntimeException e) {
+                events.add(new CommandRejected(command, e));
+            }
+        }
+        return events;
+    }
+}
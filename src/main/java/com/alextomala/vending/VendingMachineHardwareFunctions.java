@@ -13,7 +13,7 @@ public class VendingMachineHardwareFunctions {
         System.out.println(message);
     }
 
-    public static void dispenseProduct(Integer productPosition, String productName) {
+    public static void dispenseProduct(int productPosition, String productName) {
         String nullSafeProductName = (productName != null) ? productName : "ProductNum" + productPosition;
         System.out.println("Dispensing " + nullSafeProductName + " from position " + productPosition);
     }
@@ -29,4 +29,11 @@ public class VendingMachineHardwareFunctions {
     public static void dispenseQuarter() {
         System.out.println("Dispensing 25 cents");
     }
+
+    /**
+     * Dispenses a stack of identical coins in one go, so paying out many coins is one call instead of one per coin.
+     */
+    public static void dispenseCoins(int cents, int count) {
+        System.out.println("Dispensing " + count + " x " + cents + " cents");
+    }
 }
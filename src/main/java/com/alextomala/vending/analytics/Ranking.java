@@ -0,0 +1,56 @@
+package com.alextomala.vending.analytics;
+
+/**
+ * The result of a top-N query, best first. The key is a product position or a machine, depending on the query.
+ */
+public final class Ranking {
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] revenue;
+    private final int size;
+
+    Ranking(int[] keys, long[] counts, long[] revenue, int size) {
+        this.keys = keys;
+        this.counts = counts;
+        this.revenue = revenue;
+        this.size = size;
+    }
+
+    /**
+     * Can be less than was asked for, nothing with no sales is ranked.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getKey(int rank) {
+        return keys[checkRank(rank)];
+    }
+
+    public long getCount(int rank) {
+        return counts[checkRank(rank)];
+    }
+
+    public long getRevenue(int rank) {
+        return revenue[checkRank(rank)];
+    }
+
+    private int checkRank(int rank) {
+        if (rank < 0 || rank >= size) {
+            throw new IndexOutOfBoundsException(String.format("There is no rank %d in a ranking of %d", rank, size));
+        }
+        return rank;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Ranking[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(keys[i]).append(": ").append(counts[i]).append(" sold for ").append(revenue[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.alextomala.vending.analytics;
+
+/**
+ * Told about every sale a machine makes, on the machine's thread. It is called in the middle of a button press so it
+ * should be quick and shouldn't throw.
+ */
+public interface SaleListener {
+    SaleListener NONE = (productPosition, price) -> {
+    };
+
+    /**
+     * Called right after the money has moved into the machine, before any change is given.
+     */
+    void productSold(int productPosition, int price);
+
+    /**
+     * Called once the change has been given, with the coins the customer paid and the coins given back, indexed like
+     * the machine's DenominationRegistry. The arrays are reused for the next sale, so copy anything worth keeping.
+     * Not called if the change couldn't be made.
+     */
+    default void coinsMoved(int[] coinsPaid, int[] coinsGiven) {
+    }
+}
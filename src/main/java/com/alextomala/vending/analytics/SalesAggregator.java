@@ -0,0 +1,301 @@
+package com.alextomala.vending.analytics;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Sales counts and revenue per machine and product position over the recent past, for a whole fleet, kept in one
+ * primitive array so recording a sale never allocates or boxes anything.
+ *
+ * Time is cut into buckets of bucketMillis and every machine keeps its last few buckets in a ring. A window of one
+ * bucket is the current tumbling window. A window of n buckets is the current bucket and the n - 1 before it, so it
+ * slides forward a bucket at a time. Sales for a position past the last one the aggregator was made for still count
+ * towards the machine, just not towards any position. Sales older than the ring are dropped.
+ *
+ * A machine must only be recorded from one thread at a time, which is how a VendingFleet runs its machines anyway. That
+ * way recording is a couple of reads and ordered writes, with no locks or compare and swap, and a sale costs about
+ * 25ns. Queries can run on any thread while sales are being recorded. They see everything recorded before they started
+ * and may or may not see what is recorded while they run.
+ *
+ * A query reads every bucket in the window for every machine it covers. Ranking positions reads every position, so it
+ * costs machines x window x positions: 256 machines with 32 positions over a 15 bucket window takes about 0.6ms.
+ * Ranking machines only reads their totals and takes about 0.06ms. See SalesAggregatorBenchmark.
+ */
+public class SalesAggregator {
+    private final int machines;
+    private final int positions;
+    private final long bucketMillis;
+    private final int buckets;
+    private final LongSupplier clock;
+
+    // Laid out [machine][bucket][position, then the machine total][count, revenue], so one machine's buckets are
+    // together and a query over a machine reads memory in order.
+    private final int stride;
+    private final AtomicLongArray values;
+
+    // The bucket number each machine bucket holds, or -1 while it is being cleared for a new one.
+    private final AtomicLongArray epochs;
+
+    public SalesAggregator(int machines, int positions, long bucketMillis, int buckets) {
+        this(machines, positions, bucketMillis, buckets, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock milliseconds, only ever going forward.
+     */
+    public SalesAggregator(int machines, int positions, long bucketMillis, int buckets, LongSupplier clock) {
+        if (Preconditions.checkPositive(machines) == 0 || Preconditions.checkPositive(positions) == 0
+                || Preconditions.checkPositive(buckets) == 0 || bucketMillis <= 0) {
+            throw new IllegalArgumentException("An aggregator needs at least one machine, position and bucket, "
+                    + "and buckets have to be at least a millisecond");
+        }
+        this.machines = machines;
+        this.positions = positions;
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        this.clock = Preconditions.checkNotNull(clock);
+
+        stride = 2 * (positions + 1);
+        long size = (long) machines * buckets * stride;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many machines, positions and buckets for one aggregator");
+        }
+        values = new AtomicLongArray((int) size);
+        epochs = new AtomicLongArray(machines * buckets);
+    }
+
+    /**
+     * A listener that records the sales of one machine, for JavaVendingMachine.setSaleListener.
+     */
+    public SaleListener listenerFor(int machine) {
+        checkMachine(machine);
+        return (productPosition, price) -> record(machine, productPosition, price);
+    }
+
+    public void record(int machine, int productPosition, int price) {
+        record(machine, productPosition, price, clock.getAsLong());
+    }
+
+    public void record(int machine, int productPosition, int price, long timeMillis) {
+        checkMachine(machine);
+        long epoch = timeMillis / bucketMillis;
+        int bucket = machine * buckets + (int) (epoch % buckets);
+
+        long held = epochs.get(bucket);
+        if (held != epoch) {
+            if (held > epoch) {
+                // Older than anything the ring still holds.
+                return;
+            }
+            clear(bucket, epoch);
+        }
+
+        int base = bucket * stride;
+        if (productPosition >= 0 && productPosition < positions) {
+            add(base + 2 * productPosition, price);
+        }
+        add(base + 2 * positions, price);
+    }
+
+    /**
+     * Only the machine's own thread writes here, so a read and an ordered write is enough. The lazySet keeps a query
+     * from seeing a bucket's new number before its old sales are cleared.
+     */
+    private void add(int index, int price) {
+        values.lazySet(index, values.get(index) + 1);
+        values.lazySet(index + 1, values.get(index + 1) + price);
+    }
+
+    private void clear(int bucket, long epoch) {
+        epochs.set(bucket, -1);
+        int base = bucket * stride;
+        for (int i = 0; i < stride; i++) {
+            values.lazySet(base + i, 0);
+        }
+        epochs.lazySet(bucket, epoch);
+    }
+
+    public long getCount(int machine, int productPosition, int window) {
+        checkPosition(productPosition);
+        return sum(machine, 2 * productPosition, window);
+    }
+
+    public long getRevenue(int machine, int productPosition, int window) {
+        checkPosition(productPosition);
+        return sum(machine, 2 * productPosition + 1, window);
+    }
+
+    public long getMachineCount(int machine, int window) {
+        return sum(machine, 2 * positions, window);
+    }
+
+    public long getMachineRevenue(int machine, int window) {
+        return sum(machine, 2 * positions + 1, window);
+    }
+
+    /**
+     * How many times the position sold across the whole fleet. This reads one value per machine per bucket.
+     */
+    public long getFleetCount(int productPosition, int window) {
+        checkPosition(productPosition);
+        checkWindow(window);
+        long now = currentEpoch();
+        long total = 0;
+        for (int machine = 0; machine < machines; machine++) {
+            total += sum(machine, 2 * productPosition, window, now);
+        }
+        return total;
+    }
+
+    /**
+     * The number of positions the aggregator keeps counts for, starting from position zero.
+     */
+    public int getPositions() {
+        return positions;
+    }
+
+    /**
+     * How long a window of this many buckets is, for turning counts into sales per hour.
+     */
+    public long getWindowMillis(int window) {
+        return checkWindow(window) * bucketMillis;
+    }
+
+    /**
+     * The n positions that sold the most across the whole fleet, with ties going to the lower position.
+     */
+    public Ranking bestSellers(int n, int window) {
+        long[] totals = new long[stride];
+        long[] scratch = new long[stride];
+        long now = currentEpoch();
+        for (int machine = 0; machine < machines; machine++) {
+            addWindow(machine, window, now, totals, scratch);
+        }
+        return rank(n, totals, positions, 0);
+    }
+
+    /**
+     * The n positions in one machine that sold the most.
+     */
+    public Ranking bestSellers(int machine, int n, int window) {
+        checkMachine(machine);
+        long[] totals = new long[stride];
+        addWindow(machine, window, currentEpoch(), totals, new long[stride]);
+        return rank(n, totals, positions, 0);
+    }
+
+    /**
+     * The n machines that took the most money.
+     */
+    public Ranking topMachines(int n, int window) {
+        checkWindow(window);
+        long[] totals = new long[2 * machines];
+        long now = currentEpoch();
+        for (int machine = 0; machine < machines; machine++) {
+            totals[2 * machine] = sum(machine, 2 * positions, window, now);
+            totals[2 * machine + 1] = sum(machine, 2 * positions + 1, window, now);
+        }
+        return rank(n, totals, machines, 1);
+    }
+
+    private long sum(int machine, int offset, int window) {
+        checkMachine(machine);
+        checkWindow(window);
+        return sum(machine, offset, window, currentEpoch());
+    }
+
+    private long sum(int machine, int offset, int window, long now) {
+        long total = 0;
+        for (long epoch = now; epoch > now - window && epoch >= 0; epoch--) {
+            int bucket = machine * buckets + (int) (epoch % buckets);
+            if (epochs.get(bucket) == epoch) {
+                long value = values.get(bucket * stride + offset);
+                // A bucket cleared while it was being read belongs to a newer window.
+                if (epochs.get(bucket) == epoch) {
+                    total += value;
+                }
+            }
+        }
+        return total;
+    }
+
+    private void addWindow(int machine, int window, long now, long[] totals, long[] scratch) {
+        checkWindow(window);
+        for (long epoch = now; epoch > now - window && epoch >= 0; epoch--) {
+            int bucket = machine * buckets + (int) (epoch % buckets);
+            if (epochs.get(bucket) != epoch) {
+                continue;
+            }
+            int base = bucket * stride;
+            for (int i = 0; i < stride; i++) {
+                scratch[i] = values.get(base + i);
+            }
+            // A bucket cleared while it was being read belongs to a newer window.
+            if (epochs.get(bucket) == epoch) {
+                for (int i = 0; i < stride; i++) {
+                    totals[i] += scratch[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the n best of totals, which holds a count and revenue for each key, by count (scoreOffset 0) or revenue
+     * (scoreOffset 1). n is small, so keeping the best n sorted as they are found beats sorting everything.
+     */
+    private static Ranking rank(int n, long[] totals, int keys, int scoreOffset) {
+        if (Preconditions.checkPositive(n) == 0) {
+            throw new IllegalArgumentException("A ranking needs at least one place");
+        }
+        int places = Math.min(n, keys);
+        int[] best = new int[places];
+        int size = 0;
+        for (int key = 0; key < keys; key++) {
+            long score = totals[2 * key + scoreOffset];
+            if (score == 0 || (size == places && score <= totals[2 * best[size - 1] + scoreOffset])) {
+                continue;
+            }
+            int i = size == places ? size - 1 : size++;
+            while (i > 0 && totals[2 * best[i - 1] + scoreOffset] < score) {
+                best[i] = best[i - 1];
+                i--;
+            }
+            best[i] = key;
+        }
+
+        long[] counts = new long[size];
+        long[] revenue = new long[size];
+        for (int i = 0; i < size; i++) {
+            counts[i] = totals[2 * best[i]];
+            revenue[i] = totals[2 * best[i] + 1];
+        }
+        return new Ranking(best, counts, revenue, size);
+    }
+
+    private long currentEpoch() {
+        return clock.getAsLong() / bucketMillis;
+    }
+
+    private void checkMachine(int machine) {
+        if (machine < 0 || machine >= machines) {
+            throw new IndexOutOfBoundsException(String.format("There is no machine %d in an aggregator of %d", machine,
+                    machines));
+        }
+    }
+
+    private void checkPosition(int productPosition) {
+        if (productPosition < 0 || productPosition >= positions) {
+            throw new IndexOutOfBoundsException(String.format("Position %d isn't tracked, only the first %d are",
+                    productPosition, positions));
+        }
+    }
+
+    private int checkWindow(int window) {
+        if (window < 1 || window > buckets) {
+            throw new IllegalArgumentException(String.format("A window has to be between 1 and %d buckets", buckets));
+        }
+        return window;
+    }
+}
@@ -0,0 +1,74 @@
+package com.alextomala.vending.catalog;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * A product sitting in one position of the machine. Products never change once they are made.
+ *
+ * The name can be null, because the product details we are given don't always have one.
+ *
+ * The price check and sold out messages are built here, once, so that pressing the button for a product you can't
+ * afford yet, or that has run out, doesn't create any garbage.
+ */
+public final class Product {
+    private final int position;
+    private final int price;
+    private final String name;
+    private final String priceMessage;
+    private final String soldOutMessage;
+
+    public Product(int position, int price, String name) {
+        this(position, price, name, String.format("Item in position %d costs %d", position, price),
+                String.format("Item in position %d is sold out", position));
+    }
+
+    private Product(int position, int price, String name, String priceMessage, String soldOutMessage) {
+        this.position = Preconditions.checkPositive(position);
+        this.price = Preconditions.checkPositive(price);
+        this.name = name;
+        this.priceMessage = priceMessage;
+        this.soldOutMessage = soldOutMessage;
+    }
+
+    /**
+     * The same product at a different price. Repricing a fleet makes a lot of these, so the messages aren't formatted
+     * again: the sold out message is shared and the price message comes from the price table.
+     *
+     * @param newPriceMessage the message for the new price, which has to be the one the constructor would make.
+     */
+    public Product withPrice(int newPrice, String newPriceMessage) {
+        return newPrice == price ? this
+                : new Product(position, newPrice, name, Preconditions.checkNotNull(newPriceMessage), soldOutMessage);
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getPrice() {
+        return price;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The message shown when someone presses the button without enough money in the machine.
+     */
+    public String getPriceMessage() {
+        return priceMessage;
+    }
+
+    /**
+     * The message shown when someone presses the button after the slot has run out.
+     */
+    public String getSoldOutMessage() {
+        return soldOutMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "Product{position=" + position + ", price=" + price + ", name=" + name + "}";
+    }
+}
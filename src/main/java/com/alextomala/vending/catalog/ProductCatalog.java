@@ -0,0 +1,327 @@
+package com.alextomala.vending.catalog;
+
+import com.alextomala.vending.exception.PositionEmptyException;
+import com.alextomala.vending.exception.PositionOccupiedException;
+import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.pricing.PriceTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The products in a machine, stored in an array indexed by position so finding the product for a button press is a
+ * bounds check and an array read.
+ *
+ * Products are added rarely and looked up constantly, so adding copies the array and then publishes it with a single
+ * volatile write. Readers on any thread always see a complete catalog without taking a lock.
+ *
+ * The "No item" message for every position up to the end of the catalog is built ahead of time as well, so a button
+ * press on an empty position doesn't allocate either.
+ *
+ * Each product has a StockCounter, in a second array alongside the products. Both arrays hang off one Slots object, and
+ * every change publishes a new one with that single volatile write, so a reader never sees the products from one
+ * version of the catalog with the counters from another. Selling and restocking only touch the counter, never the
+ * arrays, so they don't need the lock either, and sales from different slots don't touch the same memory at all. A
+ * product added without a quantity never runs out, like every product did before there were stock counts.
+ *
+ * Repricing swaps in a new products array the same way, with the new prices in it and the same counters, so a button
+ * press that reads a product gets a price from one table or the other and never a mix.
+ *
+ * A product and its counter read with two separate calls can still come from either side of a clear or replaceAll.
+ * Machines only do those when loading a saved state, before they are selling.
+ */
+public class ProductCatalog {
+    /**
+     * Real machines have a few dozen positions. This is just to stop a typo from allocating a huge array.
+     */
+    public static final int MAX_POSITION = 1 << 16;
+
+    /**
+     * Empty position messages are always ready for at least this many positions, even in an empty catalog.
+     */
+    private static final int MESSAGE_POSITIONS = 64;
+
+    /**
+     * Every catalog starts with the same messages, and the array is never changed once it is published, so they can all
+     * share one copy. That keeps making a machine cheap when thousands are started at once.
+     */
+    private static final String[] INITIAL_EMPTY_MESSAGES = emptyMessages(new String[0], MESSAGE_POSITIONS);
+
+    private static final Slots EMPTY = new Slots(new Product[0], new StockCounter[0]);
+
+    private volatile Slots slots;
+    private volatile String[] emptyMessages;
+    private int size;
+    private long priceVersion;
+
+    public ProductCatalog() {
+        slots = EMPTY;
+        emptyMessages = INITIAL_EMPTY_MESSAGES;
+        size = 0;
+    }
+
+    /**
+     * @return the product in the position, or null if the position is empty.
+     */
+    public Product get(int position) {
+        Product[] current = slots.products;
+        return position >= 0 && position < current.length ? current[position] : null;
+    }
+
+    /**
+     * The message shown when someone presses the button for an empty position.
+     */
+    public String getEmptyMessage(int position) {
+        String[] current = emptyMessages;
+        return position >= 0 && position < current.length ? current[position] : emptyMessage(position);
+    }
+
+    /**
+     * Adds a product that never runs out.
+     */
+    public void add(Product product) {
+        add(product, StockCounter.UNLIMITED);
+    }
+
+    /**
+     * @param quantity how many are in the slot, or StockCounter.UNLIMITED.
+     */
+    public synchronized void add(Product product, int quantity) {
+        checkQuantity(quantity);
+        int position = Preconditions.checkNotNull(product).getPosition();
+        if (position > MAX_POSITION) {
+            throw new IllegalArgumentException(String.format("Product position %d is past the end of the machine", position));
+        }
+        if (get(position) != null) {
+            throw new PositionOccupiedException(String.format("Product position %d is already occupied", position));
+        }
+
+        Slots current = slots;
+        Product[] updated = Arrays.copyOf(current.products, Math.max(current.products.length, position + 1));
+        updated[position] = product;
+        StockCounter[] updatedStock = Arrays.copyOf(current.stock, updated.length);
+        updatedStock[position] = counterFor(quantity);
+        if (updated.length > emptyMessages.length) {
+            emptyMessages = emptyMessages(emptyMessages, updated.length);
+        }
+        size++;
+        slots = new Slots(updated, updatedStock);
+    }
+
+    /**
+     * The stock counter for the product in the position, or null if the position is empty. A sale takes one from it
+     * with tryTake.
+     */
+    public StockCounter getStockCounter(int position) {
+        StockCounter[] current = slots.stock;
+        return position >= 0 && position < current.length ? current[position] : null;
+    }
+
+    /**
+     * How many are left in the position: StockCounter.UNLIMITED for a product that never runs out, and 0 for an empty
+     * position.
+     */
+    public int getStock(int position) {
+        StockCounter counter = getStockCounter(position);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Puts more of the product that is already in the position into its slot. A product that never runs out stays
+     * that way.
+     */
+    public void restock(int position, int quantity) {
+        Preconditions.checkPositive(quantity);
+        checkedStockCounter(position).add(quantity);
+    }
+
+    /**
+     * Restocks several positions, keyed by position. Every position is checked before anything is added, so a bad one
+     * doesn't leave the restock half done.
+     */
+    public void restock(Map<Integer, Integer> quantities) {
+        StockCounter[] counters = new StockCounter[quantities.size()];
+        int[] amounts = new int[quantities.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            counters[i] = checkedStockCounter(Preconditions.checkNotNull(entry.getKey()));
+            amounts[i] = Preconditions.checkPositive(Preconditions.checkNotNull(entry.getValue()));
+            i++;
+        }
+        for (i = 0; i < counters.length; i++) {
+            counters[i].add(amounts[i]);
+        }
+    }
+
+    /**
+     * How many are left of every product, keyed by position in position order. Sales carry on while this is read, so
+     * each count is as it was at some point during the call.
+     */
+    public Map<Integer, Integer> getInventory() {
+        Slots current = slots;
+        Map<Integer, Integer> inventory = new LinkedHashMap<>();
+        for (int position = 0; position < current.products.length; position++) {
+            if (current.products[position] != null) {
+                inventory.put(position, current.stock[position].get());
+            }
+        }
+        return inventory;
+    }
+
+    private StockCounter checkedStockCounter(int position) {
+        StockCounter counter = getStockCounter(position);
+        if (counter == null) {
+            throw new PositionEmptyException(String.format("There is no product in position %d to restock", position));
+        }
+        return counter;
+    }
+
+    private static StockCounter counterFor(int quantity) {
+        return quantity == StockCounter.UNLIMITED ? StockCounter.UNLIMITED_STOCK : new StockCounter(quantity);
+    }
+
+    private static int checkQuantity(int quantity) {
+        if (quantity != StockCounter.UNLIMITED) {
+            Preconditions.checkPositive(quantity);
+        }
+        return quantity;
+    }
+
+    /**
+     * Changes the price of every product the table has a price for. Products it leaves out, and prices for empty
+     * positions, are ignored. The table has to be newer than the last one, otherwise nothing changes.
+     *
+     * @return whether the table was newer and the prices changed.
+     */
+    public synchronized boolean reprice(PriceTable prices) {
+        if (Preconditions.checkNotNull(prices).getVersion() <= priceVersion) {
+            return false;
+        }
+        Slots current = slots;
+        Product[] updated = current.products.clone();
+        int last = Math.min(updated.length - 1, prices.getLastPosition());
+        for (int position = 0; position <= last; position++) {
+            int price = prices.getPrice(position);
+            if (updated[position] != null && price != PriceTable.NO_PRICE) {
+                updated[position] = updated[position].withPrice(price, prices.getPriceMessage(position));
+            }
+        }
+        priceVersion = prices.getVersion();
+        slots = new Slots(updated, current.stock);
+        return true;
+    }
+
+    /**
+     * The version of the last price table applied, or 0 if the prices are still the ones the products were added with.
+     */
+    public synchronized long getPriceVersion() {
+        return priceVersion;
+    }
+
+    /**
+     * The highest position that could hold a product, or -1 for an empty catalog. For walking the catalog with get
+     * without making a list.
+     */
+    public int getLastPosition() {
+        return slots.products.length - 1;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Every product in the catalog, in position order.
+     */
+    public List<Product> getProducts() {
+        Product[] current = slots.products;
+        List<Product> list = new ArrayList<>();
+        for (Product product : current) {
+            if (product != null) {
+                list.add(product);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Empties every position. The empty position messages are kept, since they are the same for every catalog.
+     */
+    public synchronized void clear() {
+        slots = EMPTY;
+        size = 0;
+    }
+
+    /**
+     * Replaces the whole catalog in one step, for loading a saved machine. Readers see either the old products and
+     * counters or all of the new ones.
+     *
+     * @param quantities   the stock of each product, in the same order, or StockCounter.UNLIMITED.
+     * @param priceVersion the version of the price table the products' prices came from. Only newer tables are applied
+     *                     after this.
+     */
+    public synchronized void replaceAll(List<Product> newProducts, int[] quantities, long priceVersion) {
+        if (priceVersion < 0) {
+            throw new IllegalArgumentException("A price version cannot be negative");
+        }
+        if (quantities.length != newProducts.size()) {
+            throw new IllegalArgumentException("There has to be a quantity for every product");
+        }
+        for (int quantity : quantities) {
+            checkQuantity(quantity);
+        }
+        int length = 0;
+        for (Product product : newProducts) {
+            int position = product.getPosition();
+            if (position > MAX_POSITION) {
+                throw new IllegalArgumentException(String.format("Product position %d is past the end of the machine", position));
+            }
+            length = Math.max(length, position + 1);
+        }
+
+        Product[] updated = new Product[length];
+        StockCounter[] updatedStock = new StockCounter[length];
+        for (int i = 0; i < quantities.length; i++) {
+            Product product = newProducts.get(i);
+            if (updated[product.getPosition()] != null) {
+                throw new PositionOccupiedException(String.format("Product position %d is already occupied", product.getPosition()));
+            }
+            updated[product.getPosition()] = product;
+            updatedStock[product.getPosition()] = counterFor(quantities[i]);
+        }
+        if (updated.length > emptyMessages.length) {
+            emptyMessages = emptyMessages(emptyMessages, updated.length);
+        }
+        size = newProducts.size();
+        this.priceVersion = priceVersion;
+        slots = new Slots(updated, updatedStock);
+    }
+
+    /**
+     * The products and their counters, indexed by position. Neither array is changed once it is published.
+     */
+    private static final class Slots {
+        final Product[] products;
+        final StockCounter[] stock;
+
+        Slots(Product[] products, StockCounter[] stock) {
+            this.products = products;
+            this.stock = stock;
+        }
+    }
+
+    private static String[] emptyMessages(String[] existing, int length) {
+        String[] messages = Arrays.copyOf(existing, length);
+        for (int position = existing.length; position < length; position++) {
+            messages[position] = emptyMessage(position);
+        }
+        return messages;
+    }
+
+    private static String emptyMessage(int position) {
+        return String.format("No item in position %d", position);
+    }
+}
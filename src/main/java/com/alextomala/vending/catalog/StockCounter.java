@@ -0,0 +1,88 @@
+package com.alextomala.vending.catalog;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * How many of a product are left in one slot, taken one at a time with a compare and swap.
+ *
+ * Every slot has its own counter object, padded with two cache lines of unused longs on each side, since Intel cores
+ * fetch lines in pairs. HotSpot lays out a superclass's fields before its subclass's, so the padding in the classes
+ * either side really does end up around the count. That way customers buying from different slots on different cores
+ * never write to the same cache line, even though the counters were allocated together.
+ *
+ * An unlimited slot never writes at all, so the products from before there were stock counts cost nothing.
+ */
+public final class StockCounter extends StockCounterPadding {
+    /**
+     * The stock of a slot that never runs out.
+     */
+    public static final int UNLIMITED = -1;
+
+    private static final AtomicLongFieldUpdater<StockCounterValue> REMAINING =
+            AtomicLongFieldUpdater.newUpdater(StockCounterValue.class, "remaining");
+
+    static final StockCounter UNLIMITED_STOCK = new StockCounter(UNLIMITED);
+
+    StockCounter(int quantity) {
+        remaining = quantity;
+    }
+
+    /**
+     * Takes one product out of the slot, or returns false without changing anything if it is sold out.
+     */
+    public boolean tryTake() {
+        while (true) {
+            long current = remaining;
+            if (current < 0) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+            if (REMAINING.compareAndSet(this, current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts back a product that was taken for a sale that then fell through.
+     */
+    public void putBack() {
+        add(1);
+    }
+
+    void add(int quantity) {
+        while (true) {
+            long current = remaining;
+            if (current < 0 || REMAINING.compareAndSet(this, current, Math.min(Integer.MAX_VALUE, current + quantity))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The products left, or UNLIMITED.
+     */
+    public int get() {
+        return (int) remaining;
+    }
+
+    public boolean isUnlimited() {
+        return remaining < 0;
+    }
+}
+
+abstract class StockCounterLeftPadding {
+    long p01, p02, p03, p04, p05, p06, p07, p08;
+    long p09, p10, p11, p12, p13, p14, p15, p16;
+}
+
+abstract class StockCounterValue extends StockCounterLeftPadding {
+    volatile long remaining;
+}
+
+abstract class StockCounterPadding extends StockCounterValue {
+    long p17, p18, p19, p20, p21, p22, p23, p24;
+    long p25, p26, p27, p28, p29, p30, p31, p32;
+}
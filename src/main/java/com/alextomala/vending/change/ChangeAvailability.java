@@ -0,0 +1,150 @@
+package com.alextomala.vending.change;
+
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * Every amount of change that some mix of a set of coins adds up to, kept as the bits of a long with one bit per
+ * multiple of the smallest coin. Asking whether an amount can be paid is then a single bit test.
+ *
+ * One long covers up to 63 of the smallest coin, $3.15 in US coins, which is far more change than a sale ever needs.
+ * Bigger amounts aren't tracked, canPay says yes to them and leaves it to the change maker.
+ *
+ * Adding coins only ever makes more amounts reachable, so it is done in place by OR-ing in the bits shifted by the
+ * coin's value. Coins are added in doubling groups (1, 2, 4, ...), so a denomination costs log2 of its count, and coins
+ * past what the limit could ever need are ignored.
+ *
+ * Taking coins away can make amounts unreachable, which OR can't undo. For that it keeps, for each denomination, the
+ * bits of all the other denominations, and starts again from there. That copy only goes stale when another
+ * denomination changes, which in a machine full of quarters and nickels handing back dimes is rarely. Thanks to the
+ * cap, taking away a coin the machine has plenty of costs nothing at all.
+ */
+public class ChangeAvailability {
+    private static final int LIMIT_UNITS = 63;
+
+    private final int[] values;
+    private final int unit;
+
+    // The coins of each denomination it takes to cover the limit on their own. More than that adds nothing.
+    private final int[] useful;
+    private final int[] counts;
+    private long bits;
+
+    // without[i] is the bits of every denomination except i, when bit i of withoutValid says it is up to date.
+    private final long[] without;
+    private long withoutValid;
+
+    public ChangeAvailability(DenominationRegistry registry) {
+        if (Preconditions.checkNotNull(registry).size() > 64) {
+            throw new IllegalArgumentException("Change availability is only kept for up to 64 denominations");
+        }
+        unit = registry.getSmallestUnit();
+        values = new int[registry.size()];
+        useful = new int[registry.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = registry.getValue(i) / unit;
+            useful[i] = LIMIT_UNITS / values[i];
+        }
+        counts = new int[registry.size()];
+        bits = 1;
+        without = new long[registry.size()];
+        withoutValid = 0;
+    }
+
+    /**
+     * The largest amount that is tracked.
+     */
+    public int getLimit() {
+        return LIMIT_UNITS * unit;
+    }
+
+    /**
+     * Whether some mix of the coins adds up to exactly this amount. Always true for an amount past the limit.
+     */
+    public boolean canPay(int amount) {
+        int units = amount / unit;
+        if (units * unit != amount) {
+            return false;
+        }
+        return units > LIMIT_UNITS || (bits & (1L << units)) != 0;
+    }
+
+    /**
+     * Every amount it can pay, as bits: bit k is set when some mix adds up to k of the smallest coin. The top bit is
+     * the limit. It only changes when coins are added or taken away and that changes what can be paid.
+     */
+    public long getPayable() {
+        return bits;
+    }
+
+    /**
+     * Starts again from these coin counts, indexed like the registry.
+     */
+    public void reset(int[] newCounts) {
+        bits = 1;
+        withoutValid = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = Preconditions.checkPositive(newCounts[i]);
+            bits = withCoins(bits, i, usefulCount(i));
+        }
+    }
+
+    /**
+     * Adds coins of the denomination at this index in the registry.
+     */
+    public void addCoins(int index, int count) {
+        int before = usefulCount(index);
+        counts[index] += Preconditions.checkPositive(count);
+        if (usefulCount(index) > before) {
+            bits = withCoins(bits, index, usefulCount(index) - before);
+            changed(index);
+        }
+    }
+
+    /**
+     * Takes coins of the denomination at this index away. Never more than there are.
+     */
+    public void removeCoins(int index, int count) {
+        int before = usefulCount(index);
+        counts[index] -= Math.min(Preconditions.checkPositive(count), counts[index]);
+        if (usefulCount(index) < before) {
+            if ((withoutValid & (1L << index)) == 0) {
+                long others = 1;
+                for (int i = 0; i < counts.length; i++) {
+                    if (i != index) {
+                        others = withCoins(others, i, usefulCount(i));
+                    }
+                }
+                without[index] = others;
+                withoutValid |= 1L << index;
+            }
+            bits = withCoins(without[index], index, usefulCount(index));
+            changed(index);
+        }
+    }
+
+    private int usefulCount(int index) {
+        return Math.min(counts[index], useful[index]);
+    }
+
+    /**
+     * Every other denomination's copy includes this one, so they are all out of date.
+     */
+    private void changed(int index) {
+        withoutValid &= 1L << index;
+    }
+
+    /**
+     * The amounts reachable from these bits with count more coins of the denomination at this index. Anything past
+     * the limit falls off the top of the long.
+     */
+    private long withCoins(long reachable, int index, int count) {
+        int remaining = count;
+        for (int group = 1; remaining > 0; group <<= 1) {
+            int coins = Math.min(group, remaining);
+            reachable |= reachable << (coins * values[index]);
+            remaining -= coins;
+        }
+        return reachable;
+    }
+}
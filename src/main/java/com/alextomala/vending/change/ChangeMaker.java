@@ -0,0 +1,17 @@
+package com.alextomala.vending.change;
+
+/**
+ * A strategy for picking which coins to hand back as change.
+ *
+ * Implementations are built for one set of denominations, and the available and result arrays are indexed in the
+ * same order as those denominations. Implementations must be safe to share between machines and threads.
+ */
+public interface ChangeMaker {
+
+    /**
+     * Works out the coins to give back for the amount without taking more of any denomination than is available.
+     *
+     * @return true and the coin counts in result if change can be made, otherwise false and result is undefined.
+     */
+    boolean makeChange(int amount, int[] available, int[] result);
+}
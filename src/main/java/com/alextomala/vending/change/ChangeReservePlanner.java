@@ -0,0 +1,177 @@
+package com.alextomala.vending.change;
+
+import com.alextomala.vending.analytics.SaleListener;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * Watches the coins going in and out of a machine with every sale and forecasts when it will run out of change, so
+ * it can be restocked before sales start failing with NotEnoughChangeException.
+ *
+ * It keeps the coins paid and the coins given back for the last few sales in a ring, along with their running totals,
+ * so a sale costs one pass over the denominations and the forecasts are just as cheap. That is cheap enough to keep
+ * one planner per machine and check it after every sale. Set it as the machine's SaleListener, or pass the coins to
+ * coinsMoved from anywhere else.
+ *
+ * The forecast is a straight line: each denomination goes up or down by its average over the recent sales. Prices
+ * and what customers pay with are already in those averages, so nothing else needs telling about them. Restocks
+ * don't go through here, so they don't look like sales.
+ *
+ * The forecasts take the coins the machine holds for change as counts in the registry's order, which is what
+ * MachineState.getSystemCoins() and Vault.getCounts() give.
+ */
+public class ChangeReservePlanner implements SaleListener {
+    public static final int DEFAULT_HISTORY = 256;
+
+    private final DenominationRegistry registry;
+    private final ChangeMaker changeMaker;
+    private final int history;
+
+    // The last history sales, one row of coin counts per sale, and the sums of each column.
+    private final int[] paid;
+    private final int[] given;
+    private final long[] paidTotals;
+    private final long[] givenTotals;
+    private int next;
+    private int sales;
+
+    public ChangeReservePlanner(DenominationRegistry registry, ChangeMaker changeMaker) {
+        this(registry, changeMaker, DEFAULT_HISTORY);
+    }
+
+    /**
+     * @param changeMaker the machine's, it is used to find the coins every small amount of change takes.
+     * @param history how many recent sales to average over.
+     */
+    public ChangeReservePlanner(DenominationRegistry registry, ChangeMaker changeMaker, int history) {
+        this.registry = Preconditions.checkNotNull(registry);
+        this.changeMaker = Preconditions.checkNotNull(changeMaker);
+        if (Preconditions.checkPositive(history) == 0) {
+            throw new IllegalArgumentException("The planner has to remember at least one sale");
+        }
+        this.history = history;
+        paid = new int[history * registry.size()];
+        given = new int[history * registry.size()];
+        paidTotals = new long[registry.size()];
+        givenTotals = new long[registry.size()];
+    }
+
+    @Override
+    public void productSold(int productPosition, int price) {
+    }
+
+    /**
+     * Replaces the oldest sale in the ring with this one.
+     */
+    @Override
+    public void coinsMoved(int[] coinsPaid, int[] coinsGiven) {
+        int row = next * registry.size();
+        for (int i = 0; i < registry.size(); i++) {
+            paidTotals[i] += coinsPaid[i] - paid[row + i];
+            givenTotals[i] += coinsGiven[i] - given[row + i];
+            paid[row + i] = coinsPaid[i];
+            given[row + i] = coinsGiven[i];
+        }
+        next = next + 1 == history ? 0 : next + 1;
+        if (sales < history) {
+            sales++;
+        }
+    }
+
+    /**
+     * The number of sales the forecasts are based on, up to the history size.
+     */
+    public int getSales() {
+        return sales;
+    }
+
+    /**
+     * How many coins of the denomination at this index the machine gains with each sale, on average. Negative when
+     * it gives out more than it takes in.
+     */
+    public double getNetCoinsPerSale(int index) {
+        return sales == 0 ? 0 : (double) (paidTotals[index] - givenTotals[index]) / sales;
+    }
+
+    /**
+     * How many more sales until the denomination at this index runs out, or Long.MAX_VALUE if it isn't running down.
+     *
+     * @param systemCoins how many of each denomination the machine holds for change.
+     */
+    public long getSalesUntilEmpty(int index, int[] systemCoins) {
+        long net = paidTotals[index] - givenTotals[index];
+        if (net >= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) systemCoins[index] * sales / -net;
+    }
+
+    /**
+     * How many more sales until the first denomination runs out, which is roughly when change starts failing.
+     */
+    public long getSalesUntilShort(int[] systemCoins) {
+        long fewest = Long.MAX_VALUE;
+        for (int i = 0; i < registry.size(); i++) {
+            fewest = Math.min(fewest, getSalesUntilEmpty(i, systemCoins));
+        }
+        return fewest;
+    }
+
+    /**
+     * The fewest coins of each denomination to add to the vault so that it lasts the next sales at the recent rate,
+     * and so that after them it can still pay every amount of change smaller than the biggest coin, which is all a
+     * single sale can ask for if the customer stops paying once the price is reached. Everything is zero if the vault
+     * needs nothing.
+     *
+     * This is for restocking, so unlike coinsMoved it allocates.
+     *
+     * @param systemCoins how many of each denomination the machine holds for change now.
+     */
+    public int[] getRestock(int upcomingSales, int[] systemCoins) {
+        Preconditions.checkPositive(upcomingSales);
+        int[] restock = new int[registry.size()];
+        int[] after = new int[registry.size()];
+        for (int i = 0; i < registry.size(); i++) {
+            long net = paidTotals[i] - givenTotals[i];
+            long expected = systemCoins[i];
+            if (net < 0 && sales > 0) {
+                // Round the coins used up, not the coins left, so a shortfall of a fraction of a coin still counts.
+                expected -= (-net * upcomingSales + sales - 1) / sales;
+            }
+            if (expected < 0) {
+                restock[i] = (int) Math.min(Integer.MAX_VALUE, -expected);
+                expected = 0;
+            }
+            after[i] = (int) Math.min(Integer.MAX_VALUE, expected);
+        }
+
+        coverSingleSale(after, restock);
+        return restock;
+    }
+
+    /**
+     * Adds to the restock until the forecast vault can pay each small amount on its own. An amount it can't pay gets
+     * the coins the change maker would use for it if every coin were available, less what is already there.
+     */
+    private void coverSingleSale(int[] after, int[] restock) {
+        int size = registry.size();
+        int[] unlimited = new int[size];
+        for (int i = 0; i < size; i++) {
+            unlimited[i] = Integer.MAX_VALUE / 2;
+        }
+        int[] coins = new int[size];
+        int unit = registry.getSmallestUnit();
+        int largest = registry.getValue(size - 1);
+        for (int amount = unit; amount < largest; amount += unit) {
+            if (changeMaker.makeChange(amount, after, coins) || !changeMaker.makeChange(amount, unlimited, coins)) {
+                continue;
+            }
+            for (int i = 0; i < size; i++) {
+                if (coins[i] > after[i]) {
+                    restock[i] += coins[i] - after[i];
+                    after[i] = coins[i];
+                }
+            }
+        }
+    }
+}
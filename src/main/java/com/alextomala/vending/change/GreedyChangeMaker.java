@@ -0,0 +1,30 @@
+package com.alextomala.vending.change;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * Takes as many of the largest coin as it can, then moves on to the next largest.
+ *
+ * This is what the vending machine always did. It is fast, but it gives up in cases where a different mix would have
+ * worked, for example 30 cents from one quarter and three dimes.
+ */
+public class GreedyChangeMaker implements ChangeMaker {
+    private final int[] denominations;
+
+    /**
+     * @param denominations the coin values, smallest first.
+     */
+    public GreedyChangeMaker(int[] denominations) {
+        this.denominations = denominations.clone();
+    }
+
+    @Override
+    public boolean makeChange(int amount, int[] available, int[] result) {
+        Preconditions.checkPositive(amount);
+        for (int i = denominations.length - 1; i >= 0; i--) {
+            result[i] = Math.min(amount / denominations[i], available[i]);
+            amount -= result[i] * denominations[i];
+        }
+        return amount == 0;
+    }
+}
@@ -0,0 +1,172 @@
+package com.alextomala.vending.change;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Finds the mix with the fewest coins that the available coins can actually pay, and only fails when no mix exists.
+ *
+ * Up front it builds a table of the fewest-coin answer for every amount up to a limit, assuming an unlimited supply of
+ * each coin. Most of the time the vault has enough of those coins, so a sale is a table lookup and a check of each
+ * denomination. When it doesn't, or the amount is past the table, it falls back to a dynamic program over the coins
+ * that really are available.
+ */
+public class OptimalChangeMaker implements ChangeMaker {
+    /**
+     * Five dollars of change covers every price we sell at with room to spare.
+     */
+    public static final int DEFAULT_TABLE_LIMIT = 500;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int[] denominations;
+    private final int unit;
+    private final int tableLimit;
+
+    /**
+     * The fewest-coin answer for every multiple of the unit up to the limit, stored as one row of coin counts per
+     * amount, or a row starting with -1 if the amount can't be made at all.
+     */
+    private final int[] table;
+
+    /**
+     * @param denominations the coin values, smallest first.
+     */
+    public OptimalChangeMaker(int[] denominations) {
+        this(denominations, DEFAULT_TABLE_LIMIT);
+    }
+
+    public OptimalChangeMaker(int[] denominations, int tableLimit) {
+        this.denominations = denominations.clone();
+        this.unit = greatestCommonDivisor(this.denominations);
+        this.tableLimit = Preconditions.checkPositive(tableLimit);
+        this.table = buildTable();
+    }
+
+    @Override
+    public boolean makeChange(int amount, int[] available, int[] result) {
+        Preconditions.checkPositive(amount);
+        if (amount % unit != 0) {
+            return false;
+        }
+        if (amount <= tableLimit) {
+            int row = (amount / unit) * denominations.length;
+            if (table[row] < 0) {
+                // Not even an unlimited supply of coins could make this amount.
+                return false;
+            }
+            if (fromTable(row, available, result)) {
+                return true;
+            }
+        }
+        return boundedChange(amount, available, result);
+    }
+
+    private boolean fromTable(int row, int[] available, int[] result) {
+        for (int i = 0; i < denominations.length; i++) {
+            if (table[row + i] > available[i]) {
+                return false;
+            }
+        }
+        System.arraycopy(table, row, result, 0, denominations.length);
+        return true;
+    }
+
+    /**
+     * The usual fewest-coins dynamic program, but with the count of each coin capped by what is available.
+     * coins[i][a] is the fewest coins to make a units using only the first i denominations.
+     */
+    private boolean boundedChange(int amount, int[] available, int[] result) {
+        int units = amount / unit;
+        int width = units + 1;
+        int[] coins = new int[(denominations.length + 1) * width];
+        Arrays.fill(coins, 1, width, UNREACHABLE);
+
+        for (int i = 1; i <= denominations.length; i++) {
+            int step = denominations[i - 1] / unit;
+            int previous = (i - 1) * width;
+            int current = i * width;
+            for (int a = 0; a <= units; a++) {
+                int best = UNREACHABLE;
+                for (int count = 0; count <= available[i - 1] && count * step <= a; count++) {
+                    int rest = coins[previous + a - count * step];
+                    if (rest != UNREACHABLE && rest + count < best) {
+                        best = rest + count;
+                    }
+                }
+                coins[current + a] = best;
+            }
+        }
+
+        if (coins[denominations.length * width + units] == UNREACHABLE) {
+            return false;
+        }
+
+        // Walk back through the table to find out how many of each coin the best answer used.
+        int a = units;
+        for (int i = denominations.length; i >= 1; i--) {
+            int step = denominations[i - 1] / unit;
+            int target = coins[i * width + a];
+            int count = 0;
+            while (coins[(i - 1) * width + a - count * step] == UNREACHABLE
+                    || coins[(i - 1) * width + a - count * step] + count != target) {
+                count++;
+            }
+            result[i - 1] = count;
+            a -= count * step;
+        }
+        return true;
+    }
+
+    private int[] buildTable() {
+        int units = tableLimit / unit;
+        int[] fewest = new int[units + 1];
+        int[] lastCoin = new int[units + 1];
+        Arrays.fill(fewest, 1, units + 1, UNREACHABLE);
+
+        for (int a = 1; a <= units; a++) {
+            for (int i = 0; i < denominations.length; i++) {
+                int step = denominations[i] / unit;
+                if (step <= a && fewest[a - step] != UNREACHABLE && fewest[a - step] + 1 < fewest[a]) {
+                    fewest[a] = fewest[a - step] + 1;
+                    lastCoin[a] = i;
+                }
+            }
+        }
+
+        int[] rows = new int[(units + 1) * denominations.length];
+        for (int a = 0; a <= units; a++) {
+            int row = a * denominations.length;
+            if (fewest[a] == UNREACHABLE) {
+                rows[row] = -1;
+                continue;
+            }
+            for (int rest = a; rest > 0; rest -= denominations[lastCoin[rest]] / unit) {
+                rows[row + lastCoin[rest]]++;
+            }
+        }
+        return rows;
+    }
+
+    private static int greatestCommonDivisor(int[] values) {
+        int divisor = 0;
+        for (int value : values) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("A denomination must be worth something");
+            }
+            int a = divisor;
+            int b = value;
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            divisor = a;
+        }
+        if (divisor == 0) {
+            throw new IllegalArgumentException("At least one denomination is needed");
+        }
+        return divisor;
+    }
+}
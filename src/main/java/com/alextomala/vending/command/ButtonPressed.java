@@ -0,0 +1,29 @@
+package com.alextomala.vending.command;
+
+import com.alextomala.vending.CustomerPanel;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * A customer pressed the button for a product, to buy it or to see its price.
+ */
+public final class ButtonPressed implements CustomerCommand {
+    private final int productPosition;
+
+    public ButtonPressed(int productPosition) {
+        this.productPosition = Preconditions.checkPositive(productPosition);
+    }
+
+    public int getProductPosition() {
+        return productPosition;
+    }
+
+    @Override
+    public void applyTo(CustomerPanel panel) {
+        panel.buttonPress(productPosition);
+    }
+
+    @Override
+    public String toString() {
+        return "ButtonPressed{productPosition=" + productPosition + "}";
+    }
+}
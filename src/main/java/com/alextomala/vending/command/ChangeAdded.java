@@ -0,0 +1,41 @@
+package com.alextomala.vending.command;
+
+import com.alextomala.vending.VendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * An admin put coins in the machine for making change.
+ */
+public final class ChangeAdded implements Command {
+    private final int numberOfNickels;
+    private final int numberOfDimes;
+    private final int numberOfQuarters;
+
+    public ChangeAdded(int numberOfNickels, int numberOfDimes, int numberOfQuarters) {
+        this.numberOfNickels = Preconditions.checkPositive(numberOfNickels);
+        this.numberOfDimes = Preconditions.checkPositive(numberOfDimes);
+        this.numberOfQuarters = Preconditions.checkPositive(numberOfQuarters);
+    }
+
+    public int getNumberOfNickels() {
+        return numberOfNickels;
+    }
+
+    public int getNumberOfDimes() {
+        return numberOfDimes;
+    }
+
+    public int getNumberOfQuarters() {
+        return numberOfQuarters;
+    }
+
+    @Override
+    public void applyTo(VendingMachine machine) {
+        machine.addChange(numberOfNickels, numberOfDimes, numberOfQuarters);
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeAdded{nickels=" + numberOfNickels + ", dimes=" + numberOfDimes + ", quarters=" + numberOfQuarters + "}";
+    }
+}
@@ -0,0 +1,29 @@
+package com.alextomala.vending.command;
+
+import com.alextomala.vending.CustomerPanel;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * A customer put a coin in. Whether the machine takes that coin is up to the machine.
+ */
+public final class CoinInserted implements CustomerCommand {
+    private final int cents;
+
+    public CoinInserted(int cents) {
+        this.cents = Preconditions.checkPositive(cents);
+    }
+
+    public int getCents() {
+        return cents;
+    }
+
+    @Override
+    public void applyTo(CustomerPanel panel) {
+        panel.addUserMoney(cents);
+    }
+
+    @Override
+    public String toString() {
+        return "CoinInserted{cents=" + cents + "}";
+    }
+}
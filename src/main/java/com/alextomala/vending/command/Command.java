@@ -0,0 +1,17 @@
+package com.alextomala.vending.command;
+
+import com.alextomala.vending.VendingMachine;
+
+/**
+ * Something that happened at a machine, like a coin going in or a button being pressed, sent to the machine as data
+ * instead of as a method call so it can arrive in a batch. See VendingMachine.apply.
+ *
+ * Commands check their own arguments when they are made, so a bad one is caught by whoever built the batch.
+ */
+public interface Command {
+
+    /**
+     * Makes the call on the machine that this command stands for.
+     */
+    void applyTo(VendingMachine machine);
+}
@@ -0,0 +1,20 @@
+package com.alextomala.vending.command;
+
+import com.alextomala.vending.CustomerPanel;
+import com.alextomala.vending.VendingMachine;
+
+/**
+ * A command a customer can send, which only needs the front of the machine. These are the only ones a Session runs.
+ */
+public interface CustomerCommand extends Command {
+
+    /**
+     * Makes the call on the customer's side of the machine that this command stands for.
+     */
+    void applyTo(CustomerPanel panel);
+
+    @Override
+    default void applyTo(VendingMachine machine) {
+        applyTo((CustomerPanel) machine);
+    }
+}
@@ -0,0 +1,23 @@
+package com.alextomala.vending.command;
+
+import com.alextomala.vending.CustomerPanel;
+
+/**
+ * A customer asked for their money back. There is nothing to it, so everyone shares one.
+ */
+public final class OrderCancelled implements CustomerCommand {
+    public static final OrderCancelled INSTANCE = new OrderCancelled();
+
+    private OrderCancelled() {
+    }
+
+    @Override
+    public void applyTo(CustomerPanel panel) {
+        panel.cancelOrder();
+    }
+
+    @Override
+    public String toString() {
+        return "OrderCancelled";
+    }
+}
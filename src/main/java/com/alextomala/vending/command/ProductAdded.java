@@ -0,0 +1,40 @@
+package com.alextomala.vending.command;
+
+import com.alextomala.vending.VendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An admin put a new product in the machine. The details are in the same form addProduct takes them, and are copied so
+ * the command can't change after it is made.
+ */
+public final class ProductAdded implements Command {
+    private final int productPosition;
+    private final Map<String, Object> productDetails;
+
+    public ProductAdded(int productPosition, Map<String, Object> productDetails) {
+        this.productPosition = Preconditions.checkPositive(productPosition);
+        this.productDetails = Collections.unmodifiableMap(new HashMap<>(Preconditions.checkNotNull(productDetails)));
+    }
+
+    public int getProductPosition() {
+        return productPosition;
+    }
+
+    public Map<String, Object> getProductDetails() {
+        return productDetails;
+    }
+
+    @Override
+    public void applyTo(VendingMachine machine) {
+        machine.addProduct(productPosition, productDetails);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductAdded{productPosition=" + productPosition + ", productDetails=" + productDetails + "}";
+    }
+}
@@ -0,0 +1,51 @@
+package com.alextomala.vending.currency;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * A single coin, for example a quarter worth 25 cents.
+ *
+ * The value is in the smallest unit of the currency (cents for dollars and euros).
+ */
+public final class Denomination {
+    private final String name;
+    private final int value;
+
+    public Denomination(String name, int value) {
+        this.name = Preconditions.checkNotNull(name);
+        if (value <= 0) {
+            throw new IllegalArgumentException("A denomination must be worth something");
+        }
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Denomination)) {
+            return false;
+        }
+        Denomination that = (Denomination) o;
+        return value == that.value && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + value;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + value + ")";
+    }
+}
@@ -0,0 +1,129 @@
+package com.alextomala.vending.currency;
+
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * The coins a machine accepts and gives as change, in one currency.
+ *
+ * Each denomination has an index (smallest coin first) that vaults and change makers use to keep their counts in
+ * plain arrays. Looking up the index of a coin by its value is a single array read.
+ */
+public final class DenominationRegistry {
+    public static final DenominationRegistry US_COINS = new DenominationRegistry("USD",
+            new Denomination("nickel", 5),
+            new Denomination("dime", 10),
+            new Denomination("quarter", 25));
+
+    public static final DenominationRegistry EURO_COINS = new DenominationRegistry("EUR",
+            new Denomination("5 cent", 5),
+            new Denomination("10 cent", 10),
+            new Denomination("20 cent", 20),
+            new Denomination("50 cent", 50),
+            new Denomination("1 euro", 100),
+            new Denomination("2 euro", 200));
+
+    private final String currencyCode;
+    private final Denomination[] denominations;
+    private final int[] values;
+    private final int smallestUnit;
+
+    /**
+     * indexByValue[value] is the index of the denomination worth that much, or -1.
+     */
+    private final int[] indexByValue;
+
+    public DenominationRegistry(String currencyCode, Denomination... denominations) {
+        this.currencyCode = Preconditions.checkNotNull(currencyCode);
+        if (denominations.length == 0) {
+            throw new IllegalArgumentException("At least one denomination is needed");
+        }
+
+        this.denominations = denominations.clone();
+        Arrays.sort(this.denominations, (a, b) -> Integer.compare(a.getValue(), b.getValue()));
+
+        this.values = new int[this.denominations.length];
+        int unit = 0;
+        for (int i = 0; i < this.denominations.length; i++) {
+            values[i] = this.denominations[i].getValue();
+            if (i > 0 && values[i] == values[i - 1]) {
+                throw new IllegalArgumentException(String.format("Two denominations are worth %d", values[i]));
+            }
+            unit = greatestCommonDivisor(unit, values[i]);
+        }
+        this.smallestUnit = unit;
+
+        this.indexByValue = new int[values[values.length - 1] + 1];
+        Arrays.fill(indexByValue, -1);
+        for (int i = 0; i < values.length; i++) {
+            indexByValue[values[i]] = i;
+        }
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public int size() {
+        return denominations.length;
+    }
+
+    public Denomination get(int index) {
+        return denominations[index];
+    }
+
+    /**
+     * The coin values, smallest first. This is the array to hand to a ChangeMaker.
+     */
+    public int[] getValues() {
+        return values.clone();
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Every price and amount of change has to be a multiple of this. For nickels, dimes and quarters it is 5.
+     */
+    public int getSmallestUnit() {
+        return smallestUnit;
+    }
+
+    /**
+     * @return the index of the coin worth this much, or -1 if there is no such coin.
+     */
+    public int indexOf(int value) {
+        return value > 0 && value < indexByValue.length ? indexByValue[value] : -1;
+    }
+
+    public int indexOf(Denomination denomination) {
+        int index = indexOf(denomination.getValue());
+        if (index < 0 || !denominations[index].equals(denomination)) {
+            throw new InvalidDenominationException(String.format("%s is not a %s coin", denomination, currencyCode));
+        }
+        return index;
+    }
+
+    /**
+     * Like indexOf, but throws for coins this currency doesn't have.
+     */
+    public int checkedIndexOf(int value) {
+        int index = indexOf(value);
+        if (index < 0) {
+            throw new InvalidDenominationException(String.format("%d is not a %s coin", value, currencyCode));
+        }
+        return index;
+    }
+
+    private static int greatestCommonDivisor(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,28 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * Coins worth this much were given back to the customer, as change after a sale or when they cancelled.
+ */
+public final class ChangeDispensed implements Event {
+    private final int cents;
+
+    public ChangeDispensed(int cents) {
+        this.cents = cents;
+    }
+
+    public int getCents() {
+        return cents;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Not hardware output.
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeDispensed{cents=" + cents + "}";
+    }
+}
@@ -0,0 +1,34 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * Coins of one denomination came out of the machine, as change, a refund or an admin emptying it.
+ */
+public final class CoinsDispensed implements Event {
+    private final int cents;
+    private final int count;
+
+    public CoinsDispensed(int cents, int count) {
+        this.cents = cents;
+        this.count = count;
+    }
+
+    public int getCents() {
+        return cents;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        hardware.dispenseCoins(cents, count);
+    }
+
+    @Override
+    public String toString() {
+        return "CoinsDispensed{cents=" + cents + ", count=" + count + "}";
+    }
+}
@@ -0,0 +1,39 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * A command in a batch threw. The rest of the batch still ran.
+ *
+ * The exception is the one the single call would have thrown, so the named exceptions (NotEnoughChangeException and
+ * friends) still say what went wrong.
+ */
+public final class CommandRejected implements Event {
+    private final Command command;
+    private final RuntimeException reason;
+
+    public CommandRejected(Command command, RuntimeException reason) {
+        this.command = Preconditions.checkNotNull(command);
+        this.reason = Preconditions.checkNotNull(reason);
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    public RuntimeException getReason() {
+        return reason;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Nothing happened at the machine.
+    }
+
+    @Override
+    public String toString() {
+        return "CommandRejected{command=" + command + ", reason=" + reason + "}";
+    }
+}
@@ -0,0 +1,29 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * The money the current customer has in the machine changed, because they put a coin in, bought something or
+ * cancelled. Zero after a sale or a cancel.
+ */
+public final class CreditChanged implements Event {
+    private final int credit;
+
+    public CreditChanged(int credit) {
+        this.credit = credit;
+    }
+
+    public int getCredit() {
+        return credit;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Not hardware output.
+    }
+
+    @Override
+    public String toString() {
+        return "CreditChanged{credit=" + credit + "}";
+    }
+}
@@ -0,0 +1,36 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * The hardware threw when it was handed an event at the end of a batch. The machine had already done what the event
+ * says, and the events after it were still handed over.
+ */
+public final class DeliveryFailed implements Event {
+    private final Event event;
+    private final RuntimeException reason;
+
+    public DeliveryFailed(Event event, RuntimeException reason) {
+        this.event = Preconditions.checkNotNull(event);
+        this.reason = Preconditions.checkNotNull(reason);
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public RuntimeException getReason() {
+        return reason;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Delivering it again is up to whoever reads it.
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryFailed{event=" + event + ", reason=" + reason + "}";
+    }
+}
@@ -0,0 +1,16 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * Something a machine did in response to a command, for whatever is downstream of the machine to consume.
+ *
+ * Most events are hardware output, and know how to replay themselves on a HardwareDriver.
+ */
+public interface Event {
+
+    /**
+     * Makes the hardware do what this event says was done. Events that aren't hardware output do nothing.
+     */
+    void deliverTo(HardwareDriver hardware);
+}
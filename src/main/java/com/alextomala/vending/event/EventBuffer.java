@@ -0,0 +1,75 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A HardwareDriver that turns every call into an event and keeps them, so a machine working through a batch can hand
+ * its output over in one go at the end.
+ *
+ * Not thread safe, one machine fills it and then takes the events.
+ */
+public final class EventBuffer implements HardwareDriver {
+    private List<Event> events;
+    // The events before this have been handed to the hardware.
+    private int delivered;
+
+    public EventBuffer() {
+        events = new ArrayList<>();
+    }
+
+    @Override
+    public void showMessage(String message) {
+        events.add(new MessageShown(message));
+    }
+
+    @Override
+    public void dispenseProduct(int productPosition, String productName) {
+        events.add(new ProductDispensed(productPosition, productName));
+    }
+
+    @Override
+    public void dispenseCoins(int cents, int count) {
+        events.add(new CoinsDispensed(cents, count));
+    }
+
+    public void add(Event event) {
+        events.add(event);
+    }
+
+    /**
+     * Keeps an event for something that was done on the hardware directly, so it isn't delivered again. Everything
+     * before it should have been delivered first.
+     */
+    public void addDelivered(Event event) {
+        events.add(event);
+        delivered = events.size();
+    }
+
+    /**
+     * Hands every event that hasn't been delivered yet to the hardware, in order. If the hardware throws, a
+     * DeliveryFailed goes in right after the event and the rest are still delivered.
+     */
+    public void deliverTo(HardwareDriver hardware) {
+        while (delivered < events.size()) {
+            Event event = events.get(delivered++);
+            try {
+                event.deliverTo(hardware);
+            } catch (RuntimeException e) {
+                events.add(delivered++, new DeliveryFailed(event, e));
+            }
+        }
+    }
+
+    /**
+     * @return every event since the last call, in order. The buffer starts again empty.
+     */
+    public List<Event> take() {
+        List<Event> taken = events;
+        events = new ArrayList<>(Math.max(16, taken.size()));
+        delivered = 0;
+        return taken;
+    }
+}
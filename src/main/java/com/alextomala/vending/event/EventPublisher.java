@@ -0,0 +1,246 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a machine's events to any number of subscribers, each at its own pace, without ever holding up the machine.
+ * It works like java.util.concurrent.SubmissionPublisher, which isn't there on Java 8.
+ *
+ * Every subscriber has a bounded ring buffer of its own. Publishing puts the event in each subscriber's ring and makes
+ * sure a delivery task is running on the executor, and that is all the machine's thread does. The delivery task hands
+ * a subscriber only as many events as it has requested. A subscriber that falls behind fills its ring, and then new
+ * events for it are dropped rather than making the machine wait. The next thing it gets is an EventsDropped with the
+ * count, in place of what was lost.
+ *
+ * Subscribers are kept in an array that is copied when one comes or goes, so publishing doesn't lock. A machine asks
+ * hasSubscribers before making an event, so with nobody listening a sale costs one volatile read and allocates nothing.
+ *
+ * Only one thread may publish at a time, the machine's. Subscribing, requesting and cancelling can happen anywhere.
+ */
+public class EventPublisher implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private static final Sub[] NONE = new Sub[0];
+
+    private final Executor executor;
+    private final int bufferSize;
+    private volatile Sub[] subscribers = NONE;
+    private boolean closed;
+
+    public EventPublisher() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param executor runs the deliveries. Each subscriber only ever has one delivery task running.
+     * @param bufferSize how many events a subscriber can fall behind by before they are dropped. Rounded up to a
+     *                   power of two.
+     */
+    public EventPublisher(Executor executor, int bufferSize) {
+        this.executor = Preconditions.checkNotNull(executor);
+        if (bufferSize < 1 || bufferSize > 1 << 30) {
+            throw new IllegalArgumentException("The buffer has to hold between one and 2^30 events");
+        }
+        int size = 1;
+        while (size < bufferSize) {
+            size <<= 1;
+        }
+        this.bufferSize = size;
+    }
+
+    public boolean hasSubscribers() {
+        return subscribers.length != 0;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.length;
+    }
+
+    /**
+     * Adds the subscriber. Its onSubscribe is called on the executor, and it gets the events published after that.
+     *
+     * @throws IllegalStateException once the publisher is closed.
+     */
+    public synchronized void subscribe(EventSubscriber subscriber) {
+        if (closed) {
+            throw new IllegalStateException("The event publisher is closed");
+        }
+        Sub sub = new Sub(Preconditions.checkNotNull(subscriber), bufferSize);
+        Sub[] updated = Arrays.copyOf(subscribers, subscribers.length + 1);
+        updated[updated.length - 1] = sub;
+        subscribers = updated;
+        sub.signal();
+    }
+
+    /**
+     * Gives the event to every subscriber, never waiting for any of them.
+     */
+    public void publish(Event event) {
+        for (Sub sub : subscribers) {
+            sub.offer(event);
+        }
+    }
+
+    /**
+     * Stops taking subscribers. Each one gets the events it already has buffered, as it requests them, and then
+     * onComplete.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Sub sub : subscribers) {
+            sub.complete();
+        }
+        subscribers = NONE;
+    }
+
+    private synchronized void remove(Sub sub) {
+        Sub[] current = subscribers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sub) {
+                Sub[] updated = new Sub[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscribers = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * One subscriber's ring and delivery task. The publishing thread is the only one that moves the tail and counts
+     * drops, the delivery task is the only one that moves the head, so the ring itself needs no compare and swap. The
+     * work counter makes sure exactly one delivery task runs at a time, and that it goes round again if it was
+     * signalled while running.
+     */
+    private final class Sub implements EventSubscription, Runnable {
+        private final EventSubscriber subscriber;
+        private final Event[] ring;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+
+        // Only touched by the delivery task.
+        private boolean subscribed;
+        private long droppedReported;
+
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private boolean done;
+
+        Sub(EventSubscriber subscriber, int size) {
+            this.subscriber = subscriber;
+            ring = new Event[size];
+            mask = size - 1;
+        }
+
+        void offer(Event event) {
+            long t = tail.get();
+            if (t - head.get() == ring.length) {
+                dropped.lazySet(dropped.get() + 1);
+            } else {
+                ring[(int) t & mask] = event;
+                tail.lazySet(t + 1);
+            }
+            signal();
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        void signal() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Subscribers have to request at least one event");
+            }
+            while (true) {
+                long current = requested.get();
+                long updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+                if (requested.compareAndSet(current, updated)) {
+                    break;
+                }
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            remove(this);
+            signal();
+        }
+
+        @Override
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    deliver();
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            if (!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            try {
+                long h = head.get();
+                while (!cancelled && requested.get() > 0) {
+                    Event event;
+                    long lost = dropped.get() - droppedReported;
+                    if (lost > 0) {
+                        droppedReported += lost;
+                        event = new EventsDropped(lost);
+                    } else if (h != tail.get()) {
+                        event = ring[(int) h & mask];
+                        ring[(int) h & mask] = null;
+                        head.lazySet(++h);
+                    } else {
+                        break;
+                    }
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    subscriber.onNext(event);
+                }
+                if (cancelled) {
+                    done = true;
+                    Arrays.fill(ring, null);
+                } else if (completed && h == tail.get() && dropped.get() == droppedReported) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {
+                cancelled = true;
+                done = true;
+                remove(this);
+                subscriber.onError(e);
+            }
+        }
+    }
+}
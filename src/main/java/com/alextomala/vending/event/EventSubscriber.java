@@ -0,0 +1,26 @@
+package com.alextomala.vending.event;
+
+/**
+ * Receives the events an EventPublisher sends. This is java.util.concurrent.Flow.Subscriber for a stream of Events,
+ * method for method, since the build still targets Java 8. On 9 and later a Flow.Subscriber can be wrapped in one of
+ * these by forwarding each call.
+ *
+ * The calls for one subscriber come one at a time, in order, never on the machine's own thread. Nothing comes through
+ * onNext until it has been asked for with EventSubscription.request.
+ */
+public interface EventSubscriber {
+
+    void onSubscribe(EventSubscription subscription);
+
+    void onNext(Event event);
+
+    /**
+     * The subscription ended because onNext threw. Nothing else is sent after this.
+     */
+    void onError(Throwable error);
+
+    /**
+     * The publisher was closed and every buffered event has been delivered. Nothing else is sent after this.
+     */
+    void onComplete();
+}
@@ -0,0 +1,24 @@
+package com.alextomala.vending.event;
+
+/**
+ * One subscriber's link to an EventPublisher, like java.util.concurrent.Flow.Subscription.
+ */
+public interface EventSubscription {
+
+    /**
+     * Asks for up to n more events. Demand adds up, and Long.MAX_VALUE means unbounded.
+     *
+     * @throws IllegalArgumentException if n isn't positive.
+     */
+    void request(long n);
+
+    /**
+     * Stops events coming. A few already on their way may still arrive.
+     */
+    void cancel();
+
+    /**
+     * How many events were thrown away because this subscriber's buffer was full.
+     */
+    long getDropped();
+}
@@ -0,0 +1,29 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * A subscriber fell so far behind that its buffer filled up and this many events were thrown away. It comes in
+ * place of them, so the subscriber knows to read the machine's state again rather than trust what it has added up.
+ */
+public final class EventsDropped implements Event {
+    private final long count;
+
+    public EventsDropped(long count) {
+        this.count = count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Not hardware output.
+    }
+
+    @Override
+    public String toString() {
+        return "EventsDropped{count=" + count + "}";
+    }
+}
@@ -0,0 +1,26 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.preconditions.Preconditions;
+
+public final class MessageShown implements Event {
+    private final String message;
+
+    public MessageShown(String message) {
+        this.message = Preconditions.checkNotNull(message);
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        hardware.showMessage(message);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageShown{message=" + message + "}";
+    }
+}
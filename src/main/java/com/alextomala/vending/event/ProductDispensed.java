@@ -0,0 +1,34 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * A product was sold. The name can be null, like it can be on the Product.
+ */
+public final class ProductDispensed implements Event {
+    private final int productPosition;
+    private final String productName;
+
+    public ProductDispensed(int productPosition, String productName) {
+        this.productPosition = productPosition;
+        this.productName = productName;
+    }
+
+    public int getProductPosition() {
+        return productPosition;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        hardware.dispenseProduct(productPosition, productName);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductDispensed{productPosition=" + productPosition + ", productName=" + productName + "}";
+    }
+}
@@ -0,0 +1,35 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * A product was added, or its slot restocked. The stock is how many there are now, StockCounter.UNLIMITED for a
+ * product that never runs out.
+ */
+public final class ProductStocked implements Event {
+    private final int productPosition;
+    private final int stock;
+
+    public ProductStocked(int productPosition, int stock) {
+        this.productPosition = productPosition;
+        this.stock = stock;
+    }
+
+    public int getProductPosition() {
+        return productPosition;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Not hardware output.
+    }
+
+    @Override
+    public String toString() {
+        return "ProductStocked{productPosition=" + productPosition + ", stock=" + stock + "}";
+    }
+}
@@ -0,0 +1,34 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * A product was sold and paid for. The change, if there was any, follows as a ChangeDispensed.
+ */
+public final class SaleCompleted implements Event {
+    private final int productPosition;
+    private final int price;
+
+    public SaleCompleted(int productPosition, int price) {
+        this.productPosition = productPosition;
+        this.price = price;
+    }
+
+    public int getProductPosition() {
+        return productPosition;
+    }
+
+    public int getPrice() {
+        return price;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Not hardware output.
+    }
+
+    @Override
+    public String toString() {
+        return "SaleCompleted{productPosition=" + productPosition + ", price=" + price + "}";
+    }
+}
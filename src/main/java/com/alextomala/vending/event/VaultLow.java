@@ -0,0 +1,35 @@
+package com.alextomala.vending.event;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * The machine's coins of one denomination went below the low mark with the last sale. It is only sent once on the
+ * way down, not again for every sale after, so it is safe to page someone on.
+ */
+public final class VaultLow implements Event {
+    private final int denominationValue;
+    private final int coinsLeft;
+
+    public VaultLow(int denominationValue, int coinsLeft) {
+        this.denominationValue = denominationValue;
+        this.coinsLeft = coinsLeft;
+    }
+
+    public int getDenominationValue() {
+        return denominationValue;
+    }
+
+    public int getCoinsLeft() {
+        return coinsLeft;
+    }
+
+    @Override
+    public void deliverTo(HardwareDriver hardware) {
+        // Not hardware output.
+    }
+
+    @Override
+    public String toString() {
+        return "VaultLow{denominationValue=" + denominationValue + ", coinsLeft=" + coinsLeft + "}";
+    }
+}
@@ -0,0 +1,11 @@
+package com.alextomala.vending.exception;
+
+/**
+ * A simple exception to tell when someone sends a command to a machine that isn't in the fleet.
+ */
+public class MachineNotFoundException extends RuntimeException {
+
+    public MachineNotFoundException(String message) {
+        super(message);
+    }
+}
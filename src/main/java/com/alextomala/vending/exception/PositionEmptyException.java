@@ -0,0 +1,10 @@
+package com.alextomala.vending.exception;
+
+/**
+ * Thrown when someone tries to restock a position that has no product in it.
+ */
+public class PositionEmptyException extends RuntimeException {
+    public PositionEmptyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,83 @@
+package com.alextomala.vending.fleet;
+
+/**
+ * What a CashCollection found: the coins collected and expected across the fleet, and the machines that didn't match
+ * their records, in machine order.
+ */
+public final class CollectionReport {
+    private final int[] values;
+    private final int machineCount;
+    private final long[] totals;
+    private final int[] flagged;
+    private final long[] flaggedCents;
+
+    CollectionReport(int[] values, int machineCount, long[] totals, int[] flagged, long[] flaggedCents) {
+        this.values = values;
+        this.machineCount = machineCount;
+        this.totals = totals;
+        this.flagged = flagged;
+        this.flaggedCents = flaggedCents;
+    }
+
+    public int getMachineCount() {
+        return machineCount;
+    }
+
+    /**
+     * How many coins of the denomination, indexed like the DenominationRegistry, were collected from the whole fleet.
+     */
+    public long getCollected(int denominationIndex) {
+        return totals[checkIndex(denominationIndex)];
+    }
+
+    /**
+     * How many coins of the denomination the records said were there.
+     */
+    public long getExpected(int denominationIndex) {
+        return totals[values.length + checkIndex(denominationIndex)];
+    }
+
+    public long getCollectedCents() {
+        long cents = 0;
+        for (int i = 0; i < values.length; i++) {
+            cents += totals[i] * values[i];
+        }
+        return cents;
+    }
+
+    public long getExpectedCents() {
+        long cents = 0;
+        for (int i = 0; i < values.length; i++) {
+            cents += totals[values.length + i] * values[i];
+        }
+        return cents;
+    }
+
+    /**
+     * The machines, by their index in the counts, where any denomination didn't match.
+     */
+    public int[] getFlaggedMachines() {
+        return flagged.clone();
+    }
+
+    /**
+     * For each flagged machine, in the same order, how many cents more than expected were collected. Negative for
+     * money missing.
+     */
+    public long[] getFlaggedCents() {
+        return flaggedCents.clone();
+    }
+
+    private int checkIndex(int denominationIndex) {
+        if (denominationIndex < 0 || denominationIndex >= values.length) {
+            throw new IndexOutOfBoundsException(String.format("There is no denomination %d", denominationIndex));
+        }
+        return denominationIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionReport{machines=" + machineCount + ", collectedCents=" + getCollectedCents()
+                + ", expectedCents=" + getExpectedCents() + ", flagged=" + flagged.length + "}";
+    }
+}
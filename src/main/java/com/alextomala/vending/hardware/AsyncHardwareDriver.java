@@ -0,0 +1,233 @@
+package com.alextomala.vending.hardware;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes hardware calls off the caller's thread. Each call is written into a preallocated ring buffer and a dedicated
+ * thread drains the ring in batches into another driver, usually the ConsoleHardwareDriver.
+ *
+ * Any number of threads can call it. Calls from one thread reach the hardware in the order they were made. Nothing
+ * is ever dropped: if the ring fills up, callers wait for the drain thread to make room, since a coin that is never
+ * dispensed is worse than a slow one.
+ *
+ * The ring is the bounded queue from Dmitry Vyukov: every slot has a sequence number that says whether it is free for
+ * the producer claiming that position or full for the consumer, so writers only contend on the one counter they use
+ * to claim a slot. Events are stored in parallel primitive arrays, so queueing one doesn't allocate.
+ *
+ * When the ring is empty the drain thread parks until a caller wakes it. Callers only pay for the wake up when the
+ * drain thread has actually gone to sleep, which is a volatile read the rest of the time.
+ */
+public class AsyncHardwareDriver implements HardwareDriver, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final byte MESSAGE = 0;
+    private static final byte PRODUCT = 1;
+    private static final byte COINS = 2;
+
+    private final HardwareDriver target;
+    private final int mask;
+
+    private final AtomicLongArray sequences;
+    private final byte[] types;
+    private final int[] numbers;
+    private final int[] counts;
+    private final String[] texts;
+
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private volatile boolean running;
+    private final Thread drainThread;
+    // Set by the drain thread just before it parks, so callers know to wake it.
+    private volatile boolean drainWaiting;
+
+    // Threads waiting in flush. The drain thread only takes the lock to wake them when there are some.
+    private final Object flushLock = new Object();
+    private volatile int flushWaiters;
+
+    public AsyncHardwareDriver(HardwareDriver target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of calls that can be waiting, rounded up to a power of two.
+     */
+    public AsyncHardwareDriver(HardwareDriver target, int capacity) {
+        this.target = Preconditions.checkNotNull(target);
+        if (Preconditions.checkPositive(capacity) == 0) {
+            throw new IllegalArgumentException("The ring needs room for at least one call");
+        }
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(size, 2);
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        types = new byte[size];
+        numbers = new int[size];
+        counts = new int[size];
+        texts = new String[size];
+
+        running = true;
+        drainThread = new Thread(this::drain, "hardware-driver");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    @Override
+    public void showMessage(String message) {
+        publish(MESSAGE, 0, 0, message);
+    }
+
+    @Override
+    public void dispenseProduct(int productPosition, String productName) {
+        publish(PRODUCT, productPosition, 0, productName);
+    }
+
+    @Override
+    public void dispenseCoins(int cents, int count) {
+        publish(COINS, cents, count, null);
+    }
+
+    /**
+     * Waits until every call made before this one has been handed to the target driver.
+     */
+    public void flush() {
+        long published = tail.get();
+        if (head >= published) {
+            return;
+        }
+        synchronized (flushLock) {
+            flushWaiters++;
+            try {
+                while (head < published) {
+                    if (!drainThread.isAlive()) {
+                        throw new IllegalStateException("The hardware driver has been closed");
+                    }
+                    flushLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for the hardware driver", e);
+            } finally {
+                flushWaiters--;
+            }
+        }
+    }
+
+    /**
+     * Delivers whatever is still queued, then stops the drain thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        flush();
+        running = false;
+        LockSupport.unpark(drainThread);
+        drainThread.join();
+    }
+
+    private void publish(byte type, int number, int count, String text) {
+        if (!running) {
+            throw new IllegalStateException("The hardware driver has been closed");
+        }
+
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long free = sequences.get(slot) - position;
+            if (free == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (free < 0) {
+                // The ring is full. Wait for the drain thread rather than lose a dispense.
+                if (!running) {
+                    throw new IllegalStateException("The hardware driver has been closed");
+                }
+                Thread.yield();
+            }
+        }
+
+        types[slot] = type;
+        numbers[slot] = number;
+        counts[slot] = count;
+        texts[slot] = text;
+        // A full write rather than lazySet, so it can't be reordered with the read of drainWaiting. Otherwise the
+        // drain thread could check the slot, miss this call and park with nobody left to wake it.
+        sequences.set(slot, position + 1);
+        if (drainWaiting) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    private void drain() {
+        try {
+            drainRing();
+        } finally {
+            // Whoever is waiting in flush has to find out the drain thread is gone.
+            wakeFlushers();
+        }
+    }
+
+    private void drainRing() {
+        long position = head;
+        while (running || position < tail.get()) {
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                drainWaiting = true;
+                if (running && sequences.get(slot) != position + 1) {
+                    LockSupport.park(this);
+                }
+                drainWaiting = false;
+                continue;
+            }
+
+            // Deliver everything that is ready as one batch before telling producers about the free slots.
+            long start = position;
+            do {
+                deliver(slot);
+                texts[slot] = null;
+                sequences.lazySet(slot, position + mask + 1);
+                position++;
+                slot = (int) position & mask;
+            } while (position - start <= mask && sequences.get(slot) == position + 1);
+            head = position;
+            if (flushWaiters > 0) {
+                wakeFlushers();
+            }
+        }
+    }
+
+    private void wakeFlushers() {
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+
+    private void deliver(int slot) {
+        try {
+            switch (types[slot]) {
+                case MESSAGE:
+                    target.showMessage(texts[slot]);
+                    break;
+                case PRODUCT:
+                    target.dispenseProduct(numbers[slot], texts[slot]);
+                    break;
+                default:
+                    target.dispenseCoins(numbers[slot], counts[slot]);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // There is no caller to hand this back to, and one broken call shouldn't stop the rest of the hardware.
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.alextomala.vending.hardware;
+
+import com.alextomala.vending.VendingMachineHardwareFunctions;
+
+/**
+ * The real hardware: passes every call straight to VendingMachineHardwareFunctions on the caller's thread.
+ */
+public final class ConsoleHardwareDriver implements HardwareDriver {
+    public static final ConsoleHardwareDriver INSTANCE = new ConsoleHardwareDriver();
+
+    private ConsoleHardwareDriver() {
+    }
+
+    @Override
+    public void showMessage(String message) {
+        VendingMachineHardwareFunctions.showMessage(message);
+    }
+
+    @Override
+    public void dispenseProduct(int productPosition, String productName) {
+        VendingMachineHardwareFunctions.dispenseProduct(productPosition, productName);
+    }
+
+    @Override
+    public void dispenseCoins(int cents, int count) {
+        VendingMachineHardwareFunctions.dispenseCoins(cents, count);
+    }
+}
@@ -0,0 +1,17 @@
+package com.alextomala.vending.hardware;
+
+/**
+ * Everything a vending machine can make the hardware do. Machines are given one of these instead of calling
+ * VendingMachineHardwareFunctions directly, so the output can be made asynchronous, or stubbed out for benchmarks and
+ * tests.
+ *
+ * Like the hardware functions, these do not check that the machine actually has what it is asked to dispense.
+ */
+public interface HardwareDriver {
+
+    void showMessage(String message);
+
+    void dispenseProduct(int productPosition, String productName);
+
+    void dispenseCoins(int cents, int count);
+}
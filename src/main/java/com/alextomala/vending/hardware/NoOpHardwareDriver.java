@@ -0,0 +1,23 @@
+package com.alextomala.vending.hardware;
+
+/**
+ * Ignores everything. For benchmarks, where the output would otherwise be what gets measured.
+ */
+public final class NoOpHardwareDriver implements HardwareDriver {
+    public static final NoOpHardwareDriver INSTANCE = new NoOpHardwareDriver();
+
+    private NoOpHardwareDriver() {
+    }
+
+    @Override
+    public void showMessage(String message) {
+    }
+
+    @Override
+    public void dispenseProduct(int productPosition, String productName) {
+    }
+
+    @Override
+    public void dispenseCoins(int cents, int count) {
+    }
+}
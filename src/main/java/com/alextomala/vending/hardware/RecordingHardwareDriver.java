@@ -0,0 +1,50 @@
+package com.alextomala.vending.hardware;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers every call in order, so tests can check what the machine did without mocking static functions.
+ *
+ * Each call is recorded as a line of text, for example "message No item in position 3", "product 1 Gum" or
+ * "coins 5 x 2". It is safe to use from more than one thread.
+ */
+public class RecordingHardwareDriver implements HardwareDriver {
+    private final List<String> events = new ArrayList<>();
+    private final Map<Integer, Integer> coinsDispensed = new HashMap<>();
+
+    @Override
+    public synchronized void showMessage(String message) {
+        events.add("message " + message);
+    }
+
+    @Override
+    public synchronized void dispenseProduct(int productPosition, String productName) {
+        events.add("product " + productPosition + " " + productName);
+    }
+
+    @Override
+    public synchronized void dispenseCoins(int cents, int count) {
+        events.add("coins " + cents + " x " + count);
+        coinsDispensed.merge(cents, count, Integer::sum);
+    }
+
+    public synchronized List<String> getEvents() {
+        return Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    /**
+     * The total number of coins worth this many cents handed out so far.
+     */
+    public synchronized int getCoinsDispensed(int cents) {
+        return coinsDispensed.getOrDefault(cents, 0);
+    }
+
+    public synchronized void clear() {
+        events.clear();
+        coinsDispensed.clear();
+    }
+}
@@ -0,0 +1,262 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.VendingMachine;
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.catalog.ProductCatalog;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.change.ChangeMaker;
+import com.alextomala.vending.change.OptimalChangeMaker;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.exception.PositionOccupiedException;
+import com.alextomala.vending.hardware.ConsoleHardwareDriver;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.pricing.PriceTable;
+import com.alextomala.vending.vault.PackedVault;
+
+import java.util.Map;
+
+/**
+ * A VendingMachine that can be used from many threads at once, for example an admin restocking change while
+ * customers are buying.
+ *
+ * There is no machine wide lock. Both vaults are PackedVaults, so every change to the coins is a single
+ * compare-and-set, and the catalog is read without a lock. A purchase takes all of the user's coins in one step, so a
+ * cancelOrder racing a buttonPress either gets the coins back or the product, never both.
+ *
+ * A sale is reserved, then committed once the product is out, or called off. Reserving takes one product from the
+ * slot's stock counter and the change out of the system vault, each with a compare-and-set, before anything is
+ * dispensed. If the change can't be made, the product goes back in the counter, the user keeps their money and nothing
+ * comes out. If the hardware fails to dispense the product, the change goes back in the vault as well. Only once the
+ * product is out do the user's coins go into the system vault. Customers buying from different slots never touch the
+ * same counter. Two customers racing for the last one get one sale and one sold out message, never two sales.
+ *
+ * The hardware driver is called from whichever thread made the sale, so it has to be thread safe. AsyncHardwareDriver
+ * is a good fit, since it also keeps the console output off the customers' threads.
+ *
+ * The user vault is shared by everyone at the machine. When each customer needs their own credit, as in a
+ * SessionServer, they hold their coins themselves and buy with buttonPress(position, coins, output) instead.
+ */
+public class ConcurrentVendingMachine implements VendingMachine {
+    private static final String NOT_ENOUGH_CHANGE_MESSAGE = "There was not enough change to dispense correctly.";
+
+    // What sell did.
+    private static final int SOLD = 0;
+    private static final int SOLD_OUT = 1;
+    private static final int NO_CHANGE = 2;
+
+    // The change maker doesn't change once it is built, so every machine can share one.
+    private static final ChangeMaker US_CHANGE_MAKER = new OptimalChangeMaker(DenominationRegistry.US_COINS.getValues());
+
+    private final DenominationRegistry registry;
+    private final PackedVault userVault;
+    private final PackedVault systemVault;
+
+    private final ProductCatalog catalog;
+    private final HardwareDriver hardware;
+
+    public ConcurrentVendingMachine() {
+        this(ConsoleHardwareDriver.INSTANCE);
+    }
+
+    public ConcurrentVendingMachine(HardwareDriver hardware) {
+        this(hardware, US_CHANGE_MAKER);
+    }
+
+    /**
+     * The change maker must be built for US_COINS, the only coins a PackedVault holds.
+     */
+    public ConcurrentVendingMachine(HardwareDriver hardware, ChangeMaker changeMaker) {
+        this.hardware = Preconditions.checkNotNull(hardware);
+        registry = DenominationRegistry.US_COINS;
+        userVault = new PackedVault();
+        systemVault = new PackedVault(changeMaker);
+
+        catalog = new ProductCatalog();
+    }
+
+    @Override
+    public void buttonPress(int productPosition) {
+        Product product = catalog.get(Preconditions.checkPositive(productPosition));
+        if (product != null) {
+            StockCounter stock = catalog.getStockCounter(productPosition);
+            int itemPrice = product.getPrice();
+            if (stock.get() == 0) {
+                hardware.showMessage(product.getSoldOutMessage());
+                return;
+            }
+            if (userVault.getTotalMoney() >= itemPrice) {
+                long userCoins = userVault.takeAll();
+                int userMoney = PackedVault.totalOf(userCoins);
+                if (userMoney >= itemPrice) {
+                    int result;
+                    try {
+                        result = sell(product, stock, userCoins, userMoney - itemPrice, hardware);
+                    } catch (RuntimeException e) {
+                        userVault.deposit(userCoins);
+                        throw e;
+                    }
+                    if (result != SOLD) {
+                        userVault.deposit(userCoins);
+                    }
+                    if (result == NO_CHANGE) {
+                        throw new NotEnoughChangeException(NOT_ENOUGH_CHANGE_MESSAGE);
+                    }
+                    return;
+                }
+                // Someone cancelled the order between the price check and taking the coins; give back what is left.
+                userVault.deposit(userCoins);
+            }
+            hardware.showMessage(product.getPriceMessage());
+        } else {
+            hardware.showMessage(catalog.getEmptyMessage(productPosition));
+        }
+    }
+
+    /**
+     * A button press by a customer who holds their own coins, in packed form, rather than putting them in the shared
+     * user vault. Everything the customer should see goes to their output instead of the machine's hardware.
+     *
+     * @return the coins the customer still holds: none after a sale, all of them otherwise.
+     * @throws NotEnoughChangeException if the change can't be made, in which case the customer keeps their coins. So
+     * do they if the output throws while dispensing the product.
+     */
+    public long buttonPress(int productPosition, long userCoins, HardwareDriver output) {
+        Product product = catalog.get(Preconditions.checkPositive(productPosition));
+        if (product == null) {
+            output.showMessage(catalog.getEmptyMessage(productPosition));
+            return userCoins;
+        }
+        StockCounter stock = catalog.getStockCounter(productPosition);
+        int itemPrice = product.getPrice();
+        int userMoney = PackedVault.totalOf(userCoins);
+        if (stock.get() == 0) {
+            output.showMessage(product.getSoldOutMessage());
+            return userCoins;
+        }
+        if (userMoney < itemPrice) {
+            output.showMessage(product.getPriceMessage());
+            return userCoins;
+        }
+        int result = sell(product, stock, userCoins, userMoney - itemPrice, output);
+        if (result == NO_CHANGE) {
+            throw new NotEnoughChangeException(NOT_ENOUGH_CHANGE_MESSAGE);
+        }
+        return result == SOLD ? 0L : userCoins;
+    }
+
+    /**
+     * Reserves a product from the slot and the change from the vault, dispenses the product, then commits. If the slot
+     * ran out, the change can't be made or the product doesn't come out, both reservations are undone and nothing has
+     * happened, apart from the sold out message.
+     */
+    private int sell(Product product, StockCounter stock, long userCoins, int changeDue, HardwareDriver output) {
+        if (!stock.tryTake()) {
+            // Someone else bought the last one since the stock was checked.
+            output.showMessage(product.getSoldOutMessage());
+            return SOLD_OUT;
+        }
+        long change = systemVault.reserveChange(userCoins, changeDue);
+        if (change == PackedVault.NO_CHANGE) {
+            stock.putBack();
+            return NO_CHANGE;
+        }
+        try {
+            output.dispenseProduct(product.getPosition(), product.getName());
+        } catch (RuntimeException e) {
+            systemVault.abortChange(userCoins, change);
+            stock.putBack();
+            throw e;
+        }
+        systemVault.commitChange(userCoins, change);
+        dispenseChange(change, output);
+        return SOLD;
+    }
+
+    /**
+     * Always US_COINS, the coins a PackedVault holds.
+     */
+    public DenominationRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public void addUserMoney(int cents) {
+        userVault.addMoney(cents);
+    }
+
+    @Override
+    public void cancelOrder() {
+        dispenseChange(userVault.takeAll(), hardware);
+    }
+
+    @Override
+    public void dispenseAllChange() {
+        dispenseChange(systemVault.takeAll(), hardware);
+    }
+
+    @Override
+    public void addProduct(Integer productPosition, Map<String, Object> productDetails) {
+        Preconditions.checkPositive(productPosition);
+        // The catalog checks the position is free again when adding, in case another admin got there first.
+        if (catalog.get(productPosition) != null) {
+            throw new PositionOccupiedException(String.format("Product position %d is already occupied", productPosition));
+        }
+        int quantity = ProductChecks.checkProductQuantity(productDetails);
+        catalog.add(ProductChecks.toProduct(productPosition, productDetails, registry.getSmallestUnit(), hardware),
+                quantity);
+    }
+
+    /**
+     * A customer who has already been told the old price may be charged the new one, the same as at a till.
+     */
+    @Override
+    public boolean reprice(PriceTable prices) {
+        return catalog.reprice(ProductChecks.checkPrices(Preconditions.checkNotNull(prices),
+                registry.getSmallestUnit()));
+    }
+
+    /**
+     * Restocking only adds to the slot's counter, so it can run while customers are buying from the same slot.
+     */
+    @Override
+    public void restock(int productPosition, int quantity) {
+        catalog.restock(productPosition, quantity);
+    }
+
+    @Override
+    public void restock(Map<Integer, Integer> quantities) {
+        catalog.restock(quantities);
+    }
+
+    @Override
+    public int getStock(int productPosition) {
+        return catalog.getStock(productPosition);
+    }
+
+    @Override
+    public Map<Integer, Integer> getInventory() {
+        return catalog.getInventory();
+    }
+
+    @Override
+    public void addChange(int numberOfNickels, int numberOfDimes, int numberOfQuarters) {
+        systemVault.deposit(PackedVault.pack(numberOfNickels, numberOfDimes, numberOfQuarters));
+    }
+
+    /**
+     * Hands packed coins out through the output, skipping any denomination there are none of.
+     */
+    public static void dispenseChange(long packedCoins, HardwareDriver output) {
+        dispenseCoins(5, PackedVault.nickelsOf(packedCoins), output);
+        dispenseCoins(10, PackedVault.dimesOf(packedCoins), output);
+        dispenseCoins(25, PackedVault.quartersOf(packedCoins), output);
+    }
+
+    private static void dispenseCoins(int cents, int count, HardwareDriver output) {
+        if (count > 0) {
+            output.dispenseCoins(cents, count);
+        }
+    }
+}
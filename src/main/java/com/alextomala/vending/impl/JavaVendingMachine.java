@@ -1,147 +1,707 @@
 package com.alextomala.vending.impl;
 
+import com.alextomala.vending.analytics.SaleListener;
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.catalog.ProductCatalog;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.change.ChangeAvailability;
+import com.alextomala.vending.change.ChangeMaker;
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.change.OptimalChangeMaker;
+import com.alextomala.vending.currency.Denomination;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.event.ChangeDispensed;
+import com.alextomala.vending.event.CommandRejected;
+import com.alextomala.vending.event.CreditChanged;
+import com.alextomala.vending.event.Event;
+import com.alextomala.vending.event.EventBuffer;
+import com.alextomala.vending.event.EventPublisher;
+import com.alextomala.vending.event.ProductDispensed;
+import com.alextomala.vending.event.ProductStocked;
+import com.alextomala.vending.event.SaleCompleted;
+import com.alextomala.vending.event.VaultLow;
 import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.pricing.PriceTable;
+import com.alextomala.vending.snapshot.MachineState;
 import com.alextomala.vending.vault.Vault;
 import com.alextomala.vending.VendingMachine;
-import com.alextomala.vending.VendingMachineHardwareFunctions;
-import com.alextomala.vending.exception.InvalidDenominationException;
 import com.alextomala.vending.exception.NotEnoughChangeException;
 import com.alextomala.vending.exception.PositionOccupiedException;
+import com.alextomala.vending.hardware.ConsoleHardwareDriver;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.metrics.MachineMetrics;
+import com.alextomala.vending.metrics.Operation;
+import com.alextomala.vending.metrics.TimedHardwareDriver;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.IntStream;
 
+/**
+ * The machine everything else is built around. It is single threaded, see ConcurrentVendingMachine for one that isn't.
+ *
+ * Change is worked out before a product comes out, so a sale either completes or leaves both vaults and the hardware
+ * untouched. The coins only move once the product is out, so if the hardware fails to dispense it the product goes back
+ * in the slot's count and the customer still has their credit.
+ *
+ * A bitset of the amounts the coins in the machine can pay is kept up to date as coins come and go, which lets a
+ * button press turn away a sale it can't give change for without running the change maker, and lets a coin going in
+ * warn "Exact change only", if that is turned on, when the customer can afford something the machine couldn't give
+ * change for.
+ */
 public class JavaVendingMachine implements VendingMachine {
+    static final String EXACT_CHANGE_ONLY_MESSAGE = "Exact change only";
+
+    /**
+     * A VaultLow event is sent when a denomination drops below this many coins, unless setVaultLowMark says otherwise.
+     */
+    public static final int DEFAULT_VAULT_LOW_MARK = 5;
+
+    // What startTimer returns for a call that isn't timed. System.nanoTime could return it, but never does in practice.
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    // The change maker doesn't change once it is built, so every machine taking dollars can share one.
+    private static final ChangeMaker US_CHANGE_MAKER = new OptimalChangeMaker(DenominationRegistry.US_COINS.getValues());
+
+    private final DenominationRegistry registry;
     private final Vault userVault;
     private final Vault systemVault;
+    private final ChangeMaker changeMaker;
+    // Covers the user's coins as well as the system's, since those go towards the change of a sale.
+    private final ChangeAvailability availability;
+    private final HardwareDriver hardware;
+    private final MachineMetrics metrics;
+    private final boolean timed;
+    // Calls of each operation so far, so one in MachineMetrics.SAMPLE_EVERY of them is timed.
+    private final int[] operationCalls;
+    private SaleListener saleListener;
+    private boolean warnExactChangeOnly;
 
-    Map<Integer, Map<String, Object>> items;
+    // The "Exact change only" answer for every amount of credit, worked out ahead: bit m is set when m of the smallest
+    // coin could buy an in-stock product whose change can't be paid. It is worked out again when the amounts the
+    // coins can pay or the products in stock change, which is far rarer than a coin going in.
+    private long[] shortOfChange;
+    private long shortOfChangePayable;
+    private boolean shortOfChangeStale;
+    private final EventPublisher publisher;
+    private int vaultLowMark;
+
+    // Where hardware output goes. This is the hardware, except in the middle of a batch.
+    private HardwareDriver output;
+    private final EventBuffer batchOutput;
+    private final HardwareDriver batchDriver;
+
+    // Scratch space for making change, so a sale doesn't allocate. This class is single threaded so one copy is enough.
+    private final int[] coinCounts;
+    private final int[] change;
+    private final int[] paid;
+
+    final ProductCatalog catalog;
 
     public JavaVendingMachine() {
-        userVault = new Vault();
-        systemVault = new Vault();
+        this(DenominationRegistry.US_COINS);
+    }
+
+    public JavaVendingMachine(HardwareDriver hardware) {
+        this(DenominationRegistry.US_COINS, US_CHANGE_MAKER, hardware);
+    }
+
+    public JavaVendingMachine(DenominationRegistry registry) {
+        this(registry, registry == DenominationRegistry.US_COINS
+                ? US_CHANGE_MAKER : new OptimalChangeMaker(registry.getValues()));
+    }
+
+    public JavaVendingMachine(DenominationRegistry registry, ChangeMaker changeMaker) {
+        this(registry, changeMaker, ConsoleHardwareDriver.INSTANCE);
+    }
+
+    public JavaVendingMachine(DenominationRegistry registry, ChangeMaker changeMaker, HardwareDriver hardware) {
+        this(registry, changeMaker, hardware, MachineMetrics.DISABLED);
+    }
+
+    /**
+     * The change maker must be built for the same denominations as the registry.
+     *
+     * The metrics should be new, they are given this machine's vault gauges.
+     */
+    public JavaVendingMachine(DenominationRegistry registry, ChangeMaker changeMaker, HardwareDriver hardware,
+                              MachineMetrics metrics) {
+        this.registry = Preconditions.checkNotNull(registry);
+        this.changeMaker = Preconditions.checkNotNull(changeMaker);
+        this.metrics = Preconditions.checkNotNull(metrics);
+        timed = metrics.isEnabled();
+        operationCalls = new int[timed ? Operation.values().length : 0];
+        this.hardware = timed ? new TimedHardwareDriver(hardware, metrics) : Preconditions.checkNotNull(hardware);
+        output = this.hardware;
+        batchOutput = new EventBuffer();
+        batchDriver = new BatchDriver();
+        userVault = new Vault(registry);
+        systemVault = new Vault(registry);
+        availability = new ChangeAvailability(registry);
+        coinCounts = new int[registry.size()];
+        change = new int[registry.size()];
+        paid = new int[registry.size()];
+        shortOfChange = new long[0];
+        shortOfChangeStale = true;
 
-        items = new HashMap<>();
+        catalog = new ProductCatalog();
+        saleListener = SaleListener.NONE;
+        publisher = new EventPublisher();
+        vaultLowMark = DEFAULT_VAULT_LOW_MARK;
+        registerGauges();
+    }
+
+    /**
+     * The gauges read the vaults from whichever thread takes the snapshot, so they can be a call or two behind.
+     */
+    private void registerGauges() {
+        metrics.registerGauge("vault.user.cents", userVault::getTotalMoney);
+        metrics.registerGauge("vault.system.cents", systemVault::getTotalMoney);
+        for (int i = 0; i < registry.size(); i++) {
+            int index = i;
+            metrics.registerGauge("vault.system.coins." + registry.getValue(i), () -> systemVault.getCount(index));
+        }
     }
 
     @Override
-    public void buttonPress(Integer productPosition) {
-        Map<String, Object> item = items.get(Preconditions.checkPositive(productPosition));
-        if (item != null) {
-            int itemPrice = (Integer) item.get("price");
-            int userMoney = userVault.getTotalMoney();
-            if (userMoney >= itemPrice) {
-                VendingMachineHardwareFunctions.dispenseProduct(productPosition, (String) item.get("name"));
-                addUserMoneyToSystemMoney();
-                dispenseChangeAfterSale(userMoney - itemPrice);
+    public void buttonPress(int productPosition) {
+        long start = startTimer(Operation.BUTTON_PRESS);
+        try {
+            Product product = catalog.get(Preconditions.checkPositive(productPosition));
+            if (product != null) {
+                StockCounter stock = catalog.getStockCounter(productPosition);
+                int itemPrice = product.getPrice();
+                int userMoney = userVault.getTotalMoney();
+                if (stock.get() == 0) {
+                    output.showMessage(product.getSoldOutMessage());
+                } else if (userMoney >= itemPrice) {
+                    makeChange(userMoney - itemPrice);
+                    // Only this thread sells from the machine, so the stock checked above is still there.
+                    stock.tryTake();
+                    if (stock.get() == 0) {
+                        shortOfChangeStale = true;
+                    }
+                    try {
+                        output.dispenseProduct(productPosition, product.getName());
+                    } catch (RuntimeException e) {
+                        // Nothing else has moved yet, so putting the product back calls the whole sale off.
+                        stock.putBack();
+                        throw e;
+                    }
+                    addUserMoneyToSystemMoney();
+                    metrics.recordSale(productPosition, itemPrice);
+                    saleListener.productSold(productPosition, itemPrice);
+                    if (publisher.hasSubscribers()) {
+                        publisher.publish(new SaleCompleted(productPosition, itemPrice));
+                    }
+                    dispenseChangeAfterSale();
+                    saleListener.coinsMoved(paid, change);
+                    if (publisher.hasSubscribers()) {
+                        publishChange(userMoney - itemPrice);
+                    }
+                } else {
+                    output.showMessage(product.getPriceMessage());
+                }
             } else {
-                String message = String.format("Item in position %d costs %d", productPosition, (Integer) item.get("price"));
-                VendingMachineHardwareFunctions.showMessage(message);
+                output.showMessage(catalog.getEmptyMessage(productPosition));
             }
-        } else {
-            String message = String.format("No item in position %d", productPosition);
-            VendingMachineHardwareFunctions.showMessage(message);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.BUTTON_PRESS, start);
         }
     }
 
+    /**
+     * Messages and coins for the whole batch are collected as they happen and handed to the hardware in one go at the
+     * end, in the order they happened. A product can't wait, because if it jams the sale has to be called off before
+     * the coins move, so it goes to the hardware during its button press, after everything collected before it. The
+     * output comes back as events, along with a CommandRejected for each command that threw and a DeliveryFailed for
+     * each event the hardware threw on at the end.
+     */
     @Override
-    public void addUserMoney(Integer cents) {
-        userVault.addMoney(cents);
+    public List<Event> apply(List<Command> commands) {
+        output = batchDriver;
+        try {
+            for (Command command : commands) {
+                try {
+                    command.applyTo(this);
+                } catch (RuntimeException e) {
+                    batchOutput.add(new CommandRejected(command, e));
+                }
+            }
+        } finally {
+            output = hardware;
+        }
+
+        batchOutput.deliverTo(hardware);
+        return batchOutput.take();
+    }
+
+    /**
+     * The output in the middle of a batch. See apply.
+     */
+    private final class BatchDriver implements HardwareDriver {
+        @Override
+        public void showMessage(String message) {
+            batchOutput.showMessage(message);
+        }
+
+        @Override
+        public void dispenseProduct(int productPosition, String productName) {
+            batchOutput.deliverTo(hardware);
+            hardware.dispenseProduct(productPosition, productName);
+            batchOutput.addDelivered(new ProductDispensed(productPosition, productName));
+        }
+
+        @Override
+        public void dispenseCoins(int cents, int count) {
+            batchOutput.dispenseCoins(cents, count);
+        }
+    }
+
+    @Override
+    public void addUserMoney(int cents) {
+        long start = startTimer(Operation.ADD_USER_MONEY);
+        try {
+            userVault.addMoney(cents);
+            availability.addCoins(registry.indexOf(cents), 1);
+            if (warnExactChangeOnly && !canGiveChangeForEverythingAffordable()) {
+                output.showMessage(EXACT_CHANGE_ONLY_MESSAGE);
+            }
+            if (publisher.hasSubscribers()) {
+                publisher.publish(new CreditChanged(userVault.getTotalMoney()));
+            }
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.ADD_USER_MONEY, start);
+        }
     }
 
     @Override
     public void cancelOrder() {
-        dispenseChange(userVault.getNickels(), userVault.getDimes(), userVault.getQuarters());
-        userVault.clearVault();
+        long start = startTimer(Operation.CANCEL_ORDER);
+        try {
+            int credit = userVault.getTotalMoney();
+            dispenseChange(userVault.getCounts(coinCounts));
+            userVault.clearVault();
+            removeFromAvailability(coinCounts);
+            if (credit > 0 && publisher.hasSubscribers()) {
+                publisher.publish(new ChangeDispensed(credit));
+                publisher.publish(new CreditChanged(0));
+            }
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.CANCEL_ORDER, start);
+        }
     }
 
     @Override
     public void dispenseAllChange() {
-        dispenseChange(systemVault.getNickels(), systemVault.getDimes(), systemVault.getQuarters());
-        systemVault.clearVault();
+        collectAllChange(coinCounts);
+    }
+
+    /**
+     * Admin Function - Empties the vault the same way as dispenseAllChange, and says what came out, so a cash
+     * collection can be checked against it. See CashCollection.
+     *
+     * @param collected filled in with the number of coins of each denomination taken out, indexed like the registry.
+     * @return the value of the coins taken out, in cents.
+     */
+    public int collectAllChange(int[] collected) {
+        long start = startTimer(Operation.DISPENSE_ALL_CHANGE);
+        try {
+            if (Preconditions.checkNotNull(collected).length != registry.size()) {
+                throw new IllegalArgumentException(String.format("There are %d denominations to count", registry.size()));
+            }
+            int total = systemVault.getTotalMoney();
+            dispenseChange(systemVault.getCounts(collected));
+            systemVault.clearVault();
+            removeFromAvailability(collected);
+            return total;
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.DISPENSE_ALL_CHANGE, start);
+        }
     }
 
     private void addUserMoneyToSystemMoney() {
-        addChange(userVault.getNickels(), userVault.getDimes(), userVault.getQuarters());
+        for (int i = 0; i < registry.size(); i++) {
+            paid[i] = userVault.getCount(i);
+            systemVault.add(i, paid[i]);
+        }
         userVault.clearVault();
     }
 
-    private void dispenseChangeAfterSale(Integer amountToDispense) {
-        Preconditions.checkPositive(amountToDispense);
+    /**
+     * Works out the change into the change array before anything moves, so a sale that can't be made leaves the
+     * machine as it was. The user's coins are counted in, since they go into the system vault before the change comes
+     * out.
+     */
+    private void makeChange(int amountToDispense) {
+        long start = startTimer(Operation.MAKE_CHANGE);
+        try {
+            Preconditions.checkPositive(amountToDispense);
+            for (int i = 0; i < coinCounts.length; i++) {
+                coinCounts[i] = systemVault.getCount(i) + userVault.getCount(i);
+            }
 
-        int quartersToDispense = Math.round(amountToDispense / 25);
-        int quartersRemoved = systemVault.removeQuarters(quartersToDispense);
-        amountToDispense -= quartersRemoved * 25;
+            // I wasn't sure what to do in this case, so I just threw an exception
+            if (!availability.canPay(amountToDispense)
+                    || !changeMaker.makeChange(amountToDispense, coinCounts, change)) {
+                throw new NotEnoughChangeException("There was not enough change to dispense correctly.");
+            }
+        } finally {
+            stopTimer(Operation.MAKE_CHANGE, start);
+        }
+    }
 
-        int dimesToDispense = Math.round(amountToDispense / 10);
-        int dimesRemoved = systemVault.removeDimes(dimesToDispense);
-        amountToDispense -= dimesRemoved * 10;
+    /**
+     * Hands out the change from makeChange. The change maker never asks for more than is available, so this always
+     * removes the full amount.
+     */
+    private void dispenseChangeAfterSale() {
+        for (int i = 0; i < change.length; i++) {
+            systemVault.remove(i, change[i]);
+        }
+        removeFromAvailability(change);
 
-        int nickelsToDispense = Math.round(amountToDispense / 5);
-        int nickelsRemoved = systemVault.removeNickels(nickelsToDispense);
-        amountToDispense -= nickelsRemoved * 5;
+        dispenseChange(change);
+    }
+
+    /**
+     * The events that follow a sale: the change, the customer's credit going to zero, and any denomination the change
+     * took below the low mark. Only called when someone is subscribed.
+     */
+    private void publishChange(int changeCents) {
+        if (changeCents > 0) {
+            publisher.publish(new ChangeDispensed(changeCents));
+        }
+        publisher.publish(new CreditChanged(0));
+        for (int i = 0; i < change.length; i++) {
+            int left = systemVault.getCount(i);
+            if (change[i] > 0 && left < vaultLowMark && left + change[i] >= vaultLowMark) {
+                publisher.publish(new VaultLow(registry.getValue(i), left));
+            }
+        }
+    }
+
+    /**
+     * Whether the machine could give change for every product the customer's money already covers. That is one bit of
+     * shortOfChange, so it is cheap enough for every coin.
+     */
+    private boolean canGiveChangeForEverythingAffordable() {
+        if (shortOfChangeStale || availability.getPayable() != shortOfChangePayable) {
+            findShortOfChange();
+        }
+        int units = userVault.getTotalMoney() / registry.getSmallestUnit();
+        return units >>> 6 >= shortOfChange.length || (shortOfChange[units >>> 6] & (1L << units)) == 0;
+    }
+
+    /**
+     * Change of k of the smallest coin that can't be paid is a gap in the payable bits, so every in-stock product
+     * priced at p of them leaves the customer short at p + k. That is the gaps shifted up by the price, for each
+     * product. Change past the limit is left to the change maker, the same as ChangeAvailability.canPay does.
+     */
+    private void findShortOfChange() {
+        int unit = registry.getSmallestUnit();
+        int highest = -1;
+        for (int position = 0; position <= catalog.getLastPosition(); position++) {
+            Product product = catalog.get(position);
+            if (product != null && catalog.getStock(position) != 0) {
+                highest = Math.max(highest, product.getPrice() / unit);
+            }
+        }
+        int words = highest < 0 ? 0 : (highest >>> 6) + 2;
+        if (shortOfChange.length < words) {
+            shortOfChange = new long[words];
+        } else {
+            Arrays.fill(shortOfChange, 0L);
+        }
 
-        // I wasn't sure what to do in this case, so I just threw an exception
-        if (amountToDispense != 0) {
-            throw new NotEnoughChangeException("There was not enough change to dispense correctly.");
+        long gaps = ~availability.getPayable();
+        for (int position = 0; position <= catalog.getLastPosition(); position++) {
+            Product product = catalog.get(position);
+            if (product != null && catalog.getStock(position) != 0) {
+                int price = product.getPrice() / unit;
+                int shift = price & 63;
+                shortOfChange[price >>> 6] |= gaps << shift;
+                if (shift != 0) {
+                    shortOfChange[(price >>> 6) + 1] |= gaps >>> (64 - shift);
+                }
+            }
         }
+        shortOfChangePayable = availability.getPayable();
+        shortOfChangeStale = false;
+    }
 
-        dispenseChange(nickelsRemoved, dimesRemoved, quartersRemoved);
+    private void removeFromAvailability(int[] coins) {
+        for (int i = 0; i < coins.length; i++) {
+            if (coins[i] > 0) {
+                availability.removeCoins(i, coins[i]);
+            }
+        }
     }
 
+    /**
+     * The product details map is checked and turned into a Product here, once, so a button press never has to look
+     * inside it.
+     */
     @Override
     public void addProduct(Integer productPosition, Map<String, Object> productDetails) {
-        checkProductPosition(productPosition);
-        checkProductPrice(productDetails);
-        checkProductName(productDetails);
+        long start = startTimer(Operation.ADD_PRODUCT);
+        try {
+            checkProductPosition(productPosition);
+            int quantity = ProductChecks.checkProductQuantity(productDetails);
+            catalog.add(ProductChecks.toProduct(productPosition, productDetails, registry.getSmallestUnit(), output),
+                    quantity);
+            shortOfChangeStale = true;
+            if (publisher.hasSubscribers()) {
+                publisher.publish(new ProductStocked(productPosition, quantity));
+            }
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.ADD_PRODUCT, start);
+        }
+    }
+
+    @Override
+    public void restock(int productPosition, int quantity) {
+        long start = startTimer(Operation.RESTOCK);
+        try {
+            catalog.restock(productPosition, quantity);
+            shortOfChangeStale = true;
+            if (publisher.hasSubscribers()) {
+                publisher.publish(new ProductStocked(productPosition, catalog.getStock(productPosition)));
+            }
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.RESTOCK, start);
+        }
+    }
+
+    @Override
+    public boolean reprice(PriceTable prices) {
+        long start = startTimer(Operation.REPRICE);
+        try {
+            boolean repriced = catalog.reprice(ProductChecks.checkPrices(Preconditions.checkNotNull(prices),
+                    registry.getSmallestUnit()));
+            shortOfChangeStale |= repriced;
+            return repriced;
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.REPRICE, start);
+        }
+    }
+
+    @Override
+    public void restock(Map<Integer, Integer> quantities) {
+        long start = startTimer(Operation.RESTOCK);
+        try {
+            catalog.restock(quantities);
+            shortOfChangeStale = true;
+            if (publisher.hasSubscribers()) {
+                for (Integer position : quantities.keySet()) {
+                    publisher.publish(new ProductStocked(position, catalog.getStock(position)));
+                }
+            }
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.RESTOCK, start);
+        }
+    }
 
-        items.put(productPosition, productDetails);
+    @Override
+    public int getStock(int productPosition) {
+        return catalog.getStock(productPosition);
+    }
+
+    @Override
+    public Map<Integer, Integer> getInventory() {
+        return catalog.getInventory();
     }
 
     private void checkProductPosition(Integer productPosition) {
-        Map<String, Object> item = items.get(Preconditions.checkPositive(productPosition));
-        if (item != null) {
+        Product product = catalog.get(Preconditions.checkPositive(productPosition));
+        if (product != null) {
             throw new PositionOccupiedException(String.format("Product position %d is already occupied", productPosition));
         }
     }
 
+    @Override
+    public void addChange(int numberOfNickels, int numberOfDimes, int numberOfQuarters) {
+        long start = startTimer(Operation.ADD_CHANGE);
+        try {
+            Preconditions.checkPositive(numberOfNickels);
+            Preconditions.checkPositive(numberOfDimes);
+            Preconditions.checkPositive(numberOfQuarters);
+
+            // All three are looked up first, so a machine that doesn't take one of them adds none of the coins.
+            int nickel = registry.checkedIndexOf(5);
+            int dime = registry.checkedIndexOf(10);
+            int quarter = registry.checkedIndexOf(25);
+            systemVault.add(nickel, numberOfNickels);
+            systemVault.add(dime, numberOfDimes);
+            systemVault.add(quarter, numberOfQuarters);
+            availability.addCoins(nickel, numberOfNickels);
+            availability.addCoins(dime, numberOfDimes);
+            availability.addCoins(quarter, numberOfQuarters);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.ADD_CHANGE, start);
+        }
+    }
+
     /**
-     * The product price is checked against %5 because the smallest denomination we know of is a nickel.
+     * Admin Function - Adds coins of any denomination the machine takes, for currencies other than dollars.
+     */
+    public void addChange(Denomination denomination, int numberOfCoins) {
+        long start = startTimer(Operation.ADD_CHANGE);
+        try {
+            systemVault.add(denomination, numberOfCoins);
+            availability.addCoins(registry.indexOf(denomination), numberOfCoins);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(e);
+            throw e;
+        } finally {
+            stopTimer(Operation.ADD_CHANGE, start);
+        }
+    }
+
+    public MachineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Where to subscribe to this machine's sales, credit, change, low vault and stock events, instead of polling it.
+     * Delivery happens on the common fork/join pool, never on the thread that runs the machine.
+     */
+    public EventPublisher getEventPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Sets the number of coins of a denomination below which a sale sends a VaultLow event. Zero turns it off.
+     */
+    public void setVaultLowMark(int coins) {
+        this.vaultLowMark = Preconditions.checkPositive(coins);
+    }
+
+    /**
+     * Replaces the listener told about every sale, SaleListener.NONE to stop. Set it before the machine starts
+     * selling, or from the thread that runs it.
+     */
+    public void setSaleListener(SaleListener saleListener) {
+        this.saleListener = Preconditions.checkNotNull(saleListener);
+    }
+
+    /**
+     * Turns on the "Exact change only" message, shown when a coin goes in and the customer can now afford something
+     * the machine couldn't give change for. It is off unless asked for, since a machine that has just been filled with
+     * products and no coins would show it for nearly every coin.
+     */
+    public void setWarnExactChangeOnly(boolean warnExactChangeOnly) {
+        this.warnExactChangeOnly = warnExactChangeOnly;
+    }
+
+    /**
+     * The clock is only read when metrics are on, and then only for the calls that are sampled.
      *
-     * If this was going to be extended, I would add a getSmallestDenomination() function to the Denomination Enum.
+     * @return the time the call started, or NOT_TIMED.
      */
-    private Integer checkProductPrice(Map<String, Object> productDetails) {
-        Object price = productDetails.get("price");
-        if (price != null && price instanceof Integer && (Integer) price > 0 && (Integer) price % 5 == 0) {
-            return (Integer) price;
-        } else {
-            throw new InvalidDenominationException("Price was not in a valid format");
+    private long startTimer(Operation operation) {
+        if (timed && (operationCalls[operation.ordinal()]++ & (MachineMetrics.SAMPLE_EVERY - 1)) == 0) {
+            return System.nanoTime();
         }
+        return NOT_TIMED;
     }
 
-    private Optional<String> checkProductName(Map<String, Object> productDetails) {
-        Object name = productDetails.get("name");
-        if (name != null && name instanceof String && ((String) name).length() > 0) {
-            return Optional.of((String) name);
-        } else {
-            String message = String.format("Product name is missing for product %s", productDetails);
-            VendingMachineHardwareFunctions.showMessage(message);
-            return Optional.empty();
+    private void stopTimer(Operation operation, long start) {
+        if (timed) {
+            if (start == NOT_TIMED) {
+                metrics.count(operation);
+            } else {
+                metrics.record(operation, System.nanoTime() - start);
+            }
         }
     }
 
-    @Override
-    public void addChange(Integer numberOfNickels, Integer numberOfDimes, Integer numberOfQuarters) {
-        IntStream.rangeClosed(1, Preconditions.checkPositive(numberOfNickels)).forEach(nickel -> systemVault.addNickel());
-        IntStream.rangeClosed(1, Preconditions.checkPositive(numberOfDimes)).forEach(nickel -> systemVault.addDime());
-        IntStream.rangeClosed(1, Preconditions.checkPositive(numberOfQuarters)).forEach(nickel -> systemVault.addQuarter());
+    /**
+     * The counts are in registry order. Each denomination is one call to the hardware, however many coins there are.
+     */
+    private void dispenseChange(int[] coins) {
+        for (int i = 0; i < coins.length; i++) {
+            if (coins[i] > 0) {
+                output.dispenseCoins(registry.getValue(i), coins[i]);
+            }
+        }
     }
 
-    private void dispenseChange(Integer nickels, Integer dimes, Integer quarters) {
-        IntStream.rangeClosed(1, nickels).forEach(nickel -> VendingMachineHardwareFunctions.dispenseNickel());
-        IntStream.rangeClosed(1, dimes).forEach(dime -> VendingMachineHardwareFunctions.dispenseDime());
-        IntStream.rangeClosed(1, quarters).forEach(dime -> VendingMachineHardwareFunctions.dispenseQuarter());
+    public DenominationRegistry getRegistry() {
+        return registry;
+    }
+
+    public ChangeMaker getChangeMaker() {
+        return changeMaker;
+    }
+
+    /**
+     * @return the product in the position, or null if the position is empty.
+     */
+    public Product getProduct(int productPosition) {
+        return catalog.get(productPosition);
+    }
+
+    /**
+     * A copy of the coins, products, stock and price version in the machine, for saving and moving machines around.
+     */
+    public MachineState exportState() {
+        List<Product> products = catalog.getProducts();
+        int[] stock = new int[products.size()];
+        for (int i = 0; i < stock.length; i++) {
+            stock[i] = catalog.getStock(products.get(i).getPosition());
+        }
+        return new MachineState(registry.getValues(), userVault.getCounts(new int[registry.size()]),
+                systemVault.getCounts(new int[registry.size()]), products, stock, catalog.getPriceVersion());
+    }
+
+    /**
+     * Replaces everything in the machine with the state. Nothing is dispensed, the coins and products are just there.
+     */
+    public void restoreState(MachineState state) {
+        if (!Arrays.equals(Preconditions.checkNotNull(state).getDenominations(), registry.getValues())) {
+            throw new IllegalArgumentException(String.format("The machine state is not for %s coins", registry.getCurrencyCode()));
+        }
+
+        int[] userCoins = state.getUserCoins();
+        int[] systemCoins = state.getSystemCoins();
+        userVault.clearVault();
+        systemVault.clearVault();
+        for (int i = 0; i < registry.size(); i++) {
+            userVault.add(i, userCoins[i]);
+            systemVault.add(i, systemCoins[i]);
+            coinCounts[i] = userCoins[i] + systemCoins[i];
+        }
+        availability.reset(coinCounts);
+
+        catalog.replaceAll(state.getProducts(), state.getStock(), state.getPriceVersion());
+        shortOfChangeStale = true;
     }
 }
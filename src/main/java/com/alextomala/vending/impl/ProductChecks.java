@@ -0,0 +1,81 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.pricing.PriceTable;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The product detail checks shared by the vending machine implementations.
+ */
+final class ProductChecks {
+
+    private ProductChecks() {
+    }
+
+    /**
+     * Checks the legacy product details map and turns it into a Product. This is the only place the map is read.
+     */
+    static Product toProduct(Integer productPosition, Map<String, Object> productDetails, int smallestUnit,
+                             HardwareDriver hardware) {
+        int price = checkProductPrice(productDetails, smallestUnit);
+        String name = checkProductName(productDetails, hardware).orElse(null);
+        return new Product(productPosition, price, name);
+    }
+
+    /**
+     * The product price has to be a multiple of the smallest unit of the currency, otherwise there would be no way to
+     * give exact change. For nickels, dimes and quarters that is 5.
+     */
+    static Integer checkProductPrice(Map<String, Object> productDetails, int smallestUnit) {
+        Object price = productDetails.get("price");
+        if (price != null && price instanceof Integer && (Integer) price > 0 && (Integer) price % smallestUnit == 0) {
+            return (Integer) price;
+        } else {
+            throw new InvalidDenominationException("Price was not in a valid format");
+        }
+    }
+
+    /**
+     * The same check for every price in a table, made before any of them is applied.
+     */
+    static PriceTable checkPrices(PriceTable prices, int smallestUnit) {
+        for (int position = 0; position <= prices.getLastPosition(); position++) {
+            int price = prices.getPrice(position);
+            if (price != PriceTable.NO_PRICE && price % smallestUnit != 0) {
+                throw new InvalidDenominationException("Price was not in a valid format");
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * The quantity is optional. Without one the product never runs out, which is how every product worked before there
+     * were stock counts.
+     */
+    static int checkProductQuantity(Map<String, Object> productDetails) {
+        Object quantity = productDetails.get("quantity");
+        if (quantity == null) {
+            return StockCounter.UNLIMITED;
+        } else if (quantity instanceof Integer && (Integer) quantity >= 0) {
+            return (Integer) quantity;
+        } else {
+            throw new IllegalArgumentException("Quantity was not in a valid format");
+        }
+    }
+
+    static Optional<String> checkProductName(Map<String, Object> productDetails, HardwareDriver hardware) {
+        Object name = productDetails.get("name");
+        if (name != null && name instanceof String && ((String) name).length() > 0) {
+            return Optional.of((String) name);
+        } else {
+            String message = String.format("Product name is missing for product %s", productDetails);
+            hardware.showMessage(message);
+            return Optional.empty();
+        }
+    }
+}
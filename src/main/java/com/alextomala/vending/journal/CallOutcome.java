@@ -0,0 +1,58 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.exception.PositionEmptyException;
+import com.alextomala.vending.exception.PositionOccupiedException;
+
+/**
+ * How a recorded call ended. Only the kind of exception is kept, not the message, so a replay matches as long as the
+ * machine refused the call for the same reason.
+ */
+public enum CallOutcome {
+    OK,
+    /**
+     * reprice returned false, the machine already had those prices or later ones.
+     */
+    UNCHANGED,
+    NOT_ENOUGH_CHANGE,
+    INVALID_DENOMINATION,
+    POSITION_OCCUPIED,
+    POSITION_EMPTY,
+    ILLEGAL_ARGUMENT,
+    OTHER_FAILURE,
+    /**
+     * The hardware threw. Only a recorder with a HardwareTap can tell, and the record has which of the call's hardware
+     * calls it was after the outcome.
+     */
+    HARDWARE_FAILURE;
+
+    private static final CallOutcome[] OUTCOMES = values();
+
+    public static CallOutcome of(RuntimeException e) {
+        if (e instanceof NotEnoughChangeException) {
+            return NOT_ENOUGH_CHANGE;
+        } else if (e instanceof InvalidDenominationException) {
+            return INVALID_DENOMINATION;
+        } else if (e instanceof PositionOccupiedException) {
+            return POSITION_OCCUPIED;
+        } else if (e instanceof PositionEmptyException) {
+            return POSITION_EMPTY;
+        } else if (e instanceof IllegalArgumentException) {
+            return ILLEGAL_ARGUMENT;
+        } else {
+            return OTHER_FAILURE;
+        }
+    }
+
+    static CallOutcome fromCode(byte code) {
+        if (code < 0 || code >= OUTCOMES.length) {
+            throw new IllegalStateException(String.format("Unknown call outcome %d", code));
+        }
+        return OUTCOMES[code];
+    }
+
+    byte code() {
+        return (byte) ordinal();
+    }
+}
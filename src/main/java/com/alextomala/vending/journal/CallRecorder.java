@@ -0,0 +1,501 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.VendingMachine;
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.currency.Denomination;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.pricing.PriceTable;
+import com.alextomala.vending.snapshot.MachineState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records every call made to a JavaVendingMachine, with its arguments and how it ended, so that whatever a machine in
+ * the field did can be done again with CallReplayer.
+ *
+ * This is not the TransactionJournal. The journal only has to rebuild the machine, so it leaves out calls that failed
+ * and turns addProduct into the Product that was made. Here the point is to find out why a machine went wrong, so the
+ * failed calls are kept, the product details go in as they were given, and each call is followed by its CallOutcome.
+ * Every so often, and on close, the recorder also writes down the whole machine state, which the replay checks its own
+ * machine against. The record types and payloads are the journal's wherever a call has a journal record.
+ *
+ * The file starts with a header (magic, version, the currency code, and the name and value of every denomination).
+ * Each record after that is:
+ *
+ *   byte type, payload, byte outcome
+ *
+ * and for a HARDWARE_FAILURE outcome, an int for which of the call's hardware calls threw. That needs the machine's
+ * hardware to go through a HardwareTap the recorder is given. Without one, a jam is recorded as OTHER_FAILURE and a
+ * replay, which has no hardware to jam, can't make the call fail the same way.
+ *
+ * There are no sizes or checksums, the records are read back in order and nothing else ever reads the file. Records
+ * are collected in a buffer and written out when it fills up, so recording a call costs a few puts and no system call.
+ * A recording that wasn't closed loses whatever was still in the buffer.
+ *
+ * Like the machine, it may only be used by one thread at a time.
+ */
+public class CallRecorder implements VendingMachine, Closeable {
+    public static final int DEFAULT_CHECKPOINT_EVERY = 65536;
+
+    static final int MAGIC = 0x564a4352;
+    static final int VERSION = 1;
+
+    static final byte ADD_PRODUCT_DETAILS = 20;
+    static final byte RESTOCK_ALL = 21;
+    static final byte COLLECT_ALL_CHANGE = 22;
+    static final byte STATE = 23;
+
+    static final byte VALUE_NULL = 0;
+    static final byte VALUE_INTEGER = 1;
+    static final byte VALUE_STRING = 2;
+    /**
+     * Anything else. The machine doesn't take anything but integers and strings, so the value itself doesn't matter,
+     * only that it is there.
+     */
+    static final byte VALUE_OTHER = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final JavaVendingMachine machine;
+    private final HardwareTap tap;
+    private final FileChannel channel;
+    private final int checkpointEvery;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private int sinceCheckpoint;
+    private boolean closed;
+
+    public CallRecorder(Path file, JavaVendingMachine machine) throws IOException {
+        this(file, machine, DEFAULT_CHECKPOINT_EVERY);
+    }
+
+    /**
+     * Anything already in the file is replaced. The machine's state when recording starts is the first checkpoint, so
+     * the replay can start from a machine that already had coins and products in it.
+     *
+     * @param checkpointEvery how many calls to record between checkpoints of the machine state.
+     */
+    public CallRecorder(Path file, JavaVendingMachine machine, int checkpointEvery) throws IOException {
+        this(file, machine, null, checkpointEvery);
+    }
+
+    /**
+     * @param tap the tap the machine's hardware goes through, so hardware failures are recorded as such. Null if
+     *            there isn't one.
+     */
+    public CallRecorder(Path file, JavaVendingMachine machine, HardwareTap tap, int checkpointEvery)
+            throws IOException {
+        this.machine = Preconditions.checkNotNull(machine);
+        this.tap = tap;
+        if (Preconditions.checkPositive(checkpointEvery) == 0) {
+            throw new IllegalArgumentException("checkpointEvery has to be at least one");
+        }
+        this.checkpointEvery = checkpointEvery;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        DenominationRegistry registry = machine.getRegistry();
+        byte[] currencyCode = registry.getCurrencyCode().getBytes(StandardCharsets.UTF_8);
+        reserve(16 + currencyCode.length);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        putBytes(currencyCode);
+        buffer.putInt(registry.size());
+        for (int i = 0; i < registry.size(); i++) {
+            Denomination denomination = registry.get(i);
+            byte[] name = denomination.getName().getBytes(StandardCharsets.UTF_8);
+            reserve(8 + name.length);
+            putBytes(name);
+            buffer.putInt(denomination.getValue());
+        }
+        checkpoint();
+    }
+
+    @Override
+    public void buttonPress(int productPosition) {
+        begin(TransactionJournal.BUTTON_PRESS, 4);
+        buffer.putInt(productPosition);
+        try {
+            machine.buttonPress(productPosition);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    @Override
+    public void addUserMoney(int cents) {
+        begin(TransactionJournal.USER_MONEY, 4);
+        buffer.putInt(cents);
+        try {
+            machine.addUserMoney(cents);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    @Override
+    public void cancelOrder() {
+        begin(TransactionJournal.CANCEL_ORDER, 0);
+        try {
+            machine.cancelOrder();
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    /**
+     * The position can be null and the map can hold anything, so both are recorded as they are: a flag for whether
+     * there is a position, the number of entries (-1 for no map), then each key and a tagged value.
+     */
+    @Override
+    public void addProduct(Integer productPosition, Map<String, Object> productDetails) {
+        int size = 9;
+        int entries = -1;
+        byte[][] strings = null;
+        if (productDetails != null) {
+            entries = productDetails.size();
+            strings = new byte[entries * 2][];
+            int i = 0;
+            for (Map.Entry<String, Object> entry : productDetails.entrySet()) {
+                strings[i] = utf8(entry.getKey());
+                strings[i + 1] = entry.getValue() instanceof String ? utf8((String) entry.getValue()) : null;
+                size += 9 + length(strings[i]) + length(strings[i + 1]);
+                i += 2;
+            }
+        }
+
+        begin(ADD_PRODUCT_DETAILS, size);
+        putNullableInt(productPosition);
+        buffer.putInt(entries);
+        if (productDetails != null) {
+            int i = 0;
+            for (Map.Entry<String, Object> entry : productDetails.entrySet()) {
+                Object value = entry.getValue();
+                putBytes(strings[i]);
+                if (value == null) {
+                    buffer.put(VALUE_NULL);
+                } else if (value instanceof Integer) {
+                    buffer.put(VALUE_INTEGER);
+                    buffer.putInt((Integer) value);
+                } else if (value instanceof String) {
+                    buffer.put(VALUE_STRING);
+                    putBytes(strings[i + 1]);
+                } else {
+                    buffer.put(VALUE_OTHER);
+                }
+                i += 2;
+            }
+        }
+        try {
+            machine.addProduct(productPosition, productDetails);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    @Override
+    public void restock(int productPosition, int quantity) {
+        begin(TransactionJournal.RESTOCK, 8);
+        buffer.putInt(productPosition);
+        buffer.putInt(quantity);
+        try {
+            machine.restock(productPosition, quantity);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    /**
+     * The number of entries (-1 for no map), then a nullable position and quantity for each one, in the order the map
+     * gave them.
+     */
+    @Override
+    public void restock(Map<Integer, Integer> quantities) {
+        int entries = quantities == null ? -1 : quantities.size();
+        begin(RESTOCK_ALL, 4 + 10 * Math.max(entries, 0));
+        buffer.putInt(entries);
+        if (quantities != null) {
+            for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                putNullableInt(entry.getKey());
+                putNullableInt(entry.getValue());
+            }
+        }
+        try {
+            machine.restock(quantities);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    /**
+     * The same payload as the journal's, with a count of -1 for no table.
+     */
+    @Override
+    public boolean reprice(PriceTable prices) {
+        int count = -1;
+        if (prices != null) {
+            count = 0;
+            for (int position = 0; position <= prices.getLastPosition(); position++) {
+                if (prices.getPrice(position) != PriceTable.NO_PRICE) {
+                    count++;
+                }
+            }
+        }
+        begin(TransactionJournal.REPRICE, 12 + 8 * Math.max(count, 0));
+        buffer.putLong(prices == null ? 0 : prices.getVersion());
+        buffer.putInt(count);
+        if (prices != null) {
+            for (int position = 0; position <= prices.getLastPosition(); position++) {
+                if (prices.getPrice(position) != PriceTable.NO_PRICE) {
+                    buffer.putInt(position);
+                    buffer.putInt(prices.getPrice(position));
+                }
+            }
+        }
+        boolean repriced;
+        try {
+            repriced = machine.reprice(prices);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        end(repriced ? CallOutcome.OK : CallOutcome.UNCHANGED);
+        return repriced;
+    }
+
+    @Override
+    public int getStock(int productPosition) {
+        return machine.getStock(productPosition);
+    }
+
+    @Override
+    public Map<Integer, Integer> getInventory() {
+        return machine.getInventory();
+    }
+
+    @Override
+    public void addChange(int numberOfNickels, int numberOfDimes, int numberOfQuarters) {
+        begin(TransactionJournal.ADD_CHANGE, 12);
+        buffer.putInt(numberOfNickels);
+        buffer.putInt(numberOfDimes);
+        buffer.putInt(numberOfQuarters);
+        try {
+            machine.addChange(numberOfNickels, numberOfDimes, numberOfQuarters);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    public void addChange(Denomination denomination, int numberOfCoins) {
+        Preconditions.checkNotNull(denomination);
+        begin(TransactionJournal.ADD_COINS, 8);
+        buffer.putInt(denomination.getValue());
+        buffer.putInt(numberOfCoins);
+        try {
+            machine.addChange(denomination, numberOfCoins);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    @Override
+    public void dispenseAllChange() {
+        begin(TransactionJournal.DISPENSE_ALL_CHANGE, 0);
+        try {
+            machine.dispenseAllChange();
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+    }
+
+    /**
+     * Only the length of the array is recorded, what ends up in it comes from the vault.
+     */
+    public int collectAllChange(int[] collected) {
+        Preconditions.checkNotNull(collected);
+        begin(COLLECT_ALL_CHANGE, 4);
+        buffer.putInt(collected.length);
+        int total;
+        try {
+            total = machine.collectAllChange(collected);
+        } catch (RuntimeException e) {
+            throw failed(e);
+        }
+        succeeded();
+        return total;
+    }
+
+    public MachineState exportState() {
+        return machine.exportState();
+    }
+
+    /**
+     * Writes down the whole machine state now, on top of the ones written every checkpointEvery calls.
+     *
+     * The price version as a long, the user coins and system coins in the order of the denominations, then the number of
+     * products and the position, price, stock and name of each.
+     */
+    public void checkpoint() {
+        MachineState state = machine.exportState();
+        int[] userCoins = state.getUserCoins();
+        int[] systemCoins = state.getSystemCoins();
+        List<Product> products = state.getProducts();
+        int[] stock = state.getStock();
+
+        begin(STATE, 8 + 8 * userCoins.length + 4);
+        buffer.putLong(state.getPriceVersion());
+        for (int i = 0; i < userCoins.length; i++) {
+            buffer.putInt(userCoins[i]);
+            buffer.putInt(systemCoins[i]);
+        }
+        buffer.putInt(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            byte[] name = utf8(product.getName());
+            reserve(16 + length(name));
+            buffer.putInt(product.getPosition());
+            buffer.putInt(product.getPrice());
+            buffer.putInt(stock[i]);
+            putBytes(name);
+        }
+        sinceCheckpoint = 0;
+    }
+
+    /**
+     * Writes out everything recorded so far. The file isn't forced to disk, this is for a process that is about to
+     * stop, not for a host that is.
+     */
+    public void flush() {
+        if (closed) {
+            throw new IllegalStateException("The recorder is closed");
+        }
+        try {
+            write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a last checkpoint, so a replay checks the state the machine finished in.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            checkpoint();
+            write();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Room for the type, the payload, the outcome and a failed hardware call, so the call can't end up split across a
+     * write.
+     */
+    private void begin(byte type, int payloadSize) {
+        if (closed) {
+            throw new IllegalStateException("The recorder is closed");
+        }
+        reserve(payloadSize + 6);
+        buffer.put(type);
+        if (tap != null) {
+            tap.reset();
+        }
+    }
+
+    private RuntimeException failed(RuntimeException e) {
+        int hardwareCall = tap == null ? -1 : tap.failedAt(e);
+        if (hardwareCall < 0) {
+            end(CallOutcome.of(e));
+        } else {
+            buffer.put(CallOutcome.HARDWARE_FAILURE.code());
+            buffer.putInt(hardwareCall);
+            ended();
+        }
+        return e;
+    }
+
+    private void succeeded() {
+        end(CallOutcome.OK);
+    }
+
+    private void end(CallOutcome outcome) {
+        buffer.put(outcome.code());
+        ended();
+    }
+
+    private void ended() {
+        if (++sinceCheckpoint >= checkpointEvery) {
+            checkpoint();
+        }
+    }
+
+    private void reserve(int bytes) {
+        if (buffer.remaining() < bytes) {
+            try {
+                write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocate(bytes);
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putNullableInt(Integer value) {
+        buffer.put(value == null ? (byte) 0 : (byte) 1);
+        buffer.putInt(value == null ? 0 : value);
+    }
+
+    /**
+     * The length, -1 for null, and then the bytes.
+     */
+    private void putBytes(byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+}
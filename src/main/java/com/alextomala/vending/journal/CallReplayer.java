@@ -0,0 +1,398 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.change.OptimalChangeMaker;
+import com.alextomala.vending.currency.Denomination;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.pricing.PriceTable;
+import com.alextomala.vending.snapshot.MachineState;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Makes the calls in a CallRecorder file again, into a machine with no hardware, and checks that every call ends the
+ * way it did when it was recorded and that the machine goes through the same states.
+ *
+ * The machine replay() makes has a driver that throws on the hardware calls that threw when they were recorded, so a
+ * jammed product is put back and the coins stay where they were, like they did in the field. Only hardware failures
+ * recorded through a HardwareTap can be replayed.
+ *
+ * The file is mapped and read straight through. A button press or a coin is a few gets and the call itself, with no
+ * allocation, so a replay runs at several million calls a second (see CallReplayBenchmark). Calls that failed when
+ * they were recorded fail again here, and building those exceptions is most of the cost of a replay that has a lot of
+ * them.
+ *
+ * The first checkpoint in the file is the state the machine was in when recording started, and is loaded into the
+ * replay machine rather than checked. That includes the price version, so a price table refused when it was recorded
+ * is refused again.
+ */
+public class CallReplayer {
+    private final ByteBuffer buffer;
+    private final DenominationRegistry registry;
+    private final int recordsStart;
+
+    public CallReplayer(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 16 || buffer.getInt() != CallRecorder.MAGIC) {
+            throw new IOException(String.format("%s is not a recording of vending machine calls", file));
+        }
+        int version = buffer.getInt();
+        if (version != CallRecorder.VERSION) {
+            throw new IOException(String.format("%s is a version %d recording, only version %d can be read", file,
+                    version, CallRecorder.VERSION));
+        }
+        String currencyCode = getString(buffer);
+        Denomination[] denominations = new Denomination[buffer.getInt()];
+        for (int i = 0; i < denominations.length; i++) {
+            String name = getString(buffer);
+            denominations[i] = new Denomination(name, buffer.getInt());
+        }
+        registry = registryFor(currencyCode, denominations);
+        recordsStart = buffer.position();
+    }
+
+    /**
+     * The coins the recorded machine took.
+     */
+    public DenominationRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replays into a new machine for the recorded coins, with the change maker that machine gets by default.
+     */
+    public ReplayResult replay() {
+        ReplayedHardware hardware = new ReplayedHardware();
+        return replay(new JavaVendingMachine(registry, new OptimalChangeMaker(registry.getValues()), hardware),
+                hardware);
+    }
+
+    /**
+     * Replays into the machine, which has to take the same coins and make change the same way as the recorded one.
+     * Whatever is in it is replaced by the state at the start of the recording. It should have no hardware, or every
+     * coin and product comes out a second time. Since its hardware can't fail where the recorded one did, calls that
+     * were recorded as hardware failures don't match.
+     */
+    public ReplayResult replay(JavaVendingMachine machine) {
+        return replay(machine, null);
+    }
+
+    private ReplayResult replay(JavaVendingMachine machine, ReplayedHardware hardware) {
+        if (!Arrays.equals(Preconditions.checkNotNull(machine).getRegistry().getValues(), registry.getValues())) {
+            throw new IllegalArgumentException(String.format("The recording is for %s coins",
+                    registry.getCurrencyCode()));
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(recordsStart);
+        if (hardware != null) {
+            hardware.in = in;
+        }
+        long calls = 0;
+        long mismatchedOutcomes = 0;
+        long checkpoints = 0;
+        long mismatchedStates = 0;
+        String firstMismatch = null;
+        boolean truncated = false;
+        try {
+            while (in.hasRemaining()) {
+                byte type = in.get();
+                if (type == CallRecorder.STATE) {
+                    MachineState recorded = getState(in);
+                    if (checkpoints++ == 0) {
+                        machine.restoreState(recorded);
+                    } else {
+                        String difference = difference(recorded, machine.exportState());
+                        if (difference != null) {
+                            mismatchedStates++;
+                            if (firstMismatch == null) {
+                                firstMismatch = String.format("After call %d the state differs: %s", calls, difference);
+                            }
+                        }
+                    }
+                } else {
+                    CallOutcome outcome = call(type, in, machine, hardware);
+                    CallOutcome recorded = CallOutcome.fromCode(in.get());
+                    if (recorded == CallOutcome.HARDWARE_FAILURE) {
+                        in.getInt();
+                    }
+                    calls++;
+                    if (outcome != recorded) {
+                        mismatchedOutcomes++;
+                        if (firstMismatch == null) {
+                            firstMismatch = String.format("Call %d (record type %d) ended %s but was recorded as %s",
+                                    calls, type, outcome, recorded);
+                        }
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // The recording wasn't closed and stops part of the way through a record.
+            truncated = true;
+        }
+        return new ReplayResult(calls, mismatchedOutcomes, Math.max(checkpoints - 1, 0), mismatchedStates,
+                truncated, firstMismatch);
+    }
+
+    private CallOutcome call(byte type, ByteBuffer in, JavaVendingMachine machine, ReplayedHardware hardware) {
+        if (hardware != null) {
+            hardware.calls = 0;
+        }
+        try {
+            switch (type) {
+                case TransactionJournal.USER_MONEY:
+                    machine.addUserMoney(in.getInt());
+                    break;
+                case TransactionJournal.BUTTON_PRESS:
+                    machine.buttonPress(in.getInt());
+                    break;
+                case TransactionJournal.CANCEL_ORDER:
+                    machine.cancelOrder();
+                    break;
+                case TransactionJournal.DISPENSE_ALL_CHANGE:
+                    machine.dispenseAllChange();
+                    break;
+                case TransactionJournal.ADD_CHANGE:
+                    machine.addChange(in.getInt(), in.getInt(), in.getInt());
+                    break;
+                case TransactionJournal.ADD_COINS: {
+                    int value = in.getInt();
+                    int numberOfCoins = in.getInt();
+                    machine.addChange(registry.get(registry.checkedIndexOf(value)), numberOfCoins);
+                    break;
+                }
+                case TransactionJournal.RESTOCK:
+                    machine.restock(in.getInt(), in.getInt());
+                    break;
+                case TransactionJournal.REPRICE:
+                    return machine.reprice(getPriceTable(in)) ? CallOutcome.OK : CallOutcome.UNCHANGED;
+                case CallRecorder.ADD_PRODUCT_DETAILS: {
+                    Integer position = getNullableInt(in);
+                    machine.addProduct(position, getProductDetails(in));
+                    break;
+                }
+                case CallRecorder.RESTOCK_ALL:
+                    machine.restock(getQuantities(in));
+                    break;
+                case CallRecorder.COLLECT_ALL_CHANGE:
+                    machine.collectAllChange(new int[in.getInt()]);
+                    break;
+                default:
+                    throw broken(String.format("Unknown call record type %d", type));
+            }
+            return CallOutcome.OK;
+        } catch (BufferUnderflowException | UncheckedIOException e) {
+            // A broken recording, not something the machine did.
+            throw e;
+        } catch (RuntimeException e) {
+            return hardware != null && e == hardware.thrown ? CallOutcome.HARDWARE_FAILURE : CallOutcome.of(e);
+        }
+    }
+
+    /**
+     * Does nothing, except throw on the hardware call that threw when the call was recorded.
+     *
+     * The machine only calls the hardware once it has been called itself, and by then the call's arguments have all
+     * been read from the recording. So the next byte is the recorded outcome, and for a hardware failure the number
+     * of the hardware call that threw comes after it.
+     */
+    private static final class ReplayedHardware implements HardwareDriver {
+        private ByteBuffer in;
+        private int calls;
+        private RuntimeException thrown;
+
+        @Override
+        public void showMessage(String message) {
+            called();
+        }
+
+        @Override
+        public void dispenseProduct(int productPosition, String productName) {
+            called();
+        }
+
+        @Override
+        public void dispenseCoins(int cents, int count) {
+            called();
+        }
+
+        private void called() {
+            int call = calls++;
+            int outcome = in.position();
+            if (outcome + 5 <= in.limit() && in.get(outcome) == CallOutcome.HARDWARE_FAILURE.code()
+                    && in.getInt(outcome + 1) == call) {
+                thrown = new IllegalStateException("The hardware failed here when the call was recorded");
+                throw thrown;
+            }
+        }
+    }
+
+    /**
+     * Everything is read before the table is made, so a table the machine would refuse is still read to the end.
+     */
+    private static PriceTable getPriceTable(ByteBuffer in) {
+        long version = in.getLong();
+        int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        Map<Integer, Integer> prices = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            prices.put(in.getInt(), in.getInt());
+        }
+        return new PriceTable(version, prices);
+    }
+
+    private static Map<String, Object> getProductDetails(ByteBuffer in) {
+        int entries = in.getInt();
+        if (entries < 0) {
+            return null;
+        }
+        Map<String, Object> details = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            String key = getString(in);
+            byte tag = in.get();
+            switch (tag) {
+                case CallRecorder.VALUE_NULL:
+                    details.put(key, null);
+                    break;
+                case CallRecorder.VALUE_INTEGER:
+                    details.put(key, in.getInt());
+                    break;
+                case CallRecorder.VALUE_STRING:
+                    details.put(key, getString(in));
+                    break;
+                case CallRecorder.VALUE_OTHER:
+                    details.put(key, new Object());
+                    break;
+                default:
+                    throw broken(String.format("Unknown product detail tag %d", tag));
+            }
+        }
+        return details;
+    }
+
+    private static Map<Integer, Integer> getQuantities(ByteBuffer in) {
+        int entries = in.getInt();
+        if (entries < 0) {
+            return null;
+        }
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            Integer position = getNullableInt(in);
+            quantities.put(position, getNullableInt(in));
+        }
+        return quantities;
+    }
+
+    private MachineState getState(ByteBuffer in) {
+        long priceVersion = in.getLong();
+        int[] userCoins = new int[registry.size()];
+        int[] systemCoins = new int[registry.size()];
+        for (int i = 0; i < userCoins.length; i++) {
+            userCoins[i] = in.getInt();
+            systemCoins[i] = in.getInt();
+        }
+        List<Product> products = new ArrayList<>();
+        int[] stock = new int[in.getInt()];
+        for (int i = 0; i < stock.length; i++) {
+            int position = in.getInt();
+            int price = in.getInt();
+            stock[i] = in.getInt();
+            products.add(new Product(position, price, getString(in)));
+        }
+        return new MachineState(registry.getValues(), userCoins, systemCoins, products, stock, priceVersion);
+    }
+
+    /**
+     * @return what is different, or null if nothing is.
+     */
+    static String difference(MachineState expected, MachineState actual) {
+        if (expected.getPriceVersion() != actual.getPriceVersion()) {
+            return String.format("price version %d, expected %d", actual.getPriceVersion(), expected.getPriceVersion());
+        }
+        if (!Arrays.equals(expected.getUserCoins(), actual.getUserCoins())) {
+            return String.format("user coins %s, expected %s", Arrays.toString(actual.getUserCoins()),
+                    Arrays.toString(expected.getUserCoins()));
+        }
+        if (!Arrays.equals(expected.getSystemCoins(), actual.getSystemCoins())) {
+            return String.format("system coins %s, expected %s", Arrays.toString(actual.getSystemCoins()),
+                    Arrays.toString(expected.getSystemCoins()));
+        }
+        List<Product> expectedProducts = expected.getProducts();
+        List<Product> actualProducts = actual.getProducts();
+        int[] expectedStock = expected.getStock();
+        int[] actualStock = actual.getStock();
+        if (expectedProducts.size() != actualProducts.size()) {
+            return String.format("%d products, expected %d", actualProducts.size(), expectedProducts.size());
+        }
+        for (int i = 0; i < expectedProducts.size(); i++) {
+            Product e = expectedProducts.get(i);
+            Product a = actualProducts.get(i);
+            if (e.getPosition() != a.getPosition() || e.getPrice() != a.getPrice()
+                    || (e.getName() == null ? a.getName() != null : !e.getName().equals(a.getName()))
+                    || expectedStock[i] != actualStock[i]) {
+                return String.format("%s with %d left, expected %s with %d left", a, actualStock[i], e,
+                        expectedStock[i]);
+            }
+        }
+        return null;
+    }
+
+    private static DenominationRegistry registryFor(String currencyCode, Denomination[] denominations) {
+        for (DenominationRegistry known : new DenominationRegistry[]{DenominationRegistry.US_COINS,
+                DenominationRegistry.EURO_COINS}) {
+            if (known.getCurrencyCode().equals(currencyCode) && known.size() == denominations.length) {
+                boolean same = true;
+                for (int i = 0; i < denominations.length; i++) {
+                    same &= known.get(i).equals(denominations[i]);
+                }
+                if (same) {
+                    return known;
+                }
+            }
+        }
+        return new DenominationRegistry(currencyCode, denominations);
+    }
+
+    /**
+     * The machine never throws this, so it can be told apart from the failures that were recorded.
+     */
+    private static UncheckedIOException broken(String message) {
+        return new UncheckedIOException(new IOException(message));
+    }
+
+    private static Integer getNullableInt(ByteBuffer in) {
+        boolean present = in.get() != 0;
+        int value = in.getInt();
+        return present ? value : null;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
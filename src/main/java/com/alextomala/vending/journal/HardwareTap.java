@@ -0,0 +1,78 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * Sits between a machine and its hardware, so a CallRecorder can tell a call that failed because the hardware threw
+ * from one the machine refused, and which of the call's hardware calls it was. Build the machine with the tap and give
+ * the same tap to the recorder.
+ *
+ * Like the recorder, it may only be used by one thread at a time.
+ */
+public final class HardwareTap implements HardwareDriver {
+    private final HardwareDriver hardware;
+    private int calls;
+    private int failedAt;
+    private RuntimeException failure;
+
+    public HardwareTap(HardwareDriver hardware) {
+        this.hardware = Preconditions.checkNotNull(hardware);
+        reset();
+    }
+
+    @Override
+    public void showMessage(String message) {
+        int call = calls++;
+        try {
+            hardware.showMessage(message);
+        } catch (RuntimeException e) {
+            throw failed(call, e);
+        }
+    }
+
+    @Override
+    public void dispenseProduct(int productPosition, String productName) {
+        int call = calls++;
+        try {
+            hardware.dispenseProduct(productPosition, productName);
+        } catch (RuntimeException e) {
+            throw failed(call, e);
+        }
+    }
+
+    @Override
+    public void dispenseCoins(int cents, int count) {
+        int call = calls++;
+        try {
+            hardware.dispenseCoins(cents, count);
+        } catch (RuntimeException e) {
+            throw failed(call, e);
+        }
+    }
+
+    /**
+     * Starts counting again, for the next call into the machine.
+     */
+    void reset() {
+        calls = 0;
+        failedAt = -1;
+        failure = null;
+    }
+
+    /**
+     * @return which of the hardware calls since the reset threw e, counting from 0, or -1 if e didn't come from the
+     * hardware.
+     */
+    int failedAt(RuntimeException e) {
+        return failure == e ? failedAt : -1;
+    }
+
+    private RuntimeException failed(int call, RuntimeException e) {
+        if (failure == null) {
+            failedAt = call;
+            failure = e;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,75 @@
+package com.alextomala.vending.journal;
+
+/**
+ * How a replay of recorded calls went.
+ */
+public final class ReplayResult {
+    private final long calls;
+    private final long mismatchedOutcomes;
+    private final long checkpoints;
+    private final long mismatchedCheckpoints;
+    private final boolean truncated;
+    private final String firstMismatch;
+
+    ReplayResult(long calls, long mismatchedOutcomes, long checkpoints, long mismatchedCheckpoints, boolean truncated,
+                 String firstMismatch) {
+        this.calls = calls;
+        this.mismatchedOutcomes = mismatchedOutcomes;
+        this.checkpoints = checkpoints;
+        this.mismatchedCheckpoints = mismatchedCheckpoints;
+        this.truncated = truncated;
+        this.firstMismatch = firstMismatch;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Calls that ended differently from when they were recorded, like a sale that went through here but ran out of
+     * change on the real machine.
+     */
+    public long getMismatchedOutcomes() {
+        return mismatchedOutcomes;
+    }
+
+    /**
+     * How many recorded machine states were checked, not counting the one the replay started from.
+     */
+    public long getCheckpoints() {
+        return checkpoints;
+    }
+
+    public long getMismatchedCheckpoints() {
+        return mismatchedCheckpoints;
+    }
+
+    /**
+     * Whether the recording stopped part of the way through a record, because the recorder was never closed.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * What went wrong first, which is usually the only one worth looking at since everything after it is off as well.
+     * Null if nothing did.
+     */
+    public String getFirstMismatch() {
+        return firstMismatch;
+    }
+
+    /**
+     * Whether every call ended the way it was recorded and every checkpoint matched.
+     */
+    public boolean matches() {
+        return mismatchedOutcomes == 0 && mismatchedCheckpoints == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayResult{calls=" + calls + ", mismatchedOutcomes=" + mismatchedOutcomes + ", checkpoints="
+                + checkpoints + ", mismatchedCheckpoints=" + mismatchedCheckpoints + ", truncated=" + truncated
+                + ", firstMismatch=" + firstMismatch + "}";
+    }
+}
@@ -0,0 +1,454 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.pricing.PriceTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only log of every call that changes a JavaVendingMachine, kept in a memory mapped file.
+ *
+ * Appending a record is a handful of writes into the mapping, with no system call and no allocation. Once a record is
+ * in the mapping it survives the process dying, because the operating system owns those pages. Surviving the whole
+ * host going down needs the pages forced to disk, which takes tens of microseconds, so that is done for a group of
+ * records at once. A background thread forces the new records every syncIntervalMillis, and if syncEvery records pile
+ * up before it gets to them the appending thread forces them itself. Call sync to force everything right away.
+ *
+ * The file starts with a 16 byte header (magic, version, and the sequence number of the record just before the first
+ * one in the file). Each record after that is:
+ *
+ *   int size, int checksum, long sequence, byte type, payload
+ *
+ * Sequence numbers go up by one per record and carry on across reset, so a snapshot only has to remember the last
+ * sequence number it includes. The size is written last and a zero size follows the last record, so reading stops at
+ * the end of the log, and the checksum catches a record that was only half written when the host went down.
+ *
+ * Only one thread may append, it is meant to be used by a single machine.
+ */
+public class TransactionJournal implements Closeable {
+    public static final int DEFAULT_SYNC_EVERY = 65536;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+
+    static final byte USER_MONEY = 1;
+    static final byte BUTTON_PRESS = 2;
+    static final byte CANCEL_ORDER = 3;
+    static final byte DISPENSE_ALL_CHANGE = 4;
+    static final byte ADD_CHANGE = 5;
+    static final byte ADD_COINS = 6;
+    static final byte ADD_PRODUCT = 7;
+    static final byte RESTOCK = 8;
+    static final byte REPRICE = 9;
+
+    private static final int MAGIC = 0x564a524e;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 16;
+    private static final int RECORD_HEADER = 17;
+    private static final int INITIAL_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final int syncEvery;
+    private final ScheduledExecutorService syncer;
+
+    // Replaced when the file grows. The syncer has its own reference, so the appending thread can keep this one in a
+    // register.
+    private MappedByteBuffer buffer;
+    private volatile MappedByteBuffer syncBuffer;
+    private int position;
+    private long sequence;
+    private int unsynced;
+    private boolean closed;
+
+    // The last sequence number that is in the mapping, and the last one forced to disk.
+    private final AtomicLong written;
+    private final AtomicLong synced;
+
+    public TransactionJournal(Path file) throws IOException {
+        this(file, DEFAULT_SYNC_EVERY, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the journal, creating it if needed, and finds the end of the records already in it.
+     */
+    public TransactionJournal(Path file, int syncEvery, long syncIntervalMillis) throws IOException {
+        if (Preconditions.checkPositive(syncEvery) == 0) {
+            throw new IllegalArgumentException("syncEvery has to be at least one");
+        }
+        this.syncEvery = syncEvery;
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("syncIntervalMillis has to be at least one");
+        }
+
+        channel = FileChannel.open(Preconditions.checkNotNull(file), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long existingSize = channel.size();
+        if (existingSize > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException(String.format("%s is too big to be a journal", file));
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(existingSize, INITIAL_SIZE));
+
+        if (existingSize < FILE_HEADER) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, 0L);
+            buffer.putInt(FILE_HEADER, 0);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException(String.format("%s is not a transaction journal", file));
+        }
+
+        position = FILE_HEADER;
+        sequence = buffer.getLong(8);
+        for (int size = recordSize(position, sequence + 1); size > 0; size = recordSize(position, sequence + 1)) {
+            position += size;
+            sequence++;
+        }
+        syncBuffer = buffer;
+        written = new AtomicLong(sequence);
+        synced = new AtomicLong(sequence);
+
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-sync-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncWritten, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The sequence number of the last record written.
+     */
+    public long getLastSequence() {
+        return sequence;
+    }
+
+    /**
+     * The sequence number just before the first record in the file. Records up to this one were dropped by reset.
+     */
+    public long getBaseSequence() {
+        return buffer.getLong(8);
+    }
+
+    public void appendUserMoney(int cents) {
+        int payload = begin(USER_MONEY, 4);
+        buffer.putInt(payload, cents);
+        end(4);
+    }
+
+    public void appendButtonPress(int productPosition) {
+        int payload = begin(BUTTON_PRESS, 4);
+        buffer.putInt(payload, productPosition);
+        end(4);
+    }
+
+    public void appendCancelOrder() {
+        begin(CANCEL_ORDER, 0);
+        end(0);
+    }
+
+    public void appendDispenseAllChange() {
+        begin(DISPENSE_ALL_CHANGE, 0);
+        end(0);
+    }
+
+    public void appendAddChange(int numberOfNickels, int numberOfDimes, int numberOfQuarters) {
+        int payload = begin(ADD_CHANGE, 12);
+        buffer.putInt(payload, numberOfNickels);
+        buffer.putInt(payload + 4, numberOfDimes);
+        buffer.putInt(payload + 8, numberOfQuarters);
+        end(12);
+    }
+
+    /**
+     * Coins added with JavaVendingMachine.addChange(Denomination, int). The coin is stored by its value.
+     */
+    public void appendAddCoins(int denominationValue, int numberOfCoins) {
+        int payload = begin(ADD_COINS, 8);
+        buffer.putInt(payload, denominationValue);
+        buffer.putInt(payload + 4, numberOfCoins);
+        end(8);
+    }
+
+    /**
+     * The quantity (StockCounter.UNLIMITED for a product that never runs out), position, price, the length of the name
+     * in bytes (-1 for no name) and the name.
+     */
+    public void appendAddProduct(Product product, int quantity) {
+        byte[] name = product.getName() == null ? null : product.getName().getBytes(StandardCharsets.UTF_8);
+        int length = 16 + (name == null ? 0 : name.length);
+        int payload = begin(ADD_PRODUCT, length);
+        buffer.putInt(payload, quantity);
+        buffer.putInt(payload + 4, product.getPosition());
+        buffer.putInt(payload + 8, product.getPrice());
+        buffer.putInt(payload + 12, name == null ? -1 : name.length);
+        if (name != null) {
+            for (int i = 0; i < name.length; i++) {
+                buffer.put(payload + 16 + i, name[i]);
+            }
+        }
+        end(length);
+    }
+
+    public void appendRestock(int productPosition, int quantity) {
+        int payload = begin(RESTOCK, 8);
+        buffer.putInt(payload, productPosition);
+        buffer.putInt(payload + 4, quantity);
+        end(8);
+    }
+
+    /**
+     * The version, the number of prices, and then a position and price for each one.
+     */
+    public void appendReprice(PriceTable prices) {
+        int count = 0;
+        for (int position = 0; position <= prices.getLastPosition(); position++) {
+            if (prices.getPrice(position) != PriceTable.NO_PRICE) {
+                count++;
+            }
+        }
+        int length = 12 + 8 * count;
+        int payload = begin(REPRICE, length);
+        buffer.putLong(payload, prices.getVersion());
+        buffer.putInt(payload + 8, count);
+        int offset = payload + 12;
+        for (int position = 0; position <= prices.getLastPosition(); position++) {
+            if (prices.getPrice(position) != PriceTable.NO_PRICE) {
+                buffer.putInt(offset, position);
+                buffer.putInt(offset + 4, prices.getPrice(position));
+                offset += 8;
+            }
+        }
+        end(length);
+    }
+
+    /**
+     * Makes every record so far survive the host going down.
+     */
+    public void sync() {
+        unsynced = 0;
+        syncWritten();
+    }
+
+    /**
+     * Drops every record in the journal, once a snapshot holds everything up to the given sequence number. New records
+     * carry on numbering from there, overwriting the old ones.
+     *
+     * The reset is forced to disk along with the next group of records. Until then the old records are still there
+     * and are skipped because the snapshot already includes them.
+     */
+    public void reset(long lastSequenceInSnapshot) {
+        buffer.putInt(FILE_HEADER, 0);
+        buffer.putLong(8, lastSequenceInSnapshot);
+        position = FILE_HEADER;
+        sequence = lastSequenceInSnapshot;
+        unsynced = 0;
+        // The sequence number may have gone back to one that was already synced, so make sure the syncer sees a change.
+        synced.set(Long.MIN_VALUE);
+        written.set(sequence);
+    }
+
+    /**
+     * Calls the machine again for every record after the given sequence number.
+     *
+     * The calls are made exactly as they were the first time, against a machine in the same state, so a call that
+     * threw the first time throws the same way again. Those exceptions are expected and ignored.
+     *
+     * The machine should be using a hardware driver that does nothing, the coins and products went out the first time.
+     *
+     * @return the number of records replayed.
+     */
+    public long replay(long afterSequence, JavaVendingMachine machine) {
+        long replayed = 0;
+        int offset = FILE_HEADER;
+        long expected = getBaseSequence() + 1;
+        for (int size = recordSize(offset, expected); size > 0; size = recordSize(offset, expected)) {
+            if (expected > afterSequence) {
+                try {
+                    apply(offset, machine);
+                } catch (RuntimeException e) {
+                    // It failed the same way when it was first called.
+                }
+                replayed++;
+            }
+            offset += size;
+            expected++;
+        }
+        return replayed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            syncer.shutdown();
+            try {
+                syncer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sync();
+            channel.close();
+        }
+    }
+
+    /**
+     * Called by both threads. Forcing the mapping is thread safe, and forcing it twice does no harm.
+     */
+    private void syncWritten() {
+        long upTo = written.get();
+        if (upTo != synced.get()) {
+            syncBuffer.force();
+            synced.set(upTo);
+        }
+    }
+
+    private void apply(int offset, JavaVendingMachine machine) {
+        int payload = offset + RECORD_HEADER;
+        byte type = buffer.get(offset + 16);
+        switch (type) {
+            case USER_MONEY:
+                machine.addUserMoney(buffer.getInt(payload));
+                break;
+            case BUTTON_PRESS:
+                machine.buttonPress(buffer.getInt(payload));
+                break;
+            case CANCEL_ORDER:
+                machine.cancelOrder();
+                break;
+            case DISPENSE_ALL_CHANGE:
+                machine.dispenseAllChange();
+                break;
+            case ADD_CHANGE:
+                machine.addChange(buffer.getInt(payload), buffer.getInt(payload + 4), buffer.getInt(payload + 8));
+                break;
+            case ADD_COINS:
+                DenominationRegistry registry = machine.getRegistry();
+                machine.addChange(registry.get(registry.checkedIndexOf(buffer.getInt(payload))), buffer.getInt(payload + 4));
+                break;
+            case ADD_PRODUCT:
+                machine.addProduct(buffer.getInt(payload + 4), productDetails(payload));
+                break;
+            case RESTOCK:
+                machine.restock(buffer.getInt(payload), buffer.getInt(payload + 4));
+                break;
+            case REPRICE:
+                Map<Integer, Integer> prices = new HashMap<>();
+                for (int i = 0, count = buffer.getInt(payload + 8); i < count; i++) {
+                    prices.put(buffer.getInt(payload + 12 + 8 * i), buffer.getInt(payload + 16 + 8 * i));
+                }
+                machine.reprice(new PriceTable(buffer.getLong(payload), prices));
+                break;
+            default:
+                throw new IllegalStateException(String.format("Unknown journal record type %d", type));
+        }
+    }
+
+    private Map<String, Object> productDetails(int payload) {
+        Map<String, Object> details = new HashMap<>();
+        int quantity = buffer.getInt(payload);
+        if (quantity != StockCounter.UNLIMITED) {
+            details.put("quantity", quantity);
+        }
+        details.put("price", buffer.getInt(payload + 8));
+        int nameLength = buffer.getInt(payload + 12);
+        if (nameLength >= 0) {
+            byte[] name = new byte[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                name[i] = buffer.get(payload + 16 + i);
+            }
+            details.put("name", new String(name, StandardCharsets.UTF_8));
+        }
+        return details;
+    }
+
+    /**
+     * @return the offset of the payload.
+     */
+    private int begin(byte type, int payloadSize) {
+        if (closed) {
+            throw new IllegalStateException("The journal is closed");
+        }
+        // Room for the zero size that marks the end as well.
+        ensureCapacity(RECORD_HEADER + payloadSize + 4);
+        buffer.putLong(position + 8, sequence + 1);
+        buffer.put(position + 16, type);
+        return position + RECORD_HEADER;
+    }
+
+    private void end(int payloadSize) {
+        int size = RECORD_HEADER + payloadSize;
+        buffer.putInt(position + size, 0);
+        buffer.putInt(position + 4, checksum(position + 8, position + size));
+        buffer.putInt(position, size);
+        position += size;
+        sequence++;
+        written.lazySet(sequence);
+
+        if (++unsynced >= syncEvery) {
+            sync();
+        }
+    }
+
+    /**
+     * @return the size of the record at the offset, or 0 if there isn't a complete record with this sequence number.
+     */
+    private int recordSize(int offset, long expectedSequence) {
+        if (offset > buffer.capacity() - RECORD_HEADER) {
+            return 0;
+        }
+        int size = buffer.getInt(offset);
+        if (size < RECORD_HEADER || size > buffer.capacity() - offset || buffer.getLong(offset + 8) != expectedSequence) {
+            return 0;
+        }
+        return checksum(offset + 8, offset + size) == buffer.getInt(offset + 4) ? size : 0;
+    }
+
+    /**
+     * FNV-1a, eight bytes at a time. It only has to catch torn writes, not tampering.
+     */
+    private int checksum(int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        int i = from;
+        for (; i <= to - 8; i += 8) {
+            hash = (hash ^ buffer.getLong(i)) * 0x100000001b3L;
+        }
+        for (; i < to; i++) {
+            hash = (hash ^ buffer.get(i)) * 0x100000001b3L;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private void ensureCapacity(int needed) {
+        if (position + (long) needed <= buffer.capacity()) {
+            return;
+        }
+        long size = Math.max(2L * buffer.capacity(), position + (long) needed);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The journal is full, it needs a snapshot and a reset");
+        }
+        try {
+            // The old mapping is for the same file, so everything written through it is in the new one too.
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            syncBuffer = buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
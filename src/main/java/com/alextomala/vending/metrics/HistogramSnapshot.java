@@ -0,0 +1,64 @@
+package com.alextomala.vending.metrics;
+
+/**
+ * The counts of a LatencyHistogram at one moment.
+ */
+public final class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long total;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long total, long max) {
+        this.counts = counts;
+        long sum = 0;
+        for (long bucketCount : counts) {
+            sum += bucketCount;
+        }
+        this.count = sum;
+        this.total = total;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return max;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * The latency that this percentage of the recorded values were at or under, to within the histogram's precision.
+     *
+     * @param percentile between 0 and 100.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(String.format("%s is not a percentile", percentile));
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= wanted) {
+                return Math.min(LatencyHistogram.highestValueIn(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fns p50=%dns p99=%dns p99.9=%dns max=%dns", count, getMeanNanos(),
+                getValueAtPercentile(50), getValueAtPercentile(99), getValueAtPercentile(99.9), max);
+    }
+}
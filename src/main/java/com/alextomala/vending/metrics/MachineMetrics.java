@@ -0,0 +1,146 @@
+package com.alextomala.vending.metrics;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The numbers a machine keeps about itself: a latency histogram and a call counter for every Operation, a count of
+ * every kind of exception thrown to callers, sales and revenue per product position, and gauges that are read when a
+ * snapshot is taken (vault contents, for example).
+ *
+ * Everything is lock free and safe to read from another thread while the machine is running. Take a snapshot to read
+ * it all at once.
+ *
+ * A machine given DISABLED doesn't call System.nanoTime or touch any of this, so it costs a field read and a branch
+ * per call. Each MachineMetrics belongs to one machine, since the gauges are that machine's.
+ *
+ * Reading the clock is most of the cost when metrics are on, so a machine only times the first call of each operation
+ * and one in SAMPLE_EVERY after that. Every call is still counted, only the histograms are a sample. See
+ * MetricsBenchmark for what that saves.
+ */
+public class MachineMetrics {
+    public static final MachineMetrics DISABLED = new MachineMetrics(false, 0);
+
+    /**
+     * Positions up to this get their own sales counters by default. Sales past it are counted together.
+     */
+    public static final int DEFAULT_POSITIONS = 64;
+
+    /**
+     * How often a call is timed. A power of two, so checking is a mask.
+     */
+    public static final int SAMPLE_EVERY = 16;
+
+    private final boolean enabled;
+    private final LatencyHistogram[] latencies;
+    private final LongAdder[] calls;
+    private final Map<String, LongAdder> failures;
+
+    // Indexed by position, with one more on the end for positions past the last.
+    private final AtomicLongArray sales;
+    private final AtomicLongArray revenue;
+
+    private final Map<String, LongSupplier> gauges;
+
+    public MachineMetrics() {
+        this(true, DEFAULT_POSITIONS);
+    }
+
+    public MachineMetrics(int positions) {
+        this(true, positions);
+    }
+
+    private MachineMetrics(boolean enabled, int positions) {
+        this.enabled = enabled;
+        int operations = enabled ? Operation.values().length : 0;
+        latencies = new LatencyHistogram[operations];
+        calls = new LongAdder[operations];
+        for (int i = 0; i < operations; i++) {
+            latencies[i] = new LatencyHistogram();
+            calls[i] = new LongAdder();
+        }
+        failures = new ConcurrentHashMap<>();
+        sales = new AtomicLongArray(Preconditions.checkPositive(positions) + 1);
+        revenue = new AtomicLongArray(positions + 1);
+        gauges = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Machines check this before reading the clock, so a disabled machine never does.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(Operation operation, long nanos) {
+        if (enabled) {
+            calls[operation.ordinal()].increment();
+            latencies[operation.ordinal()].record(nanos);
+        }
+    }
+
+    /**
+     * Counts a call that wasn't timed, see SAMPLE_EVERY.
+     */
+    public void count(Operation operation) {
+        if (enabled) {
+            calls[operation.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Counts an exception thrown to a caller, by its class name. Exceptions are rare so the map lookup doesn't matter.
+     */
+    public void recordFailure(RuntimeException failure) {
+        if (enabled) {
+            failures.computeIfAbsent(failure.getClass().getSimpleName(), name -> new LongAdder()).increment();
+        }
+    }
+
+    public void recordSale(int productPosition, int price) {
+        if (enabled) {
+            int slot = Math.min(productPosition, sales.length() - 1);
+            sales.getAndIncrement(slot);
+            revenue.getAndAdd(slot, price);
+        }
+    }
+
+    /**
+     * Adds a value that is read whenever a snapshot is taken. A gauge with the same name is replaced.
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        if (enabled) {
+            gauges.put(Preconditions.checkNotNull(name), Preconditions.checkNotNull(gauge));
+        }
+    }
+
+    public MetricsSnapshot snapshot() {
+        Operation[] operations = Operation.values();
+        HistogramSnapshot[] histograms = new HistogramSnapshot[enabled ? operations.length : 0];
+        long[] callCounts = new long[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = latencies[i].snapshot();
+            callCounts[i] = calls[i].sum();
+        }
+
+        Map<String, Long> failureCounts = new ConcurrentHashMap<>();
+        failures.forEach((name, count) -> failureCounts.put(name, count.sum()));
+
+        long[] salesCounts = new long[sales.length()];
+        long[] revenueCounts = new long[revenue.length()];
+        for (int i = 0; i < salesCounts.length; i++) {
+            salesCounts[i] = sales.get(i);
+            revenueCounts[i] = revenue.get(i);
+        }
+
+        Map<String, Long> gaugeValues = new ConcurrentHashMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.getAsLong()));
+
+        return new MetricsSnapshot(histograms, callCounts, failureCounts, salesCounts, revenueCounts, gaugeValues);
+    }
+}
@@ -0,0 +1,100 @@
+package com.alextomala.vending.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Everything in a MachineMetrics at one moment. Snapshots of a disabled MachineMetrics are empty.
+ */
+public final class MetricsSnapshot {
+    private final HistogramSnapshot[] latencies;
+    private final long[] calls;
+    private final Map<String, Long> failures;
+    private final long[] sales;
+    private final long[] revenue;
+    private final Map<String, Long> gauges;
+
+    MetricsSnapshot(HistogramSnapshot[] latencies, long[] calls, Map<String, Long> failures, long[] sales,
+                    long[] revenue, Map<String, Long> gauges) {
+        this.latencies = latencies;
+        this.calls = calls;
+        this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+        this.sales = sales;
+        this.revenue = revenue;
+        this.gauges = Collections.unmodifiableMap(new TreeMap<>(gauges));
+    }
+
+    public long getCalls(Operation operation) {
+        return calls.length == 0 ? 0 : calls[operation.ordinal()];
+    }
+
+    /**
+     * @return the latencies, or null if metrics were disabled.
+     */
+    public HistogramSnapshot getLatency(Operation operation) {
+        return latencies.length == 0 ? null : latencies[operation.ordinal()];
+    }
+
+    /**
+     * @return how many times an exception with this simple class name was thrown, for example
+     *         "NotEnoughChangeException".
+     */
+    public long getFailures(String exceptionName) {
+        Long count = failures.get(exceptionName);
+        return count == null ? 0 : count;
+    }
+
+    public Map<String, Long> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Sales at a position. Positions past the last one with its own counter all share the last counter.
+     */
+    public long getSales(int productPosition) {
+        return sales[Math.min(productPosition, sales.length - 1)];
+    }
+
+    public long getRevenue(int productPosition) {
+        return revenue[Math.min(productPosition, revenue.length - 1)];
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    /**
+     * Every number as a flat, sorted map of metric names, for handing to whatever exports metrics. For example
+     * "buttonPress.p99Nanos", "failures.NotEnoughChangeException", "position.3.sales" and "gauge.vault.system.cents".
+     */
+    public Map<String, Number> toMap() {
+        Map<String, Number> map = new TreeMap<>();
+        Operation[] operations = Operation.values();
+        for (int i = 0; i < latencies.length; i++) {
+            String name = operations[i].getMetricName();
+            HistogramSnapshot latency = latencies[i];
+            map.put(name + ".count", calls[i]);
+            map.put(name + ".meanNanos", latency.getMeanNanos());
+            map.put(name + ".p50Nanos", latency.getValueAtPercentile(50));
+            map.put(name + ".p99Nanos", latency.getValueAtPercentile(99));
+            map.put(name + ".p999Nanos", latency.getValueAtPercentile(99.9));
+            map.put(name + ".maxNanos", latency.getMaxNanos());
+        }
+        failures.forEach((name, count) -> map.put("failures." + name, count));
+        for (int position = 0; position < sales.length; position++) {
+            if (sales[position] > 0) {
+                String name = position == sales.length - 1 ? "position.other" : "position." + position;
+                map.put(name + ".sales", sales[position]);
+                map.put(name + ".revenue", revenue[position]);
+            }
+        }
+        gauges.forEach((name, value) -> map.put("gauge." + name, value));
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.alextomala.vending.metrics;
+
+/**
+ * The things a machine times. The names are the ones used in MetricsSnapshot.toMap.
+ */
+public enum Operation {
+    BUTTON_PRESS("buttonPress"),
+    ADD_USER_MONEY("addUserMoney"),
+    CANCEL_ORDER("cancelOrder"),
+    ADD_PRODUCT("addProduct"),
+    RESTOCK("restock"),
+    REPRICE("reprice"),
+    ADD_CHANGE("addChange"),
+    DISPENSE_ALL_CHANGE("dispenseAllChange"),
+    MAKE_CHANGE("dispenseChangeAfterSale"),
+    HARDWARE("hardware");
+
+    private final String metricName;
+
+    Operation(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
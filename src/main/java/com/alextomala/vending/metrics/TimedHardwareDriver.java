@@ -0,0 +1,71 @@
+package com.alextomala.vending.metrics;
+
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * Counts every call to another HardwareDriver as the HARDWARE operation, and times one in MachineMetrics.SAMPLE_EVERY
+ * of them, the same as the machine does for its own calls.
+ *
+ * Meant for the one thread that runs the machine. If more than one thread calls it the sampling is less even, but
+ * every call is still counted.
+ */
+public final class TimedHardwareDriver implements HardwareDriver {
+    private final HardwareDriver target;
+    private final MachineMetrics metrics;
+    private int calls;
+
+    public TimedHardwareDriver(HardwareDriver target, MachineMetrics metrics) {
+        this.target = Preconditions.checkNotNull(target);
+        this.metrics = Preconditions.checkNotNull(metrics);
+    }
+
+    @Override
+    public void showMessage(String message) {
+        if (!sampled()) {
+            metrics.count(Operation.HARDWARE);
+            target.showMessage(message);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            target.showMessage(message);
+        } finally {
+            metrics.record(Operation.HARDWARE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void dispenseProduct(int productPosition, String productName) {
+        if (!sampled()) {
+            metrics.count(Operation.HARDWARE);
+            target.dispenseProduct(productPosition, productName);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            target.dispenseProduct(productPosition, productName);
+        } finally {
+            metrics.record(Operation.HARDWARE, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void dispenseCoins(int cents, int count) {
+        if (!sampled()) {
+            metrics.count(Operation.HARDWARE);
+            target.dispenseCoins(cents, count);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            target.dispenseCoins(cents, count);
+        } finally {
+            metrics.record(Operation.HARDWARE, System.nanoTime() - start);
+        }
+    }
+
+    private boolean sampled() {
+        return (calls++ & (MachineMetrics.SAMPLE_EVERY - 1)) == 0;
+    }
+}
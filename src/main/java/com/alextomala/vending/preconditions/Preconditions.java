@@ -24,4 +24,14 @@ public class Preconditions {
         }
         return reference;
     }
+
+    /**
+     * The same check for primitives, so hot paths don't box their arguments.
+     */
+    public static int checkPositive(int reference) {
+        if (reference < 0) {
+            throw new IllegalArgumentException("A number cannot be negative");
+        }
+        return reference;
+    }
 }
@@ -0,0 +1,53 @@
+package com.alextomala.vending.pricing;
+
+import com.alextomala.vending.analytics.SalesAggregator;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * Changes the price of the positions that are selling fast across the fleet, going by a SalesAggregator. A position
+ * that sold at least threshold times in the window is moved by the percentage, the rest are left alone. Slow sellers
+ * can be discounted instead with a negative percentage and atMost.
+ */
+public class DemandRule implements PricingRule {
+    private final SalesAggregator sales;
+    private final int window;
+    private final long threshold;
+    private final int percent;
+    private final boolean atLeast;
+
+    /**
+     * @param window how many of the aggregator's buckets to count sales over.
+     * @param percent 10 is ten percent more.
+     */
+    public DemandRule(SalesAggregator sales, int window, long threshold, int percent) {
+        this(sales, window, threshold, percent, true);
+    }
+
+    private DemandRule(SalesAggregator sales, int window, long threshold, int percent, boolean atLeast) {
+        if (percent <= -100) {
+            throw new IllegalArgumentException("A price can't come down by a hundred percent or more");
+        }
+        this.sales = Preconditions.checkNotNull(sales);
+        this.window = window;
+        this.threshold = threshold;
+        this.percent = percent;
+        this.atLeast = atLeast;
+        sales.getWindowMillis(window);
+    }
+
+    /**
+     * A rule for the positions that sold no more than threshold times in the window.
+     */
+    public static DemandRule atMost(SalesAggregator sales, int window, long threshold, int percent) {
+        return new DemandRule(sales, window, threshold, percent, false);
+    }
+
+    @Override
+    public int apply(int productPosition, int price, long timeMillis) {
+        if (productPosition >= sales.getPositions()) {
+            return price;
+        }
+        long sold = sales.getFleetCount(productPosition, window);
+        return (atLeast ? sold >= threshold : sold <= threshold) ? PricingRule.adjust(price, percent) : price;
+    }
+}
@@ -0,0 +1,118 @@
+package com.alextomala.vending.pricing;
+
+import com.alextomala.vending.catalog.ProductCatalog;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One version of the prices for a machine, or for a whole fleet, keyed by product position.
+ *
+ * Tables never change once they are made. New prices are a new table with a higher version, and a machine ignores a
+ * table that isn't newer than the one it already has, so two repricings racing each other can't leave it on the older
+ * prices. A table doesn't have to price every position, the ones it leaves out keep whatever price they had.
+ *
+ * The prices are kept in an array indexed by position, like the catalog, so applying a table is one array read per
+ * product. The price check messages are built here too, once per table rather than once per machine, since every
+ * machine in a fleet shows the same message for the same position and price.
+ */
+public final class PriceTable {
+    /**
+     * What getPrice returns for a position the table doesn't price.
+     */
+    public static final int NO_PRICE = -1;
+
+    private final long version;
+    private final int[] prices;
+    private final String[] priceMessages;
+
+    /**
+     * @param version has to be at least one. A machine starts out at version zero.
+     * @param prices in cents, keyed by position.
+     */
+    public PriceTable(long version, Map<Integer, Integer> prices) {
+        this(version, toArray(prices));
+    }
+
+    /**
+     * Takes the array without copying it, so the caller must not change it afterwards.
+     */
+    PriceTable(long version, int[] prices) {
+        if (version < 1) {
+            throw new IllegalArgumentException("A price table version has to be at least one");
+        }
+        this.version = version;
+        this.prices = prices;
+        priceMessages = new String[prices.length];
+        for (int position = 0; position < prices.length; position++) {
+            if (prices[position] != NO_PRICE) {
+                priceMessages[position] = String.format("Item in position %d costs %d", position, prices[position]);
+            }
+        }
+    }
+
+    private static int[] toArray(Map<Integer, Integer> prices) {
+        int length = 0;
+        for (Integer position : Preconditions.checkNotNull(prices).keySet()) {
+            if (Preconditions.checkPositive(Preconditions.checkNotNull(position)) > ProductCatalog.MAX_POSITION) {
+                throw new IllegalArgumentException(String.format("Product position %d is past the end of the machine", position));
+            }
+            length = Math.max(length, position + 1);
+        }
+        int[] array = new int[length];
+        Arrays.fill(array, NO_PRICE);
+        for (Map.Entry<Integer, Integer> entry : prices.entrySet()) {
+            if (Preconditions.checkNotNull(entry.getValue()) <= 0) {
+                throw new IllegalArgumentException(String.format("The price for position %d has to be more than zero",
+                        entry.getKey()));
+            }
+            array[entry.getKey()] = entry.getValue();
+        }
+        return array;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the price for the position, or NO_PRICE if this table leaves it alone.
+     */
+    public int getPrice(int position) {
+        return position >= 0 && position < prices.length ? prices[position] : NO_PRICE;
+    }
+
+    /**
+     * The message shown when someone can't afford the position at this table's price, or null if it isn't priced.
+     */
+    public String getPriceMessage(int position) {
+        return position >= 0 && position < prices.length ? priceMessages[position] : null;
+    }
+
+    /**
+     * The highest position the table could price, or -1 for an empty table.
+     */
+    public int getLastPosition() {
+        return prices.length - 1;
+    }
+
+    /**
+     * Every price in the table, keyed by position in position order.
+     */
+    public Map<Integer, Integer> getPrices() {
+        Map<Integer, Integer> map = new LinkedHashMap<>();
+        for (int position = 0; position < prices.length; position++) {
+            if (prices[position] != NO_PRICE) {
+                map.put(position, prices[position]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceTable{version=" + version + ", prices=" + getPrices() + "}";
+    }
+}
@@ -0,0 +1,104 @@
+package com.alextomala.vending.pricing;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Works out the prices to charge from a list of base prices (the price book) and a list of rules, and keeps the latest
+ * result.
+ *
+ * Every repricing makes a new PriceTable, one version after the last, and swaps it in with a compare and swap, so
+ * anyone reading getCurrent gets a whole table with a single volatile read and never waits. If two threads reprice at
+ * once the one that loses the swap works its table out again from the new version. Hand the table to a machine, or a
+ * whole VendingFleet, with reprice.
+ *
+ * Rounding is done once at the end, to the nearest multiple of the smallest coin and never below one coin, so a
+ * machine can always take the price.
+ */
+public class PricingEngine {
+    private final int smallestUnit;
+    private final List<PricingRule> rules;
+    private final LongSupplier clock;
+    private volatile PriceTable basePrices;
+    private final AtomicReference<PriceTable> current;
+
+    public PricingEngine(PriceTable basePrices, int smallestUnit, List<PricingRule> rules) {
+        this(basePrices, smallestUnit, rules, System::currentTimeMillis);
+    }
+
+    /**
+     * @param basePrices the list prices, which are also the current prices until the first repricing.
+     * @param smallestUnit the value of the smallest coin, DenominationRegistry.getSmallestUnit.
+     * @param clock milliseconds since the epoch, handed to the rules.
+     */
+    public PricingEngine(PriceTable basePrices, int smallestUnit, List<PricingRule> rules, LongSupplier clock) {
+        if (Preconditions.checkPositive(smallestUnit) == 0) {
+            throw new IllegalArgumentException("The smallest unit has to be at least one cent");
+        }
+        this.smallestUnit = smallestUnit;
+        this.rules = new ArrayList<>(Preconditions.checkNotNull(rules));
+        for (PricingRule rule : this.rules) {
+            Preconditions.checkNotNull(rule);
+        }
+        this.clock = Preconditions.checkNotNull(clock);
+        this.basePrices = Preconditions.checkNotNull(basePrices);
+        this.current = new AtomicReference<>(basePrices);
+    }
+
+    /**
+     * The table from the last repricing, or the base prices if there hasn't been one.
+     */
+    public PriceTable getCurrent() {
+        return current.get();
+    }
+
+    public PriceTable getBasePrices() {
+        return basePrices;
+    }
+
+    /**
+     * Changes the price book. Nothing is charged differently until the next repricing.
+     */
+    public void setBasePrices(PriceTable basePrices) {
+        this.basePrices = Preconditions.checkNotNull(basePrices);
+    }
+
+    /**
+     * Runs the base prices through the rules as of now and makes the result the current table.
+     */
+    public PriceTable reprice() {
+        long now = clock.getAsLong();
+        while (true) {
+            PriceTable last = current.get();
+            PriceTable next = priceAt(last.getVersion() + 1, now);
+            if (current.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    private PriceTable priceAt(long version, long timeMillis) {
+        PriceTable base = basePrices;
+        int[] prices = new int[base.getLastPosition() + 1];
+        for (int position = 0; position < prices.length; position++) {
+            int price = base.getPrice(position);
+            if (price != PriceTable.NO_PRICE) {
+                for (PricingRule rule : rules) {
+                    price = rule.apply(position, price, timeMillis);
+                }
+                price = round(price);
+            }
+            prices[position] = price;
+        }
+        return new PriceTable(version, prices);
+    }
+
+    private int round(int price) {
+        long units = ((long) price + smallestUnit / 2) / smallestUnit;
+        return (int) Math.min(Math.max(units, 1) * smallestUnit, Integer.MAX_VALUE / smallestUnit * smallestUnit);
+    }
+}
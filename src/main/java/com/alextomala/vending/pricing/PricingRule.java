@@ -0,0 +1,26 @@
+package com.alextomala.vending.pricing;
+
+/**
+ * One step in working out a price. A PricingEngine runs every product's list price through its rules in order, each
+ * one starting from what the rule before it came up with, and rounds the result to a coin the machine takes.
+ *
+ * Rules are called from whichever thread reprices, so they shouldn't keep state between calls.
+ */
+@FunctionalInterface
+public interface PricingRule {
+
+    /**
+     * @param price what the rules before this one came up with, starting from the list price.
+     * @param timeMillis when the prices are being worked out, the same for every product in one repricing.
+     * @return the price to charge. It doesn't have to be rounded.
+     */
+    int apply(int productPosition, int price, long timeMillis);
+
+    /**
+     * The price moved by a percentage, rounded to the nearest cent. -20 is twenty percent off.
+     */
+    static int adjust(int price, int percent) {
+        long adjusted = ((long) price * (100 + percent) + 50) / 100;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, adjusted));
+    }
+}
@@ -0,0 +1,46 @@
+package com.alextomala.vending.pricing;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * Changes every price by a percentage between two times of day, for example a morning rush or a late night discount.
+ * A window that ends before it starts runs past midnight.
+ */
+public class TimeOfDayRule implements PricingRule {
+    private final LocalTime from;
+    private final LocalTime to;
+    private final ZoneId zone;
+    private final int percent;
+
+    /**
+     * @param from the first minute the rule applies, in the machine's time zone.
+     * @param to the first minute it doesn't apply any more.
+     * @param percent -20 is twenty percent off, 10 is ten percent more.
+     */
+    public TimeOfDayRule(LocalTime from, LocalTime to, ZoneId zone, int percent) {
+        if (percent <= -100) {
+            throw new IllegalArgumentException("A price can't come down by a hundred percent or more");
+        }
+        this.from = Preconditions.checkNotNull(from);
+        this.to = Preconditions.checkNotNull(to);
+        this.zone = Preconditions.checkNotNull(zone);
+        this.percent = percent;
+    }
+
+    public boolean appliesAt(long timeMillis) {
+        LocalTime time = Instant.ofEpochMilli(timeMillis).atZone(zone).toLocalTime();
+        if (from.isBefore(to)) {
+            return !time.isBefore(from) && time.isBefore(to);
+        }
+        return !time.isBefore(from) || time.isBefore(to);
+    }
+
+    @Override
+    public int apply(int productPosition, int price, long timeMillis) {
+        return appliesAt(timeMillis) ? PricingRule.adjust(price, percent) : price;
+    }
+}
@@ -0,0 +1,64 @@
+package com.alextomala.vending.session;
+
+import com.alextomala.vending.CustomerPanel;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.impl.ConcurrentVendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+import com.alextomala.vending.vault.PackedVault;
+
+import java.util.Map;
+
+/**
+ * One customer at a shared ConcurrentVendingMachine. The customer's coins are held here rather than in the machine's
+ * user vault, so any number of sessions can be paying at once without getting each other's credit. The system vault
+ * and the catalog are the machine's, and it already makes selling from them safe across threads.
+ *
+ * A session is only used from one thread at a time, normally the one its SessionServer gave it. The credit is a plain
+ * packed long for that reason, and adding a coin touches nothing shared.
+ *
+ * Sessions are for customers, so they only have the CustomerPanel functions. Restock through the machine itself.
+ */
+public class Session implements CustomerPanel {
+    private final ConcurrentVendingMachine machine;
+    private final HardwareDriver output;
+    private long credit;
+
+    public Session(ConcurrentVendingMachine machine, HardwareDriver output) {
+        this.machine = Preconditions.checkNotNull(machine);
+        this.output = Preconditions.checkNotNull(output);
+    }
+
+    @Override
+    public void buttonPress(int productPosition) {
+        credit = machine.buttonPress(productPosition, credit, output);
+    }
+
+    @Override
+    public void addUserMoney(int cents) {
+        credit = PackedVault.add(credit, PackedVault.coinOf(cents));
+    }
+
+    @Override
+    public void cancelOrder() {
+        long coins = credit;
+        credit = 0L;
+        ConcurrentVendingMachine.dispenseChange(coins, output);
+    }
+
+    /**
+     * The money this customer has put in and not spent, in cents.
+     */
+    public int getCredit() {
+        return PackedVault.totalOf(credit);
+    }
+
+    @Override
+    public int getStock(int productPosition) {
+        return machine.getStock(productPosition);
+    }
+
+    @Override
+    public Map<Integer, Integer> getInventory() {
+        return machine.getInventory();
+    }
+}
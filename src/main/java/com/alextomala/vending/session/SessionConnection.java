@@ -0,0 +1,34 @@
+package com.alextomala.vending.session;
+
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.hardware.HardwareDriver;
+
+/**
+ * One customer's end of the kiosk protocol: the coins and button presses coming in, and the messages, products and
+ * coins going back out. A SessionServer reads it on the session's own thread, so it can simply block.
+ */
+public interface SessionConnection extends AutoCloseable {
+
+    /**
+     * Waits for the customer's next command, or returns null once they have gone.
+     */
+    Command nextCommand() throws InterruptedException;
+
+    /**
+     * Where everything the customer should see is sent. Only ever called from the session's thread.
+     */
+    HardwareDriver getOutput();
+
+    /**
+     * A command that threw, for example a coin the machine doesn't take. The session carries on after it.
+     */
+    default void rejected(Command command, RuntimeException e) {
+        getOutput().showMessage(e.getMessage());
+    }
+
+    /**
+     * Called once the session is over and the customer's coins have been given back.
+     */
+    @Override
+    void close();
+}
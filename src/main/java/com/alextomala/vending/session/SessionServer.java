@@ -0,0 +1,155 @@
+package com.alextomala.vending.session;
+
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.command.CustomerCommand;
+import com.alextomala.vending.impl.ConcurrentVendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a customer session for every connection to the kiosk, each on its own thread, all buying from one shared
+ * ConcurrentVendingMachine. Every session holds its own credit (see Session), so customers paying at the same time
+ * never mix up their coins, while the system vault and catalog are shared through the machine.
+ *
+ * A session spends nearly all of its life waiting for the customer's next coin, so a thread each only scales when the
+ * threads are virtual. On Java 21 and later the default thread factory makes virtual threads. The build still targets
+ * Java 8, so they are looked up by reflection, and on an older runtime it falls back to daemon platform threads with a
+ * small stack, which manages a few thousand sessions. Nothing on the sale path holds a monitor, it is all compare and
+ * swap in the machine's vaults, so a virtual thread is never pinned to its carrier while buying.
+ *
+ * Only CustomerCommands are run. Anything else a connection sends is rejected, and the session carries on.
+ *
+ * When a connection ends, or the server is closed, the customer gets back whatever they paid and didn't spend.
+ * SessionLoadBenchmark runs tens of thousands of sessions at once.
+ */
+public class SessionServer implements AutoCloseable {
+    private static final long PLATFORM_STACK_BYTES = 256 * 1024;
+
+    private final ConcurrentVendingMachine machine;
+    private final ThreadFactory threadFactory;
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private boolean closed;
+
+    public SessionServer(ConcurrentVendingMachine machine) {
+        this(machine, defaultThreadFactory());
+    }
+
+    public SessionServer(ConcurrentVendingMachine machine, ThreadFactory threadFactory) {
+        this.machine = Preconditions.checkNotNull(machine);
+        this.threadFactory = Preconditions.checkNotNull(threadFactory);
+    }
+
+    /**
+     * Virtual threads when the runtime has them, otherwise daemon platform threads.
+     */
+    public static ThreadFactory defaultThreadFactory() {
+        ThreadFactory virtual = virtualThreadFactory();
+        return virtual != null ? virtual : platformThreadFactory();
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return virtualThreadFactory() != null;
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "session-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            // Before Java 21, or Java 19 and 20 without preview features turned on.
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicLong count = new AtomicLong();
+        return task -> {
+            Thread thread = new Thread(null, task, "session-" + count.getAndIncrement(), PLATFORM_STACK_BYTES);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts a session for the connection on a thread of its own and returns straight away.
+     *
+     * @throws IllegalStateException once the server is closed.
+     */
+    public void accept(SessionConnection connection) {
+        Preconditions.checkNotNull(connection);
+        Thread thread = threadFactory.newThread(() -> serve(connection));
+        // Started under the lock, so close either sees a running session to interrupt and join or refuses this one.
+        synchronized (running) {
+            if (closed) {
+                throw new IllegalStateException("The session server is closed");
+            }
+            running.add(thread);
+            try {
+                thread.start();
+            } catch (RuntimeException | Error e) {
+                running.remove(thread);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The number of sessions that are still going.
+     */
+    public int getActiveSessions() {
+        return running.size();
+    }
+
+    private void serve(SessionConnection connection) {
+        Session session = new Session(machine, connection.getOutput());
+        try {
+            Command command;
+            while ((command = connection.nextCommand()) != null) {
+                try {
+                    if (!(command instanceof CustomerCommand)) {
+                        throw new IllegalArgumentException(String.format("%s is not something a customer can do",
+                                command));
+                    }
+                    ((CustomerCommand) command).applyTo(session);
+                } catch (RuntimeException e) {
+                    connection.rejected(command, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The server is closing. The customer still gets their coins back below.
+        } finally {
+            try {
+                session.cancelOrder();
+                connection.close();
+            } finally {
+                running.remove(Thread.currentThread());
+            }
+        }
+    }
+
+    /**
+     * Interrupts every session that is waiting on its customer and waits for them all to end.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        List<Thread> sessions;
+        synchronized (running) {
+            closed = true;
+            sessions = new ArrayList<>(running);
+        }
+        for (Thread session : sessions) {
+            session.interrupt();
+        }
+        for (Thread session : sessions) {
+            session.join();
+        }
+    }
+}
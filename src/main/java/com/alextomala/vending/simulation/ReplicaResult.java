@@ -0,0 +1,83 @@
+package com.alextomala.vending.simulation;
+
+/**
+ * What happened to one simulated machine over its days.
+ */
+public final class ReplicaResult {
+    private final long seed;
+    private final int days;
+    private final long customers;
+    private final long sales;
+    private final long revenue;
+    private final long noChange;
+    private final long soldOut;
+    private final int[] vault;
+
+    ReplicaResult(long seed, int days, long customers, long sales, long revenue, long noChange, long soldOut,
+                  int[] vault) {
+        this.seed = seed;
+        this.days = days;
+        this.customers = customers;
+        this.sales = sales;
+        this.revenue = revenue;
+        this.noChange = noChange;
+        this.soldOut = soldOut;
+        this.vault = vault;
+    }
+
+    /**
+     * The seed that gives exactly this replica again with Simulator.runReplica.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public long getCustomers() {
+        return customers;
+    }
+
+    public long getSales() {
+        return sales;
+    }
+
+    public long getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Customers who paid and were turned away with a NotEnoughChangeException.
+     */
+    public long getNoChange() {
+        return noChange;
+    }
+
+    /**
+     * Customers who wanted a product that had run out, and walked away without paying.
+     */
+    public long getSoldOut() {
+        return soldOut;
+    }
+
+    /**
+     * The coins in the vault at the end of the day, before any collection.
+     *
+     * @param denominationIndex 0 for nickels, 1 for dimes and 2 for quarters.
+     */
+    public int getVault(int day, int denominationIndex) {
+        if (day < 0 || day >= days || denominationIndex < 0 || denominationIndex >= 3) {
+            throw new IndexOutOfBoundsException(String.format("There is no day %d, denomination %d", day,
+                    denominationIndex));
+        }
+        return vault[day * 3 + denominationIndex];
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaResult{seed=" + seed + ", customers=" + customers + ", sales=" + sales + ", noChange=" + noChange
+                + ", soldOut=" + soldOut + "}";
+    }
+}
@@ -0,0 +1,110 @@
+package com.alextomala.vending.simulation;
+
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.preconditions.Preconditions;
+
+/**
+ * What a Simulator simulates: one US coin machine, what it sells, how busy it is and how its customers pay.
+ *
+ * Products go in positions 1, 2, 3 and so on, in the order of the prices. Customers turn up at random through the day,
+ * customersPerDay of them on average, and pick a product with a chance proportional to its popularity. A share of
+ * them pay the exact price, the biggest coins first. The rest only carry quarters and put in as many as it takes.
+ *
+ * Every morning the machine is topped back up to dailyStock of each product, unless the stock is unlimited. Every
+ * evening the vault is recorded, and if collectDaily is set the vault is emptied and the float put back, the way a
+ * collection route would.
+ */
+public final class Scenario {
+    private final int[] prices;
+    private final int[] popularity;
+    private final double customersPerDay;
+    private final double exactChangeShare;
+    private final int[] floatCoins;
+    private final int dailyStock;
+    private final boolean collectDaily;
+
+    /**
+     * Products that never run out and a vault that is never emptied, to see how the change holds up on its own.
+     */
+    public Scenario(int[] prices, int[] popularity, double customersPerDay, double exactChangeShare, int[] floatCoins) {
+        this(prices, popularity, customersPerDay, exactChangeShare, floatCoins, StockCounter.UNLIMITED, false);
+    }
+
+    /**
+     * @param prices in cents, multiples of 5.
+     * @param popularity a weight for each product, in the same order.
+     * @param exactChangeShare between 0 and 1.
+     * @param floatCoins the nickels, dimes and quarters put in at the start, and after every collection.
+     * @param dailyStock how many of each product the machine is topped up to each morning, or StockCounter.UNLIMITED.
+     */
+    public Scenario(int[] prices, int[] popularity, double customersPerDay, double exactChangeShare, int[] floatCoins,
+                    int dailyStock, boolean collectDaily) {
+        if (Preconditions.checkNotNull(prices).length == 0 || prices.length != Preconditions.checkNotNull(popularity).length) {
+            throw new IllegalArgumentException("There has to be a popularity for every product, and at least one product");
+        }
+        long totalPopularity = 0;
+        for (int i = 0; i < prices.length; i++) {
+            if (prices[i] <= 0 || prices[i] % 5 != 0) {
+                throw new IllegalArgumentException(String.format("%d isn't a price the machine can take", prices[i]));
+            }
+            totalPopularity += Preconditions.checkPositive(popularity[i]);
+        }
+        if (totalPopularity == 0 || totalPopularity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The popularities have to add up to something between 1 and 2^31 - 1");
+        }
+        if (!(customersPerDay >= 0) || !(exactChangeShare >= 0 && exactChangeShare <= 1)) {
+            throw new IllegalArgumentException("Customers per day can't be negative and the exact change share is 0 to 1");
+        }
+        if (Preconditions.checkNotNull(floatCoins).length != 3) {
+            throw new IllegalArgumentException("The float is a number of nickels, dimes and quarters");
+        }
+        for (int coins : floatCoins) {
+            Preconditions.checkPositive(coins);
+        }
+        if (dailyStock != StockCounter.UNLIMITED) {
+            Preconditions.checkPositive(dailyStock);
+        }
+        this.prices = prices.clone();
+        this.popularity = popularity.clone();
+        this.customersPerDay = customersPerDay;
+        this.exactChangeShare = exactChangeShare;
+        this.floatCoins = floatCoins.clone();
+        this.dailyStock = dailyStock;
+        this.collectDaily = collectDaily;
+    }
+
+    public int getProductCount() {
+        return prices.length;
+    }
+
+    /**
+     * @param product from 0, so the product in position 1 is product 0.
+     */
+    public int getPrice(int product) {
+        return prices[product];
+    }
+
+    public int getPopularity(int product) {
+        return popularity[product];
+    }
+
+    public double getCustomersPerDay() {
+        return customersPerDay;
+    }
+
+    public double getExactChangeShare() {
+        return exactChangeShare;
+    }
+
+    public int[] getFloatCoins() {
+        return floatCoins.clone();
+    }
+
+    public int getDailyStock() {
+        return dailyStock;
+    }
+
+    public boolean isCollectDaily() {
+        return collectDaily;
+    }
+}
@@ -0,0 +1,101 @@
+package com.alextomala.vending.simulation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The replicas of a simulation, in the order their seeds were handed out, and the totals across them.
+ */
+public final class SimulationReport {
+    private final List<ReplicaResult> replicas;
+    private final int days;
+    private final long customers;
+    private final long sales;
+    private final long noChange;
+    private final long soldOut;
+
+    SimulationReport(List<ReplicaResult> replicas, int days) {
+        this.replicas = Collections.unmodifiableList(replicas);
+        this.days = days;
+        long customers = 0;
+        long sales = 0;
+        long noChange = 0;
+        long soldOut = 0;
+        for (ReplicaResult replica : replicas) {
+            customers += replica.getCustomers();
+            sales += replica.getSales();
+            noChange += replica.getNoChange();
+            soldOut += replica.getSoldOut();
+        }
+        this.customers = customers;
+        this.sales = sales;
+        this.noChange = noChange;
+        this.soldOut = soldOut;
+    }
+
+    public List<ReplicaResult> getReplicas() {
+        return replicas;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public long getCustomers() {
+        return customers;
+    }
+
+    public long getSales() {
+        return sales;
+    }
+
+    public long getNoChange() {
+        return noChange;
+    }
+
+    public long getSoldOut() {
+        return soldOut;
+    }
+
+    /**
+     * The share of customers who got what they came for, or 1 if nobody came.
+     */
+    public double getSuccessRate() {
+        return customers == 0 ? 1 : (double) sales / customers;
+    }
+
+    /**
+     * The share of customers turned away because the machine couldn't give them change.
+     */
+    public double getNoChangeRate() {
+        return customers == 0 ? 0 : (double) noChange / customers;
+    }
+
+    /**
+     * The average number of coins of the denomination in the vault at the end of the day, across the replicas.
+     */
+    public double getMeanVault(int day, int denominationIndex) {
+        long total = 0;
+        for (ReplicaResult replica : replicas) {
+            total += replica.getVault(day, denominationIndex);
+        }
+        return (double) total / replicas.size();
+    }
+
+    /**
+     * The fewest coins of the denomination any replica had at the end of the day, for sizing the float.
+     */
+    public int getMinVault(int day, int denominationIndex) {
+        int min = Integer.MAX_VALUE;
+        for (ReplicaResult replica : replicas) {
+            min = Math.min(min, replica.getVault(day, denominationIndex));
+        }
+        return min;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationReport{replicas=" + replicas.size() + ", days=" + days + ", customers=" + customers
+                + ", successRate=" + getSuccessRate() + ", noChangeRate=" + getNoChangeRate() + "}";
+    }
+}
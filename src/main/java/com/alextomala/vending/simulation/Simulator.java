@@ -0,0 +1,201 @@
+package com.alextomala.vending.simulation;
+
+import com.alextomala.vending.analytics.SaleListener;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs a Scenario against real JavaVendingMachines with made up customers, to see how often sales fail for want of
+ * change and how the coins in the vault go up and down over the days, before putting a machine on a real floor.
+ *
+ * Everything random comes from a SplittableRandom started from a seed, so the same seed always gives the same days,
+ * down to the last coin. A run of several replicas takes one seed and hands each replica its own seed from it, in
+ * order, and the replicas share nothing, so they run in parallel on a fork/join pool and the report is the same
+ * however many threads there are.
+ *
+ * The machines have no hardware and no metrics, so a customer costs well under a microsecond and a day of a hundred
+ * customers about 20 microseconds. A million days is about 20 seconds of one core, and replicas spread over as many
+ * cores as the pool has. See SimulatorBenchmark.
+ */
+public class Simulator {
+    private static final int[] COINS = {25, 10, 5};
+
+    private final Scenario scenario;
+    private final ForkJoinPool pool;
+    private final int[] cumulativePopularity;
+
+    public Simulator(Scenario scenario) {
+        this(scenario, ForkJoinPool.commonPool());
+    }
+
+    public Simulator(Scenario scenario, ForkJoinPool pool) {
+        this.scenario = Preconditions.checkNotNull(scenario);
+        this.pool = Preconditions.checkNotNull(pool);
+        cumulativePopularity = new int[scenario.getProductCount()];
+        int total = 0;
+        for (int i = 0; i < cumulativePopularity.length; i++) {
+            total += scenario.getPopularity(i);
+            cumulativePopularity[i] = total;
+        }
+    }
+
+    /**
+     * Runs replicas independent machines for the given number of days each.
+     */
+    public SimulationReport run(long seed, int replicas, int days) {
+        if (Preconditions.checkPositive(replicas) == 0) {
+            throw new IllegalArgumentException("A simulation needs at least one replica");
+        }
+        Preconditions.checkPositive(days);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        List<ForkJoinTask<ReplicaResult>> tasks = new ArrayList<>(replicas);
+        for (int i = 0; i < replicas; i++) {
+            long replicaSeed = seeds.nextLong();
+            tasks.add(pool.submit(() -> runReplica(replicaSeed, days)));
+        }
+        List<ReplicaResult> results = new ArrayList<>(replicas);
+        for (ForkJoinTask<ReplicaResult> task : tasks) {
+            results.add(task.join());
+        }
+        return new SimulationReport(results, days);
+    }
+
+    /**
+     * Runs one machine for the given number of days, on the calling thread.
+     */
+    public ReplicaResult runReplica(long seed, int days) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Replica replica = new Replica(random);
+        int[] vault = new int[Preconditions.checkPositive(days) * 3];
+        for (int d = 0; d < days; d++) {
+            replica.runDay();
+            System.arraycopy(replica.machine.exportState().getSystemCoins(), 0, vault, d * 3, 3);
+            if (scenario.isCollectDaily()) {
+                replica.collect();
+            }
+        }
+        return new ReplicaResult(seed, days, replica.customers, replica.sales, replica.revenue,
+                replica.noChange, replica.soldOut, vault);
+    }
+
+    /**
+     * One replica's machine and its running totals. The sale listener counts the sales, so a sale is whatever the
+     * machine says it is.
+     */
+    private final class Replica implements SaleListener {
+        private final SplittableRandom random;
+        private final JavaVendingMachine machine;
+        private final int[] floatCoins;
+        private final int[] collected = new int[3];
+        private long customers;
+        private long sales;
+        private long revenue;
+        private long noChange;
+        private long soldOut;
+
+        Replica(SplittableRandom random) {
+            this.random = random;
+            machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+            machine.setSaleListener(this);
+            for (int i = 0; i < scenario.getProductCount(); i++) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("price", scenario.getPrice(i));
+                details.put("name", "Product " + (i + 1));
+                if (scenario.getDailyStock() != StockCounter.UNLIMITED) {
+                    details.put("quantity", 0);
+                }
+                machine.addProduct(i + 1, details);
+            }
+            floatCoins = scenario.getFloatCoins();
+            machine.addChange(floatCoins[0], floatCoins[1], floatCoins[2]);
+        }
+
+        @Override
+        public void productSold(int productPosition, int price) {
+            sales++;
+            revenue += price;
+        }
+
+        void runDay() {
+            if (scenario.getDailyStock() != StockCounter.UNLIMITED) {
+                for (int position = 1; position <= scenario.getProductCount(); position++) {
+                    int missing = scenario.getDailyStock() - machine.getStock(position);
+                    if (missing > 0) {
+                        machine.restock(position, missing);
+                    }
+                }
+            }
+            for (int i = arrivals(); i > 0; i--) {
+                serve();
+            }
+        }
+
+        void collect() {
+            machine.collectAllChange(collected);
+            machine.addChange(floatCoins[0], floatCoins[1], floatCoins[2]);
+        }
+
+        /**
+         * Customers turn up with exponential gaps between them, so the number in a day is Poisson distributed.
+         */
+        private int arrivals() {
+            double mean = scenario.getCustomersPerDay();
+            int count = 0;
+            double time = -Math.log(1 - random.nextDouble()) / mean;
+            while (time < 1) {
+                count++;
+                time -= Math.log(1 - random.nextDouble()) / mean;
+            }
+            return count;
+        }
+
+        private void serve() {
+            customers++;
+            int product = pick();
+            int position = product + 1;
+            if (machine.getStock(position) == 0) {
+                soldOut++;
+                return;
+            }
+            int price = scenario.getPrice(product);
+            if (random.nextDouble() < scenario.getExactChangeShare()) {
+                int left = price;
+                for (int coin : COINS) {
+                    for (; left >= coin; left -= coin) {
+                        machine.addUserMoney(coin);
+                    }
+                }
+            } else {
+                for (int paid = 0; paid < price; paid += 25) {
+                    machine.addUserMoney(25);
+                }
+            }
+            try {
+                machine.buttonPress(position);
+            } catch (NotEnoughChangeException e) {
+                noChange++;
+                machine.cancelOrder();
+            }
+        }
+
+        private int pick() {
+            int ticket = random.nextInt(cumulativePopularity[cumulativePopularity.length - 1]);
+            int product = 0;
+            while (ticket >= cumulativePopularity[product]) {
+                product++;
+            }
+            return product;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.alextomala.vending.snapshot;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything a machine needs to carry on where it left off: the coins in both vaults, the products with how many of
+ * each are left, and the version of the last price table, so a machine that is loaded again still refuses older ones.
+ *
+ * Coin counts are in the order of the denominations, which are kept alongside them so a state can't be loaded into a
+ * machine that takes different coins.
+ */
+public final class MachineState {
+    private final int[] denominations;
+    private final int[] userCoins;
+    private final int[] systemCoins;
+    private final List<Product> products;
+    private final int[] stock;
+    private final long priceVersion;
+
+    /**
+     * @param stock        how many of each product are left, in the same order as the products, or
+     *                     StockCounter.UNLIMITED.
+     * @param priceVersion the version of the last price table applied, or 0 if the products still have the prices they
+     *                     were added with.
+     */
+    public MachineState(int[] denominations, int[] userCoins, int[] systemCoins, List<Product> products, int[] stock,
+                        long priceVersion) {
+        this.denominations = Preconditions.checkNotNull(denominations).clone();
+        this.userCoins = Preconditions.checkNotNull(userCoins).clone();
+        this.systemCoins = Preconditions.checkNotNull(systemCoins).clone();
+        this.products = Collections.unmodifiableList(new ArrayList<>(Preconditions.checkNotNull(products)));
+        this.stock = Preconditions.checkNotNull(stock).clone();
+        this.priceVersion = priceVersion;
+        if (stock.length != products.size()) {
+            throw new IllegalArgumentException("There has to be a stock count for every product");
+        }
+        if (priceVersion < 0) {
+            throw new IllegalArgumentException("A price version cannot be negative");
+        }
+        if (userCoins.length != denominations.length || systemCoins.length != denominations.length) {
+            throw new IllegalArgumentException("There has to be a coin count for every denomination");
+        }
+        for (int i = 0; i < denominations.length; i++) {
+            Preconditions.checkPositive(userCoins[i]);
+            Preconditions.checkPositive(systemCoins[i]);
+        }
+    }
+
+    /**
+     * The coin values, smallest first.
+     */
+    public int[] getDenominations() {
+        return denominations.clone();
+    }
+
+    public int[] getUserCoins() {
+        return userCoins.clone();
+    }
+
+    public int[] getSystemCoins() {
+        return systemCoins.clone();
+    }
+
+    /**
+     * The products in position order.
+     */
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    /**
+     * How many of each product are left, in the same order as getProducts. StockCounter.UNLIMITED for a product that
+     * never runs out.
+     */
+    public int[] getStock() {
+        return stock.clone();
+    }
+
+    /**
+     * The version of the last price table applied, or 0 if there hasn't been one.
+     */
+    public long getPriceVersion() {
+        return priceVersion;
+    }
+
+    /**
+     * The money the current customer has put in.
+     */
+    public int getUserCredit() {
+        int credit = 0;
+        for (int i = 0; i < denominations.length; i++) {
+            credit += denominations[i] * userCoins[i];
+        }
+        return credit;
+    }
+}
@@ -0,0 +1,42 @@
+package com.alextomala.vending.snapshot;
+
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * A machine state, along with the sequence number of the last journal record it includes.
+ *
+ * On disk a snapshot is a SnapshotFile holding one machine.
+ */
+public final class Snapshot {
+    private final long sequence;
+    private final MachineState state;
+
+    public Snapshot(long sequence, MachineState state) {
+        this.sequence = sequence;
+        this.state = Preconditions.checkNotNull(state);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public MachineState getState() {
+        return state;
+    }
+
+    public void write(Path file) throws IOException {
+        SnapshotFile.write(file, Collections.singletonList(this));
+    }
+
+    public static Snapshot read(Path file) throws IOException {
+        SnapshotFile snapshotFile = SnapshotFile.open(file);
+        if (snapshotFile.getMachineCount() != 1) {
+            throw new IOException(String.format("%s holds %d machines, not one", file, snapshotFile.getMachineCount()));
+        }
+        return snapshotFile.getSnapshot(0);
+    }
+}
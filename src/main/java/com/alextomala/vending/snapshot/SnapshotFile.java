@@ -0,0 +1,355 @@
+package com.alextomala.vending.snapshot;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshots of any number of machines in one file, with a fixed layout so a machine can be read straight out of the
+ * mapped file without parsing anything in front of it.
+ *
+ * Every machine in a file takes the same coins. All numbers are little endian ints unless noted:
+ *
+ *   header (40 bytes)   magic, version, machine count, denomination count (d), product table offset,
+ *                       string table offset, file length, header length, machine entry length,
+ *                       product entry length
+ *   denominations       d coin values, smallest first
+ *   machine table       per machine, 24 + 8d bytes: long journal sequence, first product, product count,
+ *                       d user coin counts, d system coin counts, long price version
+ *   product table       per product, 20 bytes: position, price, name offset in the string table (-1 for no name),
+ *                       name length in bytes, stock (-1 for a product that never runs out)
+ *   string table        UTF-8 product names, each distinct name stored once
+ *
+ * The header says how long it is and how long each machine and product entry is, and reading only needs them to be
+ * at least the lengths above. So fields can be added to the end of the header or of either kind of entry without a
+ * new version, and older code skips them. Anything that moves an existing field needs a new version number, and files
+ * with a version this code doesn't know are refused.
+ *
+ * Loading maps the file and reads a machine's fields only when asked. A product that appears in many machines (every
+ * machine stocked from the same planogram, say) is only turned into a Product once per file. Because of that a
+ * SnapshotFile should only be read by one thread at a time.
+ */
+public final class SnapshotFile {
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x504e5356;
+    private static final int HEADER = 40;
+    private static final int PRODUCT_ENTRY = 20;
+
+    private final ByteBuffer buffer;
+    private final int machineCount;
+    private final int[] denominations;
+    private final int headerLength;
+    private final int machineEntry;
+    private final int productEntry;
+    private final int productTable;
+    private final int stringTable;
+
+    // Keyed by position, price and name offset, which together say everything about a product.
+    private final Map<ProductKey, Product> products;
+
+    private SnapshotFile(ByteBuffer buffer, Path file) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+            throw new IOException(String.format("%s is not a machine snapshot", file));
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(String.format("%s is a version %d snapshot, only version %d can be read", file,
+                    version, VERSION));
+        }
+        if (buffer.getInt(24) != buffer.capacity()) {
+            throw new IOException(String.format("%s should be %d bytes long but is %d", file, buffer.getInt(24),
+                    buffer.capacity()));
+        }
+
+        machineCount = buffer.getInt(8);
+        int denominationCount = buffer.getInt(12);
+        headerLength = buffer.getInt(28);
+        machineEntry = buffer.getInt(32);
+        productEntry = buffer.getInt(36);
+        if (denominationCount < 0 || headerLength < HEADER || machineEntry < machineEntry(denominationCount)
+                || productEntry < PRODUCT_ENTRY) {
+            throw new IOException(String.format("%s is damaged", file));
+        }
+
+        productTable = buffer.getInt(16);
+        stringTable = buffer.getInt(20);
+        if (machineTable(denominationCount) + (long) machineCount * machineEntry > productTable
+                || productTable > stringTable || stringTable > buffer.capacity()) {
+            throw new IOException(String.format("%s is damaged", file));
+        }
+        denominations = new int[denominationCount];
+        for (int i = 0; i < denominations.length; i++) {
+            denominations[i] = buffer.getInt(headerLength + 4 * i);
+        }
+        products = new HashMap<>();
+    }
+
+    /**
+     * Maps the file. Nothing past the header is read until a machine is asked for.
+     */
+    public static SnapshotFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is too big to be a machine snapshot", file));
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // The mapping stays valid after the channel is closed.
+            return new SnapshotFile(buffer.order(ByteOrder.LITTLE_ENDIAN), file);
+        }
+    }
+
+    /**
+     * Writes the snapshots to a temporary file and then moves it over the file, so a crash halfway through leaves the
+     * previous file in place.
+     */
+    public static void write(Path file, List<Snapshot> snapshots) throws IOException {
+        if (Preconditions.checkNotNull(snapshots).isEmpty()) {
+            throw new IllegalArgumentException("There has to be at least one snapshot");
+        }
+        int[] denominations = snapshots.get(0).getState().getDenominations();
+
+        Map<String, Integer> nameOffsets = new HashMap<>();
+        Map<String, byte[]> names = new LinkedHashMap<>();
+        int stringBytes = 0;
+        int productCount = 0;
+        for (Snapshot snapshot : snapshots) {
+            if (!Arrays.equals(denominations, snapshot.getState().getDenominations())) {
+                throw new IllegalArgumentException("Every machine in a snapshot file has to take the same coins");
+            }
+            for (Product product : snapshot.getState().getProducts()) {
+                productCount++;
+                if (product.getName() != null && !nameOffsets.containsKey(product.getName())) {
+                    byte[] name = product.getName().getBytes(StandardCharsets.UTF_8);
+                    nameOffsets.put(product.getName(), stringBytes);
+                    names.put(product.getName(), name);
+                    stringBytes += name.length;
+                }
+            }
+        }
+
+        int machineTable = HEADER + 4 * denominations.length;
+        int machineEntry = (int) machineEntry(denominations.length);
+        long productTable = machineTable + (long) machineEntry * snapshots.size();
+        long stringTable = productTable + (long) PRODUCT_ENTRY * productCount;
+        long length = stringTable + stringBytes;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many machines for one snapshot file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(snapshots.size()).putInt(denominations.length)
+                .putInt((int) productTable).putInt((int) stringTable).putInt((int) length).putInt(HEADER)
+                .putInt(machineEntry).putInt(PRODUCT_ENTRY);
+        for (int value : denominations) {
+            buffer.putInt(value);
+        }
+
+        int firstProduct = 0;
+        for (Snapshot snapshot : snapshots) {
+            MachineState state = snapshot.getState();
+            buffer.putLong(snapshot.getSequence()).putInt(firstProduct).putInt(state.getProducts().size());
+            for (int count : state.getUserCoins()) {
+                buffer.putInt(count);
+            }
+            for (int count : state.getSystemCoins()) {
+                buffer.putInt(count);
+            }
+            buffer.putLong(state.getPriceVersion());
+            firstProduct += state.getProducts().size();
+        }
+
+        for (Snapshot snapshot : snapshots) {
+            List<Product> products = snapshot.getState().getProducts();
+            int[] stock = snapshot.getState().getStock();
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                buffer.putInt(product.getPosition()).putInt(product.getPrice());
+                if (product.getName() == null) {
+                    buffer.putInt(-1).putInt(0);
+                } else {
+                    buffer.putInt(nameOffsets.get(product.getName())).putInt(names.get(product.getName()).length);
+                }
+                buffer.putInt(stock[i]);
+            }
+        }
+        for (byte[] name : names.values()) {
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getMachineCount() {
+        return machineCount;
+    }
+
+    /**
+     * The coin values every machine in the file takes, smallest first.
+     */
+    public int[] getDenominations() {
+        return denominations.clone();
+    }
+
+    /**
+     * The last journal record included in this machine's snapshot.
+     */
+    public long getSequence(int machine) {
+        return buffer.getLong(machineOffset(machine));
+    }
+
+    /**
+     * The money the machine's current customer had put in, read straight from the file.
+     */
+    public int getUserCredit(int machine) {
+        int userCoins = machineOffset(machine) + 16;
+        int credit = 0;
+        for (int i = 0; i < denominations.length; i++) {
+            credit += denominations[i] * buffer.getInt(userCoins + 4 * i);
+        }
+        return credit;
+    }
+
+    /**
+     * The coins in every machine's vault, laid out [machine][denomination] in one array and read straight from the
+     * file without making any MachineStates. These are the vault counts when the snapshots were taken.
+     */
+    public int[] getSystemCoins() {
+        int d = denominations.length;
+        int[] coins = new int[machineCount * d];
+        for (int machine = 0; machine < machineCount; machine++) {
+            int systemCoins = machineOffset(machine) + 16 + 4 * d;
+            for (int i = 0; i < d; i++) {
+                coins[machine * d + i] = buffer.getInt(systemCoins + 4 * i);
+            }
+        }
+        return coins;
+    }
+
+    public int getProductCount(int machine) {
+        return buffer.getInt(machineOffset(machine) + 12);
+    }
+
+    public Snapshot getSnapshot(int machine) {
+        return new Snapshot(getSequence(machine), getState(machine));
+    }
+
+    public MachineState getState(int machine) {
+        int offset = machineOffset(machine);
+        int firstProduct = buffer.getInt(offset + 8);
+        int productCount = buffer.getInt(offset + 12);
+        int[] userCoins = new int[denominations.length];
+        int[] systemCoins = new int[denominations.length];
+        for (int i = 0; i < denominations.length; i++) {
+            userCoins[i] = buffer.getInt(offset + 16 + 4 * i);
+            systemCoins[i] = buffer.getInt(offset + 16 + 4 * (denominations.length + i));
+        }
+
+        List<Product> machineProducts = new ArrayList<>(productCount);
+        int[] stock = new int[productCount];
+        for (int i = 0; i < productCount; i++) {
+            machineProducts.add(product(firstProduct + i));
+            stock[i] = buffer.getInt(productOffset(firstProduct + i) + 16);
+        }
+        long priceVersion = buffer.getLong(offset + 16 + 8 * denominations.length);
+        return new MachineState(denominations, userCoins, systemCoins, machineProducts, stock, priceVersion);
+    }
+
+    private int productOffset(int index) {
+        int offset = productTable + productEntry * index;
+        if (index < 0 || offset > stringTable - productEntry) {
+            throw new IllegalStateException(String.format("Product %d is past the end of the product table", index));
+        }
+        return offset;
+    }
+
+    private Product product(int index) {
+        int offset = productOffset(index);
+        int position = buffer.getInt(offset);
+        int price = buffer.getInt(offset + 4);
+        int nameOffset = buffer.getInt(offset + 8);
+
+        ProductKey key = new ProductKey(position, price, nameOffset);
+        Product product = products.get(key);
+        if (product == null) {
+            product = new Product(position, price, nameOffset < 0 ? null : name(nameOffset, buffer.getInt(offset + 12)));
+            products.put(key, product);
+        }
+        return product;
+    }
+
+    private String name(int nameOffset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(stringTable + nameOffset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long machineEntry(int denominationCount) {
+        return 24 + 8L * denominationCount;
+    }
+
+    private long machineTable(int denominationCount) {
+        return headerLength + 4L * denominationCount;
+    }
+
+    private int machineOffset(int machine) {
+        if (machine < 0 || machine >= machineCount) {
+            throw new IndexOutOfBoundsException(String.format("There is no machine %d in a file of %d", machine,
+                    machineCount));
+        }
+        return (int) machineTable(denominations.length) + machineEntry * machine;
+    }
+
+    private static final class ProductKey {
+        private final int position;
+        private final int price;
+        private final int nameOffset;
+
+        ProductKey(int position, int price, int nameOffset) {
+            this.position = position;
+            this.price = price;
+            this.nameOffset = nameOffset;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ProductKey)) {
+                return false;
+            }
+            ProductKey key = (ProductKey) other;
+            return position == key.position && price == key.price && nameOffset == key.nameOffset;
+        }
+
+        @Override
+        public int hashCode() {
+            return (position * 31 + price) * 31 + nameOffset;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.alextomala.vending.vault;
+
+import com.alextomala.vending.change.ChangeMaker;
+import com.alextomala.vending.change.OptimalChangeMaker;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.preconditions.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free vault that keeps every coin count in a single long, so a whole transaction is one compare-and-set.
+ *
+ * The long is split into three 21 bit fields: nickels in the low bits, then dimes, then quarters. Coin counts are
+ * passed around in the same packed form (see pack and the nickelsOf/dimesOf/quartersOf functions), so the only thing
+ * the purchase path allocates is the pair of three-coin arrays the ChangeMaker works in, and only when there is change
+ * to give.
+ *
+ * The coins are picked by a ChangeMaker, the same as in JavaVendingMachine, so both machines turn away the same sales.
+ * By default it is an OptimalChangeMaker, which pays 30 cents from a quarter and three dimes where taking the quarter
+ * first would leave five cents it can't pay.
+ *
+ * Unlike Vault, making change is all-or-nothing. Either every coin needed comes out of the vault together, or the
+ * vault is left exactly as it was.
+ */
+public class PackedVault {
+    /**
+     * Returned by the withdraw functions when the vault can't make the requested change.
+     */
+    public static final long NO_CHANGE = -1L;
+
+    public static final int MAX_COINS = (1 << 21) - 1;
+
+    private static final int DIME_SHIFT = 21;
+    private static final int QUARTER_SHIFT = 42;
+    private static final long FIELD_MASK = MAX_COINS;
+
+    // The change maker doesn't change once it is built, so every vault can share one.
+    private static final ChangeMaker DEFAULT_CHANGE_MAKER =
+            new OptimalChangeMaker(DenominationRegistry.US_COINS.getValues());
+
+    private final AtomicLong coins;
+    private final ChangeMaker changeMaker;
+
+    public PackedVault() {
+        this(DEFAULT_CHANGE_MAKER);
+    }
+
+    /**
+     * The change maker must be built for US_COINS, the nickels, dimes and quarters a packed vault holds.
+     */
+    public PackedVault(ChangeMaker changeMaker) {
+        this.changeMaker = Preconditions.checkNotNull(changeMaker);
+        coins = new AtomicLong();
+    }
+
+    public static long pack(int nickels, int dimes, int quarters) {
+        return checkCount(nickels) | ((long) checkCount(dimes) << DIME_SHIFT) | ((long) checkCount(quarters) << QUARTER_SHIFT);
+    }
+
+    public static int nickelsOf(long packed) {
+        return (int) (packed & FIELD_MASK);
+    }
+
+    public static int dimesOf(long packed) {
+        return (int) ((packed >>> DIME_SHIFT) & FIELD_MASK);
+    }
+
+    public static int quartersOf(long packed) {
+        return (int) ((packed >>> QUARTER_SHIFT) & FIELD_MASK);
+    }
+
+    public static int totalOf(long packed) {
+        return nickelsOf(packed) * 5 + dimesOf(packed) * 10 + quartersOf(packed) * 25;
+    }
+
+    public void addMoney(int cents) {
+        deposit(coinOf(cents));
+    }
+
+    /**
+     * A single coin worth this many cents, in packed form.
+     */
+    public static long coinOf(int cents) {
+        switch (cents) {
+            case 5:
+                return pack(1, 0, 0);
+            case 10:
+                return pack(0, 1, 0);
+            case 25:
+                return pack(0, 0, 1);
+            default:
+                throw new InvalidDenominationException(String.format("User entered invalid amount of money %d", cents));
+        }
+    }
+
+    /**
+     * Adds all of the packed coins in one step.
+     */
+    public void deposit(long packedCoins) {
+        while (true) {
+            long current = coins.get();
+            if (coins.compareAndSet(current, add(current, packedCoins))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes exactly the packed coins, or nothing at all if any denomination is short.
+     */
+    public boolean withdraw(long packedCoins) {
+        while (true) {
+            long current = coins.get();
+            if (!covers(current, packedCoins)) {
+                return false;
+            }
+            if (coins.compareAndSet(current, current - packedCoins)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes change for the amount out of the vault, and returns the coins taken in packed form. If the change can't
+     * be made the vault is untouched and NO_CHANGE is returned.
+     */
+    public long withdrawChange(int amount) {
+        return depositAndWithdrawChange(0L, amount);
+    }
+
+    /**
+     * Puts the deposited coins in and takes change for the amount out as one step. This is a sale: the user's coins go
+     * in, and the change can be made from them as well as from what was already there. If the change can't be made
+     * neither half happens, the vault is untouched and NO_CHANGE is returned.
+     */
+    public long depositAndWithdrawChange(long packedDeposit, int amount) {
+        Preconditions.checkPositive(amount);
+        while (true) {
+            long current = coins.get();
+            long available = add(current, packedDeposit);
+            long change = makeChange(available, amount);
+            if (change == NO_CHANGE) {
+                return NO_CHANGE;
+            }
+            if (coins.compareAndSet(current, available - change)) {
+                return change;
+            }
+        }
+    }
+
+    /**
+     * The first half of a sale that can still be called off: works out change for the amount from the vault and the
+     * deposited coins together, like depositAndWithdrawChange, but only takes out the coins that can't come from the
+     * deposit. The deposit doesn't go in yet. Finish with commitChange once the product is out, or abortChange if it
+     * never comes out, passing both the same deposit and the change this returned.
+     *
+     * Nothing is written when the deposit covers the change on its own, which includes every sale paid with exact
+     * change, and nothing is written when the change can't be made, so a sale that is turned away costs no more than
+     * one that goes through.
+     *
+     * @return the change in packed form, or NO_CHANGE with the vault untouched.
+     */
+    public long reserveChange(long packedDeposit, int amount) {
+        Preconditions.checkPositive(amount);
+        while (true) {
+            long current = coins.get();
+            long change = makeChange(add(current, packedDeposit), amount);
+            if (change == NO_CHANGE) {
+                return NO_CHANGE;
+            }
+            long shortfall = surplus(change, packedDeposit);
+            if (shortfall == 0L || coins.compareAndSet(current, current - shortfall)) {
+                return change;
+            }
+        }
+    }
+
+    /**
+     * Puts in whatever of the deposit wasn't handed back as change. The vault only grows, so this can't fail.
+     */
+    public void commitChange(long packedDeposit, long change) {
+        long kept = surplus(packedDeposit, change);
+        if (kept != 0L) {
+            deposit(kept);
+        }
+    }
+
+    /**
+     * Puts back the coins reserveChange took out. The deposit never went in, so the vault is as if the sale hadn't
+     * been tried, apart from anything other customers did in the meantime.
+     */
+    public void abortChange(long packedDeposit, long change) {
+        long taken = surplus(change, packedDeposit);
+        if (taken != 0L) {
+            deposit(taken);
+        }
+    }
+
+    /**
+     * Empties the vault and returns what was in it in packed form.
+     */
+    public long takeAll() {
+        return coins.getAndSet(0L);
+    }
+
+    public long getCoins() {
+        return coins.get();
+    }
+
+    public int getTotalMoney() {
+        return totalOf(coins.get());
+    }
+
+    public int getNickels() {
+        return nickelsOf(coins.get());
+    }
+
+    public int getDimes() {
+        return dimesOf(coins.get());
+    }
+
+    public int getQuarters() {
+        return quartersOf(coins.get());
+    }
+
+    private long makeChange(long available, int amount) {
+        if (amount == 0) {
+            return 0L;
+        }
+        int[] counts = {nickelsOf(available), dimesOf(available), quartersOf(available)};
+        int[] change = new int[counts.length];
+        if (!changeMaker.makeChange(amount, counts, change)) {
+            return NO_CHANGE;
+        }
+        return pack(change[0], change[1], change[2]);
+    }
+
+    private static boolean covers(long available, long requested) {
+        return nickelsOf(available) >= nickelsOf(requested)
+                && dimesOf(available) >= dimesOf(requested)
+                && quartersOf(available) >= quartersOf(requested);
+    }
+
+    /**
+     * What a has more of than b, field by field.
+     */
+    private static long surplus(long a, long b) {
+        return pack(Math.max(nickelsOf(a) - nickelsOf(b), 0),
+                Math.max(dimesOf(a) - dimesOf(b), 0),
+                Math.max(quartersOf(a) - quartersOf(b), 0));
+    }
+
+    /**
+     * Adds field by field so that a full denomination throws instead of silently carrying into the next one.
+     */
+    public static long add(long current, long packedCoins) {
+        return pack(nickelsOf(current) + nickelsOf(packedCoins),
+                dimesOf(current) + dimesOf(packedCoins),
+                quartersOf(current) + quartersOf(packedCoins));
+    }
+
+    private static int checkCount(int count) {
+        if (Preconditions.checkPositive(count) > MAX_COINS) {
+            throw new IllegalStateException(String.format("A vault cannot hold more than %d of one coin", MAX_COINS));
+        }
+        return count;
+    }
+}
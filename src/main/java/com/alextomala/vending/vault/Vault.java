@@ -1,73 +1,96 @@
 package com.alextomala.vending.vault;
 
+import com.alextomala.vending.currency.Denomination;
+import com.alextomala.vending.currency.DenominationRegistry;
 import com.alextomala.vending.preconditions.Preconditions;
 import com.alextomala.vending.exception.InvalidDenominationException;
 
 /**
  * This is a class used to abstract away the currency manipulations from the vending machine.
  *
- * If the VendingMachineHardwareFunctions had more support, I would have made an enum to hold currency types
- * so this could be extended to support different currencies and denominations of currency.
+ * The coins it holds are described by a DenominationRegistry, and the count of each coin is kept in an array indexed
+ * the same way as the registry. The total is kept up to date as coins come and go, so getTotalMoney doesn't depend on
+ * how many denominations there are.
  */
 public class Vault {
-    private int nickels;
-    private int dimes;
-    private int quarters;
+    private final DenominationRegistry registry;
+    private final int[] counts;
+    private int totalMoney;
 
     public Vault() {
-        nickels = 0;
-        dimes = 0;
-        quarters = 0;
+        this(DenominationRegistry.US_COINS);
+    }
+
+    public Vault(DenominationRegistry registry) {
+        this.registry = Preconditions.checkNotNull(registry);
+        counts = new int[registry.size()];
+        totalMoney = 0;
+    }
+
+    public DenominationRegistry getRegistry() {
+        return registry;
     }
 
     public void addMoney(Integer cents) {
-        switch (Preconditions.checkNotNull(cents)) {
-            case 5:
-                nickels++;
-                break;
-            case 10:
-                dimes++;
-                break;
-            case 25:
-                quarters++;
-                break;
-            default:
-                throw new InvalidDenominationException(String.format("User entered invalid amount of money %d", cents));
+        addMoney(Preconditions.checkNotNull(cents).intValue());
+    }
+
+    public void addMoney(int cents) {
+        int index = registry.indexOf(cents);
+        if (index < 0) {
+            throw new InvalidDenominationException(String.format("User entered invalid amount of money %d", cents));
         }
+        add(index, 1);
     }
 
     public void clearVault() {
-        nickels = 0;
-        dimes = 0;
-        quarters = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        totalMoney = 0;
     }
 
     public int getTotalMoney() {
-        return nickels * 5 + dimes * 10 + quarters * 25;
+        return totalMoney;
     }
 
     public void addNickel() {
-        nickels++;
+        add(registry.checkedIndexOf(5), 1);
     }
 
     public void addDime() {
-        dimes++;
+        add(registry.checkedIndexOf(10), 1);
     }
 
     public void addQuarter() {
-        quarters++;
+        add(registry.checkedIndexOf(25), 1);
     }
 
     public int getNickels() {
-        return nickels;
+        return counts[registry.checkedIndexOf(5)];
     }
 
     public int getDimes() {
-        return dimes;
+        return counts[registry.checkedIndexOf(10)];
     }
 
     public int getQuarters() {
-        return quarters;
+        return counts[registry.checkedIndexOf(25)];
+    }
+
+    /**
+     * The number of coins of the denomination at this index in the registry.
+     */
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Copies the count of every denomination into the array, in registry order, and returns it.
+     */
+    public int[] getCounts(int[] into) {
+        System.arraycopy(counts, 0, into, 0, counts.length);
+        return into;
     }
 
     /**
@@ -75,9 +98,7 @@ public class Vault {
      * It is up to the caller to see how many nickels were actually removed.
      */
     public int removeNickels(int nickelsToRemove) {
-        int nickelsRemoved = Math.min(Preconditions.checkPositive(nickelsToRemove), nickels);
-        nickels -= nickelsRemoved;
-        return nickelsRemoved;
+        return remove(registry.checkedIndexOf(5), nickelsToRemove);
     }
 
     /**
@@ -85,9 +106,7 @@ public class Vault {
      * It is up to the caller to see how many dimes were actually removed.
      */
     public int removeDimes(int dimesToRemove) {
-        int dimesRemoved = Math.min(Preconditions.checkPositive(dimesToRemove), dimes);
-        dimes -= dimesRemoved;
-        return dimesRemoved;
+        return remove(registry.checkedIndexOf(10), dimesToRemove);
     }
 
     /**
@@ -95,8 +114,32 @@ public class Vault {
      * It is up to the caller to see how many quarters were actually removed.
      */
     public int removeQuarters(int quartersToRemove) {
-        int quartersRemoved = Math.min(Preconditions.checkPositive(quartersToRemove), quarters);
-        quarters -= quartersRemoved;
-        return quartersRemoved;
+        return remove(registry.checkedIndexOf(25), quartersToRemove);
+    }
+
+    /**
+     * Like the other remove functions, this will NEVER remove more coins than the vault has.
+     */
+    public int remove(int index, int coinsToRemove) {
+        int coinsRemoved = Math.min(Preconditions.checkPositive(coinsToRemove), counts[index]);
+        counts[index] -= coinsRemoved;
+        totalMoney -= coinsRemoved * registry.getValue(index);
+        return coinsRemoved;
+    }
+
+    /**
+     * Adds any number of one coin in a single step.
+     */
+    public void add(Denomination denomination, int coinsToAdd) {
+        add(registry.indexOf(Preconditions.checkNotNull(denomination)), coinsToAdd);
+    }
+
+    /**
+     * Adds coins of the denomination at this index in the registry.
+     */
+    public void add(int index, int coinsToAdd) {
+        Preconditions.checkPositive(coinsToAdd);
+        counts[index] += coinsToAdd;
+        totalMoney += coinsToAdd * registry.getValue(index);
     }
 }
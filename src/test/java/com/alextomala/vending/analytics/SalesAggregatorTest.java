@@ -0,0 +1,204 @@
+package com.alextomala.vending.analytics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SalesAggregatorTest {
+    private static final long MINUTE = 60_000;
+
+    private long now;
+    private SalesAggregator aggregator;
+
+    @Before
+    public void setUp() throws Exception {
+        now = 100 * MINUTE;
+        // Three machines with positions 0 to 9, keeping an hour of one minute buckets.
+        aggregator = new SalesAggregator(3, 10, MINUTE, 60, () -> now);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        aggregator = null;
+    }
+
+    @Test
+    public void testRecord() {
+        aggregator.record(0, 1, 50);
+        aggregator.record(0, 1, 50);
+        aggregator.record(0, 2, 75);
+        aggregator.record(1, 1, 60);
+
+        assertEquals(2, aggregator.getCount(0, 1, 1));
+        assertEquals(100, aggregator.getRevenue(0, 1, 1));
+        assertEquals(1, aggregator.getCount(0, 2, 1));
+        assertEquals(3, aggregator.getMachineCount(0, 1));
+        assertEquals(175, aggregator.getMachineRevenue(0, 1));
+        assertEquals(60, aggregator.getMachineRevenue(1, 1));
+        assertEquals(0, aggregator.getMachineCount(2, 1));
+    }
+
+    @Test
+    public void testGetFleetCount() {
+        aggregator.record(0, 1, 50);
+        aggregator.record(1, 1, 50);
+        aggregator.record(2, 1, 50);
+        aggregator.record(2, 2, 75);
+        now += MINUTE;
+        aggregator.record(1, 1, 50);
+
+        assertEquals(4, aggregator.getFleetCount(1, 2));
+        assertEquals(1, aggregator.getFleetCount(1, 1));
+        assertEquals(1, aggregator.getFleetCount(2, 2));
+    }
+
+    @Test
+    public void testRecord_positionPastTheEndOnlyCountsForTheMachine() {
+        aggregator.record(0, 12, 50);
+
+        assertEquals(1, aggregator.getMachineCount(0, 1));
+        assertEquals(50, aggregator.getMachineRevenue(0, 1));
+        assertEquals(0, aggregator.bestSellers(0, 5, 1).size());
+    }
+
+    @Test
+    public void testTumblingWindow() {
+        aggregator.record(0, 1, 50);
+        now += MINUTE;
+        aggregator.record(0, 1, 50);
+
+        assertEquals(1, aggregator.getCount(0, 1, 1));
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        for (int minute = 0; minute < 10; minute++) {
+            aggregator.record(0, 1, 50);
+            now += MINUTE;
+        }
+        // Nothing sold in the current minute yet, so a 5 minute window holds the last 4 sales.
+        assertEquals(4, aggregator.getCount(0, 1, 5));
+        assertEquals(10, aggregator.getCount(0, 1, 60));
+        assertEquals(5 * MINUTE, aggregator.getWindowMillis(5));
+    }
+
+    @Test
+    public void testOldBucketsAreReused() {
+        aggregator.record(0, 1, 50);
+        now += 60 * MINUTE;
+        assertEquals(0, aggregator.getCount(0, 1, 60));
+
+        // Same slot of the ring, an hour later.
+        aggregator.record(0, 1, 25);
+        assertEquals(1, aggregator.getCount(0, 1, 60));
+        assertEquals(25, aggregator.getRevenue(0, 1, 60));
+    }
+
+    @Test
+    public void testRecord_tooOldIsDropped() {
+        now += 60 * MINUTE;
+        aggregator.record(0, 1, 50);
+        aggregator.record(0, 1, 50, now - 60 * MINUTE);
+
+        assertEquals(1, aggregator.getCount(0, 1, 60));
+    }
+
+    @Test
+    public void testRecord_earlierInTheWindow() {
+        aggregator.record(0, 1, 50, now - 2 * MINUTE);
+
+        assertEquals(0, aggregator.getCount(0, 1, 2));
+        assertEquals(1, aggregator.getCount(0, 1, 3));
+    }
+
+    @Test
+    public void testBestSellers() {
+        aggregator.record(0, 3, 50);
+        aggregator.record(0, 3, 50);
+        aggregator.record(1, 3, 50);
+        aggregator.record(0, 5, 100);
+        aggregator.record(2, 5, 100);
+        aggregator.record(2, 7, 25);
+        aggregator.record(1, 1, 25);
+
+        Ranking ranking = aggregator.bestSellers(3, 1);
+        assertEquals(3, ranking.size());
+        assertEquals(3, ranking.getKey(0));
+        assertEquals(3, ranking.getCount(0));
+        assertEquals(150, ranking.getRevenue(0));
+        assertEquals(5, ranking.getKey(1));
+        assertEquals(2, ranking.getCount(1));
+        // 1 and 7 sold one each, the lower position wins the tie.
+        assertEquals(1, ranking.getKey(2));
+    }
+
+    @Test
+    public void testBestSellers_forOneMachine() {
+        aggregator.record(0, 3, 50);
+        aggregator.record(1, 4, 50);
+        aggregator.record(1, 4, 50);
+
+        Ranking ranking = aggregator.bestSellers(0, 5, 1);
+        assertEquals(1, ranking.size());
+        assertEquals(3, ranking.getKey(0));
+        assertEquals(1, ranking.getCount(0));
+    }
+
+    @Test
+    public void testTopMachines() {
+        aggregator.record(0, 1, 50);
+        aggregator.record(1, 1, 25);
+        aggregator.record(1, 1, 25);
+        aggregator.record(1, 1, 25);
+        aggregator.record(2, 1, 100);
+
+        Ranking ranking = aggregator.topMachines(2, 1);
+        assertEquals(2, ranking.size());
+        assertEquals(2, ranking.getKey(0));
+        assertEquals(100, ranking.getRevenue(0));
+        assertEquals(1, ranking.getKey(1));
+        assertEquals(3, ranking.getCount(1));
+    }
+
+    @Test
+    public void testListenerFor() {
+        SaleListener listener = aggregator.listenerFor(2);
+        listener.productSold(4, 65);
+
+        assertEquals(1, aggregator.getCount(2, 4, 1));
+        assertEquals(65, aggregator.getRevenue(2, 4, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowLongerThanTheRing() {
+        aggregator.getCount(0, 1, 61);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testUnknownMachine() {
+        aggregator.record(3, 1, 50);
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                aggregator.record(i % 3, 1, 10);
+            }
+        });
+        writer.start();
+        long last = 0;
+        while (writer.isAlive()) {
+            long count = aggregator.getCount(0, 1, 1);
+            // Counts only go up while the minute doesn't change.
+            assertTrue(count >= last);
+            last = count;
+        }
+        writer.join();
+        assertEquals(200_000, aggregator.getCount(0, 1, 1) + aggregator.getCount(1, 1, 1)
+                + aggregator.getCount(2, 1, 1));
+    }
+}
@@ -0,0 +1,269 @@
+package com.alextomala.vending.catalog;
+
+import com.alextomala.vending.exception.PositionEmptyException;
+import com.alextomala.vending.exception.PositionOccupiedException;
+import com.alextomala.vending.pricing.PriceTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProductCatalogTest {
+
+    private ProductCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        catalog = new ProductCatalog();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        catalog = null;
+    }
+
+    @Test
+    public void testGet_emptyCatalog() {
+        assertNull(catalog.get(0));
+        assertNull(catalog.get(3));
+        assertNull(catalog.get(-1));
+    }
+
+    @Test
+    public void testAdd() {
+        Product gum = new Product(3, 50, "Gum");
+        catalog.add(gum);
+
+        assertSame(gum, catalog.get(3));
+        assertNull(catalog.get(2));
+        assertNull(catalog.get(4));
+        assertEquals(1, catalog.size());
+    }
+
+    @Test
+    public void testAdd_outOfOrder() {
+        catalog.add(new Product(7, 50, "Gum"));
+        catalog.add(new Product(1, 15, "Candy Bar"));
+
+        assertEquals("Gum", catalog.get(7).getName());
+        assertEquals("Candy Bar", catalog.get(1).getName());
+        assertEquals(2, catalog.size());
+    }
+
+    @Test(expected = PositionOccupiedException.class)
+    public void testAdd_positionOccupied() {
+        catalog.add(new Product(1, 50, "Gum"));
+        catalog.add(new Product(1, 50, "Peanuts"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd_pastTheEndOfTheMachine() {
+        catalog.add(new Product(ProductCatalog.MAX_POSITION + 1, 50, "Gum"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProduct_negativePrice() {
+        new Product(1, -5, "Gum");
+    }
+
+    @Test
+    public void testGetEmptyMessage_precomputed() {
+        String first = catalog.getEmptyMessage(3);
+
+        assertEquals("No item in position 3", first);
+        assertSame(first, catalog.getEmptyMessage(3));
+    }
+
+    @Test
+    public void testGetEmptyMessage_growsWithTheCatalog() {
+        catalog.add(new Product(100, 50, "Gum"));
+
+        assertSame(catalog.getEmptyMessage(99), catalog.getEmptyMessage(99));
+        assertEquals("No item in position 99", catalog.getEmptyMessage(99));
+        assertEquals("No item in position 5000", catalog.getEmptyMessage(5000));
+    }
+
+    @Test
+    public void testProduct_priceMessage() {
+        Product gum = new Product(3, 50, "Gum");
+
+        assertEquals("Item in position 3 costs 50", gum.getPriceMessage());
+        assertTrue(gum.getPriceMessage() == gum.getPriceMessage());
+    }
+
+    @Test
+    public void testReplaceAll() {
+        catalog.add(new Product(1, 50, "Gum"));
+        Product chips = new Product(2, 75, "Chips");
+        Product candy = new Product(90, 65, null);
+        catalog.replaceAll(Arrays.asList(candy, chips), new int[]{StockCounter.UNLIMITED, StockCounter.UNLIMITED}, 0);
+
+        assertNull(catalog.get(1));
+        assertSame(chips, catalog.get(2));
+        assertSame(candy, catalog.get(90));
+        assertEquals(2, catalog.size());
+        assertEquals(Arrays.asList(chips, candy), catalog.getProducts());
+        assertEquals("No item in position 89", catalog.getEmptyMessage(89));
+    }
+
+    @Test(expected = PositionOccupiedException.class)
+    public void testReplaceAll_samePositionTwice() {
+        catalog.replaceAll(Arrays.asList(new Product(2, 75, "Chips"), new Product(2, 50, "Gum")),
+                new int[]{StockCounter.UNLIMITED, StockCounter.UNLIMITED}, 0);
+    }
+
+    @Test
+    public void testStock() {
+        catalog.add(new Product(1, 50, "Gum"), 2);
+        catalog.add(new Product(2, 75, "Chips"));
+
+        assertEquals(2, catalog.getStock(1));
+        assertEquals(StockCounter.UNLIMITED, catalog.getStock(2));
+        assertEquals(0, catalog.getStock(3));
+        assertNull(catalog.getStockCounter(3));
+
+        StockCounter gum = catalog.getStockCounter(1);
+        assertTrue(gum.tryTake());
+        assertTrue(gum.tryTake());
+        assertFalse(gum.tryTake());
+        assertEquals(0, catalog.getStock(1));
+
+        assertTrue(catalog.getStockCounter(2).tryTake());
+        assertEquals(StockCounter.UNLIMITED, catalog.getStock(2));
+    }
+
+    @Test
+    public void testStock_keptWhenTheCatalogGrows() {
+        catalog.add(new Product(1, 50, "Gum"), 5);
+        StockCounter gum = catalog.getStockCounter(1);
+
+        catalog.add(new Product(200, 75, "Chips"), 1);
+        gum.tryTake();
+
+        assertSame(gum, catalog.getStockCounter(1));
+        assertEquals(4, catalog.getStock(1));
+    }
+
+    @Test
+    public void testRestock() {
+        catalog.add(new Product(1, 50, "Gum"), 1);
+        catalog.add(new Product(2, 75, "Chips"));
+
+        catalog.restock(1, 10);
+        catalog.restock(2, 10);
+
+        assertEquals(11, catalog.getStock(1));
+        assertEquals(StockCounter.UNLIMITED, catalog.getStock(2));
+    }
+
+    @Test(expected = PositionEmptyException.class)
+    public void testRestock_emptyPosition() {
+        catalog.restock(1, 10);
+    }
+
+    @Test
+    public void testRestock_severalPositionsAllOrNothing() {
+        catalog.add(new Product(1, 50, "Gum"), 1);
+        catalog.add(new Product(2, 75, "Chips"), 1);
+
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(1, 5);
+        quantities.put(3, 5);
+        try {
+            catalog.restock(quantities);
+        } catch (PositionEmptyException e) {
+            // expected, there is nothing in position 3
+        }
+        assertEquals(1, catalog.getStock(1));
+
+        quantities.remove(3);
+        quantities.put(2, 3);
+        catalog.restock(quantities);
+        assertEquals(6, catalog.getStock(1));
+        assertEquals(4, catalog.getStock(2));
+    }
+
+    @Test
+    public void testGetInventory() {
+        catalog.add(new Product(3, 50, "Gum"), 4);
+        catalog.add(new Product(1, 75, "Chips"));
+
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(1, StockCounter.UNLIMITED);
+        expected.put(3, 4);
+        assertEquals(expected, catalog.getInventory());
+        assertEquals(Arrays.asList(1, 3), Arrays.asList(catalog.getInventory().keySet().toArray()));
+    }
+
+    @Test
+    public void testReplaceAll_withStock() {
+        Product chips = new Product(2, 75, "Chips");
+        Product candy = new Product(90, 65, null);
+        catalog.replaceAll(Arrays.asList(candy, chips), new int[]{7, StockCounter.UNLIMITED}, 0);
+
+        assertEquals(StockCounter.UNLIMITED, catalog.getStock(2));
+        assertEquals(7, catalog.getStock(90));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd_negativeQuantity() {
+        catalog.add(new Product(1, 50, "Gum"), -2);
+    }
+
+    @Test
+    public void testProduct_soldOutMessage() {
+        assertEquals("Item in position 3 is sold out", new Product(3, 50, "Gum").getSoldOutMessage());
+    }
+
+    @Test
+    public void testReprice() {
+        catalog.add(new Product(1, 75, "Chips"), 4);
+        catalog.add(new Product(3, 50, "Gum"));
+        StockCounter chipsStock = catalog.getStockCounter(1);
+
+        Map<Integer, Integer> prices = new HashMap<>();
+        prices.put(1, 80);
+        prices.put(2, 40);
+        assertTrue(catalog.reprice(new PriceTable(1, prices)));
+
+        assertEquals(80, catalog.get(1).getPrice());
+        assertEquals("Item in position 1 costs 80", catalog.get(1).getPriceMessage());
+        assertEquals("Chips", catalog.get(1).getName());
+        assertEquals(50, catalog.get(3).getPrice());
+        assertNull(catalog.get(2));
+        assertSame(chipsStock, catalog.getStockCounter(1));
+        assertEquals(1, catalog.getPriceVersion());
+    }
+
+    @Test
+    public void testReprice_sameOrOlderVersion() {
+        catalog.add(new Product(1, 75, "Chips"));
+        assertTrue(catalog.reprice(new PriceTable(5, Collections.singletonMap(1, 80))));
+        assertFalse(catalog.reprice(new PriceTable(5, Collections.singletonMap(1, 90))));
+        assertFalse(catalog.reprice(new PriceTable(4, Collections.singletonMap(1, 90))));
+
+        assertEquals(80, catalog.get(1).getPrice());
+        assertEquals(5, catalog.getPriceVersion());
+    }
+
+    @Test
+    public void testProduct_withPrice() {
+        Product gum = new Product(3, 50, "Gum");
+        assertSame(gum, gum.withPrice(50, "Item in position 3 costs 50"));
+        Product cheaper = gum.withPrice(45, "Item in position 3 costs 45");
+        assertEquals(45, cheaper.getPrice());
+        assertEquals("Item in position 3 costs 45", cheaper.getPriceMessage());
+        assertSame(gum.getSoldOutMessage(), cheaper.getSoldOutMessage());
+    }
+}
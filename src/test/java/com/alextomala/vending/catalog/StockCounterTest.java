@@ -0,0 +1,70 @@
+package com.alextomala.vending.catalog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StockCounterTest {
+
+    @Test
+    public void testTakeAndPutBack() {
+        StockCounter counter = new StockCounter(1);
+
+        assertTrue(counter.tryTake());
+        assertFalse(counter.tryTake());
+        counter.putBack();
+        assertEquals(1, counter.get());
+        assertFalse(counter.isUnlimited());
+    }
+
+    @Test
+    public void testUnlimited() {
+        StockCounter counter = StockCounter.UNLIMITED_STOCK;
+
+        assertTrue(counter.tryTake());
+        counter.add(5);
+        counter.putBack();
+        assertTrue(counter.isUnlimited());
+        assertEquals(StockCounter.UNLIMITED, counter.get());
+    }
+
+    @Test
+    public void testAdd_stopsAtTheLargestInt() {
+        StockCounter counter = new StockCounter(Integer.MAX_VALUE - 1);
+
+        counter.add(10);
+
+        assertEquals(Integer.MAX_VALUE, counter.get());
+    }
+
+    @Test
+    public void testManyBuyers_neverMoreSalesThanStock() throws Exception {
+        int stock = 10_000;
+        StockCounter counter = new StockCounter(stock);
+        AtomicInteger sold = new AtomicInteger();
+
+        List<Thread> buyers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            buyers.add(new Thread(() -> {
+                for (int i = 0; i < stock; i++) {
+                    if (counter.tryTake()) {
+                        sold.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        buyers.forEach(Thread::start);
+        for (Thread buyer : buyers) {
+            buyer.join();
+        }
+
+        assertEquals(stock, sold.get());
+        assertEquals(0, counter.get());
+    }
+}
@@ -0,0 +1,139 @@
+package com.alextomala.vending.change;
+
+import com.alextomala.vending.currency.DenominationRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeAvailabilityTest {
+
+    private ChangeAvailability availability;
+
+    @Before
+    public void setUp() {
+        availability = new ChangeAvailability(DenominationRegistry.US_COINS);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(availability.canPay(0));
+        assertFalse(availability.canPay(5));
+        assertFalse(availability.canPay(25));
+    }
+
+    @Test
+    public void testAddCoins() {
+        availability.addCoins(1, 3);
+
+        assertTrue(availability.canPay(10));
+        assertTrue(availability.canPay(30));
+        assertFalse(availability.canPay(5));
+        assertFalse(availability.canPay(15));
+        assertFalse(availability.canPay(40));
+    }
+
+    @Test
+    public void testAddCoins_mixesDenominations() {
+        availability.addCoins(0, 1);
+        availability.addCoins(2, 2);
+
+        assertTrue(availability.canPay(5));
+        assertTrue(availability.canPay(30));
+        assertTrue(availability.canPay(55));
+        assertFalse(availability.canPay(10));
+        assertFalse(availability.canPay(45));
+    }
+
+    @Test
+    public void testCanPay_notAMultipleOfTheSmallestCoin() {
+        availability.addCoins(0, 10);
+
+        assertFalse(availability.canPay(7));
+    }
+
+    @Test
+    public void testCanPay_pastTheLimitIsLeftToTheChangeMaker() {
+        assertEquals(315, availability.getLimit());
+        assertFalse(availability.canPay(315));
+        assertTrue(availability.canPay(320));
+    }
+
+    @Test
+    public void testAddCoins_upToTheLimit() {
+        availability.addCoins(0, 100);
+
+        for (int amount = 0; amount <= 315; amount += 5) {
+            assertTrue("" + amount, availability.canPay(amount));
+        }
+    }
+
+    @Test
+    public void testReset() {
+        availability.addCoins(0, 5);
+        availability.reset(new int[]{0, 1, 1});
+
+        assertTrue(availability.canPay(35));
+        assertFalse(availability.canPay(5));
+        assertFalse(availability.canPay(20));
+    }
+
+    @Test
+    public void testRemoveCoins() {
+        availability.addCoins(0, 1);
+        availability.addCoins(1, 2);
+        availability.removeCoins(1, 1);
+
+        assertTrue(availability.canPay(15));
+        assertFalse(availability.canPay(20));
+
+        // More than there are just takes them all.
+        availability.removeCoins(0, 5);
+        assertFalse(availability.canPay(5));
+        assertTrue(availability.canPay(10));
+    }
+
+    @Test
+    public void testAddAndRemoveMatchesReset() {
+        ChangeAvailability fresh = new ChangeAvailability(DenominationRegistry.US_COINS);
+        Random random = new Random(11);
+        int[] counts = new int[3];
+        for (int round = 0; round < 2000; round++) {
+            int index = random.nextInt(3);
+            int coins = random.nextInt(4);
+            if (random.nextBoolean()) {
+                availability.addCoins(index, coins);
+                counts[index] += coins;
+            } else {
+                availability.removeCoins(index, coins);
+                counts[index] -= Math.min(coins, counts[index]);
+            }
+            fresh.reset(counts);
+            for (int amount = 0; amount <= 315; amount += 5) {
+                assertEquals(fresh.canPay(amount), availability.canPay(amount));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesTheChangeMaker() {
+        ChangeMaker changeMaker = new OptimalChangeMaker(DenominationRegistry.EURO_COINS.getValues());
+        ChangeAvailability euros = new ChangeAvailability(DenominationRegistry.EURO_COINS);
+        Random random = new Random(7);
+        int[] counts = new int[6];
+        int[] result = new int[6];
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = random.nextInt(4);
+            }
+            euros.reset(counts);
+            for (int amount = 0; amount <= 315; amount += 5) {
+                assertEquals(changeMaker.makeChange(amount, counts, result), euros.canPay(amount));
+            }
+        }
+    }
+}
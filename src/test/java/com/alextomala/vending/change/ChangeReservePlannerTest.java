@@ -0,0 +1,176 @@
+package com.alextomala.vending.change;
+
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChangeReservePlannerTest {
+    private static final int NICKELS = 0;
+    private static final int DIMES = 1;
+    private static final int QUARTERS = 2;
+
+    private ChangeReservePlanner planner;
+    private int[] coins;
+
+    @Before
+    public void setUp() throws Exception {
+        planner = new ChangeReservePlanner(DenominationRegistry.US_COINS,
+                new OptimalChangeMaker(DenominationRegistry.US_COINS.getValues()), 4);
+        coins = new int[3];
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        planner = null;
+        coins = null;
+    }
+
+    @Test
+    public void testNoSales() {
+        coins[DIMES] = 10;
+
+        assertEquals(0, planner.getSales());
+        assertEquals(0, planner.getNetCoinsPerSale(DIMES), 0.0);
+        assertEquals(Long.MAX_VALUE, planner.getSalesUntilShort(coins));
+    }
+
+    @Test
+    public void testCoinsMoved() {
+        // Two quarters for a 40 cent product, a dime back.
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 1, 0});
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 1, 0});
+
+        assertEquals(2, planner.getSales());
+        assertEquals(-1, planner.getNetCoinsPerSale(DIMES), 0.0);
+        assertEquals(2, planner.getNetCoinsPerSale(QUARTERS), 0.0);
+        assertEquals(0, planner.getNetCoinsPerSale(NICKELS), 0.0);
+    }
+
+    @Test
+    public void testSalesUntilEmpty() {
+        coins[DIMES] = 10;
+        coins[NICKELS] = 3;
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 1, 0});
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{1, 0, 0});
+
+        // Half a dime and half a nickel a sale.
+        assertEquals(20, planner.getSalesUntilEmpty(DIMES, coins));
+        assertEquals(6, planner.getSalesUntilEmpty(NICKELS, coins));
+        assertEquals(Long.MAX_VALUE, planner.getSalesUntilEmpty(QUARTERS, coins));
+        assertEquals(6, planner.getSalesUntilShort(coins));
+    }
+
+    @Test
+    public void testOldSalesAreForgotten() {
+        for (int i = 0; i < 4; i++) {
+            planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 1, 0});
+        }
+        for (int i = 0; i < 4; i++) {
+            planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 0, 0});
+        }
+
+        assertEquals(4, planner.getSales());
+        assertEquals(0, planner.getNetCoinsPerSale(DIMES), 0.0);
+    }
+
+    @Test
+    public void testGetRestock() {
+        coins[DIMES] = 10;
+        coins[QUARTERS] = 10;
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 1, 0});
+
+        // 20 dimes for the sales, less the 10 there, then a nickel and two dimes so 5, 10, 15 and 20 cents can
+        // still be paid afterwards.
+        assertArrayEquals(new int[]{1, 12, 0}, planner.getRestock(20, coins));
+    }
+
+    @Test
+    public void testGetRestock_nothingNeeded() {
+        coins[NICKELS] = 10;
+        coins[DIMES] = 10;
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 1, 0});
+
+        assertArrayEquals(new int[]{0, 0, 0}, planner.getRestock(5, coins));
+    }
+
+    @Test
+    public void testGetRestock_roundsUpPartCoins() {
+        coins[NICKELS] = 10;
+        coins[DIMES] = 1;
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 1, 0});
+        planner.coinsMoved(new int[]{0, 0, 2}, new int[]{0, 0, 0});
+
+        // Three sales at half a dime each use up two dimes, not one and a half, so one short.
+        assertArrayEquals(new int[]{0, 1, 0}, planner.getRestock(3, coins));
+    }
+
+    @Test
+    public void testFedByAMachine() {
+        JavaVendingMachine machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        ChangeReservePlanner machinePlanner = new ChangeReservePlanner(machine.getRegistry(), machine.getChangeMaker());
+        machine.setSaleListener(machinePlanner);
+        machine.addChange(0, 5, 0);
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 40);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(1, gumDescription);
+
+        machine.addUserMoney(25);
+        machine.addUserMoney(25);
+        machine.buttonPress(1);
+
+        assertEquals(1, machinePlanner.getSales());
+        assertEquals(-1, machinePlanner.getNetCoinsPerSale(DIMES), 0.0);
+        assertEquals(2, machinePlanner.getNetCoinsPerSale(QUARTERS), 0.0);
+    }
+
+    @Test
+    public void testForecastForAMachine() {
+        JavaVendingMachine machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        ChangeReservePlanner machinePlanner = new ChangeReservePlanner(machine.getRegistry(), machine.getChangeMaker());
+        machine.setSaleListener(machinePlanner);
+        machine.addChange(0, 5, 0);
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 40);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(1, gumDescription);
+        for (int i = 0; i < 2; i++) {
+            sellGum(machine);
+        }
+
+        // A dime back each sale leaves three.
+        int[] systemCoins = machine.exportState().getSystemCoins();
+        assertEquals(3, machinePlanner.getSalesUntilEmpty(DIMES, systemCoins));
+        assertEquals(3, machinePlanner.getSalesUntilShort(systemCoins));
+        assertArrayEquals(new int[]{1, 4, 0}, machinePlanner.getRestock(5, systemCoins));
+
+        for (int i = 0; i < 3; i++) {
+            sellGum(machine);
+        }
+        try {
+            sellGum(machine);
+            fail("The machine should have run out of dimes");
+        } catch (NotEnoughChangeException e) {
+            // expected
+        }
+    }
+
+    private static void sellGum(JavaVendingMachine machine) {
+        machine.addUserMoney(25);
+        machine.addUserMoney(25);
+        machine.buttonPress(1);
+    }
+}
@@ -0,0 +1,29 @@
+package com.alextomala.vending.change;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GreedyChangeMakerTest {
+
+    private final ChangeMaker changeMaker = new GreedyChangeMaker(new int[]{5, 10, 25});
+
+    @Test
+    public void testMakeChange_largestCoinsFirst() {
+        int[] result = new int[3];
+        assertTrue(changeMaker.makeChange(40, new int[]{10, 10, 10}, result));
+        assertArrayEquals(new int[]{1, 1, 1}, result);
+    }
+
+    @Test
+    public void testMakeChange_givesUpWhenAnotherMixWouldWork() {
+        assertFalse(changeMaker.makeChange(30, new int[]{0, 3, 1}, new int[3]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMakeChange_negativeAmount() {
+        changeMaker.makeChange(-5, new int[]{1, 1, 1}, new int[3]);
+    }
+}
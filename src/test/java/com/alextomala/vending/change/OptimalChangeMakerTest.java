@@ -0,0 +1,109 @@
+package com.alextomala.vending.change;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OptimalChangeMakerTest {
+
+    private final ChangeMaker changeMaker = new OptimalChangeMaker(new int[]{5, 10, 25});
+
+    @Test
+    public void testMakeChange_zero() {
+        int[] result = new int[3];
+        assertTrue(changeMaker.makeChange(0, new int[]{0, 0, 0}, result));
+        assertArrayEquals(new int[]{0, 0, 0}, result);
+    }
+
+    @Test
+    public void testMakeChange_fewestCoinsFromTable() {
+        int[] result = new int[3];
+        assertTrue(changeMaker.makeChange(40, new int[]{10, 10, 10}, result));
+        assertArrayEquals(new int[]{1, 1, 1}, result);
+    }
+
+    @Test
+    public void testMakeChange_outOfQuartersButPlentyOfDimes() {
+        int[] result = new int[3];
+        assertTrue(changeMaker.makeChange(30, new int[]{0, 3, 1}, result));
+        assertArrayEquals(new int[]{0, 3, 0}, result);
+    }
+
+    @Test
+    public void testMakeChange_fallbackPicksFewestCoins() {
+        int[] result = new int[3];
+        // No quarters at all, so the table answer (one quarter and a nickel) doesn't fit.
+        assertTrue(changeMaker.makeChange(30, new int[]{6, 3, 0}, result));
+        assertArrayEquals(new int[]{0, 3, 0}, result);
+    }
+
+    @Test
+    public void testMakeChange_pastTheTable() {
+        ChangeMaker smallTable = new OptimalChangeMaker(new int[]{5, 10, 25}, 50);
+        int[] result = new int[3];
+        assertTrue(smallTable.makeChange(105, new int[]{1, 0, 10}, result));
+        assertArrayEquals(new int[]{1, 0, 4}, result);
+    }
+
+    @Test
+    public void testMakeChange_notEnoughCoins() {
+        assertFalse(changeMaker.makeChange(40, new int[]{0, 1, 1}, new int[3]));
+    }
+
+    @Test
+    public void testMakeChange_notAMultipleOfTheSmallestCoin() {
+        assertFalse(changeMaker.makeChange(7, new int[]{10, 10, 10}, new int[3]));
+    }
+
+    @Test
+    public void testMakeChange_nonCanonicalCoins() {
+        // With coins of 1, 3 and 4, greedy would pay 6 as 4+1+1 but the fewest coins is 3+3.
+        ChangeMaker oddCoins = new OptimalChangeMaker(new int[]{1, 3, 4});
+        int[] result = new int[3];
+        assertTrue(oddCoins.makeChange(6, new int[]{10, 10, 10}, result));
+        assertArrayEquals(new int[]{0, 2, 0}, result);
+    }
+
+    @Test
+    public void testMakeChange_agreesWithBruteForce() {
+        int[] result = new int[3];
+        for (int nickels = 0; nickels <= 4; nickels++) {
+            for (int dimes = 0; dimes <= 4; dimes++) {
+                for (int quarters = 0; quarters <= 4; quarters++) {
+                    int[] available = {nickels, dimes, quarters};
+                    for (int amount = 0; amount <= 150; amount += 5) {
+                        int fewest = bruteForce(amount, available);
+                        boolean made = changeMaker.makeChange(amount, available, result);
+                        assertEquals(fewest >= 0, made);
+                        if (made) {
+                            assertEquals(amount, result[0] * 5 + result[1] * 10 + result[2] * 25);
+                            assertEquals(fewest, result[0] + result[1] + result[2]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_worthlessCoin() {
+        new OptimalChangeMaker(new int[]{0, 5});
+    }
+
+    private static int bruteForce(int amount, int[] available) {
+        int fewest = -1;
+        for (int n = 0; n <= available[0]; n++) {
+            for (int d = 0; d <= available[1]; d++) {
+                for (int q = 0; q <= available[2]; q++) {
+                    if (n * 5 + d * 10 + q * 25 == amount && (fewest < 0 || n + d + q < fewest)) {
+                        fewest = n + d + q;
+                    }
+                }
+            }
+        }
+        return fewest;
+    }
+}
@@ -0,0 +1,57 @@
+package com.alextomala.vending.currency;
+
+import com.alextomala.vending.exception.InvalidDenominationException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DenominationRegistryTest {
+
+    @Test
+    public void testUsCoins() {
+        DenominationRegistry registry = DenominationRegistry.US_COINS;
+
+        assertEquals(3, registry.size());
+        assertArrayEquals(new int[]{5, 10, 25}, registry.getValues());
+        assertEquals(5, registry.getSmallestUnit());
+        assertEquals(2, registry.indexOf(25));
+        assertEquals("quarter", registry.get(2).getName());
+    }
+
+    @Test
+    public void testIndexOf_notACoin() {
+        assertEquals(-1, DenominationRegistry.US_COINS.indexOf(1));
+        assertEquals(-1, DenominationRegistry.US_COINS.indexOf(-5));
+        assertEquals(-1, DenominationRegistry.US_COINS.indexOf(100));
+    }
+
+    @Test(expected = InvalidDenominationException.class)
+    public void testCheckedIndexOf_notACoin() {
+        DenominationRegistry.EURO_COINS.checkedIndexOf(25);
+    }
+
+    @Test
+    public void testConstructor_sortsSmallestFirst() {
+        DenominationRegistry registry = new DenominationRegistry("XYZ",
+                new Denomination("big", 20), new Denomination("small", 4), new Denomination("middle", 6));
+
+        assertArrayEquals(new int[]{4, 6, 20}, registry.getValues());
+        assertEquals(2, registry.getSmallestUnit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_duplicateValue() {
+        new DenominationRegistry("XYZ", new Denomination("one", 5), new Denomination("other", 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_noDenominations() {
+        new DenominationRegistry("XYZ");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDenomination_worthless() {
+        new Denomination("nothing", 0);
+    }
+}
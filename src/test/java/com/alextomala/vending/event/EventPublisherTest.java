@@ -0,0 +1,217 @@
+package com.alextomala.vending.event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EventPublisherTest {
+
+    private EventPublisher publisher;
+
+    @Before
+    public void setUp() {
+        // Running deliveries on the publishing thread makes every test here deterministic.
+        publisher = new EventPublisher(Runnable::run, 4);
+    }
+
+    @After
+    public void tearDown() {
+        publisher.close();
+        publisher = null;
+    }
+
+    @Test
+    public void testPublish_nobodySubscribed() {
+        assertFalse(publisher.hasSubscribers());
+        publisher.publish(new CreditChanged(25));
+    }
+
+    @Test
+    public void testSubscribe_onlyGetsWhatItRequested() {
+        Recorder recorder = new Recorder(2);
+        publisher.subscribe(recorder);
+        assertEquals(1, publisher.getSubscriberCount());
+
+        publisher.publish(new CreditChanged(5));
+        publisher.publish(new CreditChanged(10));
+        publisher.publish(new CreditChanged(35));
+        assertEquals(2, recorder.events.size());
+
+        recorder.subscription.request(1);
+        assertEquals(3, recorder.events.size());
+        assertEquals(35, ((CreditChanged) recorder.events.get(2)).getCredit());
+    }
+
+    @Test
+    public void testPublish_slowSubscriberGetsDropCount() {
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        for (int i = 1; i <= 10; i++) {
+            publisher.publish(new CreditChanged(i));
+        }
+        assertEquals(6, recorder.subscription.getDropped());
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(5, recorder.events.size());
+        assertEquals(6, ((EventsDropped) recorder.events.get(0)).getCount());
+        // The oldest ones are kept, the rest were thrown away as they came.
+        assertEquals(1, ((CreditChanged) recorder.events.get(1)).getCredit());
+        assertEquals(4, ((CreditChanged) recorder.events.get(4)).getCredit());
+
+        publisher.publish(new CreditChanged(11));
+        assertEquals(6, recorder.events.size());
+        assertEquals(11, ((CreditChanged) recorder.events.get(5)).getCredit());
+    }
+
+    @Test
+    public void testPublish_eachSubscriberAtItsOwnPace() {
+        Recorder fast = new Recorder(Long.MAX_VALUE);
+        Recorder slow = new Recorder(1);
+        publisher.subscribe(fast);
+        publisher.subscribe(slow);
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(new ChangeDispensed(5));
+        }
+        assertEquals(3, fast.events.size());
+        assertEquals(1, slow.events.size());
+        assertEquals(0, fast.subscription.getDropped());
+    }
+
+    @Test
+    public void testCancel() {
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        publisher.publish(new CreditChanged(5));
+        recorder.subscription.cancel();
+        assertFalse(publisher.hasSubscribers());
+
+        publisher.publish(new CreditChanged(10));
+        assertEquals(1, recorder.events.size());
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    public void testOnNextThrows() {
+        Recorder recorder = new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(Event event) {
+                throw new IllegalStateException("Broken");
+            }
+        };
+        publisher.subscribe(recorder);
+        publisher.publish(new CreditChanged(5));
+
+        assertTrue(recorder.error instanceof IllegalStateException);
+        assertFalse(publisher.hasSubscribers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequest_nothing() {
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(0);
+    }
+
+    @Test
+    public void testClose_deliversWhatIsBufferedFirst() {
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        publisher.publish(new CreditChanged(5));
+        publisher.close();
+        assertFalse(recorder.completed);
+
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.events.size());
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubscribe_afterClose() {
+        publisher.close();
+        publisher.subscribe(new Recorder(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_noBuffer() {
+        new EventPublisher(Runnable::run, 0);
+    }
+
+    @Test
+    public void testPublish_fromAnotherThreadThanDelivery() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            publisher = new EventPublisher(executor, 1024);
+            CountDownLatch all = new CountDownLatch(1000);
+            List<Event> received = new ArrayList<>();
+            publisher.subscribe(new Recorder(Long.MAX_VALUE) {
+                @Override
+                public void onNext(Event event) {
+                    received.add(event);
+                    all.countDown();
+                }
+            });
+            List<Event> sent = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                Event event = new SaleCompleted(1, i);
+                sent.add(event);
+                publisher.publish(event);
+            }
+            assertTrue(all.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < sent.size(); i++) {
+                assertSame(sent.get(i), received.get(i));
+            }
+        } finally {
+            publisher.close();
+            executor.shutdown();
+        }
+    }
+
+    private static class Recorder implements EventSubscriber {
+        private final long initialRequest;
+        final List<Event> events = new ArrayList<>();
+        EventSubscription subscription;
+        Throwable error;
+        boolean completed;
+
+        Recorder(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(EventSubscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Event event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.alextomala.vending.fleet;
+
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.journal.JournaledVendingMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CashCollectionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+    private CashCollection collection;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+        collection = new CashCollection(DenominationRegistry.US_COINS, pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        collection = null;
+    }
+
+    @Test
+    public void testReconcile_everythingMatches() {
+        int[] expected = {10, 5, 2, 0, 0, 4};
+        CollectionReport report = collection.reconcile(expected, expected.clone());
+
+        assertEquals(2, report.getMachineCount());
+        assertEquals(10, report.getCollected(0));
+        assertEquals(5, report.getCollected(1));
+        assertEquals(6, report.getCollected(2));
+        assertEquals(50 + 50 + 150, report.getCollectedCents());
+        assertEquals(report.getCollectedCents(), report.getExpectedCents());
+        assertEquals(0, report.getFlaggedMachines().length);
+    }
+
+    @Test
+    public void testReconcile_flagsShortAndSwappedCoins() {
+        int[] expected = {10, 5, 2, 0, 0, 4, 1, 1, 1};
+        // Machine 0 is a quarter short, machine 2 has two nickels where a dime should be.
+        int[] collected = {10, 5, 1, 0, 0, 4, 3, 0, 1};
+        CollectionReport report = collection.reconcile(expected, collected);
+
+        assertArrayEquals(new int[]{0, 2}, report.getFlaggedMachines());
+        assertArrayEquals(new long[]{-25, 0}, report.getFlaggedCents());
+        assertEquals(-25, report.getCollectedCents() - report.getExpectedCents());
+        assertEquals(13, report.getCollected(0));
+        assertEquals(11, report.getExpected(0));
+    }
+
+    @Test
+    public void testReconcile_manyMachinesMatchesOneThread() {
+        int machines = 20 * CashCollection.MACHINES_PER_TASK + 17;
+        Random random = new Random(42);
+        int[] expected = new int[3 * machines];
+        int[] collected = new int[3 * machines];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = random.nextInt(200);
+            collected[i] = random.nextInt(100) == 0 ? expected[i] - 1 : expected[i];
+        }
+
+        CollectionReport report = collection.reconcile(expected, collected);
+
+        long[] totals = new long[3];
+        int flagged = 0;
+        for (int machine = 0; machine < machines; machine++) {
+            boolean off = false;
+            for (int i = 0; i < 3; i++) {
+                totals[i] += collected[3 * machine + i];
+                off |= collected[3 * machine + i] != expected[3 * machine + i];
+            }
+            if (off) {
+                assertEquals(machine, report.getFlaggedMachines()[flagged++]);
+            }
+        }
+        assertEquals(flagged, report.getFlaggedMachines().length);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(totals[i], report.getCollected(i));
+        }
+    }
+
+    @Test
+    public void testReconcile_againstTheJournal() throws Exception {
+        JavaVendingMachine honest = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        JavaVendingMachine tampered = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        int[] expected = new int[6];
+        int[] collected = new int[6];
+        int[] coins = new int[3];
+        try (JournaledVendingMachine first = new JournaledVendingMachine(folder.newFolder().toPath(), honest);
+             JournaledVendingMachine second = new JournaledVendingMachine(folder.newFolder().toPath(), tampered)) {
+            sellGum(first);
+            sellGum(second);
+            // A quarter that got into the second machine's vault without a journal record.
+            tampered.addChange(0, 0, 1);
+
+            System.arraycopy(first.getJournaledSystemCoins(), 0, expected, 0, 3);
+            first.collectAllChange(coins);
+            System.arraycopy(coins, 0, collected, 0, 3);
+            System.arraycopy(second.getJournaledSystemCoins(), 0, expected, 3, 3);
+            second.collectAllChange(coins);
+            System.arraycopy(coins, 0, collected, 3, 3);
+        }
+
+        CollectionReport report = collection.reconcile(expected, collected);
+        assertArrayEquals(new int[]{1}, report.getFlaggedMachines());
+        assertArrayEquals(new long[]{25}, report.getFlaggedCents());
+        assertEquals(25, report.getCollectedCents() - report.getExpectedCents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReconcile_differentLengths() {
+        collection.reconcile(new int[6], new int[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReconcile_partMachine() {
+        collection.reconcile(new int[4], new int[4]);
+    }
+
+    private static void sellGum(JournaledVendingMachine machine) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 35);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(1, gumDescription);
+        machine.addChange(2, 2, 0);
+        machine.addUserMoney(25);
+        machine.addUserMoney(25);
+        machine.buttonPress(1);
+    }
+}
@@ -0,0 +1,147 @@
+package com.alextomala.vending.fleet;
+
+import com.alextomala.vending.VendingMachine;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.MachineNotFoundException;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.pricing.PriceTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VendingFleetTest {
+
+    private VendingFleet fleet;
+
+    @Before
+    public void setUp() {
+        fleet = new VendingFleet(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fleet.close();
+        fleet = null;
+    }
+
+    @Test
+    public void testAddMachine() {
+        fleet.addMachine("machine-1", NoOpHardwareDriver.INSTANCE);
+        fleet.addMachine("machine-2", NoOpHardwareDriver.INSTANCE);
+
+        assertEquals(2, fleet.getMachineCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddMachine_duplicateId() {
+        fleet.addMachine("machine-1", NoOpHardwareDriver.INSTANCE);
+        fleet.addMachine("machine-1", NoOpHardwareDriver.INSTANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_noShards() {
+        new VendingFleet(0);
+    }
+
+    @Test(expected = MachineNotFoundException.class)
+    public void testSubmit_unknownMachine() {
+        fleet.addUserMoney("machine-1", 25);
+    }
+
+    @Test(expected = MachineNotFoundException.class)
+    public void testRemoveMachine_unknownMachine() {
+        fleet.removeMachine("machine-1");
+    }
+
+    @Test
+    public void testAddUserMoney_invalidDenominationCompletesExceptionally() throws Exception {
+        fleet.addMachine("machine-1", NoOpHardwareDriver.INSTANCE);
+
+        try {
+            fleet.addUserMoney("machine-1", 9).get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvalidDenominationException);
+            return;
+        }
+        throw new AssertionError("Expected the future to fail");
+    }
+
+    @Test
+    public void testSubmit_commandsForOneMachineRunInOrderOnOneThread() throws Exception {
+        fleet.addMachine("machine-1", NoOpHardwareDriver.INSTANCE);
+
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int commandNumber = i;
+            futures.add(fleet.submit("machine-1", machine -> {
+                order.add(commandNumber);
+                threads.add(Thread.currentThread().getName());
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+        assertEquals(1, threads.stream().distinct().count());
+    }
+
+    @Test
+    public void testReprice_everyMachine() throws Exception {
+        List<VendingMachine> machines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            VendingMachine machine = fleet.addMachine("machine-" + i, NoOpHardwareDriver.INSTANCE);
+            Map<String, Object> gumDescription = new HashMap<>();
+            gumDescription.put("price", 50);
+            gumDescription.put("name", "Gum");
+            machine.addProduct(1, gumDescription);
+            machines.add(machine);
+        }
+
+        PriceTable prices = new PriceTable(1, Collections.singletonMap(1, 45));
+        fleet.reprice(prices).get();
+
+        assertSame(prices, fleet.getPriceBook());
+        for (VendingMachine machine : machines) {
+            assertEquals(45, ((JavaVendingMachine) machine).getProduct(1).getPrice());
+        }
+    }
+
+    @Test
+    public void testReprice_olderThanThePriceBook() throws Exception {
+        fleet.addMachine("machine-1", NoOpHardwareDriver.INSTANCE);
+        PriceTable newer = new PriceTable(2, Collections.singletonMap(1, 45));
+        fleet.reprice(newer).get();
+        fleet.reprice(new PriceTable(1, Collections.singletonMap(1, 55))).get();
+
+        assertSame(newer, fleet.getPriceBook());
+    }
+
+    @Test
+    public void testReprice_refusedCompletesExceptionally() throws Exception {
+        fleet.addMachine("machine-1", NoOpHardwareDriver.INSTANCE);
+
+        try {
+            fleet.reprice(new PriceTable(1, Collections.singletonMap(1, 52))).get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvalidDenominationException);
+            return;
+        }
+        throw new AssertionError("Expected the future to fail");
+    }
+}
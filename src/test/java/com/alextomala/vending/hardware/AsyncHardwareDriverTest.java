@@ -0,0 +1,134 @@
+package com.alextomala.vending.hardware;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncHardwareDriverTest {
+
+    private RecordingHardwareDriver recorder;
+    private AsyncHardwareDriver driver;
+
+    @Before
+    public void setUp() {
+        recorder = new RecordingHardwareDriver();
+        // A tiny ring, so the tests also cover producers waiting for room.
+        driver = new AsyncHardwareDriver(recorder, 8);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        driver.close();
+        driver = null;
+    }
+
+    @Test
+    public void testCallsAreDeliveredInOrder() {
+        driver.showMessage("No item in position 3");
+        driver.dispenseProduct(1, "Gum");
+        driver.dispenseCoins(10, 2);
+
+        driver.flush();
+
+        List<String> events = recorder.getEvents();
+        assertEquals(3, events.size());
+        assertEquals("message No item in position 3", events.get(0));
+        assertEquals("product 1 Gum", events.get(1));
+        assertEquals("coins 10 x 2", events.get(2));
+    }
+
+    @Test
+    public void testManyProducers_nothingLostAndOrderKeptPerThread() throws Exception {
+        int threads = 4;
+        int callsPerThread = 5000;
+
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = "thread" + t;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < callsPerThread; i++) {
+                    driver.dispenseProduct(i, name);
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        driver.flush();
+
+        List<String> events = recorder.getEvents();
+        assertEquals(threads * callsPerThread, events.size());
+        for (int t = 0; t < threads; t++) {
+            int expected = 0;
+            for (String event : events) {
+                if (event.endsWith(" thread" + t)) {
+                    assertEquals("product " + expected + " thread" + t, event);
+                    expected++;
+                }
+            }
+            assertEquals(callsPerThread, expected);
+        }
+    }
+
+    @Test
+    public void testClose_deliversWhatIsQueued() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            driver.dispenseCoins(5, 1);
+        }
+
+        driver.close();
+
+        assertEquals(100, recorder.getCoinsDispensed(5));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClose_refusesNewCalls() throws Exception {
+        driver.close();
+        driver.showMessage("Too late");
+    }
+
+    @Test
+    public void testTargetThrowing_doesNotStopTheDriver() throws Exception {
+        driver.close();
+        List<String> delivered = new ArrayList<>();
+        driver = new AsyncHardwareDriver(new HardwareDriver() {
+            @Override
+            public void showMessage(String message) {
+                if (message.isEmpty()) {
+                    throw new IllegalArgumentException();
+                }
+                synchronized (delivered) {
+                    delivered.add(message);
+                }
+            }
+
+            @Override
+            public void dispenseProduct(int productPosition, String productName) {
+            }
+
+            @Override
+            public void dispenseCoins(int cents, int count) {
+            }
+        });
+        Thread.UncaughtExceptionHandler quiet = (thread, e) -> { };
+        Thread.setDefaultUncaughtExceptionHandler(quiet);
+        try {
+            driver.showMessage("");
+            driver.showMessage("Still working");
+            driver.flush();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(null);
+        }
+
+        synchronized (delivered) {
+            assertTrue(delivered.contains("Still working"));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.event.Event;
+import com.alextomala.vending.event.EventSubscriber;
+import com.alextomala.vending.event.EventSubscription;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.metrics.MachineMetrics;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Price checks are the most common thing a machine does, so they must not create garbage.
+ *
+ * This uses the JVM's per thread allocation counter. The JMH ButtonPressBenchmark with "-prof gc" shows the same
+ * thing with more precision.
+ */
+public class ButtonPressAllocationTest {
+
+    private static final int PRESSES = 100000;
+    private static final long ALLOCATION_TOLERANCE = 1024;
+
+    private JavaVendingMachine vendingMachine;
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        vendingMachine = stocked(new JavaVendingMachine(NoOpHardwareDriver.INSTANCE));
+    }
+
+    private static JavaVendingMachine stocked(JavaVendingMachine machine) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 50);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(3, gumDescription);
+        machine.addChange(100, 100, 100);
+        return machine;
+    }
+
+    @Test
+    public void testPriceCheck_occupiedPosition() {
+        assertNoGarbage(() -> vendingMachine.buttonPress(3));
+    }
+
+    @Test
+    public void testPriceCheck_emptyPosition() {
+        assertNoGarbage(() -> vendingMachine.buttonPress(4));
+    }
+
+    @Test
+    public void testPurchase() {
+        assertNoGarbage(() -> {
+            vendingMachine.addUserMoney(25);
+            vendingMachine.addUserMoney(25);
+            vendingMachine.addUserMoney(10);
+            vendingMachine.buttonPress(3);
+            vendingMachine.addChange(0, 1, 0);
+        });
+    }
+
+    @Test
+    public void testPurchase_withMetrics() {
+        vendingMachine = stocked(new JavaVendingMachine(DenominationRegistry.US_COINS, vendingMachine.getChangeMaker(),
+                NoOpHardwareDriver.INSTANCE, new MachineMetrics()));
+        testPurchase();
+    }
+
+    @Test
+    public void testPurchase_afterLastSubscriberLeft() {
+        vendingMachine.getEventPublisher().subscribe(new EventSubscriber() {
+            @Override
+            public void onSubscribe(EventSubscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(Event event) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        testPurchase();
+    }
+
+    private long bytesAllocated(Runnable press) {
+        long thread = Thread.currentThread().getId();
+        // Run it enough first that class loading and the JIT are out of the way.
+        for (int i = 0; i < PRESSES; i++) {
+            press.run();
+        }
+
+        // Reading the counter allocates a little itself, so measure that and take it off.
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < PRESSES; i++) {
+            press.run();
+        }
+        return threads.getThreadAllocatedBytes(thread) - before - overhead;
+    }
+
+    /**
+     * Taking off the cost of reading the counter isn't exact, so a run that allocates nothing can still show a few
+     * bytes. Even the smallest object once every thousand presses would be over the tolerance.
+     */
+    private void assertNoGarbage(Runnable press) {
+        long allocated = bytesAllocated(press);
+        assertTrue(String.format("%d bytes allocated over %d presses", allocated, PRESSES),
+                allocated < ALLOCATION_TOLERANCE);
+    }
+}
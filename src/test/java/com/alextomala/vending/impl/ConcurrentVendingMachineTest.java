@@ -0,0 +1,322 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.VendingMachineHardwareFunctions;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.exception.PositionOccupiedException;
+import com.alextomala.vending.hardware.RecordingHardwareDriver;
+import com.alextomala.vending.pricing.PriceTable;
+import com.alextomala.vending.vault.PackedVault;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.internal.verification.VerificationModeFactory.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest({VendingMachineHardwareFunctions.class})
+@RunWith(PowerMockRunner.class)
+public class ConcurrentVendingMachineTest {
+
+    private ConcurrentVendingMachine vendingMachine;
+
+    @Before
+    public void setUp() {
+        mockStatic(VendingMachineHardwareFunctions.class);
+        vendingMachine = new ConcurrentVendingMachine();
+    }
+
+    @After
+    public void tearDown() {
+        vendingMachine = null;
+    }
+
+    @Test
+    public void testButtonPress_notEnoughMoney() {
+        addGum(1, 50);
+        vendingMachine.addUserMoney(25);
+
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.showMessage("Item in position 1 costs 50");
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testReprice() {
+        addGum(1, 50);
+        vendingMachine.reprice(new PriceTable(1, Collections.singletonMap(1, 30)));
+        vendingMachine.addUserMoney(25);
+
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.showMessage("Item in position 1 costs 30");
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testButtonPress_dispenseNickelAndDime() {
+        vendingMachine.addChange(1, 1, 0);
+        addGum(1, 10);
+        vendingMachine.addUserMoney(25);
+
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(10, 1);
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(5, 1);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testButtonPress_notEnoughChangeLeavesBothVaultsUntouched() throws Exception {
+        vendingMachine.addChange(0, 1, 0);
+        addGum(1, 5);
+        vendingMachine.addUserMoney(25);
+
+        try {
+            vendingMachine.buttonPress(1);
+        } catch (NotEnoughChangeException e) {
+            assertEquals(10, vault("systemVault").getTotalMoney());
+            assertEquals(25, vault("userVault").getTotalMoney());
+
+            verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+            return;
+        }
+        throw new AssertionError("Expected NotEnoughChangeException");
+    }
+
+    @Test
+    public void testButtonPress_changeFromDimesWhenAQuarterWouldStrand() {
+        vendingMachine.addChange(0, 3, 0);
+        addGum(1, 20);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(10, 3);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test(expected = InvalidDenominationException.class)
+    public void testAddProduct_priceSmallerThanANickel() {
+        addGum(1, 52);
+    }
+
+    @Test(expected = PositionOccupiedException.class)
+    public void testAddProduct_positionOccupied() {
+        addGum(1, 50);
+        addGum(1, 50);
+    }
+
+    @Test
+    public void testCancelOrder() {
+        vendingMachine.addUserMoney(10);
+
+        vendingMachine.cancelOrder();
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(10, 1);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testConcurrentRestockAndPurchases_moneyIsConserved() throws Exception {
+        // Enough change up front that no sale can fail, so the only money the machine keeps is the price of each sale.
+        vendingMachine.addChange(10000, 10000, 0);
+        addGum(1, 15);
+        int restockers = 4;
+        int buyers = 4;
+        int iterations = 2000;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < restockers; t++) {
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    vendingMachine.addChange(1, 1, 0);
+                }
+            }));
+        }
+        for (int t = 0; t < buyers; t++) {
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    vendingMachine.addUserMoney(25);
+                    vendingMachine.buttonPress(1);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        vendingMachine.cancelOrder();
+
+        int moneyKept = vault("systemVault").getTotalMoney() - 10000 * 15 - restockers * iterations * 15;
+        assertEquals(0, vault("userVault").getTotalMoney());
+        assertEquals(0, moneyKept % 15);
+        assertTrue(moneyKept > 0 && moneyKept / 15 <= buyers * iterations);
+    }
+
+    @Test
+    public void testButtonPress_soldOut() throws Exception {
+        addStockedGum(1, 10, 1);
+        vendingMachine.addUserMoney(10);
+        vendingMachine.buttonPress(1);
+        vendingMachine.addUserMoney(10);
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.showMessage("Item in position 1 is sold out");
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+
+        assertEquals(10, vault("userVault").getTotalMoney());
+        assertEquals(0, vendingMachine.getStock(1));
+    }
+
+    @Test
+    public void testButtonPress_notEnoughChangePutsTheProductBack() {
+        addStockedGum(1, 10, 1);
+        vendingMachine.addUserMoney(25);
+        try {
+            vendingMachine.buttonPress(1);
+        } catch (NotEnoughChangeException e) {
+            // expected
+        }
+        assertEquals(1, vendingMachine.getStock(1));
+    }
+
+    @Test
+    public void testButtonPress_jammedProductIsRolledBack() throws Exception {
+        vendingMachine = new ConcurrentVendingMachine(new JammedHardwareDriver());
+        vendingMachine.addChange(0, 1, 0);
+        addStockedGum(1, 15, 1);
+        vendingMachine.addUserMoney(25);
+
+        try {
+            vendingMachine.buttonPress(1);
+            throw new AssertionError("Expected the hardware to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(1, vendingMachine.getStock(1));
+        assertEquals(PackedVault.pack(0, 1, 0), vault("systemVault").getCoins());
+        assertEquals(PackedVault.pack(0, 0, 1), vault("userVault").getCoins());
+    }
+
+    @Test
+    public void testButtonPressWithOwnCoins_jammedProductIsRolledBack() throws Exception {
+        vendingMachine.addChange(0, 1, 0);
+        addStockedGum(1, 15, 1);
+
+        try {
+            vendingMachine.buttonPress(1, PackedVault.pack(0, 0, 1), new JammedHardwareDriver());
+            throw new AssertionError("Expected the hardware to fail");
+        } catch (IllegalStateException e) {
+            // expected, and the customer still holds the quarter
+        }
+
+        assertEquals(1, vendingMachine.getStock(1));
+        assertEquals(PackedVault.pack(0, 1, 0), vault("systemVault").getCoins());
+    }
+
+    @Test
+    public void testConcurrentPurchasesOfTheLastFew_neverOversold() throws Exception {
+        int stock = 500;
+        addStockedGum(1, 10, stock);
+        addStockedGum(2, 10, stock);
+        RecordingHardwareDriver recorder = new RecordingHardwareDriver();
+        CountDownLatch restocked = new CountDownLatch(1);
+
+        List<Thread> customers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int position = 1 + t % 2;
+            customers.add(new Thread(() -> {
+                while (restocked.getCount() > 0 || vendingMachine.getStock(position) > 0) {
+                    vendingMachine.buttonPress(position, PackedVault.pack(0, 1, 0), recorder);
+                }
+            }));
+        }
+        // Restocking a slot while it sells adds exactly what it says.
+        customers.add(new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                vendingMachine.restock(1, 1);
+            }
+            restocked.countDown();
+        }));
+        customers.forEach(Thread::start);
+        for (Thread customer : customers) {
+            customer.join();
+        }
+
+        int sold = 0;
+        for (String event : recorder.getEvents()) {
+            if (event.startsWith("product")) {
+                sold++;
+            }
+        }
+        assertEquals(2 * stock + 100, sold);
+        assertEquals(0, vendingMachine.getStock(1));
+        assertEquals(0, vendingMachine.getStock(2));
+        assertEquals((2 * stock + 100) * 10, vault("systemVault").getTotalMoney());
+    }
+
+    private void addStockedGum(int position, int price, int quantity) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", price);
+        gumDescription.put("name", "Gum");
+        gumDescription.put("quantity", quantity);
+        vendingMachine.addProduct(position, gumDescription);
+    }
+
+    private void addGum(int position, int price) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", price);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(position, gumDescription);
+    }
+
+    private static class JammedHardwareDriver extends RecordingHardwareDriver {
+        @Override
+        public void dispenseProduct(int productPosition, String productName) {
+            throw new IllegalStateException("The product is stuck");
+        }
+    }
+
+    private PackedVault vault(String name) throws Exception {
+        Field f = vendingMachine.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        return (PackedVault) f.get(vendingMachine);
+    }
+}
@@ -0,0 +1,214 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.command.ButtonPressed;
+import com.alextomala.vending.command.ChangeAdded;
+import com.alextomala.vending.command.CoinInserted;
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.command.OrderCancelled;
+import com.alextomala.vending.command.ProductAdded;
+import com.alextomala.vending.event.CoinsDispensed;
+import com.alextomala.vending.event.CommandRejected;
+import com.alextomala.vending.event.DeliveryFailed;
+import com.alextomala.vending.event.Event;
+import com.alextomala.vending.event.MessageShown;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.hardware.RecordingHardwareDriver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JavaVendingMachineApplyTest {
+
+    private RecordingHardwareDriver hardware;
+    private JavaVendingMachine vendingMachine;
+
+    @Before
+    public void setUp() {
+        hardware = new RecordingHardwareDriver();
+        vendingMachine = new JavaVendingMachine(hardware);
+    }
+
+    @After
+    public void tearDown() {
+        vendingMachine = null;
+        hardware = null;
+    }
+
+    @Test
+    public void testApply_wholeCustomer() {
+        List<Event> events = vendingMachine.apply(Arrays.asList(
+                new ChangeAdded(2, 2, 0),
+                new ProductAdded(1, gum(35)),
+                new CoinInserted(25),
+                new ButtonPressed(1),
+                new CoinInserted(25),
+                new ButtonPressed(1)));
+
+        assertEquals(Arrays.asList(
+                "MessageShown{message=Item in position 1 costs 35}",
+                "ProductDispensed{productPosition=1, productName=Gum}",
+                "CoinsDispensed{cents=5, count=1}",
+                "CoinsDispensed{cents=10, count=1}"), describe(events));
+        assertEquals(Arrays.asList("message Item in position 1 costs 35", "product 1 Gum", "coins 5 x 1", "coins 10 x 1"),
+                hardware.getEvents());
+    }
+
+    @Test
+    public void testApply_hardwareOnlyHearsAtTheEnd() {
+        vendingMachine.addUserMoney(10);
+
+        // This command runs after the refund, and checks the hardware hasn't been told about it yet.
+        Command checkHardware = machine -> assertTrue(hardware.getEvents().isEmpty());
+        List<Event> events = vendingMachine.apply(Arrays.asList(OrderCancelled.INSTANCE, checkHardware));
+
+        assertEquals(1, events.size());
+        assertEquals(Collections.singletonList("coins 10 x 1"), hardware.getEvents());
+    }
+
+    @Test
+    public void testApply_rejectionsDoNotStopTheBatch() {
+        Command penny = new CoinInserted(1);
+        Command noChange = new ButtonPressed(1);
+        List<Event> events = vendingMachine.apply(Arrays.asList(
+                new ProductAdded(1, gum(35)),
+                penny,
+                new CoinInserted(25),
+                new CoinInserted(25),
+                noChange,
+                new ButtonPressed(2)));
+
+        CommandRejected rejectedPenny = (CommandRejected) events.get(0);
+        assertSame(penny, rejectedPenny.getCommand());
+        assertTrue(rejectedPenny.getReason() instanceof InvalidDenominationException);
+
+        // Like a single buttonPress, the machine finds it has no change before the product comes out.
+        CommandRejected rejectedPress = (CommandRejected) events.get(1);
+        assertSame(noChange, rejectedPress.getCommand());
+        assertTrue(rejectedPress.getReason() instanceof NotEnoughChangeException);
+
+        assertEquals("No item in position 2", ((MessageShown) events.get(2)).getMessage());
+        assertEquals(3, events.size());
+        assertEquals(Arrays.asList("message No item in position 2"), hardware.getEvents());
+    }
+
+    @Test
+    public void testApply_jammedProductIsCalledOff() {
+        vendingMachine = new JavaVendingMachine(new RecordingHardwareDriver() {
+            @Override
+            public void dispenseProduct(int productPosition, String productName) {
+                throw new IllegalStateException("The product is stuck");
+            }
+        });
+        Map<String, Object> gumDescription = gum(15);
+        gumDescription.put("quantity", 1);
+        Command jammed = new ButtonPressed(1);
+        List<Event> events = vendingMachine.apply(Arrays.asList(new ChangeAdded(0, 1, 0),
+                new ProductAdded(1, gumDescription), new CoinInserted(25), jammed, OrderCancelled.INSTANCE));
+
+        CommandRejected rejected = (CommandRejected) events.get(0);
+        assertSame(jammed, rejected.getCommand());
+        assertTrue(rejected.getReason() instanceof IllegalStateException);
+        // The sale never happened, so the product is still there and the quarter comes back.
+        assertEquals(1, vendingMachine.getStock(1));
+        assertEquals("CoinsDispensed{cents=25, count=1}", events.get(1).toString());
+        assertArrayEquals(new int[]{0, 1, 0}, vendingMachine.exportState().getSystemCoins());
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testApply_failedDeliveryIsReported() {
+        RecordingHardwareDriver jammed = new RecordingHardwareDriver() {
+            @Override
+            public void dispenseCoins(int cents, int count) {
+                if (cents == 10) {
+                    throw new IllegalStateException("The coin chute is stuck");
+                }
+                super.dispenseCoins(cents, count);
+            }
+        };
+        vendingMachine = new JavaVendingMachine(jammed);
+        List<Event> events = vendingMachine.apply(Arrays.asList(new CoinInserted(10), OrderCancelled.INSTANCE,
+                new CoinInserted(25), OrderCancelled.INSTANCE));
+
+        assertEquals(3, events.size());
+        DeliveryFailed failed = (DeliveryFailed) events.get(1);
+        assertSame(events.get(0), failed.getEvent());
+        assertTrue(failed.getReason() instanceof IllegalStateException);
+        // The events after the one that failed still reached the hardware.
+        assertEquals(Collections.singletonList("coins 25 x 1"), jammed.getEvents());
+    }
+
+    @Test
+    public void testApply_sameResultAsCalls() {
+        JavaVendingMachine called = new JavaVendingMachine(new RecordingHardwareDriver());
+        called.addChange(5, 5, 5);
+        called.addProduct(1, gum(40));
+        called.addUserMoney(25);
+        called.addUserMoney(25);
+        called.buttonPress(1);
+        called.addUserMoney(10);
+        called.cancelOrder();
+
+        vendingMachine.apply(Arrays.asList(new ChangeAdded(5, 5, 5), new ProductAdded(1, gum(40)), new CoinInserted(25),
+                new CoinInserted(25), new ButtonPressed(1), new CoinInserted(10), OrderCancelled.INSTANCE));
+
+        assertArrayEquals(called.exportState().getSystemCoins(), vendingMachine.exportState().getSystemCoins());
+        assertArrayEquals(called.exportState().getUserCoins(), vendingMachine.exportState().getUserCoins());
+    }
+
+    @Test
+    public void testApply_outputGoesBackToTheHardware() {
+        vendingMachine.apply(Collections.<Command>singletonList(new ProductAdded(1, gum(35))));
+        vendingMachine.buttonPress(1);
+        assertEquals(Collections.singletonList("message Item in position 1 costs 35"), hardware.getEvents());
+    }
+
+    @Test
+    public void testApply_defaultOnlyReportsRejections() {
+        ConcurrentVendingMachine concurrent = new ConcurrentVendingMachine(hardware);
+        List<Event> events = concurrent.apply(Arrays.asList(new CoinInserted(3), new ButtonPressed(1)));
+
+        assertEquals(1, events.size());
+        assertTrue(((CommandRejected) events.get(0)).getReason() instanceof InvalidDenominationException);
+        assertEquals(Collections.singletonList("message No item in position 1"), hardware.getEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCommand_checkedWhenMade() {
+        new ChangeAdded(1, -1, 0);
+    }
+
+    @Test
+    public void testCoinsDispensed_deliverTo() {
+        new CoinsDispensed(25, 3).deliverTo(hardware);
+        assertEquals(3, hardware.getCoinsDispensed(25));
+    }
+
+    private static Map<String, Object> gum(int price) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", price);
+        gumDescription.put("name", "Gum");
+        return gumDescription;
+    }
+
+    private static List<String> describe(List<Event> events) {
+        List<String> described = new ArrayList<>();
+        for (Event event : events) {
+            described.add(event.toString());
+        }
+        return described;
+    }
+}
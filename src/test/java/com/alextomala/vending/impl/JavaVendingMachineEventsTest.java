@@ -0,0 +1,140 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.event.ChangeDispensed;
+import com.alextomala.vending.event.CreditChanged;
+import com.alextomala.vending.event.Event;
+import com.alextomala.vending.event.EventSubscriber;
+import com.alextomala.vending.event.EventSubscription;
+import com.alextomala.vending.event.ProductStocked;
+import com.alextomala.vending.event.SaleCompleted;
+import com.alextomala.vending.event.VaultLow;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JavaVendingMachineEventsTest {
+
+    private JavaVendingMachine vendingMachine;
+    private BlockingQueue<Event> events;
+
+    @Before
+    public void setUp() {
+        vendingMachine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        events = new LinkedBlockingQueue<>();
+        vendingMachine.getEventPublisher().subscribe(new EventSubscriber() {
+            @Override
+            public void onSubscribe(EventSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Event event) {
+                events.add(event);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        vendingMachine.getEventPublisher().close();
+        vendingMachine = null;
+    }
+
+    private Event next() throws InterruptedException {
+        Event event = events.poll(5, TimeUnit.SECONDS);
+        assertTrue("No event came", event != null);
+        return event;
+    }
+
+    private void addGum(int position, int quantity) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 65);
+        gumDescription.put("name", "Gum");
+        gumDescription.put("quantity", quantity);
+        vendingMachine.addProduct(position, gumDescription);
+    }
+
+    @Test
+    public void testSale() throws Exception {
+        addGum(1, 3);
+        vendingMachine.addChange(0, 5, 0);
+        assertEquals(3, ((ProductStocked) next()).getStock());
+
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        assertEquals(25, ((CreditChanged) next()).getCredit());
+        assertEquals(50, ((CreditChanged) next()).getCredit());
+        assertEquals(75, ((CreditChanged) next()).getCredit());
+
+        vendingMachine.buttonPress(1);
+        SaleCompleted sale = (SaleCompleted) next();
+        assertEquals(1, sale.getProductPosition());
+        assertEquals(65, sale.getPrice());
+        assertEquals(10, ((ChangeDispensed) next()).getCents());
+        assertEquals(0, ((CreditChanged) next()).getCredit());
+        VaultLow low = (VaultLow) next();
+        assertEquals(10, low.getDenominationValue());
+        assertEquals(4, low.getCoinsLeft());
+    }
+
+    @Test
+    public void testVaultLow_onlyOnTheWayDown() throws Exception {
+        addGum(1, 3);
+        vendingMachine.addChange(0, 4, 0);
+        next();
+        for (int i = 0; i < 2; i++) {
+            vendingMachine.addUserMoney(25);
+            vendingMachine.addUserMoney(25);
+            vendingMachine.addUserMoney(25);
+            vendingMachine.buttonPress(1);
+        }
+        vendingMachine.cancelOrder();
+        Event event;
+        while ((event = events.poll(200, TimeUnit.MILLISECONDS)) != null) {
+            assertFalse(event instanceof VaultLow);
+        }
+    }
+
+    @Test
+    public void testCancelOrder() throws Exception {
+        vendingMachine.addUserMoney(10);
+        next();
+        vendingMachine.cancelOrder();
+        assertEquals(10, ((ChangeDispensed) next()).getCents());
+        assertEquals(0, ((CreditChanged) next()).getCredit());
+
+        vendingMachine.cancelOrder();
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRestock() throws Exception {
+        addGum(1, 2);
+        next();
+        vendingMachine.restock(1, 3);
+        ProductStocked stocked = (ProductStocked) next();
+        assertEquals(1, stocked.getProductPosition());
+        assertEquals(5, stocked.getStock());
+    }
+}
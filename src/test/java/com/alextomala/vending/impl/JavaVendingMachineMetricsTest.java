@@ -0,0 +1,115 @@
+package com.alextomala.vending.impl;
+
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.metrics.MachineMetrics;
+import com.alextomala.vending.metrics.MetricsSnapshot;
+import com.alextomala.vending.metrics.Operation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class JavaVendingMachineMetricsTest {
+
+    private MachineMetrics metrics;
+    private JavaVendingMachine vendingMachine;
+
+    @Before
+    public void setUp() {
+        metrics = new MachineMetrics();
+        vendingMachine = new JavaVendingMachine(DenominationRegistry.US_COINS,
+                new JavaVendingMachine().getChangeMaker(), NoOpHardwareDriver.INSTANCE, metrics);
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 35);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(2, gumDescription);
+    }
+
+    @After
+    public void tearDown() {
+        vendingMachine = null;
+        metrics = null;
+    }
+
+    @Test
+    public void testSale() {
+        vendingMachine.addChange(1, 1, 0);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(2);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCalls(Operation.BUTTON_PRESS));
+        assertEquals(2, snapshot.getCalls(Operation.ADD_USER_MONEY));
+        assertEquals(1, snapshot.getCalls(Operation.MAKE_CHANGE));
+        assertEquals(1, snapshot.getCalls(Operation.ADD_PRODUCT));
+        assertEquals(1, snapshot.getCalls(Operation.ADD_CHANGE));
+        // The product, a nickel and a dime.
+        assertEquals(3, snapshot.getCalls(Operation.HARDWARE));
+        assertEquals(1, snapshot.getSales(2));
+        assertEquals(35, snapshot.getRevenue(2));
+    }
+
+    @Test
+    public void testFailures() {
+        try {
+            vendingMachine.addUserMoney(3);
+        } catch (InvalidDenominationException e) {
+            // expected
+        }
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        try {
+            vendingMachine.buttonPress(2);
+        } catch (NotEnoughChangeException e) {
+            // expected, there is no change in the machine
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getFailures("InvalidDenominationException"));
+        assertEquals(1, snapshot.getFailures("NotEnoughChangeException"));
+        assertEquals(3, snapshot.getCalls(Operation.ADD_USER_MONEY));
+        assertEquals(1, snapshot.getCalls(Operation.BUTTON_PRESS));
+    }
+
+    @Test
+    public void testCallsAreSampled() {
+        for (int i = 0; i < 40; i++) {
+            vendingMachine.buttonPress(2);
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(40, snapshot.getCalls(Operation.BUTTON_PRESS));
+        assertEquals(40, snapshot.getCalls(Operation.HARDWARE));
+        // The first, the 17th and the 33rd.
+        assertEquals(3, snapshot.getLatency(Operation.BUTTON_PRESS).getCount());
+        assertEquals(3, snapshot.getLatency(Operation.HARDWARE).getCount());
+    }
+
+    @Test
+    public void testVaultGauges() {
+        vendingMachine.addChange(1, 2, 3);
+        vendingMachine.addUserMoney(10);
+
+        Map<String, Long> gauges = metrics.snapshot().getGauges();
+        assertEquals(Long.valueOf(100), gauges.get("vault.system.cents"));
+        assertEquals(Long.valueOf(10), gauges.get("vault.user.cents"));
+        assertEquals(Long.valueOf(2), gauges.get("vault.system.coins.10"));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        JavaVendingMachine plain = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        plain.addUserMoney(25);
+        assertEquals(MachineMetrics.DISABLED, plain.getMetrics());
+        assertEquals(0, plain.getMetrics().snapshot().getCalls(Operation.ADD_USER_MONEY));
+    }
+}
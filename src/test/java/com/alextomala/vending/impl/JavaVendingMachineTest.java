@@ -1,8 +1,15 @@
 package com.alextomala.vending.impl;
 
 import com.alextomala.vending.VendingMachineHardwareFunctions;
+import com.alextomala.vending.currency.DenominationRegistry;
 import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.exception.PositionEmptyException;
 import com.alextomala.vending.exception.PositionOccupiedException;
+import com.alextomala.vending.hardware.RecordingHardwareDriver;
+import com.alextomala.vending.pricing.PriceTable;
+import com.alextomala.vending.snapshot.MachineState;
 import com.alextomala.vending.vault.Vault;
 import org.junit.After;
 import org.junit.Before;
@@ -12,11 +19,18 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
@@ -113,7 +127,7 @@ public class JavaVendingMachineTest {
 
         vendingMachine.cancelOrder();
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
-        VendingMachineHardwareFunctions.dispenseNickel();
+        VendingMachineHardwareFunctions.dispenseCoins(5, 1);
 
         verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
     }
@@ -125,15 +139,14 @@ public class JavaVendingMachineTest {
 
         vendingMachine.dispenseAllChange();
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
-        VendingMachineHardwareFunctions.dispenseNickel();
-        verifyStatic(VendingMachineHardwareFunctions.class, times(5));
-        VendingMachineHardwareFunctions.dispenseQuarter();
+        VendingMachineHardwareFunctions.dispenseCoins(5, 1);
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(25, 5);
 
         verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void testAddProduct_validCase() throws Exception {
         // I would like ImmutableMap.of() here.
         Map<String, Object> productDescription = new HashMap<>();
@@ -142,10 +155,9 @@ public class JavaVendingMachineTest {
 
         vendingMachine.addProduct(1, productDescription);
 
-        Field f = vendingMachine.getClass().getDeclaredField("items");
-        f.setAccessible(true);
-        Map<Integer, Map<String, Object>> items = (Map<Integer, Map<String, Object>>) f.get(vendingMachine);
-        assertEquals(1, items.size());
+        assertEquals(1, vendingMachine.catalog.size());
+        assertEquals(5, vendingMachine.catalog.get(1).getPrice());
+        assertEquals("Peanuts", vendingMachine.catalog.get(1).getName());
     }
 
     @Test(expected = PositionOccupiedException.class)
@@ -249,7 +261,7 @@ public class JavaVendingMachineTest {
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
         VendingMachineHardwareFunctions.dispenseProduct(3, "Gum");
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
-        VendingMachineHardwareFunctions.dispenseNickel();
+        VendingMachineHardwareFunctions.dispenseCoins(5, 1);
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
         VendingMachineHardwareFunctions.dispenseProduct(1, null);
 
@@ -286,7 +298,7 @@ public class JavaVendingMachineTest {
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
         VendingMachineHardwareFunctions.dispenseProduct(1, "Candy Bar");
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
-        VendingMachineHardwareFunctions.dispenseDime();
+        VendingMachineHardwareFunctions.dispenseCoins(10, 1);
 
         verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
     }
@@ -344,10 +356,473 @@ public class JavaVendingMachineTest {
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
         VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
-        VendingMachineHardwareFunctions.dispenseDime();
+        VendingMachineHardwareFunctions.dispenseCoins(10, 1);
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(5, 1);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void test_outOfQuartersButPlentyOfDimes() {
+        vendingMachine.addChange(0, 3, 0);
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 20);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+
+        // Greedy would hand back a quarter and then be stuck with 5 cents to go and no nickels.
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
         verifyStatic(VendingMachineHardwareFunctions.class, times(1));
-        VendingMachineHardwareFunctions.dispenseNickel();
+        VendingMachineHardwareFunctions.dispenseCoins(10, 3);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testDispenseAllChange_oneHardwareCallPerDenomination() {
+        vendingMachine.addChange(2000, 0, 1000);
+
+        vendingMachine.dispenseAllChange();
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(5, 2000);
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(25, 1000);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void test_euroMachine() {
+        DenominationRegistry euros = DenominationRegistry.EURO_COINS;
+        JavaVendingMachine euroMachine = new JavaVendingMachine(euros);
+        euroMachine.addChange(euros.get(euros.indexOf(20)), 10);
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 60);
+        gumDescription.put("name", "Gum");
+        euroMachine.addProduct(1, gumDescription);
+
+        euroMachine.addUserMoney(100);
+        euroMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(20, 2);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void test_addChangeOnAEuroMachineAddsNothing() {
+        JavaVendingMachine euroMachine = new JavaVendingMachine(DenominationRegistry.EURO_COINS);
+        try {
+            euroMachine.addChange(1, 1, 1);
+            throw new AssertionError("Expected InvalidDenominationException");
+        } catch (InvalidDenominationException e) {
+            // expected, there is no 25 cent coin
+        }
+        assertArrayEquals(new int[6], euroMachine.exportState().getSystemCoins());
+    }
+
+    @Test
+    public void test_injectedHardwareDriver() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        machine.addChange(1, 1, 0);
+
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 10);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(1, gumDescription);
+
+        machine.buttonPress(1);
+        machine.addUserMoney(25);
+        machine.buttonPress(1);
+
+        assertEquals(Arrays.asList("message Item in position 1 costs 10", "product 1 Gum", "coins 5 x 1", "coins 10 x 1"),
+                hardware.getEvents());
+
+        // Nothing went through the static hardware functions.
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testButtonPress_notEnoughChangeDispensesNothing() throws Exception {
+        vendingMachine.addChange(0, 1, 0);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 5);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+        vendingMachine.addUserMoney(25);
+
+        try {
+            vendingMachine.buttonPress(1);
+            throw new AssertionError("Expected NotEnoughChangeException");
+        } catch (NotEnoughChangeException e) {
+            // expected, 20 cents can't be made from one dime
+        }
+
+        Field f = vendingMachine.getClass().getDeclaredField("userVault");
+        f.setAccessible(true);
+        assertEquals(25, ((Vault) f.get(vendingMachine)).getTotalMoney());
+        f = vendingMachine.getClass().getDeclaredField("systemVault");
+        f.setAccessible(true);
+        assertEquals(10, ((Vault) f.get(vendingMachine)).getTotalMoney());
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testButtonPress_jammedProductIsRolledBack() {
+        JavaVendingMachine machine = new JavaVendingMachine(new RecordingHardwareDriver() {
+            @Override
+            public void dispenseProduct(int productPosition, String productName) {
+                throw new IllegalStateException("The product is stuck");
+            }
+        });
+        machine.addChange(0, 1, 0);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 15);
+        gumDescription.put("name", "Gum");
+        gumDescription.put("quantity", 1);
+        machine.addProduct(1, gumDescription);
+        machine.addUserMoney(25);
+
+        try {
+            machine.buttonPress(1);
+            throw new AssertionError("Expected the hardware to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        MachineState state = machine.exportState();
+        assertArrayEquals(new int[]{0, 0, 1}, state.getUserCoins());
+        assertArrayEquals(new int[]{0, 1, 0}, state.getSystemCoins());
+        assertEquals(1, machine.getStock(1));
+    }
+
+    @Test
+    public void testButtonPress_changeFromTheCustomersOwnCoins() {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 15);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+        vendingMachine.addUserMoney(10);
+        vendingMachine.addUserMoney(5);
+        vendingMachine.addUserMoney(5);
+
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
+        verifyStatic(VendingMachineHardwareFunctions.class, times(1));
+        VendingMachineHardwareFunctions.dispenseCoins(5, 1);
+
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test
+    public void testButtonPress_changeGoingOutIsNoLongerAvailable() {
+        vendingMachine.addChange(1, 0, 0);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 20);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(1);
+
+        // The only nickel went out with the first sale.
+        vendingMachine.addUserMoney(25);
+        try {
+            vendingMachine.buttonPress(1);
+            throw new AssertionError("Expected NotEnoughChangeException");
+        } catch (NotEnoughChangeException e) {
+            // expected
+        }
+        vendingMachine.addChange(1, 0, 0);
+        vendingMachine.buttonPress(1);
+
+        verifyStatic(VendingMachineHardwareFunctions.class, times(2));
+        VendingMachineHardwareFunctions.dispenseProduct(1, "Gum");
+        verifyStatic(VendingMachineHardwareFunctions.class, times(2));
+        VendingMachineHardwareFunctions.dispenseCoins(5, 1);
 
         verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAddUserMoney_exactChangeOnly() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        machine.setWarnExactChangeOnly(true);
+        machine.addChange(0, 2, 0);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 20);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(1, gumDescription);
+
+        // 10 cents can't buy anything, and 20 needs no change.
+        machine.addUserMoney(10);
+        machine.addUserMoney(10);
+        machine.cancelOrder();
+        // 25 needs 5 back, and 50 needs 30, which two dimes and two quarters can't make.
+        machine.addUserMoney(25);
+        machine.addUserMoney(25);
+
+        assertEquals(Arrays.asList("coins 10 x 2", "message Exact change only", "message Exact change only"),
+                hardware.getEvents());
+    }
+
+    @Test
+    public void testAddUserMoney_exactChangeOnlyFollowsStockAndPrices() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        machine.setWarnExactChangeOnly(true);
+        // Enough dimes and quarters that a coin going in doesn't change what can be paid, which is anything but 5
+        // and 15 cents.
+        machine.addChange(0, 40, 40);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 20);
+        gumDescription.put("name", "Gum");
+        gumDescription.put("quantity", 1);
+        machine.addProduct(1, gumDescription);
+
+        // The last one is sold, so 5 back is nothing to warn about.
+        machine.addUserMoney(10);
+        machine.addUserMoney(10);
+        machine.buttonPress(1);
+        machine.addUserMoney(25);
+        machine.cancelOrder();
+        // Back in stock it is.
+        machine.restock(1, 1);
+        machine.addUserMoney(25);
+        machine.cancelOrder();
+        // At 25 no change is due.
+        machine.reprice(new PriceTable(1, Collections.singletonMap(1, 25)));
+        machine.addUserMoney(25);
+
+        assertEquals(Arrays.asList("product 1 Gum", "coins 25 x 1", "message Exact change only", "coins 25 x 1"),
+                hardware.getEvents());
+    }
+
+    @Test
+    public void testAddUserMoney_exactChangeOnlyIsOffByDefault() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 20);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(1, gumDescription);
+
+        machine.addUserMoney(25);
+
+        assertEquals(Collections.emptyList(), hardware.getEvents());
+    }
+
+    @Test
+    public void test_saleListener() {
+        List<Integer> sales = new ArrayList<>();
+        vendingMachine.setSaleListener((position, price) -> {
+            sales.add(position);
+            sales.add(price);
+        });
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 25);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(2, gumDescription);
+
+        // Only a sale is reported, not a price check.
+        vendingMachine.buttonPress(2);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(2);
+
+        assertEquals(Arrays.asList(2, 25), sales);
+    }
+
+    @Test
+    public void test_exportAndRestoreState() {
+        vendingMachine.addChange(1, 2, 3);
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 35);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(4, gumDescription);
+        vendingMachine.addUserMoney(10);
+
+        MachineState state = vendingMachine.exportState();
+        assertArrayEquals(new int[]{0, 1, 0}, state.getUserCoins());
+        assertArrayEquals(new int[]{1, 2, 3}, state.getSystemCoins());
+        assertEquals(10, state.getUserCredit());
+
+        JavaVendingMachine copy = new JavaVendingMachine();
+        copy.addProduct(2, gumDescription);
+        copy.restoreState(state);
+        assertEquals(1, copy.catalog.size());
+        assertEquals(35, copy.getProduct(4).getPrice());
+        assertArrayEquals(new int[]{1, 2, 3}, copy.exportState().getSystemCoins());
+
+        // Restoring doesn't touch the hardware.
+        verifyNoMoreInteractions(VendingMachineHardwareFunctions.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_restoreStateForOtherCoins() {
+        new JavaVendingMachine(DenominationRegistry.EURO_COINS).restoreState(vendingMachine.exportState());
+    }
+
+    @Test
+    public void testButtonPress_soldOutKeepsTheMoney() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        addStockedGum(machine, 1);
+
+        machine.addUserMoney(10);
+        machine.buttonPress(1);
+        assertEquals(0, machine.getStock(1));
+
+        machine.addUserMoney(10);
+        machine.buttonPress(1);
+        machine.cancelOrder();
+
+        assertEquals(Arrays.asList("product 1 Gum", "message Item in position 1 is sold out", "coins 10 x 1"),
+                hardware.getEvents());
+    }
+
+    @Test
+    public void testButtonPress_notEnoughChangeKeepsTheStock() {
+        JavaVendingMachine machine = new JavaVendingMachine(new RecordingHardwareDriver());
+        addStockedGum(machine, 1);
+
+        machine.addUserMoney(25);
+        try {
+            machine.buttonPress(1);
+            fail("Expected NotEnoughChangeException");
+        } catch (NotEnoughChangeException e) {
+            // expected, there are no coins to give back 15 cents with
+        }
+
+        assertEquals(1, machine.getStock(1));
+    }
+
+    @Test
+    public void testRestock() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        addStockedGum(machine, 1);
+        machine.addUserMoney(10);
+        machine.buttonPress(1);
+
+        machine.restock(1, 3);
+        machine.addUserMoney(10);
+        machine.buttonPress(1);
+
+        assertEquals(Arrays.asList("product 1 Gum", "product 1 Gum"), hardware.getEvents());
+        assertEquals(Collections.singletonMap(1, 2), machine.getInventory());
+    }
+
+    @Test(expected = PositionEmptyException.class)
+    public void testRestock_emptyPosition() {
+        vendingMachine.restock(1, 3);
+    }
+
+    @Test
+    public void testAddProduct_withoutQuantityNeverRunsOut() {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 10);
+        gumDescription.put("name", "Gum");
+        vendingMachine.addProduct(1, gumDescription);
+
+        assertEquals(StockCounter.UNLIMITED, vendingMachine.getStock(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddProduct_badQuantity() {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 10);
+        gumDescription.put("quantity", "lots");
+        vendingMachine.addProduct(1, gumDescription);
+    }
+
+    @Test
+    public void test_exportAndRestoreStock() {
+        JavaVendingMachine machine = new JavaVendingMachine(new RecordingHardwareDriver());
+        addStockedGum(machine, 4);
+        machine.addUserMoney(10);
+        machine.buttonPress(4);
+
+        JavaVendingMachine copy = new JavaVendingMachine(new RecordingHardwareDriver());
+        copy.restoreState(machine.exportState());
+
+        assertEquals(0, copy.getStock(4));
+    }
+
+    @Test
+    public void testCollectAllChange() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        machine.addChange(2, 0, 3);
+        addStockedGum(machine, 1);
+        machine.addUserMoney(10);
+        machine.buttonPress(1);
+
+        int[] collected = new int[3];
+        assertEquals(95, machine.collectAllChange(collected));
+
+        assertArrayEquals(new int[]{2, 1, 3}, collected);
+        assertArrayEquals(new int[3], machine.exportState().getSystemCoins());
+        assertEquals(3, hardware.getCoinsDispensed(25));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCollectAllChange_wrongNumberOfDenominations() {
+        vendingMachine.collectAllChange(new int[2]);
+    }
+
+    @Test
+    public void testReprice() {
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        JavaVendingMachine machine = new JavaVendingMachine(hardware);
+        addStockedGum(machine, 1);
+
+        assertTrue(machine.reprice(new PriceTable(1, Collections.singletonMap(1, 15))));
+        machine.addUserMoney(10);
+        machine.buttonPress(1);
+        machine.addUserMoney(5);
+        machine.buttonPress(1);
+
+        assertEquals(Arrays.asList("message Item in position 1 costs 15", "product 1 Gum"), hardware.getEvents());
+    }
+
+    @Test
+    public void testReprice_olderTableIsIgnored() {
+        addStockedGum(vendingMachine, 1);
+        assertTrue(vendingMachine.reprice(new PriceTable(2, Collections.singletonMap(1, 15))));
+        assertFalse(vendingMachine.reprice(new PriceTable(1, Collections.singletonMap(1, 20))));
+
+        assertEquals(15, vendingMachine.getProduct(1).getPrice());
+    }
+
+    @Test(expected = InvalidDenominationException.class)
+    public void testReprice_priceNoCoinCanMake() {
+        addStockedGum(vendingMachine, 1);
+        vendingMachine.reprice(new PriceTable(1, Collections.singletonMap(1, 12)));
+    }
+
+    private static void addStockedGum(JavaVendingMachine machine, int position) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 10);
+        gumDescription.put("name", "Gum");
+        gumDescription.put("quantity", 1);
+        machine.addProduct(position, gumDescription);
+    }
+}
@@ -0,0 +1,305 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.change.OptimalChangeMaker;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.exception.PositionEmptyException;
+import com.alextomala.vending.exception.PositionOccupiedException;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.hardware.RecordingHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.pricing.PriceTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CallRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private CallRecorder recorder;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.getRoot().toPath().resolve("calls.bin");
+        recorder = new CallRecorder(file, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recorder.close();
+        recorder = null;
+    }
+
+    @Test
+    public void test_replayMatches() throws Exception {
+        addGum(1, 35, 2);
+        recorder.addChange(2, 2, 0);
+        recorder.addUserMoney(25);
+        recorder.addUserMoney(25);
+        recorder.buttonPress(1);
+        recorder.restock(1, 3);
+        recorder.addUserMoney(10);
+        recorder.cancelOrder();
+        recorder.close();
+
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(8, result.getCalls());
+        assertEquals(1, result.getCheckpoints());
+        assertFalse(result.isTruncated());
+        assertNull(result.getFirstMismatch());
+    }
+
+    @Test
+    public void test_failedCallsAreRecorded() throws Exception {
+        addGum(1, 35, null);
+        expectFailure(() -> recorder.addUserMoney(1), InvalidDenominationException.class);
+        recorder.addUserMoney(25);
+        recorder.addUserMoney(25);
+        expectFailure(() -> recorder.buttonPress(1), NotEnoughChangeException.class);
+        expectFailure(() -> addGum(1, 35, null), PositionOccupiedException.class);
+        expectFailure(() -> recorder.restock(2, 1), PositionEmptyException.class);
+        expectFailure(() -> addGum(2, 7, null), InvalidDenominationException.class);
+        expectFailure(() -> recorder.addProduct(3, null), NullPointerException.class);
+        expectFailure(() -> recorder.restock(Collections.singletonMap(2, 1)), PositionEmptyException.class);
+        recorder.close();
+
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(10, result.getCalls());
+    }
+
+    @Test
+    public void test_repriceOutcomes() throws Exception {
+        addGum(1, 35, null);
+        assertTrue(recorder.reprice(new PriceTable(2, Collections.singletonMap(1, 50))));
+        assertFalse(recorder.reprice(new PriceTable(2, Collections.singletonMap(1, 60))));
+        expectFailure(() -> recorder.reprice(new PriceTable(3, Collections.singletonMap(1, 52))),
+                InvalidDenominationException.class);
+        recorder.close();
+
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(4, result.getCalls());
+    }
+
+    @Test
+    public void test_priceVersionIsCheckpointed() throws Exception {
+        JavaVendingMachine machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        Map<String, Object> gum = new HashMap<>();
+        gum.put("price", 35);
+        machine.addProduct(1, gum);
+        machine.reprice(new PriceTable(5, Collections.singletonMap(1, 50)));
+        recorder.close();
+
+        // Starting from a machine that has already had a price table, so only the first checkpoint knows about it.
+        recorder = new CallRecorder(file, machine, 1);
+        assertFalse(recorder.reprice(new PriceTable(3, Collections.singletonMap(1, 60))));
+        recorder.close();
+
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(1, result.getCalls());
+    }
+
+    @Test
+    public void test_checkpoints() throws Exception {
+        recorder.close();
+        recorder = new CallRecorder(file, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE), 2);
+        addGum(1, 50, null);
+        for (int i = 0; i < 5; i++) {
+            recorder.addUserMoney(25);
+            recorder.addUserMoney(25);
+            recorder.buttonPress(1);
+        }
+        recorder.close();
+
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(16, result.getCalls());
+        // One every two calls, and the last one on close.
+        assertEquals(9, result.getCheckpoints());
+    }
+
+    @Test
+    public void test_hardwareFailuresReplay() throws Exception {
+        recorder.close();
+        RecordingHardwareDriver jamsOnce = new RecordingHardwareDriver() {
+            private boolean jammed;
+
+            @Override
+            public void dispenseProduct(int productPosition, String productName) {
+                if (!jammed) {
+                    jammed = true;
+                    throw new IllegalStateException("The product is stuck");
+                }
+                super.dispenseProduct(productPosition, productName);
+            }
+        };
+        HardwareTap tap = new HardwareTap(jamsOnce);
+        recorder = new CallRecorder(file, new JavaVendingMachine(tap), tap, 1);
+        addGum(1, 35, 2);
+        recorder.addChange(2, 2, 0);
+        recorder.addUserMoney(25);
+        recorder.addUserMoney(25);
+        expectFailure(() -> recorder.buttonPress(1), IllegalStateException.class);
+        recorder.buttonPress(1);
+        recorder.close();
+
+        // The jam put the product back and left the coins alone, and the replay has to do the same to keep matching.
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(6, result.getCalls());
+        assertEquals(7, result.getCheckpoints());
+    }
+
+    @Test
+    public void test_recordingStartsFromTheMachineState() throws Exception {
+        recorder.close();
+        JavaVendingMachine machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        machine.addChange(4, 4, 4);
+        Map<String, Object> gum = new HashMap<>();
+        gum.put("price", 40);
+        machine.addProduct(1, gum);
+
+        recorder = new CallRecorder(file, machine);
+        recorder.addUserMoney(25);
+        recorder.addUserMoney(25);
+        recorder.buttonPress(1);
+        recorder.close();
+
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(3, result.getCalls());
+    }
+
+    @Test
+    public void test_differentStateIsFound() throws Exception {
+        addGum(1, 35, null);
+        recorder.addChange(2, 2, 0);
+        recorder.addUserMoney(25);
+        recorder.addUserMoney(25);
+        recorder.buttonPress(1);
+        recorder.close();
+
+        // Take the nickels out of the addChange, as if the machine had been filled differently. The sale can't give
+        // 15 cents in change any more.
+        byte[] bytes = Files.readAllBytes(file);
+        int addChange = indexOf(bytes, TransactionJournal.ADD_CHANGE, new byte[]{0, 0, 0, 2, 0, 0, 0, 2, 0, 0, 0, 0});
+        bytes[addChange + 4] = 0;
+        Files.write(file, bytes);
+
+        ReplayResult result = new CallReplayer(file).replay();
+        assertFalse(result.matches());
+        assertEquals(1, result.getMismatchedOutcomes());
+        assertEquals(1, result.getMismatchedCheckpoints());
+        assertTrue(result.getFirstMismatch(), result.getFirstMismatch().startsWith("Call 5 "));
+        assertTrue(result.getFirstMismatch(), result.getFirstMismatch().contains("NOT_ENOUGH_CHANGE"));
+    }
+
+    @Test
+    public void test_euroCoins() throws Exception {
+        recorder.close();
+        DenominationRegistry euros = DenominationRegistry.EURO_COINS;
+        recorder = new CallRecorder(file, new JavaVendingMachine(euros, new OptimalChangeMaker(euros.getValues()),
+                NoOpHardwareDriver.INSTANCE));
+        recorder.addChange(euros.get(4), 3);
+        recorder.addUserMoney(200);
+        int[] collected = new int[euros.size()];
+        recorder.collectAllChange(collected);
+        assertEquals(3, collected[4]);
+        recorder.close();
+
+        CallReplayer replayer = new CallReplayer(file);
+        assertSame(euros, replayer.getRegistry());
+        ReplayResult result = replayer.replay();
+        assertTrue(result.toString(), result.matches());
+        assertEquals(3, result.getCalls());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_differentCoins() throws Exception {
+        recorder.addUserMoney(25);
+        recorder.close();
+
+        new CallReplayer(file).replay(new JavaVendingMachine(DenominationRegistry.EURO_COINS));
+    }
+
+    @Test
+    public void test_unclosedRecordingIsTruncated() throws Exception {
+        addGum(1, 50, null);
+        recorder.addUserMoney(25);
+        recorder.flush();
+        long size = Files.size(file);
+        recorder.close();
+
+        try (RandomAccessFile truncated = new RandomAccessFile(file.toFile(), "rw")) {
+            truncated.setLength(size - 2);
+        }
+        ReplayResult result = new CallReplayer(file).replay();
+        assertTrue(result.isTruncated());
+        assertEquals(1, result.getCalls());
+        assertTrue(result.matches());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_notARecording() throws Exception {
+        Files.write(file, new byte[32]);
+        new CallReplayer(file);
+    }
+
+    private void addGum(int position, int price, Integer quantity) {
+        addGum(recorder, position, price, quantity);
+    }
+
+    private static void addGum(CallRecorder recorder, int position, int price, Integer quantity) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", price);
+        gumDescription.put("name", "Gum");
+        gumDescription.put("quantity", quantity);
+        recorder.addProduct(position, gumDescription);
+    }
+
+    private static int indexOf(byte[] bytes, byte type, byte[] payload) {
+        for (int i = 0; i + payload.length < bytes.length; i++) {
+            boolean found = bytes[i] == type;
+            for (int j = 0; found && j < payload.length; j++) {
+                found = bytes[i + 1 + j] == payload[j];
+            }
+            if (found) {
+                return i;
+            }
+        }
+        throw new AssertionError("Record not found");
+    }
+
+    private static void expectFailure(Runnable call, Class<? extends RuntimeException> expected) {
+        try {
+            call.run();
+            fail("Expected " + expected.getSimpleName());
+        } catch (RuntimeException e) {
+            assertEquals(expected, e.getClass());
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.currency.DenominationRegistry;
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.hardware.RecordingHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import com.alextomala.vending.pricing.PriceTable;
+import com.alextomala.vending.snapshot.MachineState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JournaledVendingMachineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private JournaledVendingMachine vendingMachine;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath().resolve("machine");
+        vendingMachine = open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vendingMachine.close();
+        vendingMachine = null;
+    }
+
+    @Test
+    public void test_recoverAfterClose() throws Exception {
+        stockAndSell(vendingMachine);
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test
+    public void test_recoverWithoutClose() throws Exception {
+        stockAndSell(vendingMachine);
+        MachineState before = vendingMachine.exportState();
+
+        // Nothing was synced or closed, like a process that was killed. The records are still in the mapped file.
+        try (JournaledVendingMachine recovered = open()) {
+            assertSameState(before, recovered.exportState());
+        }
+    }
+
+    @Test
+    public void test_recoveredMachineCarriesOn() throws Exception {
+        stockAndSell(vendingMachine);
+        vendingMachine.close();
+
+        vendingMachine = open();
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(1);
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test
+    public void test_recoveryDoesNotDispense() throws Exception {
+        stockAndSell(vendingMachine);
+        vendingMachine.close();
+
+        RecordingHardwareDriver hardware = new RecordingHardwareDriver();
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(hardware));
+        assertTrue(hardware.getEvents().isEmpty());
+    }
+
+    @Test
+    public void test_failedCallsReplayTheSameWay() throws Exception {
+        addGum(vendingMachine, 1, 35);
+        try {
+            vendingMachine.addUserMoney(1);
+        } catch (InvalidDenominationException e) {
+            // expected
+        }
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        try {
+            vendingMachine.buttonPress(1);
+        } catch (NotEnoughChangeException e) {
+            // expected, the machine has no change
+        }
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test
+    public void test_snapshotEmptiesJournal() throws Exception {
+        vendingMachine.close();
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE), 4,
+                TransactionJournal.DEFAULT_SYNC_EVERY);
+
+        stockAndSell(vendingMachine);
+        vendingMachine.awaitSnapshot();
+        TransactionJournal journal = vendingMachine.getJournal();
+        assertTrue(Files.exists(directory.resolve(JournaledVendingMachine.SNAPSHOT_FILE)));
+        // The switch to an empty journal waits for the snapshot before it to be written, so the journal in use can
+        // hold up to two intervals.
+        assertTrue(journal.getLastSequence() - journal.getBaseSequence() < 8);
+
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test
+    public void test_snapshotFailureWaitsForSnapshotOrClose() throws Exception {
+        vendingMachine.close();
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE), 4,
+                TransactionJournal.DEFAULT_SYNC_EVERY);
+        // The snapshot is written to a temporary file first, and that can't be opened when it is a directory.
+        Path blocked = Files.createDirectory(directory.resolve(JournaledVendingMachine.SNAPSHOT_FILE + ".tmp"));
+
+        stockAndSell(vendingMachine);
+        vendingMachine.awaitSnapshot();
+        assertNotNull(vendingMachine.getSnapshotFailure());
+        try {
+            vendingMachine.snapshot();
+            fail("The background failure should have been thrown");
+        } catch (IOException e) {
+            assertNull(vendingMachine.getSnapshotFailure());
+        }
+
+        Files.delete(blocked);
+        vendingMachine.snapshot();
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test
+    public void test_snapshotsComeFromTheJournal() throws Exception {
+        vendingMachine.close();
+        JavaVendingMachine tampered = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        vendingMachine = new JournaledVendingMachine(directory, tampered);
+        stockAndSell(vendingMachine);
+        int[] journaled = vendingMachine.getJournaledSystemCoins();
+
+        // A quarter that got into the vault without a journal record, then a snapshot that mustn't take it in.
+        tampered.addChange(0, 0, 1);
+        vendingMachine.snapshot();
+        assertArrayEquals(journaled, vendingMachine.getJournaledSystemCoins());
+        assertEquals(journaled[2] + 1, vendingMachine.exportState().getSystemCoins()[2]);
+    }
+
+    @Test
+    public void test_recoverFromBothJournals() throws Exception {
+        vendingMachine.close();
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE), 4,
+                TransactionJournal.DEFAULT_SYNC_EVERY);
+        vendingMachine.addChange(10, 10, 10);
+        addGum(vendingMachine, 1, 35);
+        addGum(vendingMachine, 2, 60);
+        // The snapshot is started here and the records after it go into the other journal.
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(25);
+        vendingMachine.buttonPress(1);
+        vendingMachine.addUserMoney(10);
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        // As if the machine had stopped before the snapshot was written. The first four records are only in the
+        // journal that was switched away from.
+        Files.delete(directory.resolve(JournaledVendingMachine.SNAPSHOT_FILE));
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test
+    public void test_tornRecordIsDropped() throws Exception {
+        stockAndSell(vendingMachine);
+        MachineState before = vendingMachine.exportState();
+        long records = vendingMachine.getJournal().getLastSequence();
+        vendingMachine.addUserMoney(25);
+        vendingMachine.close();
+
+        // Flip a byte in the payload of the last record, the quarter.
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(JournaledVendingMachine.JOURNAL_FILE).toFile(), "rw")) {
+            long offset = 16;
+            for (long i = 0; i < records; i++) {
+                file.seek(offset);
+                offset += file.readInt();
+            }
+            file.seek(offset + 17);
+            file.writeByte(0x7f);
+        }
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+        assertEquals(records, vendingMachine.getJournal().getLastSequence());
+    }
+
+    @Test
+    public void test_euroCoins() throws Exception {
+        vendingMachine.close();
+        DenominationRegistry euros = DenominationRegistry.EURO_COINS;
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(euros));
+        vendingMachine.addChange(euros.get(4), 3);
+        vendingMachine.addUserMoney(200);
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(euros));
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_differentCoins() throws Exception {
+        stockAndSell(vendingMachine);
+        vendingMachine.snapshot();
+        vendingMachine.close();
+
+        vendingMachine = new JournaledVendingMachine(directory, new JavaVendingMachine(DenominationRegistry.EURO_COINS));
+    }
+
+    @Test
+    public void test_stockIsRecovered() throws Exception {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", 10);
+        gumDescription.put("name", "Gum");
+        gumDescription.put("quantity", 2);
+        vendingMachine.addProduct(1, gumDescription);
+        addGum(vendingMachine, 2, 10);
+        vendingMachine.addUserMoney(10);
+        vendingMachine.buttonPress(1);
+        vendingMachine.restock(1, 5);
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+        assertEquals(6, vendingMachine.getStock(1));
+
+        vendingMachine.snapshot();
+        vendingMachine.close();
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+    }
+
+    @Test
+    public void test_pricesAreRecovered() throws Exception {
+        addGum(vendingMachine, 1, 35);
+        addGum(vendingMachine, 2, 60);
+        vendingMachine.reprice(new PriceTable(1, Collections.singletonMap(1, 40)));
+        // Refused the first time, so replaying it has to be refused too.
+        vendingMachine.reprice(new PriceTable(1, Collections.singletonMap(2, 70)));
+        vendingMachine.addUserMoney(25);
+        vendingMachine.addUserMoney(10);
+        vendingMachine.buttonPress(1);
+        MachineState before = vendingMachine.exportState();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertSameState(before, vendingMachine.exportState());
+        assertEquals(40, vendingMachine.exportState().getProducts().get(0).getPrice());
+        assertEquals(60, vendingMachine.exportState().getProducts().get(1).getPrice());
+    }
+
+    @Test
+    public void test_priceVersionSurvivesASnapshot() throws Exception {
+        addGum(vendingMachine, 1, 35);
+        vendingMachine.reprice(new PriceTable(3, Collections.singletonMap(1, 40)));
+        vendingMachine.snapshot();
+        vendingMachine.close();
+
+        vendingMachine = open();
+        assertEquals(3, vendingMachine.exportState().getPriceVersion());
+        assertFalse(vendingMachine.reprice(new PriceTable(2, Collections.singletonMap(1, 30))));
+        assertEquals(40, vendingMachine.exportState().getProducts().get(0).getPrice());
+    }
+
+    private JournaledVendingMachine open() throws IOException {
+        return new JournaledVendingMachine(directory, new JavaVendingMachine(NoOpHardwareDriver.INSTANCE));
+    }
+
+    private static void stockAndSell(JournaledVendingMachine machine) {
+        machine.addChange(10, 10, 10);
+        addGum(machine, 1, 35);
+        addGum(machine, 2, 60);
+        machine.addUserMoney(25);
+        machine.addUserMoney(25);
+        machine.buttonPress(1);
+        machine.addUserMoney(10);
+        machine.cancelOrder();
+        machine.addUserMoney(5);
+    }
+
+    private static void addGum(JournaledVendingMachine machine, int position, int price) {
+        Map<String, Object> gumDescription = new HashMap<>();
+        gumDescription.put("price", price);
+        gumDescription.put("name", "Gum");
+        machine.addProduct(position, gumDescription);
+    }
+
+    static void assertSameState(MachineState expected, MachineState actual) {
+        assertArrayEquals(expected.getDenominations(), actual.getDenominations());
+        assertArrayEquals(expected.getUserCoins(), actual.getUserCoins());
+        assertArrayEquals(expected.getSystemCoins(), actual.getSystemCoins());
+        assertEquals(describe(expected.getProducts()), describe(actual.getProducts()));
+        assertArrayEquals(expected.getStock(), actual.getStock());
+        assertEquals(expected.getPriceVersion(), actual.getPriceVersion());
+    }
+
+    private static String describe(List<Product> products) {
+        return Arrays.toString(products.toArray());
+    }
+}
@@ -0,0 +1,121 @@
+package com.alextomala.vending.journal;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.catalog.StockCounter;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.impl.JavaVendingMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TransactionJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private TransactionJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.getRoot().toPath().resolve("journal.log");
+        journal = new TransactionJournal(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+        journal = null;
+    }
+
+    @Test
+    public void testAppend_sequenceNumbers() throws Exception {
+        journal.appendAddChange(1, 2, 3);
+        journal.appendUserMoney(25);
+        journal.appendButtonPress(1);
+        assertEquals(3, journal.getLastSequence());
+        journal.close();
+
+        journal = new TransactionJournal(file);
+        assertEquals(0, journal.getBaseSequence());
+        assertEquals(3, journal.getLastSequence());
+    }
+
+    @Test
+    public void testReplay_afterSequence() throws Exception {
+        journal.appendAddChange(1, 2, 3);
+        journal.appendUserMoney(25);
+        journal.appendUserMoney(10);
+
+        JavaVendingMachine machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        assertEquals(2, journal.replay(1, machine));
+        assertArrayEquals(new int[]{0, 1, 1}, machine.exportState().getUserCoins());
+        assertArrayEquals(new int[]{0, 0, 0}, machine.exportState().getSystemCoins());
+    }
+
+    @Test
+    public void testReplay_productWithoutName() throws Exception {
+        journal.appendAddProduct(new Product(3, 45, null), StockCounter.UNLIMITED);
+        journal.appendAddProduct(new Product(4, 50, "Caf\u00e9"), 6);
+
+        JavaVendingMachine machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        journal.replay(0, machine);
+        assertEquals(45, machine.getProduct(3).getPrice());
+        assertNull(machine.getProduct(3).getName());
+        assertEquals("Caf\u00e9", machine.getProduct(4).getName());
+        assertEquals(StockCounter.UNLIMITED, machine.getStock(3));
+        assertEquals(6, machine.getStock(4));
+    }
+
+    @Test
+    public void testReset_keepsNumbering() throws Exception {
+        journal.appendUserMoney(25);
+        journal.appendUserMoney(25);
+        journal.reset(journal.getLastSequence());
+        journal.appendUserMoney(10);
+        journal.close();
+
+        journal = new TransactionJournal(file);
+        assertEquals(2, journal.getBaseSequence());
+        assertEquals(3, journal.getLastSequence());
+
+        JavaVendingMachine machine = new JavaVendingMachine(NoOpHardwareDriver.INSTANCE);
+        assertEquals(1, journal.replay(0, machine));
+        assertArrayEquals(new int[]{0, 1, 0}, machine.exportState().getUserCoins());
+    }
+
+    @Test
+    public void testAppend_growsPastInitialMapping() throws Exception {
+        int records = 100_000;
+        for (int i = 0; i < records; i++) {
+            journal.appendButtonPress(i);
+        }
+        journal.close();
+
+        journal = new TransactionJournal(file);
+        assertEquals(records, journal.getLastSequence());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpen_notAJournal() throws Exception {
+        Path other = folder.getRoot().toPath().resolve("other.log");
+        Files.write(other, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17});
+        new TransactionJournal(other);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppend_afterClose() throws Exception {
+        journal.close();
+        journal.appendCancelOrder();
+    }
+}
@@ -0,0 +1,115 @@
+package com.alextomala.vending.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() throws Exception {
+        histogram = new LatencyHistogram();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        histogram = null;
+    }
+
+    @Test
+    public void testBuckets_smallValuesAreExact() {
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+            assertEquals(value, LatencyHistogram.lowestValueIn(LatencyHistogram.bucketOf(value)));
+            assertEquals(value, LatencyHistogram.highestValueIn(LatencyHistogram.bucketOf(value)));
+        }
+    }
+
+    @Test
+    public void testBuckets_everyValueIsInItsBucket() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() & LatencyHistogram.MAX_TRACKABLE_NANOS;
+            int bucket = LatencyHistogram.bucketOf(value);
+            long lowest = LatencyHistogram.lowestValueIn(bucket);
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            assertTrue(value + " in bucket " + bucket, lowest <= value && value <= highest);
+            assertTrue(value + " is bucketed too coarsely", highest - lowest <= value / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void testBuckets_neighboursDoNotOverlap() {
+        for (int bucket = 1; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            assertEquals(LatencyHistogram.highestValueIn(bucket - 1) + 1, LatencyHistogram.lowestValueIn(bucket));
+        }
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, LatencyHistogram.highestValueIn(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000L);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500.0, snapshot.getMeanNanos(), 0.001);
+        assertEquals(1000000, snapshot.getMaxNanos());
+        assertWithinPrecision(500000, snapshot.getValueAtPercentile(50));
+        assertWithinPrecision(990000, snapshot.getValueAtPercentile(99));
+        assertEquals(1000000, snapshot.getValueAtPercentile(100));
+        assertWithinPrecision(1000, snapshot.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testRecord_clamped() {
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, snapshot.getMaxNanos());
+    }
+
+    @Test
+    public void testSnapshot_empty() {
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0.0, snapshot.getMeanNanos(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentile_outOfRange() {
+        histogram.snapshot().getValueAtPercentile(101);
+    }
+
+    @Test
+    public void testRecord_manyThreads() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected,
+                Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,112 @@
+package com.alextomala.vending.metrics;
+
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MachineMetricsTest {
+
+    private MachineMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new MachineMetrics(8);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        metrics = null;
+    }
+
+    @Test
+    public void testRecord() {
+        metrics.record(Operation.BUTTON_PRESS, 100);
+        metrics.record(Operation.BUTTON_PRESS, 300);
+        metrics.record(Operation.HARDWARE, 50);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getCalls(Operation.BUTTON_PRESS));
+        assertEquals(200.0, snapshot.getLatency(Operation.BUTTON_PRESS).getMeanNanos(), 0.001);
+        assertEquals(1, snapshot.getCalls(Operation.HARDWARE));
+        assertEquals(0, snapshot.getCalls(Operation.CANCEL_ORDER));
+    }
+
+    @Test
+    public void testRecordFailure() {
+        metrics.recordFailure(new NotEnoughChangeException("none"));
+        metrics.recordFailure(new NotEnoughChangeException("none"));
+        metrics.recordFailure(new IllegalArgumentException());
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getFailures("NotEnoughChangeException"));
+        assertEquals(1, snapshot.getFailures("IllegalArgumentException"));
+        assertEquals(0, snapshot.getFailures("InvalidDenominationException"));
+    }
+
+    @Test
+    public void testRecordSale_positionsPastTheEndShareACounter() {
+        metrics.recordSale(3, 50);
+        metrics.recordSale(3, 50);
+        metrics.recordSale(9, 75);
+        metrics.recordSale(100, 25);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getSales(3));
+        assertEquals(100, snapshot.getRevenue(3));
+        assertEquals(2, snapshot.getSales(9));
+        assertEquals(100, snapshot.getRevenue(100));
+        assertEquals(0, snapshot.getSales(4));
+    }
+
+    @Test
+    public void testGauges() {
+        int[] coins = {7};
+        metrics.registerGauge("coins", () -> coins[0]);
+        assertEquals(Long.valueOf(7), metrics.snapshot().getGauges().get("coins"));
+        coins[0] = 3;
+        assertEquals(Long.valueOf(3), metrics.snapshot().getGauges().get("coins"));
+    }
+
+    @Test
+    public void testToMap() {
+        metrics.record(Operation.BUTTON_PRESS, 100);
+        metrics.recordSale(3, 50);
+        metrics.recordSale(20, 60);
+        metrics.recordFailure(new NotEnoughChangeException("none"));
+        metrics.registerGauge("vault.system.cents", () -> 125);
+
+        Map<String, Number> map = metrics.snapshot().toMap();
+        assertEquals(1L, map.get("buttonPress.count"));
+        assertEquals(100L, map.get("buttonPress.p99Nanos"));
+        assertEquals(1L, map.get("position.3.sales"));
+        assertEquals(50L, map.get("position.3.revenue"));
+        assertEquals(60L, map.get("position.other.revenue"));
+        assertEquals(1L, map.get("failures.NotEnoughChangeException"));
+        assertEquals(125L, map.get("gauge.vault.system.cents"));
+        assertFalse(map.containsKey("position.4.sales"));
+    }
+
+    @Test
+    public void testDisabled() {
+        MachineMetrics disabled = MachineMetrics.DISABLED;
+        disabled.record(Operation.BUTTON_PRESS, 100);
+        disabled.recordSale(0, 50);
+        disabled.recordFailure(new NotEnoughChangeException("none"));
+        disabled.registerGauge("coins", () -> 1);
+
+        MetricsSnapshot snapshot = disabled.snapshot();
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, snapshot.getCalls(Operation.BUTTON_PRESS));
+        assertNull(snapshot.getLatency(Operation.BUTTON_PRESS));
+        assertEquals(0, snapshot.getSales(0));
+        assertTrue(snapshot.toMap().isEmpty());
+    }
+}
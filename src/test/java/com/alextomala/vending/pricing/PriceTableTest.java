@@ -0,0 +1,56 @@
+package com.alextomala.vending.pricing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PriceTableTest {
+
+    @Test
+    public void testGetPrice() {
+        Map<Integer, Integer> prices = new HashMap<>();
+        prices.put(3, 50);
+        prices.put(1, 75);
+        PriceTable table = new PriceTable(4, prices);
+
+        assertEquals(4, table.getVersion());
+        assertEquals(75, table.getPrice(1));
+        assertEquals(50, table.getPrice(3));
+        assertEquals(PriceTable.NO_PRICE, table.getPrice(2));
+        assertEquals(PriceTable.NO_PRICE, table.getPrice(40));
+        assertEquals(PriceTable.NO_PRICE, table.getPrice(-1));
+        assertEquals(3, table.getLastPosition());
+        assertEquals("Item in position 3 costs 50", table.getPriceMessage(3));
+        assertNull(table.getPriceMessage(2));
+        assertEquals(Arrays.asList(1, 3), Arrays.asList(table.getPrices().keySet().toArray()));
+    }
+
+    @Test
+    public void testEmpty() {
+        PriceTable table = new PriceTable(1, Collections.emptyMap());
+
+        assertEquals(-1, table.getLastPosition());
+        assertEquals(PriceTable.NO_PRICE, table.getPrice(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_versionZero() {
+        new PriceTable(0, Collections.singletonMap(1, 50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_freeProduct() {
+        new PriceTable(1, Collections.singletonMap(1, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_negativePosition() {
+        new PriceTable(1, Collections.singletonMap(-1, 50));
+    }
+}
@@ -0,0 +1,141 @@
+package com.alextomala.vending.pricing;
+
+import com.alextomala.vending.analytics.SalesAggregator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PricingEngineTest {
+    private static final long HOUR = 3_600_000;
+
+    private long now;
+    private PriceTable listPrices;
+
+    @Before
+    public void setUp() {
+        // Ten in the morning UTC, on some day.
+        now = 20_000 * 24 * HOUR + 10 * HOUR;
+        Map<Integer, Integer> prices = new HashMap<>();
+        prices.put(1, 100);
+        prices.put(2, 65);
+        listPrices = new PriceTable(1, prices);
+    }
+
+    @After
+    public void tearDown() {
+        listPrices = null;
+    }
+
+    private PricingEngine engine(PricingRule... rules) {
+        return new PricingEngine(listPrices, 5, Arrays.asList(rules), () -> now);
+    }
+
+    @Test
+    public void testReprice_noRules() {
+        PricingEngine engine = engine();
+        assertSame(listPrices, engine.getCurrent());
+
+        PriceTable prices = engine.reprice();
+
+        assertEquals(2, prices.getVersion());
+        assertEquals(listPrices.getPrices(), prices.getPrices());
+        assertSame(prices, engine.getCurrent());
+    }
+
+    @Test
+    public void testReprice_roundsToTheSmallestCoin() {
+        PricingEngine engine = engine((position, price, time) -> price + 3, (position, price, time) -> price / 100);
+        PriceTable prices = engine.reprice();
+
+        // 103 / 100 = 1 and 68 / 100 = 0 both come up to one nickel.
+        assertEquals(5, prices.getPrice(1));
+        assertEquals(5, prices.getPrice(2));
+
+        engine = engine((position, price, time) -> price + 3);
+        assertEquals(105, engine.reprice().getPrice(1));
+    }
+
+    @Test
+    public void testTimeOfDayRule() {
+        TimeOfDayRule morningRush = new TimeOfDayRule(LocalTime.of(7, 0), LocalTime.of(10, 0), ZoneOffset.UTC, 10);
+        TimeOfDayRule lateNight = new TimeOfDayRule(LocalTime.of(22, 0), LocalTime.of(2, 0), ZoneOffset.UTC, -20);
+        PricingEngine engine = engine(morningRush, lateNight);
+
+        assertEquals(100, engine.reprice().getPrice(1));
+        now -= HOUR;
+        assertEquals(110, engine.reprice().getPrice(1));
+        assertEquals(70, engine.getCurrent().getPrice(2));
+        now += 14 * HOUR;
+        assertEquals(80, engine.reprice().getPrice(1));
+        now += 3 * HOUR;
+        assertTrue(lateNight.appliesAt(now - HOUR));
+        assertFalse(lateNight.appliesAt(now));
+    }
+
+    @Test
+    public void testDemandRule() {
+        SalesAggregator sales = new SalesAggregator(2, 4, HOUR, 3, () -> now);
+        for (int i = 0; i < 3; i++) {
+            sales.record(0, 1, 100);
+            sales.record(1, 1, 100);
+        }
+        sales.record(1, 2, 65);
+        PricingEngine engine = engine(new DemandRule(sales, 2, 5, 10), DemandRule.atMost(sales, 2, 1, -10));
+
+        PriceTable prices = engine.reprice();
+
+        assertEquals(110, prices.getPrice(1));
+        assertEquals(60, prices.getPrice(2));
+    }
+
+    @Test
+    public void testDemandRule_positionTheAggregatorDoesNotTrack() {
+        SalesAggregator sales = new SalesAggregator(1, 2, HOUR, 1, () -> now);
+        PricingEngine engine = engine(DemandRule.atMost(sales, 1, 0, -50));
+
+        listPrices = new PriceTable(1, Collections.singletonMap(7, 100));
+        engine.setBasePrices(listPrices);
+
+        assertEquals(100, engine.reprice().getPrice(7));
+    }
+
+    @Test
+    public void testReprice_racingThreadsEachGetTheirOwnVersion() throws Exception {
+        PricingEngine engine = engine((position, price, time) -> price);
+        List<Long> versions = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    versions.add(engine.reprice().getVersion());
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        assertEquals(4000, versions.stream().distinct().count());
+        assertEquals(4001, engine.getCurrent().getVersion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimeOfDayRule_free() {
+        new TimeOfDayRule(LocalTime.MIDNIGHT, LocalTime.NOON, ZoneOffset.UTC, -100);
+    }
+}
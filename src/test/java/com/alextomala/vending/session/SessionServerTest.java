@@ -0,0 +1,237 @@
+package com.alextomala.vending.session;
+
+import com.alextomala.vending.command.ButtonPressed;
+import com.alextomala.vending.command.ChangeAdded;
+import com.alextomala.vending.command.CoinInserted;
+import com.alextomala.vending.command.Command;
+import com.alextomala.vending.hardware.HardwareDriver;
+import com.alextomala.vending.hardware.RecordingHardwareDriver;
+import com.alextomala.vending.impl.ConcurrentVendingMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SessionServerTest {
+
+    private ConcurrentVendingMachine machine;
+    private RecordingHardwareDriver machineHardware;
+    private SessionServer server;
+
+    @Before
+    public void setUp() {
+        machineHardware = new RecordingHardwareDriver();
+        machine = new ConcurrentVendingMachine(machineHardware);
+        Map<String, Object> details = new HashMap<>();
+        details.put("price", 15);
+        details.put("name", "Gum");
+        machine.addProduct(1, details);
+        server = new SessionServer(machine);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        server = null;
+    }
+
+    @Test
+    public void sessionRunsTheCustomersCommands() throws Exception {
+        machine.addChange(0, 1, 0);
+        QueueConnection connection = new QueueConnection();
+        server.accept(connection);
+
+        connection.send(new CoinInserted(25));
+        connection.send(new ButtonPressed(1));
+        connection.end();
+
+        assertTrue(connection.awaitClosed());
+        assertEquals(Arrays.asList("product 1 Gum", "coins 10 x 1"), connection.output.getEvents());
+        server.close();
+        assertEquals(0, server.getActiveSessions());
+    }
+
+    @Test
+    public void thousandsOfSessionsAtOnce() throws Exception {
+        int sessions = 2000;
+        machine.addChange(sessions, 0, 0);
+
+        List<QueueConnection> connections = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            QueueConnection connection = new QueueConnection();
+            connections.add(connection);
+            server.accept(connection);
+        }
+        // Every customer is part way through paying before anyone buys.
+        for (QueueConnection connection : connections) {
+            connection.send(new CoinInserted(10));
+        }
+        for (QueueConnection connection : connections) {
+            connection.send(new CoinInserted(10));
+            connection.send(new ButtonPressed(1));
+            connection.end();
+        }
+
+        for (QueueConnection connection : connections) {
+            assertTrue(connection.awaitClosed());
+            assertEquals(Arrays.asList("product 1 Gum", "coins 5 x 1"), connection.output.getEvents());
+        }
+
+        // Every sale kept both dimes and gave back one of the shared nickels.
+        machine.dispenseAllChange();
+        assertEquals(2 * sessions, machineHardware.getCoinsDispensed(10));
+        assertEquals(0, machineHardware.getCoinsDispensed(5));
+    }
+
+    @Test
+    public void rejectedCommandDoesNotEndTheSession() throws Exception {
+        QueueConnection connection = new QueueConnection();
+        server.accept(connection);
+
+        connection.send(new CoinInserted(50));
+        connection.send(new CoinInserted(25));
+        connection.end();
+
+        assertTrue(connection.awaitClosed());
+        assertEquals(1, connection.rejected.size());
+        assertEquals(Arrays.asList("message User entered invalid amount of money 50", "coins 25 x 1"),
+                connection.output.getEvents());
+    }
+
+    @Test
+    public void adminCommandsAreRejected() throws Exception {
+        QueueConnection connection = new QueueConnection();
+        server.accept(connection);
+
+        connection.send(new ChangeAdded(1, 1, 1));
+        connection.end();
+
+        assertTrue(connection.awaitClosed());
+        assertEquals(1, connection.rejected.size());
+        assertTrue(connection.output.getEvents().toString(),
+                connection.output.getEvents().get(0).endsWith("is not something a customer can do"));
+        machine.dispenseAllChange();
+        assertTrue(machineHardware.getEvents().isEmpty());
+    }
+
+    @Test
+    public void closingGivesEveryoneTheirCoinsBack() throws Exception {
+        List<QueueConnection> connections = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            QueueConnection connection = new QueueConnection();
+            connections.add(connection);
+            server.accept(connection);
+            connection.send(new CoinInserted(5));
+        }
+        for (QueueConnection connection : connections) {
+            connection.awaitTaken();
+        }
+
+        server.close();
+
+        assertEquals(0, server.getActiveSessions());
+        for (QueueConnection connection : connections) {
+            assertEquals(0, connection.closed.getCount());
+            assertEquals(Arrays.asList("coins 5 x 1"), connection.output.getEvents());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void acceptAfterClose() throws Exception {
+        server.close();
+        server.accept(new QueueConnection());
+    }
+
+    @Test
+    public void platformThreadsWork() throws Exception {
+        server.close();
+        server = new SessionServer(machine, task -> new Thread(task, "test-session"));
+        QueueConnection connection = new QueueConnection();
+        server.accept(connection);
+        connection.send(new ButtonPressed(1));
+        connection.end();
+
+        assertTrue(connection.awaitClosed());
+        assertEquals(Arrays.asList("message Item in position 1 costs 15"), connection.output.getEvents());
+    }
+
+    @Test
+    public void sessionThatFailsToStartIsForgotten() throws Exception {
+        server.close();
+        Thread used = new Thread(() -> { });
+        used.start();
+        used.join();
+        server = new SessionServer(machine, task -> used);
+        try {
+            server.accept(new QueueConnection());
+            fail("A thread can only be started once");
+        } catch (IllegalThreadStateException e) {
+            assertEquals(0, server.getActiveSessions());
+        }
+    }
+
+    /**
+     * A connection fed from the test, with a command that stands for the customer leaving.
+     */
+    private static class QueueConnection implements SessionConnection {
+        private static final Command END = machine -> { };
+
+        private final BlockingQueue<Command> commands = new LinkedBlockingQueue<>();
+        private final RecordingHardwareDriver output = new RecordingHardwareDriver();
+        private final List<Command> rejected = new ArrayList<>();
+        private final CountDownLatch taken = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        void send(Command command) {
+            commands.add(command);
+        }
+
+        void end() {
+            commands.add(END);
+        }
+
+        void awaitTaken() throws InterruptedException {
+            taken.await(10, TimeUnit.SECONDS);
+        }
+
+        boolean awaitClosed() throws InterruptedException {
+            return closed.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public Command nextCommand() throws InterruptedException {
+            Command command = commands.take();
+            taken.countDown();
+            return command == END ? null : command;
+        }
+
+        @Override
+        public HardwareDriver getOutput() {
+            return output;
+        }
+
+        @Override
+        public void rejected(Command command, RuntimeException e) {
+            rejected.add(command);
+            SessionConnection.super.rejected(command, e);
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
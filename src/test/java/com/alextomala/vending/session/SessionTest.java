@@ -0,0 +1,140 @@
+package com.alextomala.vending.session;
+
+import com.alextomala.vending.exception.InvalidDenominationException;
+import com.alextomala.vending.exception.NotEnoughChangeException;
+import com.alextomala.vending.hardware.NoOpHardwareDriver;
+import com.alextomala.vending.hardware.RecordingHardwareDriver;
+import com.alextomala.vending.impl.ConcurrentVendingMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SessionTest {
+
+    private ConcurrentVendingMachine machine;
+    private RecordingHardwareDriver aliceOutput;
+    private RecordingHardwareDriver bobOutput;
+    private Session alice;
+    private Session bob;
+
+    @Before
+    public void setUp() {
+        machine = new ConcurrentVendingMachine(NoOpHardwareDriver.INSTANCE);
+        Map<String, Object> details = new HashMap<>();
+        details.put("price", 50);
+        details.put("name", "Gum");
+        machine.addProduct(1, details);
+        Map<String, Object> mint = new HashMap<>();
+        mint.put("price", 15);
+        mint.put("name", "Mint");
+        machine.addProduct(2, mint);
+
+        aliceOutput = new RecordingHardwareDriver();
+        bobOutput = new RecordingHardwareDriver();
+        alice = new Session(machine, aliceOutput);
+        bob = new Session(machine, bobOutput);
+    }
+
+    @After
+    public void tearDown() {
+        machine = null;
+        alice = null;
+        bob = null;
+    }
+
+    @Test
+    public void eachSessionHasItsOwnCredit() {
+        alice.addUserMoney(25);
+        bob.addUserMoney(25);
+
+        alice.buttonPress(1);
+        assertEquals(Collections.singletonList("message Item in position 1 costs 50"), aliceOutput.getEvents());
+        assertEquals(25, alice.getCredit());
+
+        alice.addUserMoney(25);
+        alice.buttonPress(1);
+
+        assertEquals("product 1 Gum", aliceOutput.getEvents().get(1));
+        assertEquals(0, alice.getCredit());
+        assertEquals(25, bob.getCredit());
+        assertEquals(Collections.emptyList(), bobOutput.getEvents());
+    }
+
+    @Test
+    public void changeComesFromTheSharedVault() {
+        machine.addChange(0, 1, 0);
+        alice.addUserMoney(25);
+        alice.addUserMoney(25);
+        alice.addUserMoney(10);
+
+        alice.buttonPress(1);
+
+        assertEquals(Arrays.asList("product 1 Gum", "coins 10 x 1"), aliceOutput.getEvents());
+
+        // Alice's quarters are in the machine now, and the dime she got back is gone.
+        bob.addUserMoney(25);
+        bob.addUserMoney(25);
+        bob.addUserMoney(25);
+        bob.buttonPress(1);
+        assertEquals(Arrays.asList("product 1 Gum", "coins 25 x 1"), bobOutput.getEvents());
+    }
+
+    @Test
+    public void notEnoughChangeKeepsTheCredit() {
+        alice.addUserMoney(25);
+
+        try {
+            alice.buttonPress(2);
+            fail("There is no change for 10 cents");
+        } catch (NotEnoughChangeException e) {
+            // expected
+        }
+
+        assertEquals(25, alice.getCredit());
+        assertEquals(Collections.emptyList(), aliceOutput.getEvents());
+    }
+
+    @Test
+    public void cancelOrderGivesBackTheSessionsCoins() {
+        alice.addUserMoney(25);
+        alice.addUserMoney(5);
+        alice.addUserMoney(5);
+        bob.addUserMoney(10);
+
+        alice.cancelOrder();
+
+        assertEquals(Arrays.asList("coins 5 x 2", "coins 25 x 1"), aliceOutput.getEvents());
+        assertEquals(0, alice.getCredit());
+        assertEquals(10, bob.getCredit());
+    }
+
+    @Test
+    public void emptyPosition() {
+        alice.addUserMoney(25);
+
+        alice.buttonPress(3);
+
+        assertEquals(Collections.singletonList("message No item in position 3"), aliceOutput.getEvents());
+        assertEquals(25, alice.getCredit());
+    }
+
+    @Test
+    public void invalidCoinLeavesTheCreditAlone() {
+        alice.addUserMoney(25);
+        try {
+            alice.addUserMoney(50);
+            fail("Half dollars aren't taken");
+        } catch (InvalidDenominationException e) {
+            // expected
+        }
+        assertEquals(25, alice.getCredit());
+    }
+}
@@ -0,0 +1,115 @@
+package com.alextomala.vending.simulation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulatorTest {
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static Scenario snacks(int[] floatCoins) {
+        return new Scenario(new int[]{65, 100, 35}, new int[]{5, 3, 2}, 80, 0.3, floatCoins);
+    }
+
+    @Test
+    public void testRunReplica_sameSeedSameDays() {
+        Simulator simulator = new Simulator(snacks(new int[]{20, 20, 20}));
+        ReplicaResult first = simulator.runReplica(7, 30);
+        ReplicaResult second = simulator.runReplica(7, 30);
+
+        assertEquals(first.getCustomers(), second.getCustomers());
+        assertEquals(first.getSales(), second.getSales());
+        assertEquals(first.getNoChange(), second.getNoChange());
+        for (int day = 0; day < 30; day++) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(first.getVault(day, i), second.getVault(day, i));
+            }
+        }
+    }
+
+    @Test
+    public void testRun_sameReportOnAnyNumberOfThreads() {
+        Scenario scenario = snacks(new int[]{20, 20, 20});
+        SimulationReport parallel = new Simulator(scenario, pool).run(11, 16, 20);
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            SimulationReport sequential = new Simulator(scenario, single).run(11, 16, 20);
+
+            assertEquals(sequential.getCustomers(), parallel.getCustomers());
+            assertEquals(sequential.getSales(), parallel.getSales());
+            assertEquals(sequential.getNoChange(), parallel.getNoChange());
+            assertEquals(sequential.getMeanVault(19, 2), parallel.getMeanVault(19, 2), 0);
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testRun_everyCustomerIsCounted() {
+        SimulationReport report = new Simulator(snacks(new int[]{0, 0, 0}), pool).run(3, 8, 10);
+
+        assertEquals(report.getCustomers(), report.getSales() + report.getNoChange() + report.getSoldOut());
+        // 8 machines for 10 days at 80 a day.
+        assertTrue(Math.abs(report.getCustomers() - 6400) < 400);
+        assertEquals(8, report.getReplicas().size());
+    }
+
+    @Test
+    public void testRun_noFloatMeansLostSales() {
+        SimulationReport empty = new Simulator(snacks(new int[]{0, 0, 0}), pool).run(5, 4, 5);
+        SimulationReport stocked = new Simulator(snacks(new int[]{200, 200, 200}), pool).run(5, 4, 5);
+
+        assertTrue(empty.getNoChangeRate() > 0.1);
+        assertEquals(0, stocked.getNoChange());
+        assertEquals(1.0, stocked.getSuccessRate(), 0);
+    }
+
+    @Test
+    public void testRun_exactChangeNeverNeedsChange() {
+        Scenario exact = new Scenario(new int[]{65, 100, 35}, new int[]{5, 3, 2}, 80, 1, new int[]{0, 0, 0});
+
+        assertEquals(0, new Simulator(exact, pool).run(1, 2, 5).getNoChange());
+    }
+
+    @Test
+    public void testRun_dailyStockAndCollection() {
+        Scenario scenario = new Scenario(new int[]{50}, new int[]{1}, 40, 0, new int[]{0, 10, 0}, 30, true);
+        SimulationReport report = new Simulator(scenario, pool).run(9, 2, 5);
+
+        assertTrue(report.getSoldOut() > 0);
+        assertTrue(report.getSales() <= 2 * 5 * 30);
+        // Quarters only, two per sale, and the vault is emptied every evening.
+        for (ReplicaResult replica : report.getReplicas()) {
+            for (int day = 0; day < 5; day++) {
+                assertTrue(replica.getVault(day, 2) <= 60);
+                assertEquals(10, replica.getVault(day, 1));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScenario_priceNoCoinCanMake() {
+        new Scenario(new int[]{62}, new int[]{1}, 10, 0, new int[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScenario_missingPopularity() {
+        new Scenario(new int[]{60, 70}, new int[]{1}, 10, 0, new int[3]);
+    }
+}
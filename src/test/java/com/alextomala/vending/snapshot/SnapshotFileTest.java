@@ -0,0 +1,190 @@
+package com.alextomala.vending.snapshot;
+
+import com.alextomala.vending.catalog.Product;
+import com.alextomala.vending.catalog.StockCounter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SnapshotFileTest {
+
+    private static final int[] US_COINS = {5, 10, 25};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.getRoot().toPath().resolve("machines.snapshot");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file = null;
+    }
+
+    @Test
+    public void testWrite_roundTrip() throws Exception {
+        List<Product> products = Arrays.asList(new Product(1, 50, "Gum"), new Product(4, 75, null));
+        Snapshot first = new Snapshot(42, state(US_COINS, new int[]{1, 0, 2}, new int[]{10, 20, 30}, products));
+        Snapshot second = new Snapshot(7, state(US_COINS, new int[]{0, 0, 0}, new int[]{3, 2, 1},
+                Collections.<Product>emptyList()));
+        SnapshotFile.write(file, Arrays.asList(first, second));
+
+        SnapshotFile snapshots = SnapshotFile.open(file);
+        assertEquals(2, snapshots.getMachineCount());
+        assertArrayEquals(US_COINS, snapshots.getDenominations());
+        assertEquals(42, snapshots.getSequence(0));
+        assertEquals(55, snapshots.getUserCredit(0));
+        assertEquals(2, snapshots.getProductCount(0));
+        assertEquals(0, snapshots.getProductCount(1));
+        assertArrayEquals(new int[]{10, 20, 30, 3, 2, 1}, snapshots.getSystemCoins());
+
+        MachineState state = snapshots.getState(0);
+        assertArrayEquals(new int[]{1, 0, 2}, state.getUserCoins());
+        assertArrayEquals(new int[]{10, 20, 30}, state.getSystemCoins());
+        assertEquals(products.toString(), state.getProducts().toString());
+        assertNull(state.getProducts().get(1).getName());
+
+        assertEquals(7, snapshots.getSnapshot(1).getSequence());
+        assertArrayEquals(new int[]{3, 2, 1}, snapshots.getState(1).getSystemCoins());
+    }
+
+    @Test
+    public void testOpen_sharesProducts() throws Exception {
+        List<Snapshot> machines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            machines.add(new Snapshot(i, state(US_COINS, new int[3], new int[3],
+                    Arrays.asList(new Product(1, 50, "Gum"), new Product(2, 60, "Gum")))));
+        }
+        SnapshotFile.write(file, machines);
+
+        SnapshotFile snapshots = SnapshotFile.open(file);
+        assertSame(snapshots.getState(3).getProducts().get(0), snapshots.getState(99).getProducts().get(0));
+
+        // The name is only stored once: header, denominations, machines, products and then three bytes for "Gum".
+        assertEquals(40 + 12 + 100 * 48 + 200 * 20 + 3, Files.size(file));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrite_differentCoins() throws Exception {
+        SnapshotFile.write(file, Arrays.asList(
+                new Snapshot(0, state(US_COINS, new int[3], new int[3], Collections.<Product>emptyList())),
+                new Snapshot(0, state(new int[]{5, 10}, new int[2], new int[2], Collections.<Product>emptyList()))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpen_unknownVersion() throws Exception {
+        writeOneMachine();
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(4);
+            raw.writeInt(Integer.reverseBytes(SnapshotFile.VERSION + 1));
+        }
+        SnapshotFile.open(file);
+    }
+
+    @Test
+    public void testWrite_stock() throws Exception {
+        List<Product> products = Arrays.asList(new Product(1, 50, "Gum"), new Product(4, 75, null));
+        new Snapshot(1, new MachineState(US_COINS, new int[3], new int[3], products,
+                new int[]{12, StockCounter.UNLIMITED}, 0)).write(file);
+
+        assertArrayEquals(new int[]{12, StockCounter.UNLIMITED}, Snapshot.read(file).getState().getStock());
+    }
+
+    @Test
+    public void testWrite_priceVersion() throws Exception {
+        List<Product> products = Collections.singletonList(new Product(1, 50, "Gum"));
+        SnapshotFile.write(file, Arrays.asList(
+                new Snapshot(1, new MachineState(US_COINS, new int[3], new int[3], products, new int[]{3}, 12)),
+                new Snapshot(2, state(US_COINS, new int[3], new int[]{1, 2, 3}, products))));
+
+        SnapshotFile snapshots = SnapshotFile.open(file);
+        assertEquals(12, snapshots.getState(0).getPriceVersion());
+        assertEquals(0, snapshots.getState(1).getPriceVersion());
+        assertArrayEquals(new int[]{1, 2, 3}, snapshots.getState(1).getSystemCoins());
+    }
+
+    @Test
+    public void testOpen_unknownFieldsAreSkipped() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(187).order(ByteOrder.LITTLE_ENDIAN);
+        // A header, machine entry and product entry that are each one int longer than this code knows about.
+        buffer.putInt(0x504e5356).putInt(SnapshotFile.VERSION).putInt(2).putInt(3).putInt(160).putInt(184)
+                .putInt(187).putInt(44).putInt(52).putInt(24).putInt(-1);
+        buffer.putInt(5).putInt(10).putInt(25);
+        buffer.putLong(9).putInt(0).putInt(1).putInt(0).putInt(0).putInt(0).putInt(1).putInt(1).putInt(1).putLong(6)
+                .putInt(-1);
+        buffer.putLong(10).putInt(1).putInt(0).putInt(0).putInt(1).putInt(0).putInt(2).putInt(2).putInt(2).putLong(0)
+                .putInt(-1);
+        buffer.putInt(1).putInt(50).putInt(0).putInt(3).putInt(4).putInt(-1);
+        buffer.put("Gum".getBytes("UTF-8"));
+        Files.write(file, buffer.array());
+
+        SnapshotFile snapshots = SnapshotFile.open(file);
+        assertArrayEquals(US_COINS, snapshots.getDenominations());
+        assertEquals(10, snapshots.getSequence(1));
+        assertEquals(10, snapshots.getUserCredit(1));
+        assertArrayEquals(new int[]{1, 1, 1, 2, 2, 2}, snapshots.getSystemCoins());
+        MachineState state = snapshots.getState(0);
+        assertEquals("Gum", state.getProducts().get(0).getName());
+        assertArrayEquals(new int[]{4}, state.getStock());
+        assertEquals(6, state.getPriceVersion());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpen_truncated() throws Exception {
+        writeOneMachine();
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.setLength(raw.length() - 1);
+        }
+        SnapshotFile.open(file);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetState_noSuchMachine() throws Exception {
+        writeOneMachine();
+        SnapshotFile.open(file).getState(1);
+    }
+
+    @Test
+    public void testSnapshot_readAndWrite() throws Exception {
+        writeOneMachine();
+        Snapshot snapshot = Snapshot.read(file);
+        assertEquals(1, snapshot.getSequence());
+        assertEquals("Gum", snapshot.getState().getProducts().get(0).getName());
+    }
+
+    private void writeOneMachine() throws IOException {
+        new Snapshot(1, state(US_COINS, new int[3], new int[]{1, 1, 1},
+                Collections.singletonList(new Product(1, 50, "Gum")))).write(file);
+    }
+
+    /**
+     * A state with products that never run out and no price table.
+     */
+    private static MachineState state(int[] denominations, int[] userCoins, int[] systemCoins, List<Product> products) {
+        int[] stock = new int[products.size()];
+        Arrays.fill(stock, StockCounter.UNLIMITED);
+        return new MachineState(denominations, userCoins, systemCoins, products, stock, 0);
+    }
+}
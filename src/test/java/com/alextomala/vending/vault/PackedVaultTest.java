@@ -0,0 +1,189 @@
+package com.alextomala.vending.vault;
+
+import com.alextomala.vending.exception.InvalidDenominationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedVaultTest {
+
+    private PackedVault vault;
+
+    @Before
+    public void setUp() throws Exception {
+        vault = new PackedVault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        vault = null;
+    }
+
+    @Test
+    public void testPack_roundTrip() {
+        long packed = PackedVault.pack(1, 2, PackedVault.MAX_COINS);
+        assertEquals(1, PackedVault.nickelsOf(packed));
+        assertEquals(2, PackedVault.dimesOf(packed));
+        assertEquals(PackedVault.MAX_COINS, PackedVault.quartersOf(packed));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDeposit_denominationFull() {
+        vault.deposit(PackedVault.pack(PackedVault.MAX_COINS, 0, 0));
+        vault.addMoney(5);
+    }
+
+    @Test
+    public void testAddMoney_oneOfEach() {
+        vault.addMoney(5);
+        vault.addMoney(10);
+        vault.addMoney(25);
+        assertEquals(40, vault.getTotalMoney());
+    }
+
+    @Test(expected = InvalidDenominationException.class)
+    public void testAddMoney_penny() {
+        vault.addMoney(1);
+    }
+
+    @Test
+    public void testWithdraw_allOrNothing() {
+        vault.deposit(PackedVault.pack(1, 1, 1));
+
+        assertFalse(vault.withdraw(PackedVault.pack(1, 2, 1)));
+        assertEquals(40, vault.getTotalMoney());
+
+        assertTrue(vault.withdraw(PackedVault.pack(1, 1, 0)));
+        assertEquals(25, vault.getTotalMoney());
+    }
+
+    @Test
+    public void testWithdrawChange() {
+        vault.deposit(PackedVault.pack(1, 1, 1));
+
+        long change = vault.withdrawChange(15);
+        assertEquals(1, PackedVault.nickelsOf(change));
+        assertEquals(1, PackedVault.dimesOf(change));
+        assertEquals(0, PackedVault.quartersOf(change));
+        assertEquals(25, vault.getTotalMoney());
+    }
+
+    @Test
+    public void testWithdrawChange_notGreedy() {
+        vault.deposit(PackedVault.pack(0, 3, 1));
+
+        // A quarter first would leave five cents and no nickel to pay it with.
+        long change = vault.withdrawChange(30);
+        assertEquals(PackedVault.pack(0, 3, 0), change);
+        assertEquals(25, vault.getTotalMoney());
+    }
+
+    @Test
+    public void testWithdrawChange_notEnoughChangeLeavesVaultUntouched() {
+        vault.deposit(PackedVault.pack(0, 1, 1));
+
+        assertEquals(PackedVault.NO_CHANGE, vault.withdrawChange(30));
+        assertEquals(1, vault.getDimes());
+        assertEquals(1, vault.getQuarters());
+    }
+
+    @Test
+    public void testDepositAndWithdrawChange_changeMadeFromDeposit() {
+        long change = vault.depositAndWithdrawChange(PackedVault.pack(1, 0, 2), 5);
+
+        assertEquals(PackedVault.pack(1, 0, 0), change);
+        assertEquals(50, vault.getTotalMoney());
+    }
+
+    @Test
+    public void testDepositAndWithdrawChange_failureDepositsNothing() {
+        assertEquals(PackedVault.NO_CHANGE, vault.depositAndWithdrawChange(PackedVault.pack(0, 0, 2), 5));
+        assertEquals(0, vault.getTotalMoney());
+    }
+
+    @Test
+    public void testReserveChange_commitKeepsWhatIsLeftOfTheDeposit() {
+        vault.deposit(PackedVault.pack(0, 1, 0));
+        long deposit = PackedVault.pack(1, 0, 2);
+
+        long change = vault.reserveChange(deposit, 15);
+        assertEquals(PackedVault.pack(1, 1, 0), change);
+        // The dime is spoken for, the customer's coins haven't gone in yet.
+        assertEquals(0, vault.getTotalMoney());
+
+        vault.commitChange(deposit, change);
+        assertEquals(PackedVault.pack(0, 0, 2), vault.getCoins());
+    }
+
+    @Test
+    public void testReserveChange_abortPutsTheChangeBack() {
+        vault.deposit(PackedVault.pack(0, 1, 3));
+        long deposit = PackedVault.pack(1, 0, 2);
+
+        long change = vault.reserveChange(deposit, 15);
+        vault.abortChange(deposit, change);
+        assertEquals(PackedVault.pack(0, 1, 3), vault.getCoins());
+    }
+
+    @Test
+    public void testReserveChange_exactChange() {
+        vault.deposit(PackedVault.pack(2, 0, 0));
+        long deposit = PackedVault.pack(0, 0, 2);
+
+        long change = vault.reserveChange(deposit, 0);
+        assertEquals(0L, change);
+        assertEquals(PackedVault.pack(2, 0, 0), vault.getCoins());
+
+        vault.commitChange(deposit, change);
+        assertEquals(PackedVault.pack(2, 0, 2), vault.getCoins());
+    }
+
+    @Test
+    public void testReserveChange_failureLeavesVaultUntouched() {
+        vault.deposit(PackedVault.pack(0, 1, 0));
+
+        assertEquals(PackedVault.NO_CHANGE, vault.reserveChange(PackedVault.pack(0, 0, 2), 5));
+        assertEquals(PackedVault.pack(0, 1, 0), vault.getCoins());
+    }
+
+    @Test
+    public void testTakeAll() {
+        vault.deposit(PackedVault.pack(3, 2, 1));
+
+        assertEquals(PackedVault.pack(3, 2, 1), vault.takeAll());
+        assertEquals(0, vault.getTotalMoney());
+    }
+
+    @Test
+    public void testConcurrentWithdrawChange_neverOverdraws() throws Exception {
+        vault.deposit(PackedVault.pack(1000, 1000, 0));
+        AtomicInteger changeMade = new AtomicInteger();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    long change = vault.withdrawChange(15);
+                    if (change != PackedVault.NO_CHANGE) {
+                        changeMade.addAndGet(PackedVault.totalOf(change));
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(15000, changeMade.get() + vault.getTotalMoney());
+        assertEquals(1000 * 15, changeMade.get());
+    }
+}
@@ -1,10 +1,12 @@
 package com.alextomala.vending.vault;
 
+import com.alextomala.vending.currency.DenominationRegistry;
 import com.alextomala.vending.exception.InvalidDenominationException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class VaultTest {
@@ -151,4 +153,54 @@ public class VaultTest {
         assertEquals(0, quartersRemoved);
         assertEquals(0, vault.getQuarters());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTotalMoney_keptUpToDateByRemove() {
+        vault.addQuarter();
+        vault.addDime();
+        vault.addNickel();
+
+        vault.removeDimes(5);
+        assertEquals(30, vault.getTotalMoney());
+
+        vault.remove(2, 1);
+        assertEquals(5, vault.getTotalMoney());
+    }
+
+    @Test
+    public void testGetCounts() {
+        vault.add(0, 3);
+        vault.add(2, 1);
+
+        assertArrayEquals(new int[]{3, 0, 1}, vault.getCounts(new int[3]));
+    }
+
+    @Test
+    public void testEuroVault() {
+        Vault euroVault = new Vault(DenominationRegistry.EURO_COINS);
+        euroVault.addMoney(200);
+        euroVault.addMoney(50);
+        euroVault.addMoney(20);
+
+        assertEquals(270, euroVault.getTotalMoney());
+        assertEquals(1, euroVault.getCount(DenominationRegistry.EURO_COINS.indexOf(20)));
+    }
+
+    @Test(expected = InvalidDenominationException.class)
+    public void testEuroVault_noQuarters() {
+        new Vault(DenominationRegistry.EURO_COINS).addMoney(25);
+    }
+
+    @Test
+    public void testAdd_manyCoinsAtOnce() {
+        vault.add(DenominationRegistry.US_COINS.get(1), 2000);
+
+        assertEquals(2000, vault.getDimes());
+        assertEquals(20000, vault.getTotalMoney());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdd_negative() {
+        vault.add(DenominationRegistry.US_COINS.get(1), -1);
+    }
+}